@@ -0,0 +1,15 @@
+#!/bin/bash
+# Streaming replica of $PRIMARY_HOST: clones the primary on first start (pg_basebackup -R writes
+# standby.signal and primary_conninfo), then runs as a hot standby.
+set -euo pipefail
+
+if [ ! -s "$PGDATA/PG_VERSION" ]; then
+    until pg_basebackup -h "$PRIMARY_HOST" -U "$REPLICATION_USER" -D "$PGDATA" -R -X stream -c fast; do
+        echo "waiting for $PRIMARY_HOST to accept replication connections"
+        rm -rf "${PGDATA:?}"/*
+        sleep 2
+    done
+    chmod 0700 "$PGDATA"
+fi
+
+exec postgres -c hot_standby=on
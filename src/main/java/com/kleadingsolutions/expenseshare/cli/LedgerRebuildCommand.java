@@ -0,0 +1,43 @@
+package com.kleadingsolutions.expenseshare.cli;
+
+import com.kleadingsolutions.expenseshare.service.LedgerRebuilder;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Command-line entry point of the offline balance rebuild. Active with the "rebuild" profile, which
+ * also turns the web server off; the process exits when the rebuild ends (0 = done, 1 = failed).
+ *
+ * java -jar expenseshare.jar --spring.profiles.active=docker,rebuild [--app.ledger-rebuild.dry-run=true]
+ */
+@Component
+@Profile("rebuild")
+@RequiredArgsConstructor
+public class LedgerRebuildCommand implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerRebuildCommand.class);
+
+    private final LedgerRebuilder ledgerRebuilder;
+    private final ApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode;
+        try {
+            ledgerRebuilder.rebuild();
+            exitCode = 0;
+        } catch (RuntimeException e) {
+            log.error("Ledger rebuild failed", e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+}
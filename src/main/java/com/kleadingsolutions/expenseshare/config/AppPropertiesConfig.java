@@ -0,0 +1,29 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the application's typed "app.*" configuration properties.
+ */
+@Configuration
+@EnableConfigurationProperties({
+        BalanceAuditProperties.class,
+        BalanceProperties.class,
+        BalanceProjectionProperties.class,
+        BalanceSnapshotProperties.class,
+        BalanceStripeProperties.class,
+        BulkImportProperties.class,
+        ExpenseSplitProperties.class,
+        GroupWriterProperties.class,
+        IdempotencyProperties.class,
+        LedgerCompactionProperties.class,
+        LedgerPartitionProperties.class,
+        LedgerRebuildProperties.class,
+        MembershipCacheProperties.class,
+        ReplicaProperties.class,
+        SettlePlanProperties.class,
+        UserNetProperties.class
+})
+public class AppPropertiesConfig {
+}
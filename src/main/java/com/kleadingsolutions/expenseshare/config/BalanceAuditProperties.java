@@ -0,0 +1,51 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Background balance audit: compares every group's balances with its ledger and checks that they sum to zero.
+ * @param enabled          run the scheduled scan
+ * @param interval         delay between scans (ISO-8601, e.g. PT1H: also read by @Scheduled)
+ * @param workers          groups checked in parallel
+ * @param queriesPerSecond database statements per second the scan may issue (checks and repairs)
+ * @param shards           group id ranges leased independently; a power of two up to 256
+ * @param leaseTtl         how long a node owns a shard without renewing its lease
+ * @param fetchSize        group ids fetched per cursor round trip
+ * @param repair           reconcile drifted groups through BalanceService (off = report only)
+ */
+@ConfigurationProperties(prefix = "app.balances.audit")
+public record BalanceAuditProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("PT1H") Duration interval,
+        @DefaultValue("4") int workers,
+        @DefaultValue("200") int queriesPerSecond,
+        @DefaultValue("16") int shards,
+        @DefaultValue("10m") Duration leaseTtl,
+        @DefaultValue("500") int fetchSize,
+        @DefaultValue("true") boolean repair
+) {
+
+    public BalanceAuditProperties {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("app.balances.audit.interval must be positive");
+        }
+        if (workers <= 0) {
+            throw new IllegalArgumentException("app.balances.audit.workers must be greater than 0");
+        }
+        if (queriesPerSecond <= 0) {
+            throw new IllegalArgumentException("app.balances.audit.queries-per-second must be greater than 0");
+        }
+        if (shards <= 0 || shards > 256 || Integer.bitCount(shards) != 1) {
+            throw new IllegalArgumentException("app.balances.audit.shards must be a power of two between 1 and 256");
+        }
+        if (leaseTtl.isNegative() || leaseTtl.isZero()) {
+            throw new IllegalArgumentException("app.balances.audit.lease-ttl must be positive");
+        }
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("app.balances.audit.fetch-size must be greater than 0");
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * In-memory per-group balance projections serving group balance reads.
+ * @param enabled    serve listBalances from projections (off = read balance rows every time)
+ * @param maxMemory  approximate heap the projections may use; least valuable groups are evicted first
+ * @param maxAge     a projection is rebuilt from the ledger at least this often; bounds how long
+ *                   eager writes made on other nodes (or by SQL) can go unseen
+ */
+@ConfigurationProperties(prefix = "app.balances.projection")
+public record BalanceProjectionProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("64MB") DataSize maxMemory,
+        @DefaultValue("30s") Duration maxAge
+) {
+
+    public BalanceProjectionProperties {
+        if (maxMemory.toBytes() <= 0) {
+            throw new IllegalArgumentException("app.balances.projection.max-memory must be positive");
+        }
+        if (maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException("app.balances.projection.max-age must be positive");
+        }
+    }
+}
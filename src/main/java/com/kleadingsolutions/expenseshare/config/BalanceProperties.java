@@ -0,0 +1,69 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.enums.BalanceUpdateMode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Materialized balance maintenance.
+ * @param mode                      EAGER updates balances on every write; LAZY appends to the ledger and folds on read
+ * @param settlementOptimisticRetry settle via the previous read-modify-write with @Version retries
+ *                                  instead of the configured lock strategy (kept for comparison)
+ * @param lockStrategy              default BalanceLockStrategy for expense, settlement and reconcile writes
+ * @param lockTiers                 per group-size overrides; the tier with the highest minMembers not above
+ *                                  the group's ACTIVE member count wins
+ * @param optimisticMaxAttempts     OPTIMISTIC: version-checked update attempts per row before giving up
+ * @param optimisticBackoff         OPTIMISTIC: base backoff, doubled per attempt with full jitter
+ */
+@ConfigurationProperties(prefix = "app.balances")
+public record BalanceProperties(
+        @DefaultValue("EAGER") BalanceUpdateMode mode,
+        @DefaultValue("false") boolean settlementOptimisticRetry,
+        @DefaultValue("ATOMIC_DELTA") BalanceLockMode lockStrategy,
+        List<LockTier> lockTiers,
+        @DefaultValue("5") int optimisticMaxAttempts,
+        @DefaultValue("5ms") Duration optimisticBackoff
+) {
+
+    /**
+     * Groups with at least minMembers ACTIVE members use strategy.
+     */
+    public record LockTier(int minMembers, BalanceLockMode strategy) {
+    }
+
+    public BalanceProperties {
+        lockTiers = lockTiers == null ? List.of()
+                : lockTiers.stream().sorted(Comparator.comparingInt(LockTier::minMembers)).toList();
+        for (LockTier tier : lockTiers) {
+            if (tier.minMembers() <= 0 || tier.strategy() == null) {
+                throw new IllegalArgumentException("app.balances.lock-tiers entries need min-members > 0 and a strategy");
+            }
+        }
+        if (optimisticMaxAttempts <= 0) {
+            throw new IllegalArgumentException("app.balances.optimistic-max-attempts must be greater than 0");
+        }
+        if (optimisticBackoff.isNegative()) {
+            throw new IllegalArgumentException("app.balances.optimistic-backoff must not be negative");
+        }
+    }
+
+    public boolean isLazy() {
+        return mode == BalanceUpdateMode.LAZY;
+    }
+
+    /**
+     * Strategy for a group with the given number of ACTIVE members.
+     */
+    public BalanceLockMode lockStrategyFor(int members) {
+        BalanceLockMode selected = lockStrategy;
+        for (LockTier tier : lockTiers) {
+            if (members >= tier.minMembers()) selected = tier.strategy();
+        }
+        return selected;
+    }
+}
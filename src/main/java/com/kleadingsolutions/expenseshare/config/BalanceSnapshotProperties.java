@@ -0,0 +1,39 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Periodic point-in-time balance snapshots per group (balance_snapshots).
+ * @param enabled      take snapshots on schedule (reads use existing snapshots either way)
+ * @param interval     spacing of snapshot cuts, aligned to the epoch in UTC (P1D: midnight UTC)
+ * @param settleDelay  how long after a cut its snapshot is taken; must exceed the longest write transaction
+ * @param pollInterval delay between checks for groups due a snapshot (ISO-8601: also read by @Scheduled)
+ * @param batchSize    groups fetched per page while looking for due groups
+ */
+@ConfigurationProperties(prefix = "app.balances.snapshots")
+public record BalanceSnapshotProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("P1D") Duration interval,
+        @DefaultValue("PT10M") Duration settleDelay,
+        @DefaultValue("PT1H") Duration pollInterval,
+        @DefaultValue("500") int batchSize
+) {
+
+    public BalanceSnapshotProperties {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("app.balances.snapshots.interval must be positive");
+        }
+        if (settleDelay.isNegative()) {
+            throw new IllegalArgumentException("app.balances.snapshots.settle-delay must not be negative");
+        }
+        if (pollInterval.isNegative() || pollInterval.isZero()) {
+            throw new IllegalArgumentException("app.balances.snapshots.poll-interval must be positive");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("app.balances.snapshots.batch-size must be greater than 0");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Striped balance rows for contended groups.
+ * @param enabled           let the contention detector switch groups to striped writes
+ * @param stripes           stripe rows per (group, user); a writer thread always uses the same stripe
+ * @param contendedWriters  concurrent balance writers on one group that count as a contended sample
+ * @param contendedSamples  contended samples after which the group is flagged
+ * @param flagCacheTtl      how long a node trusts its cached striped/not-striped flag
+ * @param quietPeriod       a group whose stripes were not written for this long is folded and unflagged
+ * @param compactInterval   how often quiet groups are folded (ISO-8601, e.g. PT1M: also read by @Scheduled)
+ */
+@ConfigurationProperties(prefix = "app.balances.stripes")
+public record BalanceStripeProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("8") int stripes,
+        @DefaultValue("4") int contendedWriters,
+        @DefaultValue("20") int contendedSamples,
+        @DefaultValue("30s") Duration flagCacheTtl,
+        @DefaultValue("5m") Duration quietPeriod,
+        @DefaultValue("PT1M") Duration compactInterval
+) {
+
+    public BalanceStripeProperties {
+        if (stripes < 2 || stripes > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("app.balances.stripes.stripes must be between 2 and " + Short.MAX_VALUE);
+        }
+        if (contendedWriters < 2) {
+            throw new IllegalArgumentException("app.balances.stripes.contended-writers must be at least 2");
+        }
+        if (contendedSamples <= 0) {
+            throw new IllegalArgumentException("app.balances.stripes.contended-samples must be greater than 0");
+        }
+        if (flagCacheTtl.isNegative() || flagCacheTtl.isZero()) {
+            throw new IllegalArgumentException("app.balances.stripes.flag-cache-ttl must be positive");
+        }
+        if (quietPeriod.isNegative() || quietPeriod.isZero()) {
+            throw new IllegalArgumentException("app.balances.stripes.quiet-period must be positive");
+        }
+        if (compactInterval.isNegative() || compactInterval.isZero()) {
+            throw new IllegalArgumentException("app.balances.stripes.compact-interval must be positive");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Bulk expense import tuning.
+ * @param chunkSize number of expenses validated and written per transaction
+ */
+@ConfigurationProperties(prefix = "app.bulk-import")
+public record BulkImportProperties(
+        @DefaultValue("1000") int chunkSize
+) {
+
+    public BulkImportProperties {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("app.bulk-import.chunk-size must be greater than 0");
+        }
+    }
+}
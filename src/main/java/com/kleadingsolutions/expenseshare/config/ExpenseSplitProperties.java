@@ -0,0 +1,26 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Storage of expense splits.
+ * @param packThreshold expenses with at least this many splits store them as one packed value on the
+ *                      expense (expenses.packed_splits) instead of one expense_splits row per split;
+ *                      0 keeps every split in expense_splits
+ */
+@ConfigurationProperties(prefix = "app.expenses.splits")
+public record ExpenseSplitProperties(
+        @DefaultValue("50") int packThreshold
+) {
+
+    public ExpenseSplitProperties {
+        if (packThreshold < 0) {
+            throw new IllegalArgumentException("app.expenses.splits.pack-threshold must not be negative");
+        }
+    }
+
+    public boolean packs(int splits) {
+        return packThreshold > 0 && splits >= packThreshold;
+    }
+}
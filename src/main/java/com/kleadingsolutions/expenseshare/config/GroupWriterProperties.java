@@ -0,0 +1,33 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Optional single-writer mode: expense and settlement writes are queued per group and executed
+ * by a fixed set of writer threads instead of contending on balance row locks.
+ * @param enabled       route writes through the per-group writers (off = run on the request thread)
+ * @param threads       number of writer threads; a group always hashes to the same writer
+ * @param maxBatch      maximum queued operations committed together in one transaction
+ * @param queueCapacity per-writer queue bound; submissions beyond it are rejected
+ */
+@ConfigurationProperties(prefix = "app.group-writer")
+public record GroupWriterProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("4") int threads,
+        @DefaultValue("32") int maxBatch,
+        @DefaultValue("10000") int queueCapacity
+) {
+
+    public GroupWriterProperties {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("app.group-writer.threads must be greater than 0");
+        }
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("app.group-writer.max-batch must be greater than 0");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("app.group-writer.queue-capacity must be greater than 0");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Idempotency-Key handling for expense and settlement POSTs.
+ * @param enabled        honour the Idempotency-Key header (off = header ignored)
+ * @param ttl            how long a stored response can be replayed
+ * @param purgeInterval  how often expired keys are deleted (ISO-8601, e.g. PT1H: also read by @Scheduled)
+ */
+@ConfigurationProperties(prefix = "app.idempotency")
+public record IdempotencyProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("24h") Duration ttl,
+        @DefaultValue("PT1H") Duration purgeInterval
+) {
+
+    public IdempotencyProperties {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("app.idempotency.ttl must be positive");
+        }
+        if (purgeInterval.isNegative() || purgeInterval.isZero()) {
+            throw new IllegalArgumentException("app.idempotency.purge-interval must be positive");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Compaction of old ledger entries into one COMPACTED entry per (group, user, currency).
+ * @param enabled         run the scheduled compaction pass
+ * @param interval        delay between passes (ISO-8601: also read by @Scheduled)
+ * @param horizon         entries created more than this long ago are compacted (the cut is aligned to a UTC day)
+ * @param minEntries      compact a group only once it has at least this many compactable entries
+ * @param groupsPerSecond groups checked per second; bounds the load one pass puts on the database
+ * @param batchSize       group ids fetched per page, and how often progress is saved
+ */
+@ConfigurationProperties(prefix = "app.ledger.compaction")
+public record LedgerCompactionProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("PT6H") Duration interval,
+        @DefaultValue("P365D") Duration horizon,
+        @DefaultValue("1000") int minEntries,
+        @DefaultValue("20") int groupsPerSecond,
+        @DefaultValue("500") int batchSize
+) {
+
+    public LedgerCompactionProperties {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("app.ledger.compaction.interval must be positive");
+        }
+        if (horizon.compareTo(Duration.ofDays(1)) < 0) {
+            throw new IllegalArgumentException("app.ledger.compaction.horizon must be at least one day");
+        }
+        if (minEntries < 2) {
+            throw new IllegalArgumentException("app.ledger.compaction.min-entries must be at least 2");
+        }
+        if (groupsPerSecond <= 0) {
+            throw new IllegalArgumentException("app.ledger.compaction.groups-per-second must be greater than 0");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("app.ledger.compaction.batch-size must be greater than 0");
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Monthly time partitions of ledger_entries and their retention (PostgreSQL only).
+ * @param enabled            create and archive monthly partitions on schedule; off keeps every hash partition unsplit by time
+ * @param monthsAhead        months after the current one that must already have a partition
+ * @param archiveAfterMonths detach monthly partitions ending this many months before the current month into
+ *                           the archive schema; 0 never archives
+ * @param archiveSchema      schema detached partitions are moved to
+ * @param pollInterval       delay between maintenance runs (ISO-8601: also read by @Scheduled)
+ */
+@ConfigurationProperties(prefix = "app.ledger.partitions")
+public record LedgerPartitionProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("2") int monthsAhead,
+        @DefaultValue("0") int archiveAfterMonths,
+        @DefaultValue("ledger_archive") String archiveSchema,
+        @DefaultValue("PT1H") Duration pollInterval
+) {
+
+    public LedgerPartitionProperties {
+        if (monthsAhead < 1) {
+            throw new IllegalArgumentException("app.ledger.partitions.months-ahead must be at least 1");
+        }
+        if (archiveAfterMonths < 0) {
+            throw new IllegalArgumentException("app.ledger.partitions.archive-after-months must not be negative");
+        }
+        if (archiveSchema == null || !archiveSchema.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("app.ledger.partitions.archive-schema must be a plain lower-case identifier");
+        }
+        if (pollInterval.isNegative() || pollInterval.isZero()) {
+            throw new IllegalArgumentException("app.ledger.partitions.poll-interval must be positive");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Offline rebuild of every balance row from the ledger (run with the "rebuild" profile).
+ * @param dryRun           only compare and report drift; nothing is written
+ * @param runId            checkpoint key; a run with the same id resumes where the last one stopped
+ * @param resume           continue an unfinished run with the same id instead of starting over
+ * @param fetchSize        ledger rows per cursor round trip
+ * @param batchRows        ledger rows per batch (whole groups): folded, compared and written in one transaction
+ * @param parallelism      batches processed at once (each holds a connection while writing); 0 = CPUs, at most 8
+ * @param progressInterval how often progress is logged
+ * @param reportLimit      drifted rows logged individually (all are counted)
+ */
+@ConfigurationProperties(prefix = "app.ledger-rebuild")
+public record LedgerRebuildProperties(
+        @DefaultValue("false") boolean dryRun,
+        @DefaultValue("default") String runId,
+        @DefaultValue("true") boolean resume,
+        @DefaultValue("10000") int fetchSize,
+        @DefaultValue("50000") int batchRows,
+        @DefaultValue("0") int parallelism,
+        @DefaultValue("PT10S") Duration progressInterval,
+        @DefaultValue("100") int reportLimit
+) {
+
+    public LedgerRebuildProperties {
+        if (runId == null || runId.isBlank() || runId.length() > 64) {
+            throw new IllegalArgumentException("app.ledger-rebuild.run-id must be 1 to 64 characters");
+        }
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("app.ledger-rebuild.fetch-size must be greater than 0");
+        }
+        if (batchRows <= 0) {
+            throw new IllegalArgumentException("app.ledger-rebuild.batch-rows must be greater than 0");
+        }
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("app.ledger-rebuild.parallelism must not be negative");
+        }
+        if (progressInterval.isNegative() || progressInterval.isZero()) {
+            throw new IllegalArgumentException("app.ledger-rebuild.progress-interval must be positive");
+        }
+        if (reportLimit < 0) {
+            throw new IllegalArgumentException("app.ledger-rebuild.report-limit must not be negative");
+        }
+    }
+
+    /**
+     * Effective number of batches in flight.
+     */
+    public int workers() {
+        return parallelism > 0 ? parallelism : Math.min(Runtime.getRuntime().availableProcessors(), 8);
+    }
+}
@@ -0,0 +1,27 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Bounded cache of per-group ACTIVE member sets used for authorization and membership checks.
+ * @param maxGroups         maximum number of groups kept in memory (least recently used evicted)
+ * @param expireAfterWrite  safety net for membership changes made outside the service (e.g. SQL)
+ */
+@ConfigurationProperties(prefix = "app.membership-cache")
+public record MembershipCacheProperties(
+        @DefaultValue("10000") long maxGroups,
+        @DefaultValue("10m") Duration expireAfterWrite
+) {
+
+    public MembershipCacheProperties {
+        if (maxGroups <= 0) {
+            throw new IllegalArgumentException("app.membership-cache.max-groups must be greater than 0");
+        }
+        if (expireAfterWrite.isNegative() || expireAfterWrite.isZero()) {
+            throw new IllegalArgumentException("app.membership-cache.expire-after-write must be positive");
+        }
+    }
+}
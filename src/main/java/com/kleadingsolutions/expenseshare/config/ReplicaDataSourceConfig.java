@@ -0,0 +1,104 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import com.kleadingsolutions.expenseshare.datasource.ReadYourWrites;
+import com.kleadingsolutions.expenseshare.datasource.ReplicaLagMonitor;
+import com.kleadingsolutions.expenseshare.datasource.ReplicaRoutingDataSource;
+import com.kleadingsolutions.expenseshare.filter.ReadYourWritesFilter;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas (app.datasource.replicas.enabled=true, PostgreSQL streaming replication).
+ *
+ * Replaces the auto-configured pool: spring.datasource and spring.datasource.hikari still describe
+ * the primary, and the application DataSource becomes a lazy proxy over
+ * {@link ReplicaRoutingDataSource}, so @Transactional(readOnly = true) and read-only
+ * TransactionTemplates run on a replica while every other statement, Flyway included, runs on the primary.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.datasource.replicas", name = "enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReadYourWrites readYourWrites(ReplicaProperties properties) {
+        return new ReadYourWrites(properties);
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+                                                             DataSourceProperties dataSourceProperties,
+                                                             ReplicaProperties properties,
+                                                             ReadYourWrites readYourWrites,
+                                                             MeterRegistry meterRegistry) {
+        List<ReplicaRoutingDataSource.Replica> replicas = new ArrayList<>();
+        for (int i = 0; i < properties.urls().size(); i++) {
+            String name = "replica-" + i;
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName(name);
+            pool.setJdbcUrl(properties.urls().get(i));
+            pool.setUsername(properties.username() != null ? properties.username() : dataSourceProperties.determineUsername());
+            pool.setPassword(properties.password() != null ? properties.password() : dataSourceProperties.determinePassword());
+            pool.setMaximumPoolSize(properties.poolSize());
+            pool.setConnectionTimeout(properties.connectTimeout().toMillis());
+            pool.setReadOnly(true);
+            // start even while the replica is still being cloned; the lag monitor marks it up once it answers
+            pool.setInitializationFailTimeout(-1);
+            pool.setMetricRegistry(meterRegistry);
+            replicas.add(new ReplicaRoutingDataSource.Replica(name, pool));
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, readYourWrites, properties.maxLag(), meterRegistry);
+    }
+
+    /**
+     * Defers the physical connection to the first statement, when the transaction's read-only flag is
+     * known. The defaults spare the proxy a probe connection at startup.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return proxy;
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(HikariDataSource primaryDataSource,
+                                               ReplicaRoutingDataSource replicaRoutingDataSource,
+                                               ReplicaProperties properties) {
+        return new ReplicaLagMonitor(primaryDataSource, replicaRoutingDataSource, properties);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(ReadYourWrites readYourWrites) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration = new FilterRegistrationBean<>(new ReadYourWritesFilter(readYourWrites));
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+        return registration;
+    }
+}
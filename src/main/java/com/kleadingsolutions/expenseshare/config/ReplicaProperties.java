@@ -0,0 +1,59 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * PostgreSQL streaming replicas serving read-only transactions (ReplicaDataSourceConfig).
+ * @param enabled          route read-only transactions to the replicas; off sends everything to spring.datasource
+ * @param urls             JDBC URLs of the replicas
+ * @param username         replica login; defaults to spring.datasource.username
+ * @param password         replica password; defaults to spring.datasource.password
+ * @param poolSize         maximum connections per replica pool
+ * @param connectTimeout   how long a read waits for a replica connection before falling back to the primary
+ * @param maxLag           replicas further behind the primary than this are skipped until they catch up
+ * @param lagCheckInterval how often replica lag is measured (ISO-8601: also read by @Scheduled)
+ * @param stickyWindow     after a user's write, that user's reads go to the primary for this long
+ * @param maxStickyUsers   maximum number of recent writers remembered per node
+ */
+@ConfigurationProperties(prefix = "app.datasource.replicas")
+public record ReplicaProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue List<String> urls,
+        String username,
+        String password,
+        @DefaultValue("10") int poolSize,
+        @DefaultValue("2s") Duration connectTimeout,
+        @DefaultValue("5s") Duration maxLag,
+        @DefaultValue("PT1S") Duration lagCheckInterval,
+        @DefaultValue("10s") Duration stickyWindow,
+        @DefaultValue("100000") long maxStickyUsers
+) {
+
+    public ReplicaProperties {
+        if (enabled && urls.isEmpty()) {
+            throw new IllegalArgumentException("app.datasource.replicas.urls must list at least one replica when enabled");
+        }
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("app.datasource.replicas.pool-size must be greater than 0");
+        }
+        if (connectTimeout.toMillis() < 250) {
+            throw new IllegalArgumentException("app.datasource.replicas.connect-timeout must be at least 250ms");
+        }
+        if (maxLag.isNegative() || maxLag.isZero()) {
+            throw new IllegalArgumentException("app.datasource.replicas.max-lag must be positive");
+        }
+        if (lagCheckInterval.isNegative() || lagCheckInterval.isZero()) {
+            throw new IllegalArgumentException("app.datasource.replicas.lag-check-interval must be positive");
+        }
+        if (stickyWindow.isNegative()) {
+            throw new IllegalArgumentException("app.datasource.replicas.sticky-window must not be negative");
+        }
+        if (maxStickyUsers <= 0) {
+            throw new IllegalArgumentException("app.datasource.replicas.max-sticky-users must be greater than 0");
+        }
+    }
+}
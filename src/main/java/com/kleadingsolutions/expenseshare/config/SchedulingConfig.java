@@ -0,0 +1,12 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables @Scheduled housekeeping jobs (e.g. idempotency key purge).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
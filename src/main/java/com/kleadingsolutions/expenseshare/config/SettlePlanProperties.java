@@ -0,0 +1,28 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Cache of per-group settle-up plans.
+ * @param maxGroups  maximum number of group plans kept in memory
+ * @param maxAge     a plan is recomputed at least this often; bounds how long writes made on other
+ *                   nodes in eager balance mode (or by SQL) can go unseen
+ */
+@ConfigurationProperties(prefix = "app.balances.settle-plan")
+public record SettlePlanProperties(
+        @DefaultValue("10000") long maxGroups,
+        @DefaultValue("30s") Duration maxAge
+) {
+
+    public SettlePlanProperties {
+        if (maxGroups <= 0) {
+            throw new IllegalArgumentException("app.balances.settle-plan.max-groups must be greater than 0");
+        }
+        if (maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException("app.balances.settle-plan.max-age must be positive");
+        }
+    }
+}
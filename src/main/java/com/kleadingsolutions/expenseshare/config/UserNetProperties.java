@@ -0,0 +1,28 @@
+package com.kleadingsolutions.expenseshare.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Cache of per-user cross-group net positions (GET /api/users/me/net).
+ * @param maxUsers  maximum number of users whose position is kept in memory
+ * @param maxAge    a position is recomputed at least this often; bounds how long writes made on
+ *                  other nodes (or by SQL) can go unseen
+ */
+@ConfigurationProperties(prefix = "app.balances.user-net")
+public record UserNetProperties(
+        @DefaultValue("100000") long maxUsers,
+        @DefaultValue("30s") Duration maxAge
+) {
+
+    public UserNetProperties {
+        if (maxUsers <= 0) {
+            throw new IllegalArgumentException("app.balances.user-net.max-users must be greater than 0");
+        }
+        if (maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException("app.balances.user-net.max-age must be positive");
+        }
+    }
+}
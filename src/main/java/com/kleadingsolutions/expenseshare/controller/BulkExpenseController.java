@@ -0,0 +1,49 @@
+package com.kleadingsolutions.expenseshare.controller;
+
+import com.kleadingsolutions.expenseshare.dto.BulkImportResultDto;
+import com.kleadingsolutions.expenseshare.enums.BulkFormat;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+import com.kleadingsolutions.expenseshare.filter.IdempotencyKeyFilter;
+import com.kleadingsolutions.expenseshare.service.AuthService;
+import com.kleadingsolutions.expenseshare.service.BulkExpenseService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.InputStream;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/groups")
+@RequiredArgsConstructor
+public class BulkExpenseController {
+
+    private final BulkExpenseService bulkExpenseService;
+    private final AuthService authService;
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    /**
+     * Streamed bulk import (NDJSON or CSV). The body is consumed as a stream, not bound to objects.
+     * Optional Idempotency-Key header: a retry with the same key skips the chunks already committed.
+     */
+    @PostMapping(value = "/{groupId}/expenses:bulk", consumes = {"application/x-ndjson", "text/csv"})
+    public ResponseEntity<BulkImportResultDto> importExpenses(@PathVariable("groupId") UUID groupId,
+                                                              @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                              @RequestHeader(value = IdempotencyKeyFilter.HEADER, required = false) String importKey,
+                                                              InputStream body) {
+        BulkFormat format;
+        try {
+            format = BulkFormat.fromContentType(contentType);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+        String key = importKey == null ? null : importKey.trim();
+        if (key != null && (key.isEmpty() || key.length() > MAX_KEY_LENGTH)) {
+            throw new BadRequestException(IdempotencyKeyFilter.HEADER + " must be 1-" + MAX_KEY_LENGTH + " characters");
+        }
+        UUID actor = authService.getCurrentUserId();
+        return ResponseEntity.ok(bulkExpenseService.importExpenses(groupId, body, format, actor, key));
+    }
+}
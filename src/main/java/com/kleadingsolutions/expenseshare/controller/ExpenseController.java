@@ -1,17 +1,26 @@
 package com.kleadingsolutions.expenseshare.controller;
 
 import com.kleadingsolutions.expenseshare.dto.CreateExpenseRequest;
+import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.filter.IdempotencyKeyFilter;
 import com.kleadingsolutions.expenseshare.model.Expense;
 import com.kleadingsolutions.expenseshare.service.AuthService;
 import com.kleadingsolutions.expenseshare.service.ExpenseService;
+import com.kleadingsolutions.expenseshare.service.GroupWriteExecutor;
+import com.kleadingsolutions.expenseshare.service.IdempotencyService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/expenses")
@@ -20,11 +29,25 @@ public class ExpenseController {
 
     private final ExpenseService expenseService;
     private final AuthService authService;
+    private final GroupWriteExecutor groupWriteExecutor;
+    private final IdempotencyService idempotencyService;
 
+    /**
+     * Optional Idempotency-Key header: retries with the same key get the first response back.
+     */
     @PostMapping
-    public ResponseEntity<Expense> createExpense(@RequestBody CreateExpenseRequest request) {
+    public CompletableFuture<ResponseEntity<Expense>> createExpense(
+            @RequestBody CreateExpenseRequest request,
+            @RequestAttribute(name = IdempotencyKeyFilter.REQUEST_ATTRIBUTE, required = false) IdempotencyService.Request idempotency) {
         UUID actor = authService.getCurrentUserId();
-        Expense created = expenseService.createExpense(request, actor);
-        return ResponseEntity.ok(created);
+        return groupWriteExecutor.submit(request.getGroupId(), () -> idempotencyService.execute(idempotency, Expense.class,
+                        () -> expenseService.createExpense(request, actor)))
+                .thenApply(ResponseEntity::ok);
     }
-}
\ No newline at end of file
+
+    @GetMapping("/{expenseId}/splits")
+    public ResponseEntity<List<ExpenseSplitDto>> listSplits(@PathVariable("expenseId") UUID expenseId) {
+        UUID actor = authService.getCurrentUserId();
+        return ResponseEntity.ok(expenseService.listSplits(expenseId, actor));
+    }
+}
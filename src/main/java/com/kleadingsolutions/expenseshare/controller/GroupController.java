@@ -6,10 +6,12 @@ import com.kleadingsolutions.expenseshare.service.GroupService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -41,10 +43,26 @@ public class GroupController {
     }
 
     @GetMapping("/{groupId}/balances")
-    public ResponseEntity<List<BalanceDto>> listBalances(@PathVariable("groupId") UUID groupId) {
+    public ResponseEntity<List<BalanceDto>> listBalances(@PathVariable("groupId") UUID groupId,
+                                                         @RequestParam(value = "asOf", required = false)
+                                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime asOf) {
+        if (asOf != null) {
+            return ResponseEntity.ok(groupService.listBalancesAsOf(groupId, asOf));
+        }
         return ResponseEntity.ok(groupService.listBalances(groupId));
     }
 
+    @GetMapping("/{groupId}/debts")
+    public ResponseEntity<List<PairDebtDto>> listDebts(@PathVariable("groupId") UUID groupId,
+                                                       @RequestParam(value = "userId", required = false) UUID userId) {
+        return ResponseEntity.ok(groupService.listDebts(groupId, userId));
+    }
+
+    @GetMapping("/{groupId}/settle-plan")
+    public ResponseEntity<SettlePlanDto> settlePlan(@PathVariable("groupId") UUID groupId) {
+        return ResponseEntity.ok(groupService.settlePlan(groupId));
+    }
+
     @PostMapping("/{groupId}/members")
     public ResponseEntity<Void> addMember(@PathVariable("groupId") UUID groupId,@Valid @RequestBody AddMemberRequest req) {
         UUID actor = authService.getCurrentUserId();
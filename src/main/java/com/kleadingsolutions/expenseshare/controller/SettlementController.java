@@ -1,16 +1,22 @@
 package com.kleadingsolutions.expenseshare.controller;
 
 import com.kleadingsolutions.expenseshare.dto.SettlementRequest;
+import com.kleadingsolutions.expenseshare.filter.IdempotencyKeyFilter;
 import com.kleadingsolutions.expenseshare.model.Settlement;
 import com.kleadingsolutions.expenseshare.service.AuthService;
+import com.kleadingsolutions.expenseshare.service.GroupWriteExecutor;
+import com.kleadingsolutions.expenseshare.service.IdempotencyService;
 import com.kleadingsolutions.expenseshare.service.SettlementService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/settlements")
 @RequiredArgsConstructor
@@ -18,11 +24,20 @@ public class SettlementController {
 
     private final SettlementService settlementService;
     private final AuthService authService;
+    private final GroupWriteExecutor groupWriteExecutor;
+    private final IdempotencyService idempotencyService;
 
+    /**
+     * Optional Idempotency-Key header: retries with the same key get the first response back.
+     */
     @PostMapping
-    public ResponseEntity<Settlement> settle(@RequestBody SettlementRequest request) {
+    public CompletableFuture<ResponseEntity<Settlement>> settle(
+            @RequestBody SettlementRequest request,
+            @RequestAttribute(name = IdempotencyKeyFilter.REQUEST_ATTRIBUTE, required = false) IdempotencyService.Request idempotency) {
         var initiatedBy = authService.getCurrentUserId();
-        Settlement s = settlementService.settle(request.getGroupId(), request.getPayerId(), request.getReceiverId(), request.getAmount(), initiatedBy);
-        return ResponseEntity.ok(s);
+        return groupWriteExecutor.submit(request.getGroupId(), () -> idempotencyService.execute(idempotency, Settlement.class,
+                        () -> settlementService.settle(request.getGroupId(), request.getPayerId(), request.getReceiverId(),
+                                request.getAmount(), initiatedBy)))
+                .thenApply(ResponseEntity::ok);
     }
 }
\ No newline at end of file
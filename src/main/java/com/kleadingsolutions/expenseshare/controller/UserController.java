@@ -0,0 +1,27 @@
+package com.kleadingsolutions.expenseshare.controller;
+
+import com.kleadingsolutions.expenseshare.dto.UserNetDto;
+import com.kleadingsolutions.expenseshare.service.AuthService;
+import com.kleadingsolutions.expenseshare.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/users")
+@RequiredArgsConstructor
+public class UserController {
+
+    private final UserService userService;
+    private final AuthService authService;
+
+    @GetMapping("/me/net")
+    public ResponseEntity<UserNetDto> myNet() {
+        UUID me = authService.getCurrentUserId();
+        return ResponseEntity.ok(userService.netPosition(me));
+    }
+}
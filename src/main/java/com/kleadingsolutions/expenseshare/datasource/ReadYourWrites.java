@@ -0,0 +1,59 @@
+package com.kleadingsolutions.expenseshare.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kleadingsolutions.expenseshare.config.ReplicaProperties;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Principals that wrote within the last app.datasource.replicas.sticky-window.
+ *
+ * Their read-only transactions are served by the primary, so a user never reads an older state than
+ * the one they just wrote while a replica catches up. The window is per node: a user whose next
+ * request lands on another node reads from a replica there, as before.
+ */
+public class ReadYourWrites {
+
+    private static final Object IGNORED = ReadYourWrites.class.getName() + ".IGNORED";
+
+    private final Cache<String, Boolean> writers;
+
+    public ReadYourWrites(ReplicaProperties properties) {
+        this.writers = Caffeine.newBuilder()
+                .maximumSize(properties.maxStickyUsers())
+                .expireAfterWrite(properties.stickyWindow())
+                .build();
+    }
+
+    public void recordWrite(String principal) {
+        if (principal != null) writers.put(principal, Boolean.TRUE);
+    }
+
+    public boolean recentlyWrote(String principal) {
+        return principal != null && writers.getIfPresent(principal) != null;
+    }
+
+    /**
+     * Do not count the current read-write transaction as the principal's write when it commits: upkeep
+     * a read runs on the primary (a fold that changed nothing) keeps the reader's reads where they were.
+     */
+    public static void ignoreCurrentTransaction() {
+        ReplicaRoutingDataSource.bindUntilCompletion(IGNORED, Boolean.TRUE);
+    }
+
+    static boolean isCurrentTransactionIgnored() {
+        return TransactionSynchronizationManager.hasResource(IGNORED);
+    }
+
+    /**
+     * Name of the authenticated principal on this thread, or null for anonymous and background work.
+     */
+    public static String currentPrincipal() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || !auth.isAuthenticated() || auth instanceof AnonymousAuthenticationToken) return null;
+        return auth.getName();
+    }
+}
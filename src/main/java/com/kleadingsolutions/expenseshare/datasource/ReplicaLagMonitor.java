@@ -0,0 +1,100 @@
+package com.kleadingsolutions.expenseshare.datasource;
+
+import com.kleadingsolutions.expenseshare.config.ReplicaProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Measures how far each replica is behind the primary, in time.
+ *
+ * Every lag-check-interval the primary's WAL position is sampled and kept for a window of a few
+ * max-lags; a replica's lag is the age of the newest sample its replay position has reached, 0 once
+ * it has replayed everything the primary had. This stays near 0 on an idle primary, where
+ * pg_last_xact_replay_timestamp() would keep growing. A replica that cannot be reached, or that is
+ * no longer in recovery (promoted), is marked down until a later check succeeds.
+ */
+public class ReplicaLagMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private static final String PRIMARY_LSN_SQL = "SELECT pg_wal_lsn_diff(pg_current_wal_lsn(), '0/0')::bigint";
+    private static final String REPLICA_STATE_SQL =
+            "SELECT pg_is_in_recovery(), pg_wal_lsn_diff(pg_last_wal_replay_lsn(), '0/0')::bigint";
+
+    private final DataSource primary;
+    private final ReplicaRoutingDataSource routing;
+    private final long windowNanos;
+    private final Deque<long[]> samples = new ArrayDeque<>();
+
+    public ReplicaLagMonitor(DataSource primary, ReplicaRoutingDataSource routing, ReplicaProperties properties) {
+        this.primary = primary;
+        this.routing = routing;
+        this.windowNanos = properties.maxLag().multipliedBy(4).toNanos();
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.replicas.lag-check-interval:PT1S}")
+    public synchronized void check() {
+        long now = System.nanoTime();
+        try {
+            samples.addLast(new long[]{now, query(primary, PRIMARY_LSN_SQL)});
+        } catch (SQLException e) {
+            log.warn("Sampling the primary WAL position failed: {}", e.getMessage());
+            return;
+        }
+        while (samples.size() > 1 && now - samples.peekFirst()[0] > windowNanos) samples.removeFirst();
+
+        for (ReplicaRoutingDataSource.Replica replica : routing.replicas()) {
+            boolean wasAvailable = replica.available();
+            try (Connection c = replica.dataSource().getConnection();
+                 Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery(REPLICA_STATE_SQL)) {
+                rs.next();
+                if (!rs.getBoolean(1)) {
+                    if (wasAvailable) log.warn("Replica {} is not in recovery, no longer routing reads to it", replica.name());
+                    replica.markDown();
+                    continue;
+                }
+                replica.update(true, lag(samples, rs.getLong(2), now));
+                if (!wasAvailable) log.info("Replica {} is available", replica.name());
+            } catch (SQLException e) {
+                if (wasAvailable) log.warn("Replica {} is unreachable: {}", replica.name(), e.getMessage());
+                replica.markDown();
+            }
+        }
+    }
+
+    /**
+     * Nanoseconds since the newest primary sample whose position the replica has replayed; 0 when it
+     * has replayed the newest sample, {@link ReplicaRoutingDataSource#UNKNOWN_LAG} when it is behind
+     * every sample in the window. Samples are (nanoTime, lsn) pairs, oldest first.
+     */
+    static long lag(Deque<long[]> samples, long replayLsn, long now) {
+        Iterator<long[]> newestFirst = samples.descendingIterator();
+        boolean newest = true;
+        while (newestFirst.hasNext()) {
+            long[] s = newestFirst.next();
+            if (replayLsn >= s[1]) return newest ? 0 : now - s[0];
+            newest = false;
+        }
+        return ReplicaRoutingDataSource.UNKNOWN_LAG;
+    }
+
+    private static long query(DataSource dataSource, String sql) throws SQLException {
+        try (Connection c = dataSource.getConnection();
+             Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.kleadingsolutions.expenseshare.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to a streaming replica and everything else to the primary.
+ *
+ * - The decision is taken when the connection is fetched, from the transaction's read-only flag, so
+ *   it must sit behind a LazyConnectionDataSourceProxy: JPA opens its connection before the flag is set.
+ * - Replicas take turns. One that {@link ReplicaLagMonitor} reports as down or more than max-lag
+ *   behind is skipped; with none left the read goes to the primary ("lagging").
+ * - A principal that committed a write within the sticky window reads from the primary ("sticky"),
+ *   unless the transaction was marked with {@link ReadYourWrites#ignoreCurrentTransaction}.
+ * - A transaction served by a replica is marked ({@link #isCurrentTransactionOnReplica}), so callers
+ *   can tell a replica's state from the primary's before caching what they read.
+ * - A replica that refuses a connection is marked down until the next lag check and the read is
+ *   retried on the primary ("replica-error").
+ * Routing decisions are counted in expenseshare.datasource.routes; replica lag and availability are
+ * published as gauges. Owns the replica pools and closes them on shutdown.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final long UNKNOWN_LAG = Long.MAX_VALUE;
+
+    /**
+     * Transaction resource bound while the current transaction reads from a replica (value: replica name).
+     */
+    public static final Object ON_REPLICA = ReplicaRoutingDataSource.class.getName() + ".ON_REPLICA";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final ReadYourWrites readYourWrites;
+    private final long maxLagNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter readWrite;
+    private final Counter readOnly;
+    private final Counter sticky;
+    private final Counter lagging;
+    private final Counter replicaError;
+
+    public ReplicaRoutingDataSource(DataSource primary,
+                                    List<Replica> replicas,
+                                    ReadYourWrites readYourWrites,
+                                    Duration maxLag,
+                                    MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.readYourWrites = readYourWrites;
+        this.maxLagNanos = maxLag.toNanos();
+        this.readWrite = route(meterRegistry, "primary", "read-write");
+        this.readOnly = route(meterRegistry, "replica", "read-only");
+        this.sticky = route(meterRegistry, "primary", "sticky");
+        this.lagging = route(meterRegistry, "primary", "lagging");
+        this.replicaError = route(meterRegistry, "primary", "replica-error");
+        for (Replica r : this.replicas) {
+            Gauge.builder("expenseshare.datasource.replica.lag", r, Replica::lagSeconds)
+                    .description("Seconds the replica is behind the primary (NaN while down or unmeasured)")
+                    .baseUnit("seconds")
+                    .tag("replica", r.name())
+                    .register(meterRegistry);
+            Gauge.builder("expenseshare.datasource.replica.available", r, x -> x.available() ? 1 : 0)
+                    .description("1 while the replica accepts connections and is in recovery")
+                    .tag("replica", r.name())
+                    .register(meterRegistry);
+        }
+    }
+
+    private static Counter route(MeterRegistry meterRegistry, String target, String reason) {
+        return Counter.builder("expenseshare.datasource.routes")
+                .description("Connections handed out, by target and routing reason")
+                .tag("target", target)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * One replica pool and its last measured state, updated by {@link ReplicaLagMonitor}.
+     */
+    public static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean available;
+        private volatile long lagNanos = UNKNOWN_LAG;
+
+        public Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public DataSource dataSource() {
+            return dataSource;
+        }
+
+        public boolean available() {
+            return available;
+        }
+
+        public long lagNanos() {
+            return lagNanos;
+        }
+
+        void update(boolean available, long lagNanos) {
+            this.available = available;
+            this.lagNanos = lagNanos;
+        }
+
+        void markDown() {
+            update(false, UNKNOWN_LAG);
+        }
+
+        double lagSeconds() {
+            return available && lagNanos != UNKNOWN_LAG ? lagNanos / 1e9 : Double.NaN;
+        }
+    }
+
+    List<Replica> replicas() {
+        return replicas;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(username, password);
+    }
+
+    private Connection connect(String username, String password) throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            recordWriteOnCommit();
+            readWrite.increment();
+            return open(primary, username, password);
+        }
+        if (readYourWrites.recentlyWrote(ReadYourWrites.currentPrincipal())) {
+            sticky.increment();
+            return open(primary, username, password);
+        }
+        Replica replica = pick();
+        if (replica == null) {
+            lagging.increment();
+            return open(primary, username, password);
+        }
+        try {
+            Connection connection = open(replica.dataSource(), username, password);
+            bindUntilCompletion(ON_REPLICA, replica.name());
+            readOnly.increment();
+            return connection;
+        } catch (SQLException e) {
+            log.warn("Replica {} refused a connection, reading from the primary: {}", replica.name(), e.getMessage());
+            replica.markDown();
+            replicaError.increment();
+            return open(primary, username, password);
+        }
+    }
+
+    /**
+     * Next replica in turn that is up and within max-lag, or null.
+     */
+    Replica pick() {
+        int n = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), n);
+        for (int i = 0; i < n; i++) {
+            Replica r = replicas.get((start + i) % n);
+            if (r.available() && r.lagNanos() <= maxLagNanos) return r;
+        }
+        return null;
+    }
+
+    private void recordWriteOnCommit() {
+        String principal = ReadYourWrites.currentPrincipal();
+        if (principal == null || !TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (!ReadYourWrites.isCurrentTransactionIgnored()) readYourWrites.recordWrite(principal);
+            }
+        });
+    }
+
+    /**
+     * True while the current transaction's connection came from a replica.
+     */
+    public static boolean isCurrentTransactionOnReplica() {
+        return TransactionSynchronizationManager.hasResource(ON_REPLICA);
+    }
+
+    /**
+     * Bind a marker to the current transaction until it completes, and out of the way while it is
+     * suspended by a nested REQUIRES_NEW. A no-op without transaction synchronization.
+     */
+    static void bindUntilCompletion(Object key, Object value) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive() || TransactionSynchronizationManager.hasResource(key)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(key, value);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResourceIfPossible(key);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(key, value);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(key);
+            }
+        });
+    }
+
+    private static Connection open(DataSource dataSource, String username, String password) throws SQLException {
+        return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Replica r : replicas) {
+            if (r.dataSource() instanceof Closeable c) c.close();
+        }
+    }
+}
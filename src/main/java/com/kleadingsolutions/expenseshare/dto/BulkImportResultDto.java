@@ -0,0 +1,22 @@
+package com.kleadingsolutions.expenseshare.dto;
+
+import lombok.*;
+
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkImportResultDto {
+    private UUID groupId;
+    private int chunks;
+    /** Chunks an earlier attempt with the same Idempotency-Key had already committed (not applied again). */
+    private int skippedChunks;
+    /** Last body line covered by a committed chunk; a keyless client can resume after it. */
+    private int committedThroughLine;
+    private long expenses;
+    private long splits;
+    private long ledgerEntries;
+}
@@ -0,0 +1,17 @@
+package com.kleadingsolutions.expenseshare.dto;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CurrencyNetDto {
+    private String currency;
+    private BigDecimal owed;
+    private BigDecimal owing;
+    private BigDecimal net;
+}
@@ -0,0 +1,18 @@
+package com.kleadingsolutions.expenseshare.dto;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GroupNetDto {
+    private UUID groupId;
+    private String groupName;
+    private String currency;
+    private BigDecimal balance;
+}
@@ -0,0 +1,17 @@
+package com.kleadingsolutions.expenseshare.dto;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PairDebtDto {
+    private UUID debtorId;
+    private UUID creditorId;
+    private BigDecimal amount;
+}
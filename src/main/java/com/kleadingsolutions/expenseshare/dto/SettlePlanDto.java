@@ -0,0 +1,16 @@
+package com.kleadingsolutions.expenseshare.dto;
+
+import lombok.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SettlePlanDto {
+    private UUID groupId;
+    private List<SettleTransferDto> transfers;
+}
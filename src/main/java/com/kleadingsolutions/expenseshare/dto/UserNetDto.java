@@ -0,0 +1,17 @@
+package com.kleadingsolutions.expenseshare.dto;
+
+import lombok.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserNetDto {
+    private UUID userId;
+    private List<CurrencyNetDto> totals;
+    private List<GroupNetDto> groups;
+}
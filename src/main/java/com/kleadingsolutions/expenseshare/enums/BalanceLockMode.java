@@ -0,0 +1,28 @@
+package com.kleadingsolutions.expenseshare.enums;
+
+/**
+ * How concurrent writers of one group are kept from losing balance updates.
+ */
+public enum BalanceLockMode {
+    /**
+     * SELECT ... FOR UPDATE (JPA PESSIMISTIC_WRITE) on each row, in user-id order, then save.
+     */
+    PESSIMISTIC,
+    /**
+     * Unlocked read, version-checked UPDATE; bounded jittered retry on conflict.
+     */
+    OPTIMISTIC,
+    /**
+     * Per-group pg_advisory_xact_lock, then a delta upsert.
+     */
+    ADVISORY,
+    /**
+     * One multi-row UPDATE balance = balance + delta upsert; the database serializes per row.
+     */
+    ATOMIC_DELTA,
+    /**
+     * Deltas go to one of N stripe rows per user (balance_stripes); reads add the stripes.
+     * Selected automatically for groups flagged by the contention detector.
+     */
+    STRIPED
+}
@@ -0,0 +1,15 @@
+package com.kleadingsolutions.expenseshare.enums;
+
+/**
+ * How expense and settlement writes maintain the materialized balances table.
+ */
+public enum BalanceUpdateMode {
+    /**
+     * Balances are updated in the write transaction (row lock per affected user).
+     */
+    EAGER,
+    /**
+     * Writes only append sequenced ledger entries; balances are folded from the ledger tail on read.
+     */
+    LAZY
+}
@@ -0,0 +1,29 @@
+package com.kleadingsolutions.expenseshare.enums;
+
+/**
+ * Body formats accepted by the bulk expense import endpoint.
+ */
+public enum BulkFormat {
+    NDJSON("application/x-ndjson"),
+    CSV("text/csv");
+
+    private final String mediaType;
+
+    BulkFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public static BulkFormat fromContentType(String contentType) {
+        if (contentType != null) {
+            String ct = contentType.toLowerCase();
+            for (BulkFormat f : values()) {
+                if (ct.startsWith(f.mediaType)) return f;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported bulk content type: " + contentType);
+    }
+}
@@ -1,3 +1,25 @@
 package com.kleadingsolutions.expenseshare.enums;
 
-public enum Currency { AED, USD, EUR, GBP, INR, JPY, CNY, AUD, CAD, CHF, NZD }
\ No newline at end of file
+/**
+ * Supported currencies. Each is stored as its SMALLINT code (expenses.currency_code,
+ * ledger_entries.currency_code); codes are never reused or renumbered.
+ */
+public enum Currency {
+    AED(1), USD(2), EUR(3), GBP(4), INR(5), JPY(6), CNY(7), AUD(8), CAD(9), CHF(10), NZD(11);
+
+    private static final Currency[] BY_CODE = EnumCodes.index(values(), Currency::code);
+
+    private final short code;
+
+    Currency(int code) {
+        this.code = (short) code;
+    }
+
+    public short code() {
+        return code;
+    }
+
+    public static Currency fromCode(short code) {
+        return EnumCodes.lookup(BY_CODE, code, Currency.class);
+    }
+}
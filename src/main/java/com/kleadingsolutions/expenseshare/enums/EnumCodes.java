@@ -0,0 +1,32 @@
+package com.kleadingsolutions.expenseshare.enums;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Code-indexed lookup tables for the enums stored as SMALLINT codes.
+ */
+final class EnumCodes {
+
+    private EnumCodes() {}
+
+    static <E extends Enum<E>> E[] index(E[] values, ToIntFunction<E> code) {
+        int max = 0;
+        for (E e : values) max = Math.max(max, code.applyAsInt(e));
+        E[] byCode = Arrays.copyOf(values, max + 1);
+        Arrays.fill(byCode, null);
+        for (E e : values) {
+            int c = code.applyAsInt(e);
+            if (c <= 0 || byCode[c] != null) throw new IllegalStateException("Duplicate or non-positive code " + c + " of " + e);
+            byCode[c] = e;
+        }
+        return byCode;
+    }
+
+    static <E extends Enum<E>> E lookup(E[] byCode, short code, Class<E> type) {
+        if (code <= 0 || code >= byCode.length || byCode[code] == null) {
+            throw new IllegalArgumentException("Unknown " + type.getSimpleName() + " code " + code);
+        }
+        return byCode[code];
+    }
+}
@@ -1,3 +1,25 @@
 package com.kleadingsolutions.expenseshare.enums;
 
-public enum ShareType { EQUAL, CUSTOM, PERCENT }
\ No newline at end of file
+/**
+ * How a split was entered. Stored as its SMALLINT code (expense_splits.share_type_code);
+ * codes are never reused or renumbered.
+ */
+public enum ShareType {
+    EQUAL(1), CUSTOM(2), PERCENT(3);
+
+    private static final ShareType[] BY_CODE = EnumCodes.index(values(), ShareType::code);
+
+    private final short code;
+
+    ShareType(int code) {
+        this.code = (short) code;
+    }
+
+    public short code() {
+        return code;
+    }
+
+    public static ShareType fromCode(short code) {
+        return EnumCodes.lookup(BY_CODE, code, ShareType.class);
+    }
+}
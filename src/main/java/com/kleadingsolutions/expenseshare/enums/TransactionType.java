@@ -1,3 +1,25 @@
 package com.kleadingsolutions.expenseshare.enums;
 
-public enum TransactionType {EXPENSE, SETTLEMENT}
+/**
+ * Ledger entry types. COMPACTED entries carry the signed total of entries moved out of the live ledger.
+ * Stored as its SMALLINT code (ledger_entries.type_code); codes are never reused or renumbered.
+ */
+public enum TransactionType {
+    EXPENSE(1), SETTLEMENT(2), COMPACTED(3);
+
+    private static final TransactionType[] BY_CODE = EnumCodes.index(values(), TransactionType::code);
+
+    private final short code;
+
+    TransactionType(int code) {
+        this.code = (short) code;
+    }
+
+    public short code() {
+        return code;
+    }
+
+    public static TransactionType fromCode(short code) {
+        return EnumCodes.lookup(BY_CODE, code, TransactionType.class);
+    }
+}
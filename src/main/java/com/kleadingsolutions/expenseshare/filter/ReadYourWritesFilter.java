@@ -0,0 +1,48 @@
+package com.kleadingsolutions.expenseshare.filter;
+
+import com.kleadingsolutions.expenseshare.datasource.ReadYourWrites;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Marks the principal of every mutating request as a recent writer (app.datasource.replicas).
+ *
+ * Group writes commit on GroupWriteExecutor threads, which carry no security context, so the
+ * commit-time record in {@link com.kleadingsolutions.expenseshare.datasource.ReplicaRoutingDataSource}
+ * never sees them. The principal is recorded when the request arrives and again on the async
+ * dispatch that returns the result, which restarts the sticky window from the commit. Runs after the
+ * security filter chain; registered by ReplicaDataSourceConfig only when replicas are enabled.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    private final ReadYourWrites readYourWrites;
+
+    public ReadYourWritesFilter(ReadYourWrites readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return HttpMethod.GET.matches(request.getMethod())
+                || HttpMethod.HEAD.matches(request.getMethod())
+                || HttpMethod.OPTIONS.matches(request.getMethod());
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        readYourWrites.recordWrite(ReadYourWrites.currentPrincipal());
+        filterChain.doFilter(request, response);
+    }
+}
@@ -36,4 +36,10 @@ public class Balance extends BaseEntity {
     @Column(nullable = false, precision = 19, scale = 2)
     @Builder.Default
     private BigDecimal balance = BigDecimal.ZERO.setScale(2);
+
+    /**
+     * Highest group ledger sequence already included in {@link #balance}.
+     */
+    @Column(name = "folded_seq", nullable = false)
+    private long foldedSeq;
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.kleadingsolutions.expenseshare.model;
+
+import com.kleadingsolutions.expenseshare.enums.Currency;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores a currency name as the SMALLINT code of its {@link Currency} (expenses.currency_code and ledger_entries.currency_code).
+ */
+@Converter
+public class CurrencyCodeConverter implements AttributeConverter<String, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(String name) {
+        return name == null ? null : Currency.valueOf(name).code();
+    }
+
+    @Override
+    public String convertToEntityAttribute(Short code) {
+        return code == null ? null : Currency.fromCode(code).name();
+    }
+}
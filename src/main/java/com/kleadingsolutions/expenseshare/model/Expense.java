@@ -1,6 +1,8 @@
 package com.kleadingsolutions.expenseshare.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
@@ -30,9 +32,20 @@ public class Expense extends BaseEntity {
     @Column(nullable = false)
     private String description;
 
-    @Column(nullable = false, precision = 19, scale = 2)
+    @Convert(converter = MoneyCentsConverter.class)
+    @Column(name = "amount_cents", nullable = false)
     private BigDecimal amount;
 
-    @Column(nullable = false)
+    @Convert(converter = CurrencyCodeConverter.class)
+    @Column(name = "currency_code", nullable = false)
     private String currency;
+
+    /**
+     * All splits encoded by {@link com.kleadingsolutions.expenseshare.util.PackedSplits} when the expense
+     * has at least app.expenses.splits.pack-threshold of them; null when they are expense_splits rows.
+     * Not part of the create response (GET /api/expenses/{id}/splits returns the breakdown).
+     */
+    @JsonIgnore
+    @Column(name = "packed_splits", updatable = false)
+    private byte[] packedSplits;
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.kleadingsolutions.expenseshare.model;
 
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
@@ -27,9 +28,11 @@ public class ExpenseSplit extends BaseEntity {
     @Column(name = "user_id", nullable = false)
     private UUID userId;
 
-    @Column(nullable = false, precision = 19, scale = 2)
+    @Convert(converter = MoneyCentsConverter.class)
+    @Column(name = "amount_cents", nullable = false)
     private BigDecimal amount;
 
-    @Column(name = "share_type", nullable = false)
+    @Convert(converter = ShareTypeCodeConverter.class)
+    @Column(name = "share_type_code", nullable = false)
     private String shareType;
 }
\ No newline at end of file
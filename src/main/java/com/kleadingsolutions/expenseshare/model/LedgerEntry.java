@@ -1,6 +1,7 @@
 package com.kleadingsolutions.expenseshare.model;
 
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
@@ -21,7 +22,10 @@ import java.util.UUID;
 @SuperBuilder
 public class LedgerEntry extends BaseEntity {
 
-    @Column(name = "group_id", nullable = false)
+    /**
+     * Hash partition key of ledger_entries (with created_at for the monthly partitions); never updated.
+     */
+    @Column(name = "group_id", nullable = false, updatable = false)
     private UUID groupId;
 
     @Column(name = "user_id", nullable = false)
@@ -30,15 +34,24 @@ public class LedgerEntry extends BaseEntity {
     @Column(name = "created_by", nullable = false)
     private UUID createdBy;
 
-    @Column(nullable = false, precision = 19, scale = 2)
+    @Convert(converter = MoneyCentsConverter.class)
+    @Column(name = "amount_cents", nullable = false)
     private BigDecimal amount;
 
-    @Column(nullable = false)
+    @Convert(converter = TransactionTypeCodeConverter.class)
+    @Column(name = "type_code", nullable = false)
     private String type;
 
     @Column(name = "related_id")
     private UUID relatedId;
 
-    @Column(nullable = false)
+    @Convert(converter = CurrencyCodeConverter.class)
+    @Column(name = "currency_code", nullable = false)
     private String currency;
+
+    /**
+     * Per-group ledger sequence (lazy balance mode); null when the entry was applied to balances on write.
+     */
+    @Column(name = "seq")
+    private Long seq;
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.kleadingsolutions.expenseshare.model;
+
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.math.BigDecimal;
+
+/**
+ * Stores a money amount as BIGINT cents (the amount_cents columns); reads it back at scale 2.
+ */
+@Converter
+public class MoneyCentsConverter implements AttributeConverter<BigDecimal, Long> {
+
+    @Override
+    public Long convertToDatabaseColumn(BigDecimal amount) {
+        return amount == null ? null : MoneyUtils.toCents(amount);
+    }
+
+    @Override
+    public BigDecimal convertToEntityAttribute(Long cents) {
+        return cents == null ? null : MoneyUtils.fromCents(cents);
+    }
+}
@@ -1,6 +1,7 @@
 package com.kleadingsolutions.expenseshare.model;
 
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import lombok.*;
@@ -27,7 +28,8 @@ public class Settlement extends BaseEntity {
     @Column(name = "receiver_id", nullable = false)
     private UUID receiverId;
 
-    @Column(nullable = false, precision = 19, scale = 2)
+    @Convert(converter = MoneyCentsConverter.class)
+    @Column(name = "amount_cents", nullable = false)
     private BigDecimal amount;
 
     @Column(name = "expense_id")
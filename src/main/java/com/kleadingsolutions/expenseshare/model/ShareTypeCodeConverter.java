@@ -0,0 +1,22 @@
+package com.kleadingsolutions.expenseshare.model;
+
+import com.kleadingsolutions.expenseshare.enums.ShareType;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores a share type name as the SMALLINT code of its {@link ShareType} (expense_splits.share_type_code).
+ */
+@Converter
+public class ShareTypeCodeConverter implements AttributeConverter<String, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(String name) {
+        return name == null ? null : ShareType.valueOf(name).code();
+    }
+
+    @Override
+    public String convertToEntityAttribute(Short code) {
+        return code == null ? null : ShareType.fromCode(code).name();
+    }
+}
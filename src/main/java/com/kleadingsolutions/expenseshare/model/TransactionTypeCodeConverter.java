@@ -0,0 +1,22 @@
+package com.kleadingsolutions.expenseshare.model;
+
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores a ledger entry type name as the SMALLINT code of its {@link TransactionType} (ledger_entries.type_code).
+ */
+@Converter
+public class TransactionTypeCodeConverter implements AttributeConverter<String, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(String name) {
+        return name == null ? null : TransactionType.valueOf(name).code();
+    }
+
+    @Override
+    public String convertToEntityAttribute(Short code) {
+        return code == null ? null : TransactionType.fromCode(code).name();
+    }
+}
@@ -0,0 +1,88 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * JDBC access for the balance audit: group id streaming per shard, ledger totals and shard leases.
+ * Statements run on the connection of the caller's transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class BalanceAuditRepository {
+
+    private static final String GROUP_IDS = "SELECT id FROM groups";
+    static final String LEDGER_TOTAL =
+            "SELECT COALESCE(SUM(amount_cents), 0) FROM ledger_entries WHERE group_id = ?";
+
+    private static final String INSERT_LEASE =
+            "INSERT INTO balance_audit_leases (shard, owner, expires_at) VALUES (?, NULL, ?) ON CONFLICT DO NOTHING";
+    private static final String TAKE_LEASE =
+            "UPDATE balance_audit_leases SET owner = ?, expires_at = ? WHERE shard = ?" +
+            " AND (owner = ? OR ((owner IS NULL OR expires_at < ?) AND (last_completed_at IS NULL OR last_completed_at <= ?)))";
+    private static final String RELEASE_LEASE =
+            "UPDATE balance_audit_leases SET owner = NULL, expires_at = ? WHERE shard = ? AND owner = ?";
+    private static final String COMPLETE_LEASE =
+            "UPDATE balance_audit_leases SET owner = NULL, expires_at = ?, last_completed_at = ? WHERE shard = ? AND owner = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Stream the ids of groups with fromInclusive <= id < toExclusive (either bound may be null)
+     * through a cursor of fetchSize rows. PostgreSQL only honours the fetch size inside a
+     * transaction, so callers must hold one for the whole stream.
+     */
+    public void streamGroupIds(UUID fromInclusive, UUID toExclusive, int fetchSize, Consumer<UUID> consumer) {
+        StringBuilder sql = new StringBuilder(GROUP_IDS);
+        if (fromInclusive != null) sql.append(" WHERE id >= ?");
+        if (toExclusive != null) sql.append(fromInclusive != null ? " AND" : " WHERE").append(" id < ?");
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString());
+            ps.setFetchSize(fetchSize);
+            int i = 1;
+            if (fromInclusive != null) ps.setObject(i++, fromInclusive);
+            if (toExclusive != null) ps.setObject(i, toExclusive);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getObject(1, UUID.class)));
+    }
+
+    /**
+     * Sum of every ledger entry of the group; zero for a consistent ledger.
+     */
+    public BigDecimal ledgerTotal(UUID groupId) {
+        return MoneyUtils.fromCents(jdbcTemplate.queryForObject(LEDGER_TOTAL, Long.class, groupId));
+    }
+
+    /**
+     * Take (or renew) the lease on a shard until expiresAt. Succeeds when the shard is already ours,
+     * or when it is unowned (or its lease expired before now) and no node completed it after
+     * completedBefore.
+     */
+    public boolean tryLease(int shard, String owner, OffsetDateTime now, OffsetDateTime expiresAt, OffsetDateTime completedBefore) {
+        jdbcTemplate.update(INSERT_LEASE, shard, now);
+        return jdbcTemplate.update(TAKE_LEASE, owner, expiresAt, shard, owner, now, completedBefore) == 1;
+    }
+
+    /**
+     * Give up a shard that was not scanned to the end; the next node to come along takes it.
+     */
+    public void releaseLease(int shard, String owner, OffsetDateTime now) {
+        jdbcTemplate.update(RELEASE_LEASE, now, shard, owner);
+    }
+
+    /**
+     * Give up a shard that was scanned to the end, recording when, so it is not scanned again this interval.
+     */
+    public void completeLease(int shard, String owner, OffsetDateTime now) {
+        jdbcTemplate.update(COMPLETE_LEASE, now, now, shard, owner);
+    }
+}
@@ -12,7 +12,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
-public interface BalanceRepository extends JpaRepository<Balance, UUID> {
+public interface BalanceRepository extends JpaRepository<Balance, UUID>, BalanceRepositoryCustom {
 
     Optional<Balance> findByGroupIdAndUserId(UUID groupId, UUID userId);
 
@@ -28,4 +28,10 @@ public interface BalanceRepository extends JpaRepository<Balance, UUID> {
 
     // Added read helper
     List<Balance> findByGroupId(UUID groupId);
+
+    /**
+     * Users with a balance row in the group, without loading the rows.
+     */
+    @Query("select b.userId from Balance b where b.groupId = :groupId")
+    List<UUID> findUserIdsByGroupId(@Param("groupId") UUID groupId);
 }
\ No newline at end of file
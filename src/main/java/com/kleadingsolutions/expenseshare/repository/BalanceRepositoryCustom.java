@@ -0,0 +1,74 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Hand-written balance statements that Spring Data cannot derive.
+ */
+public interface BalanceRepositoryCustom {
+
+    /**
+     * Adds each delta to the (group, user) balance in a single multi-row upsert, creating missing rows.
+     * Rows are sent ordered by user id so concurrent writers always lock balance rows in the same order.
+     *
+     * @return number of balance rows inserted or updated
+     */
+    int applyDeltas(UUID groupId, Map<UUID, BigDecimal> deltas, UUID actorId);
+
+    /**
+     * Same upsert for deltas already held in cents and sorted by user id.
+     */
+    int applyDeltas(UUID groupId, CentDeltas deltas, UUID actorId);
+
+    /**
+     * Same upsert for a folded ledger tail: also raises each row's folded_seq to foldedSeq.
+     */
+    int applyFoldedDeltas(UUID groupId, CentDeltas deltas, long foldedSeq);
+
+    /**
+     * Balance row as read for a version-checked update.
+     */
+    record VersionedBalance(UUID id, BigDecimal balance, long version) {
+    }
+
+    /**
+     * Insert a zero balance row for every user of the deltas that has none (existing rows untouched).
+     */
+    int insertMissing(UUID groupId, CentDeltas deltas, UUID actorId);
+
+    /**
+     * Plain (unlocked) read straight from the database, bypassing the persistence context.
+     */
+    Optional<VersionedBalance> findVersioned(UUID groupId, UUID userId);
+
+    /**
+     * Set the balance only if the row still has expectedVersion.
+     *
+     * @return false when another transaction changed the row first
+     */
+    boolean compareAndSet(UUID id, long expectedVersion, BigDecimal newBalance);
+
+    /**
+     * Per-user difference between the ledger and the materialized balance (balance row plus pending
+     * stripes), computed in one aggregate so it reflects a single snapshot. Users whose ledger sums
+     * to zero and who have no row are not reported; neither are users without drift.
+     */
+    CentDeltas findDrift(UUID groupId);
+
+    /**
+     * Every balance of the group as its row plus pending stripes plus the sequenced ledger entries the
+     * row does not contain yet (lazy mode), ordered by user id, read in one statement. Users with
+     * unfolded entries but no row yet are included.
+     */
+    Map<UUID, BigDecimal> findGroupBalancesWithTail(UUID groupId);
+
+    /**
+     * Transaction-scoped exclusive lock on the group (pg_advisory_xact_lock; the group row on H2).
+     */
+    void lockGroup(UUID groupId);
+}
@@ -0,0 +1,184 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import com.kleadingsolutions.expenseshare.util.UuidV7;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * JDBC implementation of {@link BalanceRepositoryCustom}. Runs inside the caller's JPA transaction
+ * (JpaTransactionManager exposes its connection to JdbcTemplate).
+ */
+@RequiredArgsConstructor
+public class BalanceRepositoryCustomImpl implements BalanceRepositoryCustom {
+
+    private static final String PG_UPSERT_PREFIX =
+            "INSERT INTO balances (id, group_id, user_id, balance, created_by, created_at, updated_at, version, folded_seq) VALUES ";
+    private static final String PG_UPSERT_ROW = "(?, ?, ?, ?, ?, now(), now(), 0, ?)";
+    private static final String PG_UPSERT_SUFFIX =
+            " ON CONFLICT (group_id, user_id) DO UPDATE SET balance = balances.balance + EXCLUDED.balance," +
+            " updated_at = EXCLUDED.updated_at, version = COALESCE(balances.version, 0) + 1," +
+            " folded_seq = GREATEST(balances.folded_seq, EXCLUDED.folded_seq)";
+
+    // H2 (dev profile) has no ON CONFLICT ... DO UPDATE; standard MERGE gives the same single statement.
+    private static final String MERGE_PREFIX = "MERGE INTO balances b USING (VALUES ";
+    private static final String MERGE_ROW =
+            "(CAST(? AS UUID), CAST(? AS UUID), CAST(? AS UUID), CAST(? AS NUMERIC(19,2)), CAST(? AS UUID), CAST(? AS BIGINT))";
+    private static final String MERGE_SUFFIX =
+            ") AS v(id, group_id, user_id, delta, created_by, folded_seq) ON b.group_id = v.group_id AND b.user_id = v.user_id" +
+            " WHEN MATCHED THEN UPDATE SET balance = b.balance + v.delta, updated_at = CURRENT_TIMESTAMP," +
+            " version = COALESCE(b.version, 0) + 1, folded_seq = GREATEST(b.folded_seq, v.folded_seq)" +
+            " WHEN NOT MATCHED THEN INSERT (id, group_id, user_id, balance, created_by, created_at, updated_at, version, folded_seq)" +
+            " VALUES (v.id, v.group_id, v.user_id, v.delta, v.created_by, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 0, v.folded_seq)";
+
+    private static final String INSERT_MISSING_PREFIX =
+            "INSERT INTO balances (id, group_id, user_id, balance, created_by, created_at, updated_at, version, folded_seq) VALUES ";
+    private static final String INSERT_MISSING_ROW = "(?, ?, ?, 0, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 0, 0)";
+    private static final String INSERT_MISSING_SUFFIX = " ON CONFLICT DO NOTHING";
+    private static final String FIND_VERSIONED =
+            "SELECT id, balance, COALESCE(version, 0) AS version FROM balances WHERE group_id = ? AND user_id = ?";
+    private static final String COMPARE_AND_SET =
+            "UPDATE balances SET balance = ?, updated_at = CURRENT_TIMESTAMP, version = COALESCE(version, 0) + 1" +
+            " WHERE id = ? AND COALESCE(version, 0) = ?";
+    // ledger minus (balance + stripes) per user, in cents; UNION ALL instead of a FULL JOIN so users missing on either side count
+    static final String FIND_DRIFT =
+            "SELECT user_id, SUM(cents) AS drift FROM (" +
+            " SELECT user_id, amount_cents AS cents FROM ledger_entries WHERE group_id = ?" +
+            " UNION ALL SELECT user_id, -CAST(balance * 100 AS BIGINT) FROM balances WHERE group_id = ?" +
+            " UNION ALL SELECT user_id, -CAST(delta * 100 AS BIGINT) FROM balance_stripes WHERE group_id = ?" +
+            ") t GROUP BY user_id HAVING SUM(cents) <> 0";
+    // balance + stripes + the sequenced ledger tail past the group's fold (lazy mode) per user, in cents;
+    // one statement, so a snapshot that missed a fold (a replica, a fold committed since) still adds up
+    static final String GROUP_BALANCES_WITH_TAIL =
+            "SELECT user_id, SUM(cents) AS cents FROM (" +
+            " SELECT user_id, CAST(balance * 100 AS BIGINT) AS cents FROM balances WHERE group_id = ?" +
+            " UNION ALL SELECT user_id, CAST(delta * 100 AS BIGINT) FROM balance_stripes WHERE group_id = ?" +
+            " UNION ALL SELECT le.user_id, le.amount_cents FROM group_ledger_heads h" +
+            " JOIN ledger_entries le ON le.group_id = h.group_id AND le.seq > h.folded_seq" +
+            " LEFT JOIN balances b ON b.group_id = le.group_id AND b.user_id = le.user_id" +
+            " WHERE h.group_id = ? AND le.seq > COALESCE(b.folded_seq, 0)" +
+            ") t GROUP BY user_id ORDER BY user_id";
+    // 6 bind parameters per upsert row; PostgreSQL caps a statement at 65535
+    private static final int MAX_UPSERT_ROWS = 10_000;
+    private static final String PG_ADVISORY_LOCK = "SELECT pg_advisory_xact_lock(?)";
+    private static final String H2_GROUP_LOCK = "SELECT id FROM groups WHERE id = ? FOR UPDATE";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseVendor databaseVendor;
+
+    @Override
+    public int applyDeltas(UUID groupId, Map<UUID, BigDecimal> deltas, UUID actorId) {
+        if (deltas == null || deltas.isEmpty()) return 0;
+        return applyDeltas(groupId, CentDeltas.of(deltas), actorId);
+    }
+
+    @Override
+    public int applyDeltas(UUID groupId, CentDeltas deltas, UUID actorId) {
+        return upsert(groupId, deltas, actorId, 0L);
+    }
+
+    @Override
+    public int applyFoldedDeltas(UUID groupId, CentDeltas deltas, long foldedSeq) {
+        return upsert(groupId, deltas, null, foldedSeq);
+    }
+
+    private int upsert(UUID groupId, CentDeltas deltas, UUID actorId, long foldedSeq) {
+        if (deltas == null || deltas.size() == 0) return 0;
+        int updated = 0;
+        for (int from = 0; from < deltas.size(); from += MAX_UPSERT_ROWS) {
+            updated += upsert(groupId, deltas, from, Math.min(from + MAX_UPSERT_ROWS, deltas.size()), actorId, foldedSeq);
+        }
+        return updated;
+    }
+
+    private int upsert(UUID groupId, CentDeltas deltas, int from, int to, UUID actorId, long foldedSeq) {
+        // CentDeltas are sorted by user id => deterministic lock acquisition order across concurrent upserts
+        boolean postgres = databaseVendor.isPostgres();
+        StringBuilder sql = new StringBuilder(postgres ? PG_UPSERT_PREFIX : MERGE_PREFIX);
+        List<Object> args = new ArrayList<>((to - from) * 6);
+        String row = postgres ? PG_UPSERT_ROW : MERGE_ROW;
+        for (int i = from; i < to; i++) {
+            if (i > from) sql.append(", ");
+            sql.append(row);
+            args.add(UuidV7.randomUUID());
+            args.add(groupId);
+            args.add(deltas.userId(i));
+            args.add(deltas.amount(i));
+            args.add(actorId);
+            args.add(foldedSeq);
+        }
+        sql.append(postgres ? PG_UPSERT_SUFFIX : MERGE_SUFFIX);
+
+        return jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    @Override
+    public int insertMissing(UUID groupId, CentDeltas deltas, UUID actorId) {
+        if (deltas == null || deltas.size() == 0) return 0;
+        StringBuilder sql = new StringBuilder(INSERT_MISSING_PREFIX);
+        List<Object> args = new ArrayList<>(deltas.size() * 4);
+        for (int i = 0; i < deltas.size(); i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(INSERT_MISSING_ROW);
+            args.add(UuidV7.randomUUID());
+            args.add(groupId);
+            args.add(deltas.userId(i));
+            args.add(actorId);
+        }
+        sql.append(INSERT_MISSING_SUFFIX);
+        return jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    @Override
+    public Optional<VersionedBalance> findVersioned(UUID groupId, UUID userId) {
+        List<VersionedBalance> rows = jdbcTemplate.query(FIND_VERSIONED,
+                (rs, i) -> new VersionedBalance(rs.getObject("id", UUID.class), rs.getBigDecimal("balance"), rs.getLong("version")),
+                groupId, userId);
+        return rows.stream().findFirst();
+    }
+
+    @Override
+    public boolean compareAndSet(UUID id, long expectedVersion, BigDecimal newBalance) {
+        return jdbcTemplate.update(COMPARE_AND_SET, newBalance, id, expectedVersion) == 1;
+    }
+
+    @Override
+    public CentDeltas findDrift(UUID groupId) {
+        Map<UUID, BigDecimal> drift = new HashMap<>();
+        jdbcTemplate.query(FIND_DRIFT,
+                (RowCallbackHandler) rs -> drift.put(rs.getObject("user_id", UUID.class), MoneyUtils.fromCents(rs.getLong("drift"))),
+                groupId, groupId, groupId);
+        return CentDeltas.of(drift);
+    }
+
+    @Override
+    public Map<UUID, BigDecimal> findGroupBalancesWithTail(UUID groupId) {
+        Map<UUID, BigDecimal> balances = new LinkedHashMap<>();
+        jdbcTemplate.query(GROUP_BALANCES_WITH_TAIL,
+                (RowCallbackHandler) rs -> balances.put(rs.getObject("user_id", UUID.class), MoneyUtils.fromCents(rs.getLong("cents"))),
+                groupId, groupId, groupId);
+        return balances;
+    }
+
+    @Override
+    public void lockGroup(UUID groupId) {
+        if (databaseVendor.isPostgres()) {
+            // 64-bit key folded from the group id; a rare collision only serializes two groups
+            long key = groupId.getMostSignificantBits() ^ groupId.getLeastSignificantBits();
+            jdbcTemplate.query(PG_ADVISORY_LOCK, rs -> null, key);
+        } else {
+            jdbcTemplate.query(H2_GROUP_LOCK, rs -> null, groupId);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * JDBC access to balance_snapshots / balance_snapshot_rows and to the ledger ranges around them.
+ * Ranges are half-open on created_at: a snapshot at cut covers entries created before cut.
+ * Statements run on the connection of the caller's transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class BalanceSnapshotRepository {
+
+    private static final OffsetDateTime NO_SNAPSHOT = OffsetDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    static final String LATEST_CUT =
+            "SELECT MAX(cut_at) FROM balance_snapshots WHERE group_id = ? AND cut_at <= ?";
+    static final String ROWS =
+            "SELECT user_id, cents FROM balance_snapshot_rows WHERE group_id = ? AND cut_at = ?";
+    private static final String USER_ROW =
+            "SELECT cents FROM balance_snapshot_rows WHERE group_id = ? AND cut_at = ? AND user_id = ?";
+    static final String LEDGER_RANGE =
+            "SELECT user_id, SUM(amount_cents) AS delta FROM ledger_entries" +
+            " WHERE group_id = ? AND created_at >= ? AND created_at < ? GROUP BY user_id";
+    static final String USER_LEDGER_SINCE =
+            "SELECT COALESCE(SUM(amount_cents), 0) FROM ledger_entries WHERE group_id = ? AND user_id = ? AND created_at >= ?";
+    // the summaries of the latest compaction are dated at its horizon; only asked once some archived
+    // entry falls before the given time, so groups that were never compacted cost one archive probe
+    static final String COMPACTION_HORIZON =
+            "SELECT MAX(created_at) FROM ledger_entries WHERE group_id = ? AND type_code = ?" +
+            " AND EXISTS (SELECT 1 FROM ledger_entries_archive a WHERE a.group_id = ? AND a.created_at < ?)";
+    static final String ARCHIVE_HORIZON =
+            "SELECT archived_until FROM ledger_archive_horizons WHERE group_id = ?";
+    private static final String INSERT_SNAPSHOT =
+            "INSERT INTO balance_snapshots (group_id, cut_at, users, taken_at) VALUES (?, ?, ?, CURRENT_TIMESTAMP)" +
+            " ON CONFLICT DO NOTHING";
+    private static final String INSERT_ROW =
+            "INSERT INTO balance_snapshot_rows (group_id, cut_at, user_id, cents) VALUES (?, ?, ?, ?)";
+    private static final String DELETE_UP_TO =
+            "DELETE FROM balance_snapshots WHERE group_id = ? AND cut_at <= ?";
+    // one probe of idx_ledger_group_created per group: any entry between the latest snapshot and the cut
+    static final String GROUPS_DUE =
+            "SELECT g.id FROM groups g WHERE g.id > ? AND EXISTS (SELECT 1 FROM ledger_entries le" +
+            " WHERE le.group_id = g.id AND le.created_at < ?" +
+            " AND le.created_at >= COALESCE((SELECT MAX(s.cut_at) FROM balance_snapshots s WHERE s.group_id = g.id), ?))" +
+            " ORDER BY g.id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Cut of the group's latest snapshot at or before the given time.
+     */
+    public Optional<OffsetDateTime> latestCut(UUID groupId, OffsetDateTime atOrBefore) {
+        return Optional.ofNullable(jdbcTemplate.queryForObject(LATEST_CUT, OffsetDateTime.class, groupId, atOrBefore));
+    }
+
+    /**
+     * Non-zero user totals of one snapshot, in cents.
+     */
+    public Map<UUID, Long> rows(UUID groupId, OffsetDateTime cut) {
+        Map<UUID, Long> rows = new HashMap<>();
+        jdbcTemplate.query(ROWS,
+                (RowCallbackHandler) rs -> rows.put(rs.getObject("user_id", UUID.class), rs.getLong("cents")),
+                groupId, cut);
+        return rows;
+    }
+
+    public long userCents(UUID groupId, OffsetDateTime cut, UUID userId) {
+        List<Long> cents = jdbcTemplate.queryForList(USER_ROW, Long.class, groupId, cut, userId);
+        return cents.isEmpty() ? 0L : cents.get(0);
+    }
+
+    /**
+     * Per-user ledger sum (cents) of the entries created in [from, to); from == null means from the start.
+     */
+    public Map<UUID, Long> ledgerRange(UUID groupId, OffsetDateTime from, OffsetDateTime to) {
+        Map<UUID, Long> deltas = new HashMap<>();
+        jdbcTemplate.query(LEDGER_RANGE,
+                (RowCallbackHandler) rs -> deltas.put(rs.getObject("user_id", UUID.class), rs.getLong("delta")),
+                groupId, from != null ? from : NO_SNAPSHOT, to);
+        return deltas;
+    }
+
+    /**
+     * Ledger sum of one user over the entries created at or after from.
+     */
+    public BigDecimal userLedgerSince(UUID groupId, UUID userId, OffsetDateTime from) {
+        return MoneyUtils.fromCents(jdbcTemplate.queryForObject(USER_LEDGER_SINCE, Long.class, groupId, userId, from));
+    }
+
+    /**
+     * Horizon of the group's latest compaction, when entries created before the given time were
+     * moved to ledger_entries_archive; empty when none were.
+     */
+    public Optional<OffsetDateTime> compactionHorizon(UUID groupId, OffsetDateTime before) {
+        return Optional.ofNullable(jdbcTemplate.queryForObject(COMPACTION_HORIZON, OffsetDateTime.class,
+                groupId, TransactionType.COMPACTED.code(), groupId, before));
+    }
+
+    /**
+     * End of the latest archived ledger month holding entries of the group; empty when none was archived.
+     */
+    public Optional<OffsetDateTime> archiveHorizon(UUID groupId) {
+        List<OffsetDateTime> until = jdbcTemplate.queryForList(ARCHIVE_HORIZON, OffsetDateTime.class, groupId);
+        return until.isEmpty() ? Optional.empty() : Optional.of(until.get(0));
+    }
+
+    /**
+     * Store a snapshot; a no-op returning false when the group already has one at this cut
+     * (another node took it first).
+     */
+    public boolean insert(UUID groupId, OffsetDateTime cut, Map<UUID, Long> cents) {
+        List<Object[]> rows = cents.entrySet().stream()
+                .filter(e -> e.getValue() != 0L)
+                .map(e -> new Object[]{groupId, cut, e.getKey(), e.getValue()})
+                .toList();
+        if (jdbcTemplate.update(INSERT_SNAPSHOT, groupId, cut, rows.size()) == 0) return false;
+        if (!rows.isEmpty()) jdbcTemplate.batchUpdate(INSERT_ROW, rows);
+        return true;
+    }
+
+    /**
+     * Up to limit group ids after afterId (in id order) with ledger entries between their latest
+     * snapshot and cut.
+     */
+    public List<UUID> findGroupsDue(OffsetDateTime cut, UUID afterId, int limit) {
+        return jdbcTemplate.queryForList(GROUPS_DUE, UUID.class, afterId, cut, NO_SNAPSHOT, limit);
+    }
+
+    /**
+     * Drop the group's snapshots cut at or before the given time (rows cascade).
+     */
+    public int deleteUpTo(UUID groupId, OffsetDateTime cut) {
+        return jdbcTemplate.update(DELETE_UP_TO, groupId, cut);
+    }
+}
@@ -0,0 +1,150 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * JDBC access to balance_stripes and striped_groups. Statements run on the connection of the
+ * caller's transaction. The exact-balance reads add pending stripes to balances in one statement,
+ * so they see one snapshot even while a fold moves amounts from stripes to balances.
+ */
+@Repository
+@RequiredArgsConstructor
+public class BalanceStripeRepository {
+
+    private static final String PG_ADD_PREFIX =
+            "INSERT INTO balance_stripes (group_id, user_id, stripe, delta, updated_at) VALUES ";
+    private static final String PG_ADD_ROW = "(?, ?, ?, ?, now())";
+    private static final String PG_ADD_SUFFIX =
+            " ON CONFLICT (group_id, user_id, stripe) DO UPDATE SET delta = balance_stripes.delta + EXCLUDED.delta," +
+            " updated_at = EXCLUDED.updated_at";
+    private static final String MERGE_PREFIX = "MERGE INTO balance_stripes s USING (VALUES ";
+    private static final String MERGE_ROW =
+            "(CAST(? AS UUID), CAST(? AS UUID), CAST(? AS SMALLINT), CAST(? AS NUMERIC(19,2)))";
+    private static final String MERGE_SUFFIX =
+            ") AS v(group_id, user_id, stripe, delta)" +
+            " ON s.group_id = v.group_id AND s.user_id = v.user_id AND s.stripe = v.stripe" +
+            " WHEN MATCHED THEN UPDATE SET delta = s.delta + v.delta, updated_at = CURRENT_TIMESTAMP" +
+            " WHEN NOT MATCHED THEN INSERT (group_id, user_id, stripe, delta, updated_at)" +
+            " VALUES (v.group_id, v.user_id, v.stripe, v.delta, CURRENT_TIMESTAMP)";
+
+    // lock in key order first: DELETE alone visits rows in physical order and could deadlock with a writer
+    private static final String LOCK_GROUP_STRIPES =
+            "SELECT stripe FROM balance_stripes WHERE group_id = ? ORDER BY user_id, stripe FOR UPDATE";
+    private static final String PG_DRAIN = "DELETE FROM balance_stripes WHERE group_id = ? RETURNING user_id, delta";
+    private static final String H2_DRAIN = "SELECT user_id, delta FROM OLD TABLE (DELETE FROM balance_stripes WHERE group_id = ?)";
+
+    private static final String PENDING_BY_USER =
+            "SELECT user_id, SUM(delta) AS pending FROM balance_stripes WHERE group_id = ? GROUP BY user_id";
+    static final String GROUP_BALANCES =
+            "SELECT b.user_id, b.balance + COALESCE(s.pending, 0) AS balance FROM balances b" +
+            " LEFT JOIN (" + PENDING_BY_USER + ") s ON s.user_id = b.user_id WHERE b.group_id = ?";
+    static final String USER_BALANCE =
+            "SELECT b.balance + COALESCE((SELECT SUM(s.delta) FROM balance_stripes s" +
+            " WHERE s.group_id = b.group_id AND s.user_id = b.user_id), 0) AS balance" +
+            " FROM balances b WHERE b.group_id = ? AND b.user_id = ?";
+
+    private static final String IS_FLAGGED = "SELECT COUNT(*) FROM striped_groups WHERE group_id = ?";
+    private static final String FLAG =
+            "INSERT INTO striped_groups (group_id, flagged_at) VALUES (?, CURRENT_TIMESTAMP) ON CONFLICT DO NOTHING";
+    private static final String UNFLAG = "DELETE FROM striped_groups WHERE group_id = ?";
+    private static final String QUIET_STRIPES =
+            "SELECT group_id FROM balance_stripes GROUP BY group_id HAVING MAX(updated_at) < ?";
+    private static final String QUIET_FLAGGED =
+            "SELECT sg.group_id FROM striped_groups sg WHERE sg.flagged_at < ? AND NOT EXISTS" +
+            " (SELECT 1 FROM balance_stripes s WHERE s.group_id = sg.group_id)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseVendor databaseVendor;
+
+    /**
+     * Add the deltas to the given stripe of each user (one statement; users in CentDeltas order).
+     */
+    public int add(UUID groupId, CentDeltas deltas, int stripe) {
+        if (deltas == null || deltas.size() == 0) return 0;
+        boolean postgres = databaseVendor.isPostgres();
+        StringBuilder sql = new StringBuilder(postgres ? PG_ADD_PREFIX : MERGE_PREFIX);
+        List<Object> args = new ArrayList<>(deltas.size() * 4);
+        String row = postgres ? PG_ADD_ROW : MERGE_ROW;
+        for (int i = 0; i < deltas.size(); i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(row);
+            args.add(groupId);
+            args.add(deltas.userId(i));
+            args.add((short) stripe);
+            args.add(deltas.amount(i));
+        }
+        sql.append(postgres ? PG_ADD_SUFFIX : MERGE_SUFFIX);
+        return jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Delete every stripe of the group and return their per-user sums. The deleted rows stay locked
+     * until the caller's transaction ends, so the sums must be applied to balances in it.
+     */
+    public Map<UUID, BigDecimal> drain(UUID groupId) {
+        Map<UUID, BigDecimal> sums = new LinkedHashMap<>();
+        if (jdbcTemplate.queryForList(LOCK_GROUP_STRIPES, Short.class, groupId).isEmpty()) return sums;
+        jdbcTemplate.query(databaseVendor.isPostgres() ? PG_DRAIN : H2_DRAIN,
+                (RowCallbackHandler) rs -> sums.merge(rs.getObject("user_id", UUID.class), rs.getBigDecimal("delta"), BigDecimal::add),
+                groupId);
+        return sums;
+    }
+
+    /**
+     * Balance of every user of the group including pending stripes.
+     */
+    public Map<UUID, BigDecimal> groupBalances(UUID groupId) {
+        Map<UUID, BigDecimal> balances = new LinkedHashMap<>();
+        jdbcTemplate.query(GROUP_BALANCES,
+                (RowCallbackHandler) rs -> balances.put(rs.getObject("user_id", UUID.class), rs.getBigDecimal("balance")),
+                groupId, groupId);
+        return balances;
+    }
+
+    /**
+     * Balance of one user including pending stripes; empty when the user has no balance row.
+     */
+    public Optional<BigDecimal> userBalance(UUID groupId, UUID userId) {
+        List<BigDecimal> rows = jdbcTemplate.queryForList(USER_BALANCE, BigDecimal.class, groupId, userId);
+        return rows.stream().findFirst();
+    }
+
+    public boolean isFlagged(UUID groupId) {
+        Long n = jdbcTemplate.queryForObject(IS_FLAGGED, Long.class, groupId);
+        return n != null && n > 0;
+    }
+
+    public void flag(UUID groupId) {
+        jdbcTemplate.update(FLAG, groupId);
+    }
+
+    public void unflag(UUID groupId) {
+        jdbcTemplate.update(UNFLAG, groupId);
+    }
+
+    /**
+     * Groups whose stripes were last written before the given instant, plus flagged groups without
+     * stripes flagged before it.
+     */
+    public Set<UUID> findQuietGroups(OffsetDateTime quietSince) {
+        Set<UUID> groups = new LinkedHashSet<>();
+        groups.addAll(jdbcTemplate.queryForList(QUIET_STRIPES, UUID.class, quietSince));
+        groups.addAll(jdbcTemplate.queryForList(QUIET_FLAGGED, UUID.class, quietSince));
+        return groups;
+    }
+}
@@ -0,0 +1,67 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * JDBC access to bulk_import_chunks. Statements run on the connection of the chunk's transaction, so a
+ * claimed chunk counts as applied only when the chunk itself commits.
+ */
+@Repository
+@RequiredArgsConstructor
+public class BulkImportChunkStore {
+
+    private static final String DELETE_EXPIRED_CHUNK =
+            "DELETE FROM bulk_import_chunks WHERE group_id = ? AND import_key = ? AND chunk_no = ? AND expires_at <= ?";
+    private static final String CLAIM =
+            "INSERT INTO bulk_import_chunks (group_id, import_key, chunk_no, chunk_hash, last_line, created_by, created_at, expires_at)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+    private static final String FIND =
+            "SELECT chunk_hash, created_by, last_line, expenses, splits, ledger_entries FROM bulk_import_chunks" +
+            " WHERE group_id = ? AND import_key = ? AND chunk_no = ?";
+    private static final String COMPLETE =
+            "UPDATE bulk_import_chunks SET expenses = ?, splits = ?, ledger_entries = ?" +
+            " WHERE group_id = ? AND import_key = ? AND chunk_no = ?";
+    private static final String PURGE = "DELETE FROM bulk_import_chunks WHERE expires_at <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * A committed chunk: the hash of its lines, who imported it, the last body line it covered and what it wrote.
+     */
+    public record StoredChunk(String chunkHash, UUID createdBy, int lastLine, int expenses, int splits, int ledgerEntries) {
+    }
+
+    /**
+     * Insert the chunk unless it exists. Blocks while another open transaction holds the same chunk.
+     *
+     * @return true when this transaction now owns the chunk and must apply it
+     */
+    public boolean claim(UUID groupId, String importKey, int chunkNo, String chunkHash, int lastLine, UUID actorId,
+                         OffsetDateTime now, OffsetDateTime expiresAt) {
+        jdbcTemplate.update(DELETE_EXPIRED_CHUNK, groupId, importKey, chunkNo, now);
+        return jdbcTemplate.update(CLAIM, groupId, importKey, chunkNo, chunkHash, lastLine, actorId, now, expiresAt) == 1;
+    }
+
+    public Optional<StoredChunk> find(UUID groupId, String importKey, int chunkNo) {
+        List<StoredChunk> rows = jdbcTemplate.query(FIND,
+                (rs, i) -> new StoredChunk(rs.getString("chunk_hash"), rs.getObject("created_by", UUID.class), rs.getInt("last_line"),
+                        rs.getInt("expenses"), rs.getInt("splits"), rs.getInt("ledger_entries")),
+                groupId, importKey, chunkNo);
+        return rows.stream().findFirst();
+    }
+
+    public void complete(UUID groupId, String importKey, int chunkNo, int expenses, int splits, int ledgerEntries) {
+        jdbcTemplate.update(COMPLETE, expenses, splits, ledgerEntries, groupId, importKey, chunkNo);
+    }
+
+    public int purgeExpired(OffsetDateTime now) {
+        return jdbcTemplate.update(PURGE, now);
+    }
+}
@@ -0,0 +1,30 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves (once) which database the application is connected to so hand-written SQL can pick
+ * PostgreSQL-specific statements (ON CONFLICT, COPY, ...) and fall back to portable SQL on H2.
+ */
+@Component
+public class DatabaseVendor {
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean postgres;
+
+    public DatabaseVendor(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean isPostgres() {
+        Boolean p = postgres;
+        if (p == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+            p = "PostgreSQL".equalsIgnoreCase(product);
+            postgres = p;
+        }
+        return p;
+    }
+}
@@ -0,0 +1,118 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.model.CurrencyCodeConverter;
+import com.kleadingsolutions.expenseshare.model.Expense;
+import com.kleadingsolutions.expenseshare.model.ExpenseSplit;
+import com.kleadingsolutions.expenseshare.model.LedgerEntry;
+import com.kleadingsolutions.expenseshare.model.MoneyCentsConverter;
+import com.kleadingsolutions.expenseshare.model.ShareTypeCodeConverter;
+import com.kleadingsolutions.expenseshare.model.TransactionTypeCodeConverter;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Writes pre-built expense rows (ids already assigned) in bulk, bypassing the persistence context.
+ * On PostgreSQL the rows are streamed with the COPY protocol; other databases use JDBC batches.
+ * Must be called inside a transaction: the connection is the one bound to the current transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ExpenseBulkWriter {
+
+    private static final String COPY_EXPENSES =
+            "COPY expenses (id, group_id, created_by, description, amount_cents, currency_code, created_at, version, packed_splits) FROM STDIN WITH (FORMAT csv)";
+    private static final String COPY_SPLITS =
+            "COPY expense_splits (id, expense_id, user_id, amount_cents, share_type_code, created_at, version) FROM STDIN WITH (FORMAT csv)";
+    private static final String COPY_LEDGER =
+            "COPY ledger_entries (id, group_id, user_id, amount_cents, type_code, related_id, currency_code, created_by, created_at, version) FROM STDIN WITH (FORMAT csv)";
+
+    private static final String INSERT_EXPENSE =
+            "INSERT INTO expenses (id, group_id, created_by, description, amount_cents, currency_code, created_at, version, packed_splits) VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?)";
+    private static final String INSERT_SPLIT =
+            "INSERT INTO expense_splits (id, expense_id, user_id, amount_cents, share_type_code, created_at, version) VALUES (?, ?, ?, ?, ?, ?, 0)";
+    private static final String INSERT_LEDGER =
+            "INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code, related_id, currency_code, created_by, created_at, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    // the entities' own converters, so bulk rows are encoded exactly as JPA would write them
+    private static final MoneyCentsConverter CENTS = new MoneyCentsConverter();
+    private static final CurrencyCodeConverter CURRENCY = new CurrencyCodeConverter();
+    private static final ShareTypeCodeConverter SHARE_TYPE = new ShareTypeCodeConverter();
+    private static final TransactionTypeCodeConverter TYPE = new TransactionTypeCodeConverter();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseVendor databaseVendor;
+
+    public void write(List<Expense> expenses, List<ExpenseSplit> splits, List<LedgerEntry> ledgerEntries) {
+        if (databaseVendor.isPostgres()) {
+            copy(COPY_EXPENSES, expenses.stream().map(e -> csv(e.getId(), e.getGroupId(), e.getCreatedBy(), e.getDescription(),
+                    CENTS.convertToDatabaseColumn(e.getAmount()), CURRENCY.convertToDatabaseColumn(e.getCurrency()),
+                    ts(e.getCreatedAt()), 0, hex(e.getPackedSplits()))).collect(Collectors.joining()));
+            copy(COPY_SPLITS, splits.stream().map(s -> csv(s.getId(), s.getExpenseId(), s.getUserId(), CENTS.convertToDatabaseColumn(s.getAmount()),
+                    SHARE_TYPE.convertToDatabaseColumn(s.getShareType()), ts(s.getCreatedAt()), 0)).collect(Collectors.joining()));
+            copy(COPY_LEDGER, ledgerEntries.stream().map(l -> csv(l.getId(), l.getGroupId(), l.getUserId(), CENTS.convertToDatabaseColumn(l.getAmount()),
+                    TYPE.convertToDatabaseColumn(l.getType()), l.getRelatedId(), CURRENCY.convertToDatabaseColumn(l.getCurrency()),
+                    l.getCreatedBy(), ts(l.getCreatedAt()), 0)).collect(Collectors.joining()));
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_EXPENSE, expenses.stream().map(e -> new Object[]{e.getId(), e.getGroupId(), e.getCreatedBy(),
+                e.getDescription(), CENTS.convertToDatabaseColumn(e.getAmount()), CURRENCY.convertToDatabaseColumn(e.getCurrency()),
+                ts(e.getCreatedAt()), e.getPackedSplits()}).collect(Collectors.toList()));
+        jdbcTemplate.batchUpdate(INSERT_SPLIT, splits.stream().map(s -> new Object[]{s.getId(), s.getExpenseId(), s.getUserId(),
+                CENTS.convertToDatabaseColumn(s.getAmount()), SHARE_TYPE.convertToDatabaseColumn(s.getShareType()),
+                ts(s.getCreatedAt())}).collect(Collectors.toList()));
+        jdbcTemplate.batchUpdate(INSERT_LEDGER, ledgerEntries.stream().map(l -> new Object[]{l.getId(), l.getGroupId(), l.getUserId(),
+                CENTS.convertToDatabaseColumn(l.getAmount()), TYPE.convertToDatabaseColumn(l.getType()), l.getRelatedId(),
+                CURRENCY.convertToDatabaseColumn(l.getCurrency()), l.getCreatedBy(), ts(l.getCreatedAt())}).collect(Collectors.toList()));
+    }
+
+    private void copy(String sql, String rows) {
+        if (rows.isEmpty()) return;
+        jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try {
+                return con.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, new StringReader(rows));
+            } catch (IOException e) {
+                throw new UncheckedIOException("COPY failed: " + sql, e);
+            }
+        });
+    }
+
+    private static OffsetDateTime ts(LocalDateTime t) {
+        return (t == null ? LocalDateTime.now() : t).atZone(ZoneId.systemDefault()).toOffsetDateTime();
+    }
+
+    /**
+     * bytea as hex input text; CSV COPY passes the backslash through unescaped.
+     */
+    private static String hex(byte[] bytes) {
+        return bytes == null ? null : "\\x" + HexFormat.of().formatHex(bytes);
+    }
+
+    /**
+     * One CSV record. Nulls become unquoted empty fields (COPY reads them as NULL); all other
+     * values are quoted so commas, quotes and newlines in descriptions survive.
+     */
+    private static String csv(Object... values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            Object v = values[i];
+            if (v == null) continue;
+            sb.append('"').append(v.toString().replace("\"", "\"\"")).append('"');
+        }
+        return sb.append('\n').toString();
+    }
+}
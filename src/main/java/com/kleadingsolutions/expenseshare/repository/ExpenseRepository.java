@@ -1,11 +1,20 @@
 package com.kleadingsolutions.expenseshare.repository;
 
+import com.kleadingsolutions.expenseshare.dto.ExpenseDto;
 import com.kleadingsolutions.expenseshare.model.Expense;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 import java.util.UUID;
 
 public interface ExpenseRepository extends JpaRepository<Expense, UUID> {
     List<Expense> findByGroupId(UUID groupId);
+
+    /**
+     * The listed columns of a group's expenses, without reading their packed splits.
+     */
+    @Query("SELECT new com.kleadingsolutions.expenseshare.dto.ExpenseDto(e.id, e.groupId, e.createdBy, e.description, e.amount, e.currency, e.createdAt)"
+            + " FROM Expense e WHERE e.groupId = :groupId")
+    List<ExpenseDto> findDtosByGroupId(UUID groupId);
 }
\ No newline at end of file
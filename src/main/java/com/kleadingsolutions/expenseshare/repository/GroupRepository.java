@@ -2,7 +2,12 @@ package com.kleadingsolutions.expenseshare.repository;
 
 import com.kleadingsolutions.expenseshare.model.Group;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Optional;
 import java.util.UUID;
 
 public interface GroupRepository extends JpaRepository<Group, UUID> {
@@ -11,4 +16,18 @@ public interface GroupRepository extends JpaRepository<Group, UUID> {
      * Spring Data JPA will implement this method automatically.
      */
     boolean existsByIdAndCreatedBy(UUID id, UUID createdBy);
+
+    /**
+     * Current membership version of the group (empty when the group does not exist).
+     */
+    @Query(value = "SELECT membership_version FROM groups WHERE id = :groupId", nativeQuery = true)
+    Optional<Long> findMembershipVersion(@Param("groupId") UUID groupId);
+
+    /**
+     * Mark the group's membership as changed; runs in (and commits with) the caller's transaction.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE groups SET membership_version = membership_version + 1 WHERE id = :groupId", nativeQuery = true)
+    int bumpMembershipVersion(@Param("groupId") UUID groupId);
 }
\ No newline at end of file
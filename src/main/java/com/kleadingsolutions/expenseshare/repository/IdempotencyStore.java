@@ -0,0 +1,63 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * JDBC access to idempotency_keys. Statements run on the connection of the caller's transaction,
+ * so a claimed key becomes visible (and its stored response replayable) only when that commits.
+ */
+@Repository
+@RequiredArgsConstructor
+public class IdempotencyStore {
+
+    private static final String DELETE_EXPIRED_KEY =
+            "DELETE FROM idempotency_keys WHERE principal = ? AND idempotency_key = ? AND expires_at <= ?";
+    private static final String CLAIM =
+            "INSERT INTO idempotency_keys (principal, idempotency_key, request_hash, created_at, expires_at)" +
+            " VALUES (?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+    private static final String FIND =
+            "SELECT request_hash, response_body FROM idempotency_keys" +
+            " WHERE principal = ? AND idempotency_key = ? AND expires_at > ?";
+    private static final String COMPLETE =
+            "UPDATE idempotency_keys SET response_body = ? WHERE principal = ? AND idempotency_key = ?";
+    private static final String PURGE = "DELETE FROM idempotency_keys WHERE expires_at <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Stored key: the hash of the request that claimed it and its response (null while in flight).
+     */
+    public record StoredKey(String requestHash, String responseBody) {
+    }
+
+    /**
+     * Insert the key unless it exists. Blocks while another open transaction holds the same key.
+     *
+     * @return true when this transaction now owns the key
+     */
+    public boolean claim(String principal, String key, String requestHash, OffsetDateTime now, OffsetDateTime expiresAt) {
+        jdbcTemplate.update(DELETE_EXPIRED_KEY, principal, key, now);
+        return jdbcTemplate.update(CLAIM, principal, key, requestHash, now, expiresAt) == 1;
+    }
+
+    public Optional<StoredKey> find(String principal, String key, OffsetDateTime now) {
+        List<StoredKey> rows = jdbcTemplate.query(FIND,
+                (rs, i) -> new StoredKey(rs.getString("request_hash"), rs.getString("response_body")),
+                principal, key, now);
+        return rows.stream().findFirst();
+    }
+
+    public void complete(String principal, String key, String responseBody) {
+        jdbcTemplate.update(COMPLETE, responseBody, principal, key);
+    }
+
+    public int purgeExpired(OffsetDateTime now) {
+        return jdbcTemplate.update(PURGE, now);
+    }
+}
@@ -0,0 +1,143 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import com.kleadingsolutions.expenseshare.util.UuidV7;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * JDBC access for ledger compaction: the compactable entries of a group, their move to
+ * ledger_entries_archive, the COMPACTED entries replacing them and the progress in ledger_compaction_runs.
+ * Statements run on the connection of the caller's transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerCompactionRepository {
+
+    private static final String COLUMNS =
+            "id, group_id, user_id, amount_cents, type_code, related_id, currency_code, created_by, created_at, updated_at, version, seq";
+    // entries before the horizon that balances already contain: eager/bulk entries and lazy ones up to
+    // the folded sequence, which callers read once so every statement of a compaction sees the same set
+    private static final String COMPACTABLE =
+            " FROM ledger_entries WHERE group_id = ? AND created_at < ? AND (seq IS NULL OR seq <= ?)";
+    private static final String FOLDED_SEQ =
+            "SELECT COALESCE(MAX(folded_seq), 0) FROM group_ledger_heads WHERE group_id = ?";
+    private static final String GROUPS_AFTER =
+            "SELECT id FROM groups WHERE id > ? ORDER BY id FETCH FIRST ? ROWS ONLY";
+    static final String COUNT = "SELECT COUNT(*)" + COMPACTABLE;
+    static final String TOTALS =
+            "SELECT user_id, currency_code, SUM(amount_cents) AS cents" + COMPACTABLE + " GROUP BY user_id, currency_code";
+    static final String ARCHIVE =
+            "INSERT INTO ledger_entries_archive (" + COLUMNS + ", archived_at) SELECT " + COLUMNS + ", CURRENT_TIMESTAMP" + COMPACTABLE;
+    static final String DELETE = "DELETE" + COMPACTABLE;
+    private static final String INSERT_SUMMARY =
+            "INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code, currency_code, created_at, version)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String FIND_RUN =
+            "SELECT horizon, last_group_id, groups_compacted, rows_archived, completed_at FROM ledger_compaction_runs WHERE run_id = ?";
+    private static final String DELETE_RUN = "DELETE FROM ledger_compaction_runs WHERE run_id = ?";
+    private static final String INSERT_RUN =
+            "INSERT INTO ledger_compaction_runs (run_id, horizon, groups_compacted, rows_archived, started_at, updated_at)" +
+            " VALUES (?, ?, 0, 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+    private static final String SAVE_RUN =
+            "UPDATE ledger_compaction_runs SET last_group_id = ?, groups_compacted = ?, rows_archived = ?, updated_at = CURRENT_TIMESTAMP" +
+            " WHERE run_id = ?";
+    private static final String COMPLETE_RUN =
+            "UPDATE ledger_compaction_runs SET completed_at = CURRENT_TIMESTAMP, updated_at = CURRENT_TIMESTAMP WHERE run_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Signed total in cents of one (user, currency code) over a group's compactable entries.
+     */
+    public record Total(UUID userId, short currency, long cents) {
+    }
+
+    /**
+     * Progress of a compaction pass.
+     * @param lastGroupId highest group checked together with all before it; null before the first page
+     */
+    public record Run(OffsetDateTime horizon, UUID lastGroupId, long groups, long rows, boolean completed) {
+    }
+
+    public List<UUID> groupsAfter(UUID afterId, int limit) {
+        return jdbcTemplate.queryForList(GROUPS_AFTER, UUID.class, afterId, limit);
+    }
+
+    /**
+     * Sequence up to which the group's lazy entries are in its balances (0 without a ledger head).
+     */
+    public long foldedSeq(UUID groupId) {
+        Long seq = jdbcTemplate.queryForObject(FOLDED_SEQ, Long.class, groupId);
+        return seq == null ? 0L : seq;
+    }
+
+    public long countCompactable(UUID groupId, OffsetDateTime horizon, long foldedSeq) {
+        Long count = jdbcTemplate.queryForObject(COUNT, Long.class, groupId, horizon, foldedSeq);
+        return count == null ? 0L : count;
+    }
+
+    public List<Total> totals(UUID groupId, OffsetDateTime horizon, long foldedSeq) {
+        return jdbcTemplate.query(TOTALS, (rs, i) -> new Total(
+                rs.getObject("user_id", UUID.class), rs.getShort("currency_code"), rs.getLong("cents")),
+                groupId, horizon, foldedSeq);
+    }
+
+    /**
+     * Copy the compactable entries into ledger_entries_archive.
+     */
+    public int archive(UUID groupId, OffsetDateTime horizon, long foldedSeq) {
+        return jdbcTemplate.update(ARCHIVE, groupId, horizon, foldedSeq);
+    }
+
+    public int delete(UUID groupId, OffsetDateTime horizon, long foldedSeq) {
+        return jdbcTemplate.update(DELETE, groupId, horizon, foldedSeq);
+    }
+
+    /**
+     * One COMPACTED entry per non-zero total, dated at the horizon (so it is not compactable at the same horizon).
+     */
+    public int insertSummaries(UUID groupId, OffsetDateTime horizon, List<Total> totals) {
+        List<Object[]> rows = new ArrayList<>(totals.size());
+        for (Total t : totals) {
+            if (t.cents() == 0) continue;
+            rows.add(new Object[]{UuidV7.randomUUID(), groupId, t.userId(), t.cents(),
+                    TransactionType.COMPACTED.code(), t.currency(), horizon});
+        }
+        if (!rows.isEmpty()) jdbcTemplate.batchUpdate(INSERT_SUMMARY, rows);
+        return rows.size();
+    }
+
+    public Optional<Run> findRun(String runId) {
+        return jdbcTemplate.query(FIND_RUN, (rs, i) -> new Run(
+                rs.getObject("horizon", OffsetDateTime.class),
+                rs.getObject("last_group_id", UUID.class),
+                rs.getLong("groups_compacted"),
+                rs.getLong("rows_archived"),
+                rs.getTimestamp("completed_at") != null), runId).stream().findFirst();
+    }
+
+    /**
+     * (Re)start a pass at horizon from the first group.
+     */
+    public void startRun(String runId, OffsetDateTime horizon) {
+        jdbcTemplate.update(DELETE_RUN, runId);
+        jdbcTemplate.update(INSERT_RUN, runId, horizon);
+    }
+
+    public void saveRun(String runId, UUID lastGroupId, long groups, long rows) {
+        jdbcTemplate.update(SAVE_RUN, lastGroupId, groups, rows, runId);
+    }
+
+    public void completeRun(String runId) {
+        jdbcTemplate.update(COMPLETE_RUN, runId);
+    }
+}
@@ -1,6 +1,7 @@
 package com.kleadingsolutions.expenseshare.repository;
 
 import com.kleadingsolutions.expenseshare.model.LedgerEntry;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
@@ -8,9 +9,31 @@ import java.math.BigDecimal;
 import java.util.List;
 import java.util.UUID;
 
+/**
+ * On PostgreSQL ledger_entries is hash-partitioned by group_id: every query here filters on one group
+ * and so reads a single partition. Sums run natively over amount_cents, as integers.
+ */
 public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, UUID> {
     List<LedgerEntry> findByGroupId(UUID groupId);
 
-    @Query("select coalesce(sum(le.amount), 0) from LedgerEntry le where le.groupId = :groupId and le.userId = :userId")
-    BigDecimal sumAmountByGroupIdAndUserId(UUID groupId, UUID userId);
-}
\ No newline at end of file
+    @Query(value = "SELECT COALESCE(SUM(amount_cents), 0) FROM ledger_entries WHERE group_id = :groupId AND user_id = :userId",
+            nativeQuery = true)
+    long sumCentsByGroupIdAndUserId(UUID groupId, UUID userId);
+
+    default BigDecimal sumAmountByGroupIdAndUserId(UUID groupId, UUID userId) {
+        return MoneyUtils.fromCents(sumCentsByGroupIdAndUserId(groupId, userId));
+    }
+
+    /**
+     * Ledger total of one user in a group, in cents.
+     */
+    interface UserTotal {
+        UUID getUserId();
+
+        long getCents();
+    }
+
+    @Query(value = "SELECT user_id AS \"userId\", SUM(amount_cents) AS \"cents\" FROM ledger_entries WHERE group_id = :groupId GROUP BY user_id",
+            nativeQuery = true)
+    List<UserTotal> sumCentsByUserId(UUID groupId);
+}
@@ -0,0 +1,132 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * JDBC access to group_ledger_heads and the unfolded ledger tail (lazy balance mode).
+ * Statements run on the connection of the caller's transaction; a head row locked by
+ * {@link #allocate} or {@link #lock}, and the advisory locks of {@link #lockShared} and
+ * {@link #lock}, stay held until that transaction ends.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerHeadRepository {
+
+    private static final String INSERT_HEAD =
+            "INSERT INTO group_ledger_heads (group_id, last_seq, folded_seq) VALUES (?, 0, 0) ON CONFLICT DO NOTHING";
+    private static final String PG_ALLOCATE =
+            "UPDATE group_ledger_heads SET last_seq = last_seq + ? WHERE group_id = ? RETURNING last_seq";
+    private static final String H2_ALLOCATE =
+            "SELECT last_seq FROM FINAL TABLE (UPDATE group_ledger_heads SET last_seq = last_seq + ? WHERE group_id = ?)";
+    private static final String FIND =
+            "SELECT last_seq, folded_seq FROM group_ledger_heads WHERE group_id = ?";
+    private static final String LOCK = FIND + " FOR UPDATE";
+    // two-int advisory keys: a key space of their own, apart from the group locks of BalanceRepositoryCustom
+    private static final String PG_WRITER_LOCK = "SELECT pg_advisory_xact_lock_shared(?, ?)";
+    private static final String PG_FOLDER_LOCK = "SELECT pg_advisory_xact_lock(?, ?)";
+    private static final int HEAD_LOCK_SPACE = 0x4c454447;
+    private static final String MARK_FOLDED =
+            "UPDATE group_ledger_heads SET folded_seq = GREATEST(folded_seq, ?) WHERE group_id = ?";
+    // per-user watermark: a single-user reconcile may already include part of the tail
+    static final String UNFOLDED_TAIL =
+            "SELECT le.user_id, SUM(le.amount_cents) AS delta FROM ledger_entries le" +
+            " LEFT JOIN balances b ON b.group_id = le.group_id AND b.user_id = le.user_id" +
+            " WHERE le.group_id = ? AND le.seq > ? AND le.seq <= ? AND le.seq > COALESCE(b.folded_seq, 0)" +
+            " GROUP BY le.user_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseVendor databaseVendor;
+
+    /**
+     * Sequence counters of one group.
+     * @param lastSeq   highest sequence handed out
+     * @param foldedSeq sequence every balance row of the group is folded up to
+     */
+    public record Head(long lastSeq, long foldedSeq) {
+
+        public boolean isBehind() {
+            return lastSeq > foldedSeq;
+        }
+    }
+
+    /**
+     * Reserve count consecutive sequences, creating the head row on first use. Locks the head row.
+     *
+     * @return the last reserved sequence (the range is last - count + 1 .. last)
+     */
+    public long allocate(UUID groupId, int count) {
+        String sql = databaseVendor.isPostgres() ? PG_ALLOCATE : H2_ALLOCATE;
+        List<Long> last = jdbcTemplate.queryForList(sql, Long.class, count, groupId);
+        if (last.isEmpty()) {
+            jdbcTemplate.update(INSERT_HEAD, groupId);
+            last = jdbcTemplate.queryForList(sql, Long.class, count, groupId);
+        }
+        if (last.isEmpty()) {
+            throw new IllegalStateException("Ledger head missing for group " + groupId);
+        }
+        return last.get(0);
+    }
+
+    public Optional<Head> find(UUID groupId) {
+        return query(FIND, groupId);
+    }
+
+    /**
+     * Announce a lazy writer of the group: shared with other writers, released when the caller's
+     * transaction ends, and waited for by {@link #lock}. Taken before the writer's sequences are
+     * allocated, so a fold never reads a last_seq whose entries are still in flight.
+     *
+     * @return false on H2 (no advisory locks): the writer must {@link #allocate} in its own
+     *         transaction and so hold the head row lock until commit
+     */
+    public boolean lockShared(UUID groupId) {
+        if (!databaseVendor.isPostgres()) return false;
+        jdbcTemplate.query(PG_WRITER_LOCK, rs -> null, HEAD_LOCK_SPACE, groupId.hashCode());
+        return true;
+    }
+
+    /**
+     * Lock the head row; waits for in-flight lazy writers of the group to commit. The exclusive
+     * advisory lock queues ahead of writers arriving later, so a busy group cannot starve a fold.
+     */
+    public Optional<Head> lock(UUID groupId) {
+        if (databaseVendor.isPostgres()) {
+            jdbcTemplate.query(PG_FOLDER_LOCK, rs -> null, HEAD_LOCK_SPACE, groupId.hashCode());
+        }
+        return query(LOCK, groupId);
+    }
+
+    public void markFolded(UUID groupId, long foldedSeq) {
+        jdbcTemplate.update(MARK_FOLDED, foldedSeq, groupId);
+    }
+
+    /**
+     * Per-user sum of ledger entries with fromSeq < seq <= toSeq not yet included in the user's balance row.
+     */
+    public CentDeltas unfoldedDeltas(UUID groupId, long fromSeq, long toSeq) {
+        Map<UUID, BigDecimal> deltas = new HashMap<>();
+        jdbcTemplate.query(UNFOLDED_TAIL,
+                (RowCallbackHandler) rs -> deltas.put(rs.getObject("user_id", UUID.class), MoneyUtils.fromCents(rs.getLong("delta"))),
+                groupId, fromSeq, toSeq);
+        return CentDeltas.of(deltas);
+    }
+
+    private Optional<Head> query(String sql, UUID groupId) {
+        List<Head> rows = jdbcTemplate.query(sql,
+                (rs, i) -> new Head(rs.getLong("last_seq"), rs.getLong("folded_seq")),
+                groupId);
+        return rows.stream().findFirst();
+    }
+}
@@ -0,0 +1,163 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import com.kleadingsolutions.expenseshare.util.UuidV7;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DDL and bookkeeping for the partitions of ledger_entries (PostgreSQL only, see V10).
+ *
+ * - Hash partitions are ledger_entries_pNN; their monthly range partitions are ledger_entries_pNN_yyyy_mm.
+ *   Names are read from the catalog and checked against these patterns before they are put into DDL.
+ * - Statements run on the connection of the caller's transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerPartitionRepository {
+
+    private static final Pattern HASH_PARTITION = Pattern.compile("ledger_entries_p\\d{2}");
+    private static final Pattern MONTH_PARTITION = Pattern.compile("(ledger_entries_p\\d{2})_(\\d{4})_(\\d{2})");
+
+    private static final String CHILDREN =
+            "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid" +
+            " WHERE i.inhparent = CAST(? AS regclass) ORDER BY c.relname";
+    // sequenced entries the group's balances do not contain yet; archiving them would lose them
+    private static final String HAS_UNFOLDED =
+            "SELECT EXISTS (SELECT 1 FROM %s le JOIN group_ledger_heads h ON h.group_id = le.group_id" +
+            " WHERE le.seq > h.folded_seq)";
+    private static final String TOTALS =
+            "SELECT group_id, user_id, currency_code, SUM(amount_cents) AS cents FROM %s" +
+            " GROUP BY group_id, user_id, currency_code HAVING SUM(amount_cents) <> 0";
+    private static final String INSERT_CARRY =
+            "INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code, currency_code, created_at, version)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, 0)";
+    // snapshots cut inside the month counted part of it; the carry entry dates from its start
+    private static final String DELETE_SNAPSHOTS_INSIDE =
+            "DELETE FROM balance_snapshots WHERE cut_at > ? AND cut_at < ?" +
+            " AND group_id IN (SELECT DISTINCT group_id FROM %s)";
+    // as-of balances inside the month cannot be rebuilt any more; keep the latest such month end per group
+    private static final String RECORD_ARCHIVE_HORIZON =
+            "INSERT INTO ledger_archive_horizons (group_id, archived_until)" +
+            " SELECT DISTINCT group_id, CAST(? AS TIMESTAMP WITH TIME ZONE) FROM %s" +
+            " ON CONFLICT (group_id) DO UPDATE SET archived_until =" +
+            " GREATEST(ledger_archive_horizons.archived_until, EXCLUDED.archived_until)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Signed total in cents of one (group, user, currency code) in a partition.
+     */
+    public record Total(UUID groupId, UUID userId, short currency, long cents) {
+    }
+
+    public List<String> hashPartitions() {
+        List<String> names = new ArrayList<>();
+        for (String name : jdbcTemplate.queryForList(CHILDREN, String.class, "ledger_entries")) {
+            if (HASH_PARTITION.matcher(name).matches()) names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * Months that have their own partition under a hash partition (the DEFAULT partition holds the rest).
+     */
+    public TreeSet<YearMonth> months(String hashPartition) {
+        TreeSet<YearMonth> months = new TreeSet<>();
+        for (String name : jdbcTemplate.queryForList(CHILDREN, String.class, hashPartition(hashPartition))) {
+            Matcher m = MONTH_PARTITION.matcher(name);
+            if (m.matches()) months.add(YearMonth.of(Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3))));
+        }
+        return months;
+    }
+
+    /**
+     * Create the month's partition; fails when the DEFAULT partition already holds rows of that month.
+     */
+    public void createMonth(String hashPartition, YearMonth month) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + monthPartition(hashPartition, month) +
+                " PARTITION OF " + hashPartition(hashPartition) +
+                 " FOR VALUES FROM ('" + bound(month) + "') TO ('" + bound(month.plusMonths(1)) + "')");
+    }
+
+    public boolean hasUnfolded(String hashPartition, YearMonth month) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                HAS_UNFOLDED.formatted(monthPartition(hashPartition, month)), Boolean.class));
+    }
+
+    public List<Total> totals(String hashPartition, YearMonth month) {
+        return jdbcTemplate.query(TOTALS.formatted(monthPartition(hashPartition, month)),
+                (rs, i) -> new Total(rs.getObject("group_id", UUID.class), rs.getObject("user_id", UUID.class),
+                        rs.getShort("currency_code"), rs.getLong("cents")));
+    }
+
+    public void detach(String hashPartition, YearMonth month) {
+        jdbcTemplate.execute("ALTER TABLE " + hashPartition(hashPartition) +
+                " DETACH PARTITION " + monthPartition(hashPartition, month));
+    }
+
+    /**
+     * Insert one COMPACTED entry per total, dated at the start of the month. Call after the month is
+     * detached: the range is then uncovered and the entries land in the hash partition's DEFAULT.
+     */
+    public int insertCarries(YearMonth month, List<Total> totals) {
+        OffsetDateTime createdAt = start(month);
+        List<Object[]> rows = new ArrayList<>(totals.size());
+        for (Total t : totals) {
+            rows.add(new Object[]{UuidV7.randomUUID(), t.groupId(), t.userId(), t.cents(),
+                    TransactionType.COMPACTED.code(), t.currency(), createdAt});
+        }
+        jdbcTemplate.batchUpdate(INSERT_CARRY, rows);
+        return rows.size();
+    }
+
+    public int deleteSnapshotsInside(String hashPartition, YearMonth month) {
+        return jdbcTemplate.update(DELETE_SNAPSHOTS_INSIDE.formatted(monthPartition(hashPartition, month)),
+                start(month), start(month.plusMonths(1)));
+    }
+
+    /**
+     * Record the end of the month as the archive horizon of every group with entries in it.
+     * Call before the month is moved out of the schema.
+     */
+    public int recordArchiveHorizon(String hashPartition, YearMonth month) {
+        return jdbcTemplate.update(RECORD_ARCHIVE_HORIZON.formatted(monthPartition(hashPartition, month)),
+                start(month.plusMonths(1)));
+    }
+
+    public void moveToSchema(String hashPartition, YearMonth month, String schema) {
+        jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + schema);
+        jdbcTemplate.execute("ALTER TABLE " + monthPartition(hashPartition, month) + " SET SCHEMA " + schema);
+    }
+
+    static String monthPartition(String hashPartition, YearMonth month) {
+        return hashPartition(hashPartition) + "_%04d_%02d".formatted(month.getYear(), month.getMonthValue());
+    }
+
+    private static String hashPartition(String name) {
+        if (!HASH_PARTITION.matcher(Objects.requireNonNull(name)).matches()) {
+            throw new IllegalArgumentException("Not a ledger hash partition: " + name);
+        }
+        return name;
+    }
+
+    private static String bound(YearMonth month) {
+        return "%04d-%02d-01 00:00:00+00".formatted(month.getYear(), month.getMonthValue());
+    }
+
+    private static OffsetDateTime start(YearMonth month) {
+        return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,247 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import com.kleadingsolutions.expenseshare.util.UuidV7;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * JDBC access for the offline balance rebuild: the ledger stream in group order, the current
+ * balances of a batch of groups, overwriting upserts and the run checkpoint.
+ * Statements run on the connection of the caller's transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerRebuildRepository {
+
+    // ledger amounts are stored in cents: each row streams as a long, with no BigDecimal per row
+    private static final String LEDGER = "SELECT group_id, user_id, amount_cents AS cents FROM ledger_entries";
+    private static final String LEDGER_ORDER = " ORDER BY group_id";
+
+    private static final String CURRENT =
+            "SELECT group_id, user_id, SUM(balance) AS balance, SUM(stripes) AS stripes FROM (" +
+            " SELECT group_id, user_id, CAST(balance * 100 AS BIGINT) AS balance, 0 AS stripes FROM balances WHERE group_id IN (%1$s)" +
+            " UNION ALL SELECT group_id, user_id, 0, CAST(delta * 100 AS BIGINT) FROM balance_stripes WHERE group_id IN (%1$s)" +
+            ") t GROUP BY group_id, user_id";
+
+    private static final String PG_OVERWRITE_PREFIX =
+            "INSERT INTO balances (id, group_id, user_id, balance, created_by, created_at, updated_at, version, folded_seq) VALUES ";
+    private static final String PG_OVERWRITE_ROW = "(?, ?, ?, ?, NULL, now(), now(), 0, 0)";
+    private static final String PG_OVERWRITE_SUFFIX =
+            " ON CONFLICT (group_id, user_id) DO UPDATE SET balance = EXCLUDED.balance, updated_at = EXCLUDED.updated_at," +
+            " version = COALESCE(balances.version, 0) + 1";
+    private static final String MERGE_PREFIX = "MERGE INTO balances b USING (VALUES ";
+    private static final String MERGE_ROW =
+            "(CAST(? AS UUID), CAST(? AS UUID), CAST(? AS UUID), CAST(? AS NUMERIC(19,2)))";
+    private static final String MERGE_SUFFIX =
+            ") AS v(id, group_id, user_id, balance) ON b.group_id = v.group_id AND b.user_id = v.user_id" +
+            " WHEN MATCHED THEN UPDATE SET balance = v.balance, updated_at = CURRENT_TIMESTAMP, version = COALESCE(b.version, 0) + 1" +
+            " WHEN NOT MATCHED THEN INSERT (id, group_id, user_id, balance, created_by, created_at, updated_at, version, folded_seq)" +
+            " VALUES (v.id, v.group_id, v.user_id, v.balance, NULL, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 0, 0)";
+    // 4 bind parameters per row; PostgreSQL caps a statement at 65535
+    private static final int MAX_ROWS = 10_000;
+
+    private static final String DELETE_STRIPES = "DELETE FROM balance_stripes WHERE group_id IN (%s)";
+    private static final String UNFLAG_STRIPED = "DELETE FROM striped_groups WHERE group_id IN (%s)";
+    // the rebuilt rows include every sequenced entry, so their watermark moves to the group head
+    private static final String MARK_ROWS_FOLDED =
+            "UPDATE balances b SET folded_seq = (SELECT h.last_seq FROM group_ledger_heads h WHERE h.group_id = b.group_id)" +
+            " WHERE b.group_id IN (%s) AND b.folded_seq < (SELECT h.last_seq FROM group_ledger_heads h WHERE h.group_id = b.group_id)";
+    private static final String MARK_HEADS_FOLDED =
+            "UPDATE group_ledger_heads SET folded_seq = last_seq WHERE group_id IN (%s) AND folded_seq < last_seq";
+
+    // rows (and stripes) of users without a single ledger entry in their group; the stream never sees them
+    private static final String COUNT_ORPHANS =
+            "SELECT COUNT(*) FROM balances b WHERE b.balance <> 0" +
+            " AND NOT EXISTS (SELECT 1 FROM ledger_entries le WHERE le.group_id = b.group_id AND le.user_id = b.user_id)";
+    private static final String ZERO_ORPHANS =
+            "UPDATE balances b SET balance = 0, updated_at = CURRENT_TIMESTAMP, version = COALESCE(b.version, 0) + 1" +
+            " WHERE b.balance <> 0" +
+            " AND NOT EXISTS (SELECT 1 FROM ledger_entries le WHERE le.group_id = b.group_id AND le.user_id = b.user_id)";
+    private static final String DELETE_ORPHAN_STRIPES =
+            "DELETE FROM balance_stripes s" +
+            " WHERE NOT EXISTS (SELECT 1 FROM ledger_entries le WHERE le.group_id = s.group_id AND le.user_id = s.user_id)";
+
+    private static final String FIND_CHECKPOINT =
+            "SELECT last_group_id, groups_done, ledger_rows, completed_at FROM ledger_rebuild_checkpoints WHERE run_id = ?";
+    private static final String DELETE_CHECKPOINT = "DELETE FROM ledger_rebuild_checkpoints WHERE run_id = ?";
+    private static final String INSERT_CHECKPOINT =
+            "INSERT INTO ledger_rebuild_checkpoints (run_id, groups_done, ledger_rows, started_at, updated_at) VALUES (?, 0, 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+    private static final String SAVE_CHECKPOINT =
+            "UPDATE ledger_rebuild_checkpoints SET last_group_id = ?, groups_done = ?, ledger_rows = ?, updated_at = CURRENT_TIMESTAMP WHERE run_id = ?";
+    private static final String COMPLETE_CHECKPOINT =
+            "UPDATE ledger_rebuild_checkpoints SET completed_at = CURRENT_TIMESTAMP, updated_at = CURRENT_TIMESTAMP WHERE run_id = ?";
+
+    /**
+     * Most groups per batch statement: the balance read binds every group id twice.
+     */
+    public static final int MAX_GROUPS = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseVendor databaseVendor;
+
+    /**
+     * One streamed ledger entry.
+     */
+    @FunctionalInterface
+    public interface LedgerRowHandler {
+        void row(UUID groupId, UUID userId, long cents);
+    }
+
+    /**
+     * Current state of one balance: the row (0 when missing) and its pending stripes, in cents.
+     */
+    public record Current(long balance, long stripes) {
+
+        public long total() {
+            return balance + stripes;
+        }
+    }
+
+    /**
+     * Target value of one balance row.
+     */
+    public record Row(UUID groupId, UUID userId, long cents) {
+    }
+
+    /**
+     * Progress of a run.
+     * @param lastGroupId highest group rebuilt together with all before it; null before the first batch
+     */
+    public record Checkpoint(UUID lastGroupId, long groups, long ledgerRows, boolean completed) {
+    }
+
+    /**
+     * Stream every ledger entry of groups after afterGroupId (all groups when null) in group id order
+     * through a cursor of fetchSize rows. PostgreSQL only honours the fetch size inside a transaction,
+     * so callers must hold one for the whole stream.
+     */
+    public void streamLedger(UUID afterGroupId, int fetchSize, LedgerRowHandler handler) {
+        String sql = LEDGER + (afterGroupId != null ? " WHERE group_id > ?" : "") + LEDGER_ORDER;
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setFetchSize(fetchSize);
+            if (afterGroupId != null) ps.setObject(1, afterGroupId);
+            return ps;
+        }, (RowCallbackHandler) rs -> handler.row(
+                rs.getObject(1, UUID.class),
+                rs.getObject(2, UUID.class),
+                rs.getLong(3)));
+    }
+
+    /**
+     * Balance rows and pending stripes of the groups, by group then user.
+     */
+    public Map<UUID, Map<UUID, Current>> currentBalances(List<UUID> groupIds) {
+        if (groupIds.isEmpty()) return Collections.emptyMap();
+        Map<UUID, Map<UUID, Current>> current = new HashMap<>();
+        List<Object> args = new ArrayList<>(groupIds);
+        args.addAll(groupIds);
+        jdbcTemplate.query(String.format(CURRENT, placeholders(groupIds.size())),
+                (RowCallbackHandler) rs -> current
+                        .computeIfAbsent(rs.getObject("group_id", UUID.class), g -> new HashMap<>())
+                        .put(rs.getObject("user_id", UUID.class), new Current(rs.getLong("balance"), rs.getLong("stripes"))),
+                args.toArray());
+        return current;
+    }
+
+    /**
+     * Set each balance row to its target, creating missing rows. Callers pass rows sorted by
+     * (group, user) so row locks are taken in the same order as every other balance writer.
+     */
+    public int overwrite(List<Row> rows) {
+        int written = 0;
+        for (int from = 0; from < rows.size(); from += MAX_ROWS) {
+            written += overwriteChunk(rows.subList(from, Math.min(from + MAX_ROWS, rows.size())));
+        }
+        return written;
+    }
+
+    private int overwriteChunk(List<Row> rows) {
+        boolean postgres = databaseVendor.isPostgres();
+        StringBuilder sql = new StringBuilder(postgres ? PG_OVERWRITE_PREFIX : MERGE_PREFIX);
+        List<Object> args = new ArrayList<>(rows.size() * 4);
+        String row = postgres ? PG_OVERWRITE_ROW : MERGE_ROW;
+        for (int i = 0; i < rows.size(); i++) {
+            Row r = rows.get(i);
+            if (i > 0) sql.append(", ");
+            sql.append(row);
+            args.add(UuidV7.randomUUID());
+            args.add(r.groupId());
+            args.add(r.userId());
+            args.add(MoneyUtils.fromCents(r.cents()));
+        }
+        sql.append(postgres ? PG_OVERWRITE_SUFFIX : MERGE_SUFFIX);
+        return jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    /**
+     * After the groups' rows hold their full ledger totals: drop their stripes and striped flags and
+     * mark their lazy ledger tail folded.
+     */
+    public void markRebuilt(List<UUID> groupIds) {
+        if (groupIds.isEmpty()) return;
+        String in = placeholders(groupIds.size());
+        Object[] args = groupIds.toArray();
+        jdbcTemplate.update(String.format(DELETE_STRIPES, in), args);
+        jdbcTemplate.update(String.format(UNFLAG_STRIPED, in), args);
+        jdbcTemplate.update(String.format(MARK_ROWS_FOLDED, in), args);
+        jdbcTemplate.update(String.format(MARK_HEADS_FOLDED, in), args);
+    }
+
+    /**
+     * Non-zero balance rows of users with no ledger entry in their group.
+     */
+    public long countOrphans() {
+        Long count = jdbcTemplate.queryForObject(COUNT_ORPHANS, Long.class);
+        return count == null ? 0L : count;
+    }
+
+    /**
+     * Zero the balance rows (and drop the stripes) of users with no ledger entry in their group.
+     */
+    public int zeroOrphans() {
+        int rows = jdbcTemplate.update(ZERO_ORPHANS);
+        jdbcTemplate.update(DELETE_ORPHAN_STRIPES);
+        return rows;
+    }
+
+    public Optional<Checkpoint> findCheckpoint(String runId) {
+        return jdbcTemplate.query(FIND_CHECKPOINT, (rs, i) -> new Checkpoint(
+                rs.getObject("last_group_id", UUID.class),
+                rs.getLong("groups_done"),
+                rs.getLong("ledger_rows"),
+                rs.getTimestamp("completed_at") != null), runId).stream().findFirst();
+    }
+
+    /**
+     * (Re)start a run from the first group.
+     */
+    public void startCheckpoint(String runId) {
+        jdbcTemplate.update(DELETE_CHECKPOINT, runId);
+        jdbcTemplate.update(INSERT_CHECKPOINT, runId);
+    }
+
+    public void saveCheckpoint(String runId, UUID lastGroupId, long groups, long ledgerRows) {
+        jdbcTemplate.update(SAVE_CHECKPOINT, lastGroupId, groups, ledgerRows, runId);
+    }
+
+    public void completeCheckpoint(String runId) {
+        jdbcTemplate.update(COMPLETE_CHECKPOINT, runId);
+    }
+
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.util.PairDebtDeltas;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * JDBC access to pair_debts, the per-group pairwise obligations in long cents.
+ * Statements run on the connection of the caller's transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PairDebtRepository {
+
+    private static final String PG_ADD_PREFIX =
+            "INSERT INTO pair_debts (group_id, user_lo, user_hi, cents, updated_at) VALUES ";
+    private static final String PG_ADD_ROW = "(?, ?, ?, ?, now())";
+    private static final String PG_ADD_SUFFIX =
+            " ON CONFLICT (group_id, user_lo, user_hi) DO UPDATE SET cents = pair_debts.cents + EXCLUDED.cents," +
+            " updated_at = EXCLUDED.updated_at";
+    private static final String MERGE_PREFIX = "MERGE INTO pair_debts p USING (VALUES ";
+    private static final String MERGE_ROW = "(CAST(? AS UUID), CAST(? AS UUID), CAST(? AS UUID), CAST(? AS BIGINT))";
+    private static final String MERGE_SUFFIX =
+            ") AS v(group_id, user_lo, user_hi, cents)" +
+            " ON p.group_id = v.group_id AND p.user_lo = v.user_lo AND p.user_hi = v.user_hi" +
+            " WHEN MATCHED THEN UPDATE SET cents = p.cents + v.cents, updated_at = CURRENT_TIMESTAMP" +
+            " WHEN NOT MATCHED THEN INSERT (group_id, user_lo, user_hi, cents, updated_at)" +
+            " VALUES (v.group_id, v.user_lo, v.user_hi, v.cents, CURRENT_TIMESTAMP)";
+    // 4 bind parameters per row; PostgreSQL caps a statement at 65535
+    private static final int MAX_ROWS = 10_000;
+
+    static final String FIND_FOR_USER =
+            "SELECT user_lo, user_hi, cents FROM pair_debts WHERE group_id = ? AND user_lo = ? AND cents <> 0" +
+            " UNION ALL" +
+            " SELECT user_lo, user_hi, cents FROM pair_debts WHERE group_id = ? AND user_hi = ? AND cents <> 0";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseVendor databaseVendor;
+
+    /**
+     * Add the changes of one write (pairs in canonical order, so rows are locked in that order).
+     */
+    public int apply(UUID groupId, PairDebtDeltas deltas) {
+        if (deltas == null || deltas.size() == 0) return 0;
+        List<PairDebtDeltas.Entry> entries = deltas.entries();
+        int updated = 0;
+        for (int from = 0; from < entries.size(); from += MAX_ROWS) {
+            updated += apply(groupId, entries.subList(from, Math.min(from + MAX_ROWS, entries.size())));
+        }
+        return updated;
+    }
+
+    private int apply(UUID groupId, List<PairDebtDeltas.Entry> entries) {
+        boolean postgres = databaseVendor.isPostgres();
+        StringBuilder sql = new StringBuilder(postgres ? PG_ADD_PREFIX : MERGE_PREFIX);
+        List<Object> args = new ArrayList<>(entries.size() * 4);
+        String row = postgres ? PG_ADD_ROW : MERGE_ROW;
+        for (int i = 0; i < entries.size(); i++) {
+            PairDebtDeltas.Entry e = entries.get(i);
+            if (i > 0) sql.append(", ");
+            sql.append(row);
+            args.add(groupId);
+            args.add(e.userLo());
+            args.add(e.userHi());
+            args.add(e.cents());
+        }
+        sql.append(postgres ? PG_ADD_SUFFIX : MERGE_SUFFIX);
+        return jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Outstanding obligations between one user and their counterparties in the group.
+     */
+    public List<PairDebtDeltas.Entry> findForUser(UUID groupId, UUID userId) {
+        return jdbcTemplate.query(FIND_FOR_USER, (rs, i) -> new PairDebtDeltas.Entry(
+                rs.getObject(1, UUID.class),
+                rs.getObject(2, UUID.class),
+                rs.getLong(3)), groupId, userId, groupId, userId);
+    }
+}
@@ -0,0 +1,50 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * JDBC access for a user's balances across all groups they are an ACTIVE member of.
+ * Statements run on the connection of the caller's transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserNetRepository {
+
+    // Driven by the user's memberships (idx_groupmembers_user_group); every other table is probed
+    // by (group_id, user_id). A balance is its row plus pending stripes plus the sequenced ledger
+    // tail past the row's watermark (lazy mode), so no group has to be folded first. Summed in cents.
+    static final String GROUP_NETS =
+            "SELECT gm.group_id, g.name, CAST(COALESCE(b.balance, 0) * 100 AS BIGINT)" +
+            " + CAST(COALESCE((SELECT SUM(s.delta) FROM balance_stripes s" +
+            " WHERE s.group_id = gm.group_id AND s.user_id = gm.user_id), 0) * 100 AS BIGINT)" +
+            " + COALESCE((SELECT SUM(le.amount_cents) FROM ledger_entries le" +
+            " WHERE le.group_id = gm.group_id AND le.user_id = gm.user_id AND le.seq > COALESCE(b.folded_seq, 0)), 0) AS cents" +
+            " FROM group_members gm" +
+            " JOIN groups g ON g.id = gm.group_id" +
+            " LEFT JOIN balances b ON b.group_id = gm.group_id AND b.user_id = gm.user_id" +
+            " WHERE gm.user_id = ? AND gm.status = 'ACTIVE'" +
+            " ORDER BY gm.group_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * The user's balance in one group, in cents.
+     */
+    public record GroupNet(UUID groupId, String groupName, long cents) {
+    }
+
+    /**
+     * One row per ACTIVE membership of the user (zero balances included), ordered by group id.
+     */
+    public List<GroupNet> findGroupNets(UUID userId) {
+        return jdbcTemplate.query(GROUP_NETS, (rs, i) -> new GroupNet(
+                rs.getObject(1, UUID.class),
+                rs.getString(2),
+                rs.getLong(3)), userId);
+    }
+}
@@ -0,0 +1,294 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceAuditProperties;
+import com.kleadingsolutions.expenseshare.repository.BalanceAuditRepository;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import com.kleadingsolutions.expenseshare.util.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Background balance audit (app.balances.audit).
+ *
+ * - Group ids are split into power-of-two shards by id range. A node scans a shard only while it
+ *   holds the shard's row in balance_audit_leases, so nodes running the same schedule share a run.
+ *   A shard scanned to the end records its completion time and is not leased again until an
+ *   interval has passed, so nodes on offset schedules do not each rescan it.
+ * - Each shard streams its group ids through a JDBC cursor; every group is checked on a bounded
+ *   worker pool (at most 2 x workers groups in flight), paced to queries-per-second.
+ * - A check is two statements: the drift aggregate of {@link BalanceRepository#findDrift} and the
+ *   ledger total. Drifted groups are repaired through {@link BalanceService#recomputeAndReconcileGroup}
+ *   (which also folds a lazy ledger tail, so only true drift is counted); a non-zero ledger total
+ *   cannot be repaired and is reported.
+ */
+@Component
+public class BalanceAuditScanner implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceAuditScanner.class);
+
+    // statements charged to the budget: drift aggregate + ledger total; reconcile lock, fold, drift, upsert
+    private static final int CHECK_QUERIES = 2;
+    private static final int REPAIR_QUERIES = 4;
+
+    private final BalanceAuditProperties properties;
+    private final BalanceAuditRepository auditRepository;
+    private final BalanceRepository balanceRepository;
+    private final BalanceService balanceService;
+    private final TransactionTemplate readOnly;
+    private final TransactionTemplate requiresNew;
+    private final ExecutorService workers;
+    private final RateLimiter budget;
+    private final String owner;
+    private final AtomicReference<AuditRun> lastRun = new AtomicReference<>(AuditRun.EMPTY);
+    private final Counter groupsChecked;
+    private final Counter driftRows;
+    private final Counter groupsRepaired;
+    private final Counter nonZeroSumGroups;
+    private final Counter shardsSkipped;
+    private final Timer runs;
+
+    public BalanceAuditScanner(BalanceAuditProperties properties,
+                               BalanceAuditRepository auditRepository,
+                               BalanceRepository balanceRepository,
+                               BalanceService balanceService,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.auditRepository = auditRepository;
+        this.balanceRepository = balanceRepository;
+        this.balanceService = balanceService;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.workers = Executors.newFixedThreadPool(properties.workers(), r -> {
+            Thread t = new Thread(r, "balance-audit");
+            t.setDaemon(true);
+            return t;
+        });
+        this.budget = new RateLimiter(properties.queriesPerSecond());
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
+        this.groupsChecked = Counter.builder("expenseshare.balance.audit.groups.checked")
+                .description("Groups whose balances were compared with the ledger")
+                .register(meterRegistry);
+        this.driftRows = Counter.builder("expenseshare.balance.audit.drift.rows")
+                .description("Balance rows that differed from the ledger (corrected when repair is on)")
+                .register(meterRegistry);
+        this.groupsRepaired = Counter.builder("expenseshare.balance.audit.groups.repaired")
+                .description("Groups reconciled because their balances drifted")
+                .register(meterRegistry);
+        this.nonZeroSumGroups = Counter.builder("expenseshare.balance.audit.groups.nonzero_sum")
+                .description("Groups whose ledger does not sum to zero")
+                .register(meterRegistry);
+        this.shardsSkipped = Counter.builder("expenseshare.balance.audit.shards.skipped")
+                .description("Shards not scanned because another node holds their lease or audited them this interval")
+                .register(meterRegistry);
+        this.runs = Timer.builder("expenseshare.balance.audit.run")
+                .description("Wall time of one audit run on this node")
+                .register(meterRegistry);
+        Gauge.builder("expenseshare.balance.audit.last_run.groups_per_second", lastRun, r -> r.get().groupsPerSecond())
+                .description("Groups checked per second in the last audit run on this node")
+                .register(meterRegistry);
+        Gauge.builder("expenseshare.balance.audit.last_run.drift_rows", lastRun, r -> r.get().driftRows())
+                .description("Drifted balance rows found in the last audit run on this node")
+                .register(meterRegistry);
+        Gauge.builder("expenseshare.balance.audit.last_run.nonzero_sum_groups", lastRun, r -> r.get().nonZeroSumGroups())
+                .description("Groups with a non-zero ledger total in the last audit run on this node")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Outcome of one audit run on this node.
+     */
+    public record AuditRun(int shardsScanned, int shardsSkipped, long groupsChecked, long driftRows,
+                           long groupsRepaired, long nonZeroSumGroups, Duration elapsed) {
+
+        static final AuditRun EMPTY = new AuditRun(0, 0, 0, 0, 0, 0, Duration.ZERO);
+
+        public double groupsPerSecond() {
+            return elapsed.isZero() ? 0.0 : groupsChecked * 1_000_000_000.0 / elapsed.toNanos();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.balances.audit.interval:PT1H}", initialDelayString = "${app.balances.audit.interval:PT1H}")
+    public void scheduledScan() {
+        if (!properties.enabled()) return;
+        try {
+            scan();
+        } catch (RuntimeException e) {
+            log.warn("Balance audit run failed, retrying next run: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Scan every shard this node can lease and return the run's totals.
+     */
+    public AuditRun scan() {
+        long start = System.nanoTime();
+        Tally tally = new Tally();
+        int scanned = 0;
+        int skipped = 0;
+        for (int shard = 0; shard < properties.shards(); shard++) {
+            if (!lease(shard)) {
+                skipped++;
+                shardsSkipped.increment();
+                continue;
+            }
+            boolean completed = false;
+            try {
+                completed = scanShard(shard, tally);
+                scanned++;
+            } finally {
+                release(shard, completed);
+            }
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        runs.record(elapsed);
+        AuditRun run = new AuditRun(scanned, skipped, tally.checked.get(), tally.driftRows.get(),
+                tally.repaired.get(), tally.nonZeroSum.get(), elapsed);
+        lastRun.set(run);
+        log.info("Balance audit: shards={} skipped={} groups={} ({} /s) drift_rows={} repaired={} nonzero_sum={} in {} ms",
+                scanned, skipped, run.groupsChecked(), String.format("%.1f", run.groupsPerSecond()), run.driftRows(),
+                run.groupsRepaired(), run.nonZeroSumGroups(), elapsed.toMillis());
+        return run;
+    }
+
+    /**
+     * @return true when every group of the shard was checked (the lease was held to the end)
+     */
+    private boolean scanShard(int shard, Tally tally) {
+        int inFlightLimit = properties.workers() * 2;
+        Semaphore inFlight = new Semaphore(inFlightLimit);
+        AtomicLong streamed = new AtomicLong();
+        try {
+            readOnly.executeWithoutResult(s -> auditRepository.streamGroupIds(lowerBound(shard), lowerBound(shard + 1),
+                    properties.fetchSize(), groupId -> {
+                        if (streamed.incrementAndGet() % properties.fetchSize() == 0 && !lease(shard)) {
+                            throw new LeaseLostException(shard);
+                        }
+                        inFlight.acquireUninterruptibly();
+                        workers.execute(() -> {
+                            try {
+                                check(groupId, tally);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                    }));
+            return true;
+        } catch (LeaseLostException e) {
+            log.warn("Lost the balance audit lease of shard {} after {} groups, leaving the rest to its new owner", shard, streamed.get());
+            return false;
+        } finally {
+            // wait for the shard's checks before its lease is released
+            inFlight.acquireUninterruptibly(inFlightLimit);
+        }
+    }
+
+    private void check(UUID groupId, Tally tally) {
+        try {
+            budget.acquire(CHECK_QUERIES);
+            GroupCheck c = readOnly.execute(s -> new GroupCheck(balanceRepository.findDrift(groupId), auditRepository.ledgerTotal(groupId)));
+            groupsChecked.increment();
+            tally.checked.incrementAndGet();
+
+            if (c.ledgerTotal() != null && c.ledgerTotal().signum() != 0) {
+                nonZeroSumGroups.increment();
+                tally.nonZeroSum.incrementAndGet();
+                log.error("Ledger of group={} does not sum to zero: total={}", groupId, MoneyUtils.scale(c.ledgerTotal()));
+            }
+            if (c.drift().size() == 0) return;
+
+            long rows = c.drift().size();
+            if (properties.repair()) {
+                budget.acquire(REPAIR_QUERIES);
+                BalanceService.GroupReconciliation r = balanceService.recomputeAndReconcileGroup(groupId);
+                rows = r.rowsCorrected();
+                if (rows > 0) {
+                    groupsRepaired.increment();
+                    tally.repaired.incrementAndGet();
+                    log.warn("Repaired balance drift of group={}: rows={} total_drift={}", groupId, rows, r.totalDrift());
+                }
+            } else {
+                log.warn("Balance drift in group={}: rows={}", groupId, rows);
+            }
+            driftRows.increment(rows);
+            tally.driftRows.addAndGet(rows);
+        } catch (RuntimeException e) {
+            log.warn("Balance audit of group={} failed: {}", groupId, e.getMessage());
+        }
+    }
+
+    private boolean lease(int shard) {
+        OffsetDateTime now = OffsetDateTime.now();
+        Boolean leased = requiresNew.execute(s -> auditRepository.tryLease(shard, owner, now, now.plus(properties.leaseTtl()),
+                now.minus(properties.interval())));
+        return Boolean.TRUE.equals(leased);
+    }
+
+    private void release(int shard, boolean completed) {
+        OffsetDateTime now = OffsetDateTime.now();
+        requiresNew.executeWithoutResult(s -> {
+            if (completed) {
+                auditRepository.completeLease(shard, owner, now);
+            } else {
+                auditRepository.releaseLease(shard, owner, now);
+            }
+        });
+    }
+
+    /**
+     * Smallest group id of the shard (null for the first shard and past the last one). Shards split
+     * the UUID space on its top bits, which is the order both PostgreSQL and H2 compare UUIDs in.
+     */
+    private UUID lowerBound(int shard) {
+        if (shard == 0 || shard >= properties.shards()) return null;
+        int bits = Integer.numberOfTrailingZeros(properties.shards());
+        return new UUID((long) shard << (64 - bits), 0L);
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdownNow();
+    }
+
+    private record GroupCheck(CentDeltas drift, BigDecimal ledgerTotal) {
+    }
+
+    private static final class Tally {
+        final AtomicLong checked = new AtomicLong();
+        final AtomicLong driftRows = new AtomicLong();
+        final AtomicLong repaired = new AtomicLong();
+        final AtomicLong nonZeroSum = new AtomicLong();
+    }
+
+    private static final class LeaseLostException extends RuntimeException {
+        LeaseLostException(int shard) {
+            super("balance audit lease of shard " + shard + " lost");
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Picks the {@link BalanceLockStrategy} for a group: STRIPED for groups flagged as contended (see
+ * {@link BalanceStripes}), else app.balances.lock-strategy overridden by the group-size tiers in
+ * app.balances.lock-tiers (member count from the cached membership snapshot).
+ */
+@Component
+public class BalanceLockStrategies {
+
+    private final Map<BalanceLockMode, BalanceLockStrategy> strategies = new EnumMap<>(BalanceLockMode.class);
+    private final BalanceProperties properties;
+    private final GroupMembershipSnapshot membershipSnapshot;
+    private final BalanceStripes balanceStripes;
+
+    public BalanceLockStrategies(List<BalanceLockStrategy> strategies,
+                                 BalanceProperties properties,
+                                 GroupMembershipSnapshot membershipSnapshot,
+                                 BalanceStripes balanceStripes) {
+        strategies.forEach(s -> this.strategies.put(s.mode(), s));
+        this.properties = properties;
+        this.membershipSnapshot = membershipSnapshot;
+        this.balanceStripes = balanceStripes;
+        get(properties.lockStrategy());
+        properties.lockTiers().forEach(t -> get(t.strategy()));
+        if (balanceStripes.isEnabled()) get(BalanceLockMode.STRIPED);
+    }
+
+    /**
+     * Apply the deltas with the group's strategy, feeding the contention detector.
+     *
+     * @return the strategy that was used
+     */
+    public BalanceLockStrategy applyDeltas(UUID groupId, CentDeltas deltas, UUID actorId) {
+        BalanceLockStrategy strategy = forGroup(groupId);
+        balanceStripes.beginWrite(groupId);
+        try {
+            strategy.applyDeltas(groupId, deltas, actorId);
+        } finally {
+            balanceStripes.endWrite(groupId);
+        }
+        return strategy;
+    }
+
+    public BalanceLockStrategy forGroup(UUID groupId) {
+        if (balanceStripes.isStriped(groupId)) {
+            return get(BalanceLockMode.STRIPED);
+        }
+        if (properties.lockTiers().isEmpty()) {
+            return get(properties.lockStrategy());
+        }
+        return get(properties.lockStrategyFor(membershipSnapshot.activeMembers(groupId).size()));
+    }
+
+    public BalanceLockStrategy get(BalanceLockMode mode) {
+        BalanceLockStrategy strategy = strategies.get(mode);
+        if (strategy == null) {
+            throw new IllegalStateException("No BalanceLockStrategy registered for " + mode);
+        }
+        return strategy;
+    }
+}
@@ -0,0 +1,29 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.model.Balance;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * How balance rows are protected while they are changed. Every implementation runs in the caller's
+ * transaction and ends with a row-level write, so groups may move between strategies (e.g. when
+ * they cross a size tier) without losing updates; strategies only differ in where writers wait.
+ */
+public interface BalanceLockStrategy {
+
+    BalanceLockMode mode();
+
+    /**
+     * Add each delta to the user's balance in the group, creating missing rows.
+     */
+    void applyDeltas(UUID groupId, CentDeltas deltas, UUID actorId);
+
+    /**
+     * Load a balance row that the caller will overwrite (reconcile), guarded against concurrent
+     * writers until the transaction ends.
+     */
+    Optional<Balance> lockForOverwrite(UUID groupId, UUID userId);
+}
@@ -0,0 +1,227 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kleadingsolutions.expenseshare.config.BalanceProjectionProperties;
+import com.kleadingsolutions.expenseshare.datasource.ReplicaRoutingDataSource;
+import com.kleadingsolutions.expenseshare.model.LedgerEntry;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.LedgerEntryRepository;
+import com.kleadingsolutions.expenseshare.repository.LedgerHeadRepository;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event-sourced balance projections (app.balances.projection): per group, every user's ledger
+ * total in long cents plus the last ledger sequence applied, held in a memory-bounded cache.
+ *
+ * - Misses (and stale entries) are built from ledger_entries with one GROUP BY user_id aggregate,
+ *   plus a zero for every other user with a balance row, so the projection lists the same users as
+ *   the balance table.
+ * - Writers call {@link #applyAfterCommit} with the ledger entries they appended; the projection is
+ *   updated in place once the transaction commits. A lazy-mode write whose sequences do not follow
+ *   the projection's drops it instead.
+ * - Freshness: a projection is served only if its sequence equals the group's ledger head (one
+ *   primary-key lookup) and it is younger than max-age, which bounds unseen eager writes of other nodes.
+ * - A build is installed only if no write of the group committed or was committing while it ran
+ *   ({@link GroupCommitClock}), so a write can never be both in the build's snapshot and applied on top of it.
+ *   Writes tick the clock even with projections disabled; settle plans rely on it.
+ * - Only builds read from the primary are cached: one read from a lagging replica would be served node-wide
+ *   as current (in eager mode the head is always 0), hiding writes their authors just made.
+ *
+ * Eviction is Caffeine's size-weighted W-TinyLFU; hit/miss/eviction counts are published as the
+ * "balance-projection" cache metrics and read latency as expenseshare.balance.projection.read.
+ */
+@Component
+public class BalanceProjections {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceProjections.class);
+
+    // rough heap cost: projection object and map, plus one HashMap node, UUID and Long per user
+    private static final int BASE_BYTES = 128;
+    private static final int BYTES_PER_USER = 96;
+
+    private final BalanceProjectionProperties properties;
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final LedgerHeadRepository ledgerHeadRepository;
+    private final BalanceRepository balanceRepository;
+    private final GroupCommitClock commitClock;
+    private final Cache<UUID, Projection> projections;
+    private final Timer hits;
+    private final Timer misses;
+
+    public BalanceProjections(BalanceProjectionProperties properties,
+                              LedgerEntryRepository ledgerEntryRepository,
+                              LedgerHeadRepository ledgerHeadRepository,
+                              BalanceRepository balanceRepository,
+                              GroupCommitClock commitClock,
+                              MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.ledgerEntryRepository = ledgerEntryRepository;
+        this.ledgerHeadRepository = ledgerHeadRepository;
+        this.balanceRepository = balanceRepository;
+        this.commitClock = commitClock;
+        this.projections = Caffeine.newBuilder()
+                .maximumWeight(properties.maxMemory().toBytes())
+                .weigher((UUID groupId, Projection p) -> p.weight())
+                .expireAfterWrite(properties.maxAge())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, projections, "balance-projection");
+        this.hits = Timer.builder("expenseshare.balance.projection.read")
+                .description("Group balance reads served by projections")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Timer.builder("expenseshare.balance.projection.read")
+                .description("Group balance reads served by projections")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ledger totals of one group in cents and the ledger sequence they include.
+     */
+    static final class Projection {
+        private final Map<UUID, Long> cents;
+        private long lastSeq;
+
+        Projection(Map<UUID, Long> cents, long lastSeq) {
+            this.cents = cents;
+            this.lastSeq = lastSeq;
+        }
+
+        synchronized long lastSeq() {
+            return lastSeq;
+        }
+
+        /**
+         * Add the deltas; false (nothing applied) when fromSeq..toSeq does not follow lastSeq.
+         */
+        synchronized boolean apply(Map<UUID, Long> deltas, long fromSeq, long toSeq) {
+            if (toSeq > 0) {
+                if (fromSeq != lastSeq + 1) return false;
+                lastSeq = toSeq;
+            }
+            deltas.forEach((userId, d) -> cents.merge(userId, d, Long::sum));
+            return true;
+        }
+
+        synchronized Map<UUID, BigDecimal> balances() {
+            Map<UUID, BigDecimal> out = new TreeMap<>();
+            cents.forEach((userId, c) -> out.put(userId, MoneyUtils.fromCents(c)));
+            return out;
+        }
+
+        synchronized int weight() {
+            return BASE_BYTES + BYTES_PER_USER * cents.size();
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.enabled();
+    }
+
+    /**
+     * Balance of every user with ledger entries or a balance row in the group, ordered by user id. Served from the
+     * projection when it is current, otherwise rebuilt from the ledger. Call inside a transaction.
+     */
+    public Map<UUID, BigDecimal> groupBalances(UUID groupId) {
+        long start = System.nanoTime();
+        // head first: a lazy write committing between the two reads leaves the build looking stale, never fresh
+        long headSeq = ledgerHeadRepository.find(groupId).map(LedgerHeadRepository.Head::lastSeq).orElse(0L);
+        // known once the head read fetched the connection; a replica may be behind the cached projection
+        boolean onReplica = ReplicaRoutingDataSource.isCurrentTransactionOnReplica();
+        Projection current = projections.getIfPresent(groupId);
+        if (current != null && (current.lastSeq() == headSeq || onReplica && current.lastSeq() > headSeq)) {
+            Map<UUID, BigDecimal> balances = current.balances();
+            hits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return balances;
+        }
+        if (current != null && !onReplica) projections.asMap().remove(groupId, current);
+
+        long stamp = commitClock.stamp(groupId);
+        Projection built = load(groupId, headSeq);
+        if (onReplica) {
+            log.debug("Balance projection of group {} not cached: built from a replica", groupId);
+        } else if (commitClock.isCurrent(groupId, stamp)) {
+            projections.put(groupId, built);
+        } else {
+            log.debug("Balance projection of group {} not cached: a write committed while it was built", groupId);
+        }
+        Map<UUID, BigDecimal> balances = built.balances();
+        misses.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return balances;
+    }
+
+    /**
+     * Apply the ledger entries the current transaction appended to the group's projection once it
+     * commits (drop the projection when no transaction is active).
+     */
+    public void applyAfterCommit(UUID groupId, List<LedgerEntry> entries) {
+        if (entries.isEmpty()) return;
+        if (!properties.enabled()) {
+            commitClock.tick(groupId);
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            commitClock.tick(groupId);
+            projections.invalidate(groupId);
+            return;
+        }
+        Map<UUID, Long> deltas = new HashMap<>();
+        long fromSeq = Long.MAX_VALUE;
+        long toSeq = 0L;
+        for (LedgerEntry e : entries) {
+            deltas.merge(e.getUserId(), MoneyUtils.toCents(e.getAmount()), Long::sum);
+            if (e.getSeq() != null) {
+                fromSeq = Math.min(fromSeq, e.getSeq());
+                toSeq = Math.max(toSeq, e.getSeq());
+            }
+        }
+        long from = fromSeq;
+        long to = toSeq;
+        commitClock.tick(groupId, () -> {
+            Projection p = projections.getIfPresent(groupId);
+            if (p == null) return;
+            if (!p.apply(deltas, from, to)) {
+                projections.asMap().remove(groupId, p);
+                log.debug("Balance projection of group {} dropped: sequences {}..{} do not follow {}", groupId, from, to, p.lastSeq());
+            } else {
+                // re-weigh: the write may have added users
+                projections.asMap().replace(groupId, p, p);
+            }
+        });
+    }
+
+    /**
+     * Drop the group's projection once the current transaction commits (immediately when none is active).
+     */
+    public void invalidateAfterCommit(UUID groupId) {
+        commitClock.tick(groupId, properties.enabled() ? () -> projections.invalidate(groupId) : null);
+    }
+
+    private Projection load(UUID groupId, long headSeq) {
+        Map<UUID, Long> cents = new HashMap<>();
+        for (LedgerEntryRepository.UserTotal t : ledgerEntryRepository.sumCentsByUserId(groupId)) {
+            cents.put(t.getUserId(), t.getCents());
+        }
+        for (UUID userId : balanceRepository.findUserIdsByGroupId(groupId)) {
+            cents.putIfAbsent(userId, 0L);
+        }
+        return new Projection(cents, headSeq);
+    }
+}
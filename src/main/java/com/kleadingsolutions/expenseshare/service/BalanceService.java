@@ -1,8 +1,18 @@
 package com.kleadingsolutions.expenseshare.service;
 
+import java.math.BigDecimal;
 import java.util.UUID;
 
 public interface BalanceService {
+
+    /**
+     * Outcome of a group reconcile.
+     * @param rowsCorrected balance rows that drifted from the ledger (created when missing)
+     * @param totalDrift    sum of the absolute corrections
+     */
+    record GroupReconciliation(UUID groupId, int rowsCorrected, BigDecimal totalDrift) {
+    }
+
     /**
      * Recompute the balance for a specific group and user by aggregating ledger entries.
      * Returns the recomputed value (does not modify DB unless reconcile==true).
@@ -10,7 +20,8 @@ public interface BalanceService {
     java.math.BigDecimal recomputeBalance(UUID groupId, UUID userId, boolean reconcile);
 
     /**
-     * Recompute and reconcile balances for all members of a group.
+     * Recompute and reconcile balances for all members of a group: rows that drifted from the
+     * ledger are corrected, rows missing for users with a non-zero ledger sum are created.
      */
-    void recomputeAndReconcileGroup(UUID groupId);
+    GroupReconciliation recomputeAndReconcileGroup(UUID groupId);
 }
\ No newline at end of file
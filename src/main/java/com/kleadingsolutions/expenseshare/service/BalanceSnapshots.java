@@ -0,0 +1,188 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceSnapshotProperties;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+import com.kleadingsolutions.expenseshare.repository.BalanceSnapshotRepository;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Point-in-time balances (app.balances.snapshots).
+ *
+ * - Cuts are aligned to interval in UTC. A group gets a snapshot at the latest cut that lies at
+ *   least settle-delay in the past, if it has ledger entries since its previous snapshot; the new
+ *   snapshot is the previous one plus the ledger range in between, so taking it costs one range scan.
+ * - {@link #balancesAsOf} and {@link #ledgerSum} read the nearest snapshot plus the ledger range
+ *   after it, so their cost is bounded by one interval of writes instead of the group's history.
+ * - Ledger entries are placed by created_at, which writers set before they commit; the settle delay
+ *   is what keeps a late-committing entry from falling before a snapshot that has already been taken.
+ * - Ledger compaction moves old entries to ledger_entries_archive behind summaries dated at its horizon,
+ *   so {@link #balancesAsOf} refuses a time at or before the horizon instead of summing what is left.
+ * Several nodes may run the schedule: a snapshot is written once and identical on every node.
+ */
+@Component
+public class BalanceSnapshots {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceSnapshots.class);
+    private static final UUID NIL = new UUID(0L, 0L);
+
+    private final BalanceSnapshotProperties properties;
+    private final BalanceSnapshotRepository snapshotRepository;
+    private final TransactionTemplate readOnly;
+    private final TransactionTemplate requiresNew;
+    private final Counter taken;
+    private final Timer runs;
+
+    public BalanceSnapshots(BalanceSnapshotProperties properties,
+                            BalanceSnapshotRepository snapshotRepository,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.snapshotRepository = snapshotRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.taken = Counter.builder("expenseshare.balance.snapshot.taken")
+                .description("Group balance snapshots written")
+                .register(meterRegistry);
+        this.runs = Timer.builder("expenseshare.balance.snapshot.run")
+                .description("Wall time of one snapshot run on this node")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.balances.snapshots.poll-interval:PT1H}", initialDelayString = "${app.balances.snapshots.poll-interval:PT1H}")
+    public void scheduledSnapshots() {
+        if (!properties.enabled()) return;
+        try {
+            snapshotDue();
+        } catch (RuntimeException e) {
+            log.warn("Balance snapshot run failed, retrying next run: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Latest cut whose settle delay has passed.
+     */
+    public OffsetDateTime currentCut() {
+        return cutAt(System.currentTimeMillis());
+    }
+
+    OffsetDateTime cutAt(long nowMillis) {
+        long intervalMs = properties.interval().toMillis();
+        long settledMs = nowMillis - properties.settleDelay().toMillis();
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(Math.floorDiv(settledMs, intervalMs) * intervalMs), ZoneOffset.UTC);
+    }
+
+    /**
+     * Snapshot every group with ledger activity since its latest snapshot at the current cut.
+     *
+     * @return snapshots written by this node
+     */
+    public int snapshotDue() {
+        Timer.Sample sample = Timer.start();
+        OffsetDateTime cut = currentCut();
+        int written = 0;
+        UUID after = NIL;
+        while (true) {
+            UUID from = after;
+            List<UUID> due = readOnly.execute(s -> snapshotRepository.findGroupsDue(cut, from, properties.batchSize()));
+            if (due == null || due.isEmpty()) break;
+            for (UUID groupId : due) {
+                try {
+                    if (Boolean.TRUE.equals(requiresNew.execute(s -> snapshot(groupId, cut)))) written++;
+                } catch (RuntimeException e) {
+                    log.warn("Balance snapshot of group={} at {} failed: {}", groupId, cut, e.getMessage());
+                }
+            }
+            if (due.size() < properties.batchSize()) break;
+            after = due.get(due.size() - 1);
+        }
+        long ms = sample.stop(runs) / 1_000_000;
+        log.info("Balance snapshots at cut {}: written={} in {} ms", cut, written, ms);
+        return written;
+    }
+
+    /**
+     * Write the group's snapshot at cut from its previous snapshot and the ledger range in between.
+     * Call inside a transaction.
+     *
+     * @return false when a snapshot at this cut already existed
+     */
+    public boolean snapshot(UUID groupId, OffsetDateTime cut) {
+        Map<UUID, Long> cents = centsAsOf(groupId, cut);
+        boolean written = snapshotRepository.insert(groupId, cut, cents);
+        if (written) {
+            taken.increment();
+            log.debug("Balance snapshot of group={} at {}: users={}", groupId, cut, cents.size());
+        }
+        return written;
+    }
+
+    /**
+     * Every user's balance over the ledger entries created before asOf (ordered by user id, zeros omitted).
+     *
+     * @throws BadRequestException when the group's ledger was compacted past asOf, or asOf falls
+     *         before the end of an archived month holding the group's entries
+     */
+    public Map<UUID, BigDecimal> balancesAsOf(UUID groupId, OffsetDateTime asOf) {
+        snapshotRepository.compactionHorizon(groupId, asOf)
+                .filter(horizon -> !asOf.isAfter(horizon))
+                .ifPresent(horizon -> {
+                    throw new BadRequestException("Balances are not available as of " + asOf
+                            + ": the group's ledger was compacted up to " + horizon);
+                });
+        // an archived month is carried at its start: any time inside it would read the month's total
+        snapshotRepository.archiveHorizon(groupId)
+                .filter(asOf::isBefore)
+                .ifPresent(until -> {
+                    throw new BadRequestException("Balances are not available as of " + asOf
+                            + ": the group's ledger was archived up to " + until);
+                });
+        Map<UUID, BigDecimal> balances = new TreeMap<>();
+        centsAsOf(groupId, asOf).forEach((userId, c) -> {
+            if (c != 0L) balances.put(userId, MoneyUtils.fromCents(c));
+        });
+        return balances;
+    }
+
+    /**
+     * A user's whole-ledger sum from the group's latest snapshot plus the entries after it;
+     * empty when the group has no snapshot yet.
+     */
+    public Optional<BigDecimal> ledgerSum(UUID groupId, UUID userId) {
+        return snapshotRepository.latestCut(groupId, OffsetDateTime.now())
+                .map(cut -> {
+                    BigDecimal tail = snapshotRepository.userLedgerSince(groupId, userId, cut);
+                    return MoneyUtils.fromCents(snapshotRepository.userCents(groupId, cut, userId))
+                            .add(tail == null ? BigDecimal.ZERO : tail);
+                });
+    }
+
+    private Map<UUID, Long> centsAsOf(UUID groupId, OffsetDateTime asOf) {
+        Optional<OffsetDateTime> base = snapshotRepository.latestCut(groupId, asOf);
+        Map<UUID, Long> cents = base.map(cut -> snapshotRepository.rows(groupId, cut)).orElseGet(TreeMap::new);
+        if (base.isPresent() && base.get().isEqual(asOf)) return cents;
+        snapshotRepository.ledgerRange(groupId, base.orElse(null), asOf).forEach((userId, c) -> cents.merge(userId, c, Long::sum));
+        return cents;
+    }
+}
@@ -0,0 +1,190 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kleadingsolutions.expenseshare.config.BalanceStripeProperties;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.BalanceStripeRepository;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Striped balances for contended groups (app.balances.stripes).
+ *
+ * - Contention detection: {@link #beginWrite}/{@link #endWrite} count in-flight balance writes per
+ *   group on this node; after contended-samples writes that started with contended-writers or more
+ *   in flight, the group is flagged in striped_groups and its writers switch to the STRIPED strategy.
+ * - Striped writes add to one of N stripe rows per user, picked by the writing thread, so concurrent
+ *   writers of one group no longer queue on the same balance rows.
+ * - Reads: {@link #groupBalances}/{@link #userBalance} add pending stripes in SQL, flagged or not.
+ * - Folding: {@link #foldInto} moves all stripes of a group into balances in the caller's transaction;
+ *   {@link #compactQuietGroups} does it for groups whose stripes went quiet and unflags them. With
+ *   striping disabled it drains leftover stripes on its first run.
+ */
+@Component
+public class BalanceStripes {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceStripes.class);
+
+    private final BalanceStripeProperties properties;
+    private final BalanceStripeRepository stripeRepository;
+    private final BalanceRepository balanceRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate requiresNew;
+    private final Cache<UUID, Boolean> flagged;
+    private final Cache<UUID, Contention> contention;
+    private final Counter flags;
+    private final Counter folds;
+
+    public BalanceStripes(BalanceStripeProperties properties,
+                          BalanceStripeRepository stripeRepository,
+                          BalanceRepository balanceRepository,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.stripeRepository = stripeRepository;
+        this.balanceRepository = balanceRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.flagged = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(properties.flagCacheTtl())
+                .build();
+        this.contention = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterAccess(properties.quietPeriod())
+                .build();
+        this.flags = Counter.builder("expenseshare.balance.stripes.flagged")
+                .description("Groups switched to striped balance writes by the contention detector")
+                .register(meterRegistry);
+        this.folds = Counter.builder("expenseshare.balance.stripes.folds")
+                .description("Stripe sets folded back into balance rows")
+                .register(meterRegistry);
+    }
+
+    /**
+     * In-flight writers of one group on this node and the contended samples seen so far.
+     */
+    private static final class Contention {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger samples = new AtomicInteger();
+    }
+
+    public boolean isEnabled() {
+        return properties.enabled();
+    }
+
+    public boolean isStriped(UUID groupId) {
+        return properties.enabled() && flagged.get(groupId, stripeRepository::isFlagged);
+    }
+
+    /**
+     * Record the start of a balance write of the group; pair with {@link #endWrite} in a finally block.
+     */
+    public void beginWrite(UUID groupId) {
+        if (!properties.enabled()) return;
+        Contention c = contention.get(groupId, id -> new Contention());
+        if (c.inFlight.incrementAndGet() >= properties.contendedWriters()
+                && c.samples.incrementAndGet() == properties.contendedSamples()
+                && !isStriped(groupId)) {
+            flag(groupId);
+        }
+    }
+
+    public void endWrite(UUID groupId) {
+        if (!properties.enabled()) return;
+        Contention c = contention.getIfPresent(groupId);
+        if (c != null) c.inFlight.updateAndGet(n -> Math.max(0, n - 1));
+    }
+
+    /**
+     * Add the deltas to this thread's stripe. Missing balance rows are created (zero) so the group
+     * reads list every user; existing rows are not locked.
+     */
+    public void apply(UUID groupId, CentDeltas deltas, UUID actorId) {
+        balanceRepository.insertMissing(groupId, deltas, actorId);
+        stripeRepository.add(groupId, deltas, stripeOfCurrentThread());
+    }
+
+    /**
+     * Move every stripe of the group into its balance rows in the caller's transaction; concurrent
+     * striped writers of the same stripes wait until it ends.
+     *
+     * @return number of balance rows updated
+     */
+    public int foldInto(UUID groupId) {
+        Map<UUID, BigDecimal> pending = stripeRepository.drain(groupId);
+        if (pending.isEmpty()) return 0;
+        int updated = balanceRepository.applyDeltas(groupId, CentDeltas.of(pending), null);
+        folds.increment();
+        log.debug("Folded stripes of group={} into {} balance rows", groupId, updated);
+        return updated;
+    }
+
+    /**
+     * Balance of every user of the group, pending stripes included.
+     */
+    public Map<UUID, BigDecimal> groupBalances(UUID groupId) {
+        return stripeRepository.groupBalances(groupId);
+    }
+
+    /**
+     * Balance of one user, pending stripes included; empty when the user has no balance row.
+     */
+    public Optional<BigDecimal> userBalance(UUID groupId, UUID userId) {
+        return stripeRepository.userBalance(groupId, userId);
+    }
+
+    /**
+     * Fold and unflag groups whose stripes were not written for quiet-period (all groups with
+     * stripes when striping is disabled). One transaction per group.
+     */
+    @Scheduled(fixedDelayString = "${app.balances.stripes.compact-interval:PT1M}", initialDelayString = "${app.balances.stripes.compact-interval:PT1M}")
+    public void compactQuietGroups() {
+        Duration quiet = properties.enabled() ? properties.quietPeriod() : Duration.ZERO;
+        for (UUID groupId : stripeRepository.findQuietGroups(OffsetDateTime.now().minus(quiet))) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    foldInto(groupId);
+                    stripeRepository.unflag(groupId);
+                });
+                flagged.invalidate(groupId);
+                contention.invalidate(groupId);
+                log.info("Compacted stripes of quiet group {}", groupId);
+            } catch (RuntimeException e) {
+                log.warn("Compacting stripes of group {} failed, retrying next run: {}", groupId, e.getMessage());
+            }
+        }
+    }
+
+    private void flag(UUID groupId) {
+        // own transaction: the flag survives a rollback of the write that tripped it
+        requiresNew.executeWithoutResult(status -> stripeRepository.flag(groupId));
+        flagged.put(groupId, Boolean.TRUE);
+        flags.increment();
+        log.info("Group {} is contended, switching its balance writes to {} stripes", groupId, properties.stripes());
+    }
+
+    private int stripeOfCurrentThread() {
+        // spread sequential thread ids over the stripes
+        long mixed = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return Math.floorMod((int) (mixed >>> 32), properties.stripes());
+    }
+}
@@ -0,0 +1,33 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.dto.BulkImportResultDto;
+import com.kleadingsolutions.expenseshare.enums.BulkFormat;
+
+import java.io.InputStream;
+import java.util.UUID;
+
+public interface BulkExpenseService {
+    /**
+     * Stream-import expenses into a group. The body is read line by line and processed in chunks;
+     * each chunk is validated (membership checked once per chunk, every expense must sum to zero)
+     * and committed in its own transaction together with one balance update per affected user.
+     * A failing chunk is rolled back; chunks committed before it stay imported.
+     *
+     * With an import key, every committed chunk is recorded under it, so retrying the same body with
+     * the same key skips the chunks that already committed and resumes with the first one that did not.
+     * Reusing the key for different lines is a conflict. Without a key, committedThroughLine in the
+     * result (and in the error of a failed import) tells the client where to resume.
+     *
+     * NDJSON lines are CreateExpenseRequest objects (groupId may be omitted).
+     * CSV rows are: payerId,description,amount,currency,splits where splits is
+     * "userId:amount[:shareType]" entries separated by ';'. A header row is optional.
+     *
+     * @param groupId target group
+     * @param body    request body stream
+     * @param format  body format
+     * @param actorId   authenticated user performing the import (must be an ACTIVE member)
+     * @param importKey client key of this import (Idempotency-Key header), or null
+     * @return counts of imported rows, including those of skipped chunks
+     */
+    BulkImportResultDto importExpenses(UUID groupId, InputStream body, BulkFormat format, UUID actorId, String importKey);
+}
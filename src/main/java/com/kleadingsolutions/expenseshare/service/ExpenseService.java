@@ -1,8 +1,10 @@
 package com.kleadingsolutions.expenseshare.service;
 
 import com.kleadingsolutions.expenseshare.dto.CreateExpenseRequest;
+import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
 import com.kleadingsolutions.expenseshare.model.Expense;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface ExpenseService {
@@ -15,4 +17,13 @@ public interface ExpenseService {
      * @return created Expense
      */
     Expense createExpense(CreateExpenseRequest request, UUID actorId);
-}
\ No newline at end of file
+
+    /**
+     * Split breakdown of an expense, read from expense_splits or from the packed value on the expense.
+     *
+     * @param expenseId id of the expense
+     * @param actorId   the currently authenticated user's id; must be an active member of the expense's group
+     * @return the splits in the order they were submitted for packed expenses, unordered otherwise
+     */
+    List<ExpenseSplitDto> listSplits(UUID expenseId, UUID actorId);
+}
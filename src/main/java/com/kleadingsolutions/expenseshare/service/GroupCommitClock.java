@@ -0,0 +1,86 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-group commit counter of this node, used to keep in-memory derivations of a group's balances
+ * (projections, settle plans) from outliving a write.
+ *
+ * A balance write calls {@link #tick}: the group's counter moves in beforeCommit, i.e. before the
+ * write becomes visible. A reader takes a {@link #stamp} before reading the database and caches its
+ * result only while {@link #isCurrent} holds, so a result can never predate a write it is served after.
+ * Groups share counters by hash slot; a collision only costs an extra rebuild.
+ */
+@Component
+public class GroupCommitClock {
+
+    private static final int SLOTS = 1024;
+
+    private final AtomicLongArray epochs = new AtomicLongArray(SLOTS);
+    private final AtomicIntegerArray committing = new AtomicIntegerArray(SLOTS);
+
+    /**
+     * Count a write of the group that commits with the current transaction (immediately when none is active).
+     */
+    public void tick(UUID groupId) {
+        tick(groupId, null);
+    }
+
+    /**
+     * Same as {@link #tick(UUID)}, then run afterCommit once the transaction committed (not on rollback).
+     */
+    public void tick(UUID groupId, Runnable afterCommit) {
+        int slot = slot(groupId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            epochs.incrementAndGet(slot);
+            if (afterCommit != null) afterCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean counted;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                committing.incrementAndGet(slot);
+                epochs.incrementAndGet(slot);
+                counted = true;
+            }
+
+            @Override
+            public void afterCommit() {
+                if (afterCommit != null) afterCommit.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (counted) committing.decrementAndGet(slot);
+            }
+        });
+    }
+
+    /**
+     * Stamp to take before reading the group; negative while a write of the group is committing.
+     */
+    public long stamp(UUID groupId) {
+        int slot = slot(groupId);
+        long epoch = epochs.get(slot);
+        return committing.get(slot) == 0 ? epoch : -1L;
+    }
+
+    /**
+     * True when no write of the group started committing since the stamp was taken.
+     */
+    public boolean isCurrent(UUID groupId, long stamp) {
+        return stamp >= 0 && epochs.get(slot(groupId)) == stamp;
+    }
+
+    private static int slot(UUID groupId) {
+        return Math.floorMod(groupId.hashCode(), SLOTS);
+    }
+}
@@ -0,0 +1,104 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kleadingsolutions.expenseshare.config.MembershipCacheProperties;
+import com.kleadingsolutions.expenseshare.model.GroupMember;
+import com.kleadingsolutions.expenseshare.repository.GroupMemberRepository;
+import com.kleadingsolutions.expenseshare.repository.GroupRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable set of ACTIVE member ids per group, held in a bounded cache so membership checks are
+ * a primary-key read of the group's membership_version plus an O(1) lookup, instead of a members
+ * query and list scan per check.
+ *
+ * Writers that change membership call {@link #invalidateAfterCommit(UUID)}, which bumps
+ * groups.membership_version in their transaction and drops the local entry once it commits. Every
+ * read compares the cached set's version with the stored one and reloads on a mismatch, so a change
+ * committed through any node is seen by all of them; the set is read after the version, so a cached
+ * set is never older than the version it is tagged with. Hit/miss/eviction counts are published as the
+ * "group-membership" cache metrics.
+ */
+@Component
+public class GroupMembershipSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupMembershipSnapshot.class);
+
+    /** Version of a group that does not exist (yet). */
+    private static final long NO_GROUP = -1;
+
+    private final GroupMemberRepository groupMemberRepository;
+    private final GroupRepository groupRepository;
+    private final Cache<UUID, Members> activeMembers;
+
+    public GroupMembershipSnapshot(GroupMemberRepository groupMemberRepository,
+                                   GroupRepository groupRepository,
+                                   MembershipCacheProperties properties,
+                                   MeterRegistry meterRegistry) {
+        this.groupMemberRepository = groupMemberRepository;
+        this.groupRepository = groupRepository;
+        this.activeMembers = Caffeine.newBuilder()
+                .maximumSize(properties.maxGroups())
+                .expireAfterWrite(properties.expireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, activeMembers, "group-membership");
+    }
+
+    public Set<UUID> activeMembers(UUID groupId) {
+        long version = groupRepository.findMembershipVersion(groupId).orElse(NO_GROUP);
+        Members cached = activeMembers.getIfPresent(groupId);
+        if (cached != null && cached.version() == version) return cached.ids();
+        if (cached != null) {
+            log.debug("Membership snapshot of group {} at version {} but stored version is {}: reloading",
+                    groupId, cached.version(), version);
+        }
+        Members loaded = new Members(version, load(groupId));
+        activeMembers.put(groupId, loaded);
+        return loaded.ids();
+    }
+
+    public boolean isActiveMember(UUID groupId, UUID userId) {
+        return userId != null && activeMembers(groupId).contains(userId);
+    }
+
+    /**
+     * Bump the group's membership version in the current transaction (so other nodes reload once it
+     * commits) and drop the local set after commit (immediately when no transaction is active).
+     */
+    public void invalidateAfterCommit(UUID groupId) {
+        groupRepository.bumpMembershipVersion(groupId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            activeMembers.invalidate(groupId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                activeMembers.invalidate(groupId);
+                log.debug("Membership snapshot invalidated for group {}", groupId);
+            }
+        });
+    }
+
+    private Set<UUID> load(UUID groupId) {
+        return groupMemberRepository.findByGroupId(groupId).stream()
+                .filter(m -> "ACTIVE".equalsIgnoreCase(m.getStatus()))
+                .map(GroupMember::getUserId)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private record Members(long version, Set<UUID> ids) {
+    }
+}
@@ -3,7 +3,10 @@ package com.kleadingsolutions.expenseshare.service;
 import com.kleadingsolutions.expenseshare.dto.BalanceDto;
 import com.kleadingsolutions.expenseshare.dto.ExpenseDto;
 import com.kleadingsolutions.expenseshare.dto.GroupDto;
+import com.kleadingsolutions.expenseshare.dto.PairDebtDto;
+import com.kleadingsolutions.expenseshare.dto.SettlePlanDto;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -23,6 +26,33 @@ public interface GroupService {
 
     List<BalanceDto> listBalances(UUID groupId);
 
+    /**
+     * Balances over the ledger entries created before asOf, read from the nearest earlier balance
+     * snapshot plus the ledger range after it. Users with a zero balance at that time are omitted.
+     *
+     * @param groupId id of the group; the caller must be an active member
+     * @param asOf    point in time (exclusive)
+     * @throws com.kleadingsolutions.expenseshare.exception.BadRequestException when asOf is at or before
+     *         the horizon the group's ledger was compacted to
+     */
+    List<BalanceDto> listBalancesAsOf(UUID groupId, OffsetDateTime asOf);
+
+    /**
+     * Settle-up plan with the fewest transfers found for the group's current balances
+     * (exact for small groups, greedy largest-debtor/largest-creditor otherwise).
+     *
+     * @param groupId id of the group; the caller must be an active member
+     */
+    SettlePlanDto settlePlan(UUID groupId);
+
+    /**
+     * Outstanding pairwise debts between a user and each of their counterparties in the group.
+     *
+     * @param groupId id of the group; the caller must be an active member
+     * @param userId  user whose debts are listed; the caller when null
+     */
+    List<PairDebtDto> listDebts(UUID groupId, UUID userId);
+
     /**
      * Remove the group and all group-scoped data (expenses, ledger entries, balances).
      * This operation requires administrative privileges (controller should enforce).
@@ -0,0 +1,182 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.GroupWriterProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Per-group single-writer mailbox. Each group id hashes onto one of a fixed set of writer threads,
+ * so all writes of a group are applied by one thread in submission order and never wait on each
+ * other's balance row locks. A writer drains up to maxBatch queued operations and commits them in
+ * one transaction; if that batch fails, it is rolled back and every operation is retried in its own
+ * transaction so one bad request cannot fail its neighbours. Anything an operation throws, Errors
+ * included, fails only that operation's future; the writer thread keeps running.
+ *
+ * When disabled (default) operations run inline on the calling thread.
+ */
+@Component
+public class GroupWriteExecutor implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupWriteExecutor.class);
+
+    private final GroupWriterProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Writer[] writers;
+    private final DistributionSummary batchSize;
+    private final Counter batchFallbacks;
+
+    public GroupWriteExecutor(GroupWriterProperties properties,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = DistributionSummary.builder("expenseshare.group_writer.batch.size")
+                .description("Operations committed per writer transaction")
+                .register(meterRegistry);
+        this.batchFallbacks = Counter.builder("expenseshare.group_writer.batch.fallbacks")
+                .description("Batches rolled back and replayed one operation per transaction")
+                .register(meterRegistry);
+
+        if (!properties.enabled()) {
+            this.writers = new Writer[0];
+            return;
+        }
+        this.writers = new Writer[properties.threads()];
+        for (int i = 0; i < writers.length; i++) {
+            Writer w = new Writer(i, new LinkedBlockingQueue<>(properties.queueCapacity()));
+            Gauge.builder("expenseshare.group_writer.queue.depth", w.queue, BlockingQueue::size)
+                    .tag("writer", String.valueOf(i))
+                    .register(meterRegistry);
+            writers[i] = w;
+            w.thread.start();
+        }
+        log.info("Group single-writer mode enabled: threads={} maxBatch={} queueCapacity={}",
+                properties.threads(), properties.maxBatch(), properties.queueCapacity());
+    }
+
+    public boolean isEnabled() {
+        return writers.length > 0;
+    }
+
+    /**
+     * Submit a write for a group. The operation must be safe to run inside a transaction shared
+     * with other operations of the same group (service methods with REQUIRED propagation are).
+     */
+    public <T> CompletableFuture<T> submit(UUID groupId, Supplier<T> operation) {
+        if (!isEnabled() || groupId == null) {
+            try {
+                return CompletableFuture.completedFuture(operation.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        Task<T> task = new Task<>(operation, new CompletableFuture<>());
+        Writer w = writers[Math.floorMod(groupId.hashCode(), writers.length)];
+        if (!w.queue.offer(task)) {
+            log.warn("Writer {} queue full ({}), rejecting write for group {}", w.index, properties.queueCapacity(), groupId);
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Write queue is full, retry later"));
+        }
+        return task.future;
+    }
+
+    @Override
+    public void destroy() {
+        for (Writer w : writers) {
+            w.thread.interrupt();
+        }
+        for (Writer w : writers) {
+            List<Task<?>> pending = new ArrayList<>();
+            w.queue.drainTo(pending);
+            pending.forEach(t -> t.future.completeExceptionally(new RejectedExecutionException("Application is shutting down")));
+        }
+    }
+
+    private void runBatch(List<Task<?>> batch) {
+        batchSize.record(batch.size());
+        if (batch.size() == 1) {
+            runAlone(batch.get(0));
+            return;
+        }
+        List<Object> results;
+        try {
+            results = transactionTemplate.execute(status -> {
+                List<Object> out = new ArrayList<>(batch.size());
+                for (Task<?> t : batch) out.add(t.operation.get());
+                return out;
+            });
+        } catch (Throwable e) {
+            batchFallbacks.increment();
+            log.debug("Batch of {} rolled back ({}); replaying individually", batch.size(), e.toString());
+            batch.forEach(this::runAlone);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+    }
+
+    private <T> void runAlone(Task<T> task) {
+        try {
+            task.future.complete(transactionTemplate.execute(status -> task.operation.get()));
+        } catch (Throwable e) {
+            task.future.completeExceptionally(e);
+        }
+    }
+
+    private record Task<T>(Supplier<T> operation, CompletableFuture<T> future) {
+        @SuppressWarnings("unchecked")
+        void complete(Object result) {
+            future.complete((T) result);
+        }
+    }
+
+    private final class Writer implements Runnable {
+        private final int index;
+        private final BlockingQueue<Task<?>> queue;
+        private final Thread thread;
+
+        private Writer(int index, BlockingQueue<Task<?>> queue) {
+            this.index = index;
+            this.queue = queue;
+            this.thread = new Thread(this, "group-writer-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Task<?>> batch = new ArrayList<>(properties.maxBatch());
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, properties.maxBatch() - 1);
+                    runBatch(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Throwable e) {
+                    // never let the writer die; fail whatever was in flight
+                    log.error("Group writer {} failed a batch", index, e);
+                    batch.forEach(t -> t.future.completeExceptionally(e));
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kleadingsolutions.expenseshare.config.IdempotencyProperties;
+import com.kleadingsolutions.expenseshare.exception.ConflictException;
+import com.kleadingsolutions.expenseshare.repository.IdempotencyStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Idempotent execution of client-retried writes.
+ *
+ * The key is claimed and the response stored in the transaction of the write itself, so either both
+ * the write and its key commit or neither does. A duplicate arriving while the first execution is
+ * still open blocks on the key's primary key and, once the first commits, replays its response
+ * without running the write (and without touching balances). If the first rolls back, the duplicate
+ * claims the key and executes normally.
+ *
+ * Metric expenseshare.idempotency.requests{outcome}: executed, replayed (served by the filter from a
+ * committed key), replayed_after_wait (duplicate that waited on an in-flight execution), rejected.
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+    private static final String METRIC = "expenseshare.idempotency.requests";
+
+    private final IdempotencyStore store;
+    private final IdempotencyProperties properties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    public IdempotencyService(IdempotencyStore store, IdempotencyProperties properties,
+                              ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.store = store;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * A keyed request: the authenticated principal the key is scoped to, the client key and a hash of
+     * the request body (the same key must not be reused for a different request).
+     */
+    public record Request(String principal, String key, String requestHash) {
+    }
+
+    public boolean isEnabled() {
+        return properties.enabled();
+    }
+
+    /**
+     * Committed response for a key, if any. Used by the filter to answer retries before any write
+     * work (or write queueing) happens.
+     */
+    @Transactional(readOnly = true)
+    public Optional<String> findCompletedResponse(Request request) {
+        Optional<IdempotencyStore.StoredKey> stored = store.find(request.principal(), request.key(), OffsetDateTime.now());
+        if (stored.isEmpty() || stored.get().responseBody() == null) return Optional.empty();
+        checkSameRequest(request, stored.get());
+        count("replayed");
+        return Optional.of(stored.get().responseBody());
+    }
+
+    /**
+     * Run the write once per key. A null request (no header) runs the operation unguarded.
+     */
+    @Transactional
+    public <T> T execute(Request request, Class<T> responseType, Supplier<T> operation) {
+        if (request == null || !properties.enabled()) {
+            return operation.get();
+        }
+        OffsetDateTime now = OffsetDateTime.now();
+        if (store.claim(request.principal(), request.key(), request.requestHash(), now, now.plus(properties.ttl()))) {
+            T result = operation.get();
+            store.complete(request.principal(), request.key(), toJson(result));
+            count("executed");
+            return result;
+        }
+
+        // Key already committed (or committed by the execution we were blocked on): replay it
+        IdempotencyStore.StoredKey stored = store.find(request.principal(), request.key(), now)
+                .orElseThrow(() -> reject("Idempotency-Key is being processed, retry later"));
+        checkSameRequest(request, stored);
+        if (stored.responseBody() == null) {
+            throw reject("Idempotency-Key is being processed, retry later");
+        }
+        count("replayed_after_wait");
+        log.debug("Replaying stored response for idempotency key {} of {}", request.key(), request.principal());
+        try {
+            return objectMapper.readValue(stored.responseBody(), responseType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored idempotent response is not readable as " + responseType.getSimpleName(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.purge-interval:PT1H}", initialDelayString = "${app.idempotency.purge-interval:PT1H}")
+    @Transactional
+    public void purgeExpired() {
+        int purged = store.purgeExpired(OffsetDateTime.now());
+        if (purged > 0) log.info("Purged {} expired idempotency keys", purged);
+    }
+
+    private void checkSameRequest(Request request, IdempotencyStore.StoredKey stored) {
+        if (!stored.requestHash().equals(request.requestHash())) {
+            throw reject("Idempotency-Key was already used for a different request");
+        }
+    }
+
+    private ConflictException reject(String message) {
+        count("rejected");
+        return new ConflictException(message);
+    }
+
+    private void count(String outcome) {
+        meterRegistry.counter(METRIC, "outcome", outcome).increment();
+    }
+
+    private String toJson(Object result) {
+        try {
+            return objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response is not serializable for idempotent replay", e);
+        }
+    }
+}
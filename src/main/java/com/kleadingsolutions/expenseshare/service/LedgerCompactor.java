@@ -0,0 +1,178 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.LedgerCompactionProperties;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.BalanceSnapshotRepository;
+import com.kleadingsolutions.expenseshare.repository.LedgerCompactionRepository;
+import com.kleadingsolutions.expenseshare.util.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Ledger compaction (app.ledger.compaction): bounds the live ledger of old groups.
+ *
+ * - A pass visits every group in id order. A group with at least min-entries compactable entries
+ *   (created before the horizon and already in its balances) has them copied to ledger_entries_archive,
+ *   deleted, and replaced by one COMPACTED entry per (user, currency) dated at the horizon, all in one
+ *   transaction under the group lock. Every ledger sum keeps its value, so balances never change.
+ * - Snapshots of the group cut at or before the horizon are dropped: they counted only part of what the
+ *   summary entry now holds. Later snapshots and the ranges after them still add up.
+ * - Progress is saved in ledger_compaction_runs after every page of groups; an interrupted pass resumes
+ *   after the last saved group at the same horizon. The horizon moves once per UTC day.
+ * - Groups are checked at no more than groups-per-second.
+ */
+@Component
+public class LedgerCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerCompactor.class);
+    private static final String RUN_ID = "default";
+    private static final UUID NIL = new UUID(0L, 0L);
+
+    private final LedgerCompactionProperties properties;
+    private final LedgerCompactionRepository compactionRepository;
+    private final BalanceRepository balanceRepository;
+    private final BalanceSnapshotRepository snapshotRepository;
+    private final TransactionTemplate readOnly;
+    private final TransactionTemplate requiresNew;
+    private final Counter groupsCompacted;
+    private final Counter rowsArchived;
+    private final Timer runs;
+
+    public LedgerCompactor(LedgerCompactionProperties properties,
+                           LedgerCompactionRepository compactionRepository,
+                           BalanceRepository balanceRepository,
+                           BalanceSnapshotRepository snapshotRepository,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.compactionRepository = compactionRepository;
+        this.balanceRepository = balanceRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.groupsCompacted = Counter.builder("expenseshare.ledger.compaction.groups")
+                .description("Groups whose old ledger entries were compacted")
+                .register(meterRegistry);
+        this.rowsArchived = Counter.builder("expenseshare.ledger.compaction.rows")
+                .description("Ledger entries moved to ledger_entries_archive")
+                .register(meterRegistry);
+        this.runs = Timer.builder("expenseshare.ledger.compaction.run")
+                .description("Wall time of one compaction pass on this node")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.ledger.compaction.interval:PT6H}", initialDelayString = "${app.ledger.compaction.interval:PT6H}")
+    public void scheduledCompaction() {
+        if (!properties.enabled()) return;
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.warn("Ledger compaction failed, resuming next run: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Outcome of a pass (totals include a resumed pass's earlier attempts).
+     */
+    public record CompactionResult(OffsetDateTime horizon, boolean resumed, long groupsCompacted, long rowsArchived) {
+    }
+
+    OffsetDateTime horizonAt(long nowMillis) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(nowMillis).minus(properties.horizon()), ZoneOffset.UTC)
+                .truncatedTo(ChronoUnit.DAYS);
+    }
+
+    /**
+     * Run (or resume) the pass at the current horizon; a no-op when it already completed.
+     */
+    public CompactionResult compact() {
+        OffsetDateTime horizon = horizonAt(System.currentTimeMillis());
+        Optional<LedgerCompactionRepository.Run> saved = readOnly.execute(s -> compactionRepository.findRun(RUN_ID));
+        LedgerCompactionRepository.Run run = saved == null ? null : saved.orElse(null);
+        boolean sameHorizon = run != null && run.horizon().isEqual(horizon);
+        if (sameHorizon && run.completed()) {
+            return new CompactionResult(horizon, false, run.groups(), run.rows());
+        }
+        boolean resumed = sameHorizon;
+        long groups = resumed ? run.groups() : 0L;
+        long rows = resumed ? run.rows() : 0L;
+        UUID after = resumed && run.lastGroupId() != null ? run.lastGroupId() : NIL;
+        if (!resumed) {
+            requiresNew.executeWithoutResult(s -> compactionRepository.startRun(RUN_ID, horizon));
+        } else {
+            log.info("Ledger compaction at {}: resuming after group {}", horizon, after);
+        }
+
+        Timer.Sample sample = Timer.start();
+        RateLimiter pace = new RateLimiter(properties.groupsPerSecond());
+        while (true) {
+            UUID from = after;
+            List<UUID> page = readOnly.execute(s -> compactionRepository.groupsAfter(from, properties.batchSize()));
+            if (page == null || page.isEmpty()) break;
+            for (UUID groupId : page) {
+                pace.acquire();
+                try {
+                    Integer moved = requiresNew.execute(s -> compactGroup(groupId, horizon));
+                    if (moved != null && moved > 0) {
+                        groups++;
+                        rows += moved;
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Ledger compaction of group={} failed: {}", groupId, e.getMessage());
+                }
+            }
+            after = page.get(page.size() - 1);
+            UUID last = after;
+            long g = groups;
+            long r = rows;
+            requiresNew.executeWithoutResult(s -> compactionRepository.saveRun(RUN_ID, last, g, r));
+            if (page.size() < properties.batchSize()) break;
+        }
+        requiresNew.executeWithoutResult(s -> compactionRepository.completeRun(RUN_ID));
+        long ms = sample.stop(runs) / 1_000_000;
+        log.info("Ledger compaction at {}: groups compacted={} entries archived={} in {} ms", horizon, groups, rows, ms);
+        return new CompactionResult(horizon, resumed, groups, rows);
+    }
+
+    /**
+     * Compact one group if it has enough compactable entries. Call inside a transaction.
+     *
+     * @return entries moved to the archive (0 when the group was left as is)
+     */
+    public int compactGroup(UUID groupId, OffsetDateTime horizon) {
+        balanceRepository.lockGroup(groupId);
+        long foldedSeq = compactionRepository.foldedSeq(groupId);
+        if (compactionRepository.countCompactable(groupId, horizon, foldedSeq) < properties.minEntries()) return 0;
+        List<LedgerCompactionRepository.Total> totals = compactionRepository.totals(groupId, horizon, foldedSeq);
+        int archived = compactionRepository.archive(groupId, horizon, foldedSeq);
+        int deleted = compactionRepository.delete(groupId, horizon, foldedSeq);
+        if (archived != deleted) {
+            throw new IllegalStateException("Ledger compaction of group " + groupId + " archived " + archived
+                    + " entries but deleted " + deleted);
+        }
+        int summaries = compactionRepository.insertSummaries(groupId, horizon, totals);
+        snapshotRepository.deleteUpTo(groupId, horizon);
+        groupsCompacted.increment();
+        rowsArchived.increment(deleted);
+        log.debug("Compacted group={} before {}: {} entries into {}", groupId, horizon, deleted, summaries);
+        return deleted;
+    }
+}
@@ -0,0 +1,135 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.datasource.ReadYourWrites;
+import com.kleadingsolutions.expenseshare.model.LedgerEntry;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.LedgerHeadRepository;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Lazy balance mode (app.balances.mode=LAZY).
+ *
+ * - Writers call {@link #assignSequence} instead of updating balances. On PostgreSQL they hold a
+ *   shared advisory lock of the group until commit and take their sequence range from the head row
+ *   in a short transaction of its own, so concurrent writers of a group do not wait for each other.
+ *   Folds take the exclusive lock, which waits for every writer that may hold a sequence up to
+ *   last_seq, so "everything up to last_seq" is a stable cut (a rolled-back writer leaves a gap,
+ *   which sums to nothing). On H2 the head row is allocated and stays locked in the writer's own
+ *   transaction instead.
+ * - Readers call {@link #fold} before reading balances: the ledger tail after the folded sequence
+ *   is summed per user and added to the balance rows in one upsert.
+ *
+ * Folding runs regardless of the configured mode, so switching back to EAGER never strands a tail.
+ */
+@Component
+public class LedgerFolder {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerFolder.class);
+
+    private final BalanceProperties properties;
+    private final LedgerHeadRepository ledgerHeadRepository;
+    private final BalanceRepository balanceRepository;
+    private final TransactionTemplate requiresNew;
+    private final Counter folds;
+    private final DistributionSummary foldedUsers;
+
+    public LedgerFolder(BalanceProperties properties,
+                        LedgerHeadRepository ledgerHeadRepository,
+                        BalanceRepository balanceRepository,
+                        PlatformTransactionManager transactionManager,
+                        MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.ledgerHeadRepository = ledgerHeadRepository;
+        this.balanceRepository = balanceRepository;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.folds = Counter.builder("expenseshare.ledger.folds")
+                .description("Ledger tails folded into balances")
+                .register(meterRegistry);
+        this.foldedUsers = DistributionSummary.builder("expenseshare.ledger.fold.users")
+                .description("Balance rows updated per fold")
+                .register(meterRegistry);
+    }
+
+    public boolean isLazy() {
+        return properties.isLazy();
+    }
+
+    /**
+     * Give the entries consecutive sequences of their group. Call as late as possible in the write
+     * transaction: folds of the group wait until it commits.
+     */
+    public void assignSequence(UUID groupId, List<LedgerEntry> entries) {
+        if (entries.isEmpty()) return;
+        long last;
+        if (ledgerHeadRepository.lockShared(groupId)) {
+            Long allocated = requiresNew.execute(status -> ledgerHeadRepository.allocate(groupId, entries.size()));
+            last = Objects.requireNonNull(allocated);
+        } else {
+            last = ledgerHeadRepository.allocate(groupId, entries.size());
+        }
+        long seq = last - entries.size();
+        for (LedgerEntry e : entries) {
+            e.setSeq(++seq);
+        }
+    }
+
+    /**
+     * Fold the group's unapplied ledger tail into balances in its own transaction, so a read-only
+     * caller sees the folded rows. Costs one primary-key lookup when nothing is pending.
+     * Must not be called while holding balance or head locks of the group.
+     *
+     * @return number of balance rows updated
+     */
+    public int fold(UUID groupId) {
+        Optional<LedgerHeadRepository.Head> head = ledgerHeadRepository.find(groupId);
+        if (head.isEmpty() || !head.get().isBehind()) return 0;
+        Integer updated = requiresNew.execute(status -> {
+            int n = ledgerHeadRepository.lock(groupId).map(h -> foldLocked(groupId, h)).orElse(0);
+            // readers fold too: only a fold that moved balances makes the caller's reads stick to the primary
+            if (n == 0) ReadYourWrites.ignoreCurrentTransaction();
+            return n;
+        });
+        return updated == null ? 0 : updated;
+    }
+
+    /**
+     * Lock the group's head row in the caller's transaction and fold the tail.
+     *
+     * @return the group's last sequence (0 when it never had a lazy write); held stable until commit
+     */
+    public long lockAndFold(UUID groupId) {
+        return ledgerHeadRepository.lock(groupId)
+                .map(h -> {
+                    foldLocked(groupId, h);
+                    return h.lastSeq();
+                })
+                .orElse(0L);
+    }
+
+    private int foldLocked(UUID groupId, LedgerHeadRepository.Head head) {
+        if (!head.isBehind()) return 0;
+        CentDeltas tail = ledgerHeadRepository.unfoldedDeltas(groupId, head.foldedSeq(), head.lastSeq());
+        int updated = balanceRepository.applyFoldedDeltas(groupId, tail, head.lastSeq());
+        ledgerHeadRepository.markFolded(groupId, head.lastSeq());
+        folds.increment();
+        foldedUsers.record(updated);
+        log.debug("Folded ledger of group={} seq {}..{} into {} balance rows", groupId, head.foldedSeq(), head.lastSeq(), updated);
+        return updated;
+    }
+}
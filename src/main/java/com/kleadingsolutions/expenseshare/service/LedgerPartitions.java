@@ -0,0 +1,141 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.LedgerPartitionProperties;
+import com.kleadingsolutions.expenseshare.repository.DatabaseVendor;
+import com.kleadingsolutions.expenseshare.repository.LedgerPartitionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Monthly time partitions of ledger_entries (app.ledger.partitions, PostgreSQL only).
+ *
+ * - Every hash partition gets a partition for each of the next months-ahead months, so new entries
+ *   never land in its DEFAULT partition. Entries written before time partitioning was enabled stay there.
+ * - With archive-after-months set, months ending before the horizon are detached and moved to the
+ *   archive schema. In the same transaction each (group, user, currency) total of the month is written
+ *   back as one COMPACTED entry dated at the month's start, so every ledger sum, drift check and
+ *   rebuild still adds up to the same balances; snapshots cut inside the month are dropped, as the
+ *   carry entry would count differently against them. The month's end is recorded as the archive
+ *   horizon of its groups: as-of balances before it are refused. A month holding unfolded lazy entries is skipped.
+ * Each partition is created or archived in its own transaction; a failure only skips that partition.
+ */
+@Component
+public class LedgerPartitions {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerPartitions.class);
+
+    private final LedgerPartitionProperties properties;
+    private final LedgerPartitionRepository partitionRepository;
+    private final DatabaseVendor databaseVendor;
+    private final TransactionTemplate requiresNew;
+    private final Counter created;
+    private final Counter archived;
+    private final Counter skipped;
+
+    public LedgerPartitions(LedgerPartitionProperties properties,
+                            LedgerPartitionRepository partitionRepository,
+                            DatabaseVendor databaseVendor,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.partitionRepository = partitionRepository;
+        this.databaseVendor = databaseVendor;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.created = Counter.builder("expenseshare.ledger.partitions.created")
+                .description("Monthly ledger partitions created")
+                .register(meterRegistry);
+        this.archived = Counter.builder("expenseshare.ledger.partitions.archived")
+                .description("Monthly ledger partitions detached into the archive schema")
+                .register(meterRegistry);
+        this.skipped = Counter.builder("expenseshare.ledger.partitions.archive.skipped")
+                .description("Archivable months left attached because they hold unfolded entries")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.ledger.partitions.poll-interval:PT1H}", initialDelayString = "${app.ledger.partitions.poll-interval:PT1H}")
+    public void scheduledMaintenance() {
+        if (!properties.enabled() || !databaseVendor.isPostgres()) return;
+        try {
+            maintain(YearMonth.now(ZoneOffset.UTC));
+        } catch (RuntimeException e) {
+            log.warn("Ledger partition maintenance failed, retrying next run: {}", e.getMessage());
+        }
+    }
+
+    public record MaintenanceResult(int created, int archived, int skipped) {
+    }
+
+    /**
+     * Create the partitions ahead of current and archive the ones past the horizon.
+     */
+    public MaintenanceResult maintain(YearMonth current) {
+        int made = 0;
+        int moved = 0;
+        int left = 0;
+        List<String> hashPartitions = partitionRepository.hashPartitions();
+        YearMonth horizon = current.minusMonths(properties.archiveAfterMonths());
+        for (String partition : hashPartitions) {
+            TreeSet<YearMonth> months = partitionRepository.months(partition);
+            for (int i = 1; i <= properties.monthsAhead(); i++) {
+                YearMonth month = current.plusMonths(i);
+                if (months.contains(month)) continue;
+                try {
+                    requiresNew.executeWithoutResult(s -> partitionRepository.createMonth(partition, month));
+                    created.increment();
+                    made++;
+                } catch (RuntimeException e) {
+                    log.warn("Creating ledger partition {} {} failed: {}", partition, month, e.getMessage());
+                }
+            }
+            if (properties.archiveAfterMonths() == 0) continue;
+            for (YearMonth month : months.headSet(horizon, false)) {
+                try {
+                    if (Boolean.TRUE.equals(requiresNew.execute(s -> archive(partition, month)))) {
+                        archived.increment();
+                        moved++;
+                    } else {
+                        skipped.increment();
+                        left++;
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Archiving ledger partition {} {} failed: {}", partition, month, e.getMessage());
+                }
+            }
+        }
+        log.info("Ledger partitions: created={} archived={} skipped={} across {} hash partitions",
+                made, moved, left, hashPartitions.size());
+        return new MaintenanceResult(made, moved, left);
+    }
+
+    /**
+     * Detach one month into the archive schema, leaving its totals behind as COMPACTED entries.
+     * Call inside a transaction.
+     *
+     * @return false when the month still holds entries the balances do not contain yet
+     */
+    public boolean archive(String hashPartition, YearMonth month) {
+        if (partitionRepository.hasUnfolded(hashPartition, month)) return false;
+        List<LedgerPartitionRepository.Total> totals = partitionRepository.totals(hashPartition, month);
+        partitionRepository.detach(hashPartition, month);
+        int carries = partitionRepository.insertCarries(month, totals);
+        int dropped = partitionRepository.deleteSnapshotsInside(hashPartition, month);
+        partitionRepository.recordArchiveHorizon(hashPartition, month);
+        partitionRepository.moveToSchema(hashPartition, month, properties.archiveSchema());
+        log.info("Archived ledger partition {} {}: carry entries={} snapshots dropped={}",
+                hashPartition, month, carries, dropped);
+        return true;
+    }
+}
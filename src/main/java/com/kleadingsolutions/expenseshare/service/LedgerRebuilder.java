@@ -0,0 +1,355 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.LedgerRebuildProperties;
+import com.kleadingsolutions.expenseshare.repository.LedgerRebuildRepository;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Offline rebuild of every balance row from the ledger (app.ledger-rebuild, "rebuild" profile).
+ *
+ * - The ledger is streamed once in group id order through a server-side cursor; the reading thread
+ *   only cuts it into batches of whole groups (about batch-rows entries each).
+ * - Batches run on a fork-join pool of parallelism workers: each folds its groups' entries into
+ *   per-user totals, reads the groups' balance rows and stripes in one statement and compares.
+ *   A write run overwrites the rows that differ with batched upserts and drops the groups' stripes
+ *   and lazy ledger tail in one transaction per batch; a dry run only reports the drift.
+ * - Batches finish out of order; the checkpoint (ledger_rebuild_checkpoints) advances to the last
+ *   group of the longest finished prefix, so a run with the same run-id resumes after it.
+ * Writers must be stopped: balance writes racing the rebuild are overwritten.
+ */
+@Component
+public class LedgerRebuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerRebuilder.class);
+
+    private final LedgerRebuildProperties properties;
+    private final LedgerRebuildRepository rebuildRepository;
+    private final TransactionTemplate readOnly;
+    private final TransactionTemplate readWrite;
+
+    public LedgerRebuilder(LedgerRebuildProperties properties,
+                           LedgerRebuildRepository rebuildRepository,
+                           PlatformTransactionManager transactionManager) {
+        this.properties = properties;
+        this.rebuildRepository = rebuildRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.readWrite = new TransactionTemplate(transactionManager);
+        this.readWrite.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Outcome of a run (totals include the groups of a resumed run's earlier attempts).
+     * @param driftRows  balances that differed from the ledger (balance row plus stripes)
+     * @param driftTotal sum of the absolute differences
+     * @param rowsWritten balance rows overwritten (0 in a dry run)
+     * @param orphanRows non-zero balance rows of users without ledger entries in their group
+     */
+    public record RebuildResult(boolean dryRun, boolean resumed, long ledgerRows, long groups, long driftRows,
+                                BigDecimal driftTotal, long rowsWritten, long orphanRows, Duration elapsed) {
+    }
+
+    public RebuildResult rebuild() {
+        long start = System.nanoTime();
+        boolean dryRun = properties.dryRun();
+        Run run = new Run(dryRun);
+        if (!dryRun) {
+            Optional<LedgerRebuildRepository.Checkpoint> checkpoint =
+                    readOnly.execute(s -> rebuildRepository.findCheckpoint(properties.runId()));
+            if (properties.resume() && checkpoint != null && checkpoint.isPresent() && !checkpoint.get().completed()) {
+                run.resumeFrom(checkpoint.get());
+                log.info("Ledger rebuild {}: resuming after group {} ({} groups, {} ledger rows done)",
+                        properties.runId(), run.lastGroupId, run.groups, run.ledgerRows);
+            } else {
+                readWrite.executeWithoutResult(s -> rebuildRepository.startCheckpoint(properties.runId()));
+            }
+        }
+        log.info("Ledger rebuild {}: starting ({}, {} workers, batches of ~{} ledger rows)",
+                properties.runId(), dryRun ? "dry run" : "write", properties.workers(), properties.batchRows());
+
+        int workers = properties.workers();
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        Semaphore inFlight = new Semaphore(workers * 2);
+        Reader reader = new Reader(run, pool, inFlight, start);
+        UUID after = run.lastGroupId;
+        try {
+            readOnly.executeWithoutResult(s -> rebuildRepository.streamLedger(after, properties.fetchSize(), reader::row));
+            reader.flush();
+        } catch (StopException e) {
+            // a batch failed; the cause is reported below
+        } finally {
+            inFlight.acquireUninterruptibly(workers * 2);
+            pool.shutdown();
+            awaitTermination(pool);
+        }
+        if (run.failure.get() != null) {
+            throw new IllegalStateException("Ledger rebuild " + properties.runId() + " stopped after group " + run.lastGroupId
+                    + "; rerun to resume", run.failure.get());
+        }
+
+        long orphans;
+        if (dryRun) {
+            Long count = readOnly.execute(s -> rebuildRepository.countOrphans());
+            orphans = count == null ? 0L : count;
+        } else {
+            Integer zeroed = readWrite.execute(s -> {
+                int rows = rebuildRepository.zeroOrphans();
+                rebuildRepository.completeCheckpoint(properties.runId());
+                return rows;
+            });
+            orphans = zeroed == null ? 0L : zeroed;
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        RebuildResult result = new RebuildResult(dryRun, run.resumed, run.ledgerRows, run.groups, run.driftRows.get(),
+                MoneyUtils.fromCents(run.driftCents.get()), run.rowsWritten.get(), orphans, elapsed);
+        log.info("Ledger rebuild {} finished ({}): ledger_rows={} groups={} drift_rows={} total_drift={} rows_written={} orphan_rows={} in {} s",
+                properties.runId(), dryRun ? "dry run" : "write", result.ledgerRows(), result.groups(), result.driftRows(),
+                result.driftTotal(), result.rowsWritten(), result.orphanRows(), elapsed.toSeconds());
+        return result;
+    }
+
+    private static void awaitTermination(ForkJoinPool pool) {
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ledger entries of one group as streamed (one slot per entry, users repeat).
+     */
+    private record GroupLedger(UUID groupId, UUID[] users, long[] cents, int size) {
+    }
+
+    private record Batch(long index, List<GroupLedger> groups, long ledgerRows) {
+
+        UUID lastGroupId() {
+            return groups.get(groups.size() - 1).groupId();
+        }
+    }
+
+    /**
+     * Runs on the streaming thread: cuts the ledger into batches of whole groups and hands them to the pool.
+     */
+    private final class Reader {
+        private final Run run;
+        private final ForkJoinPool pool;
+        private final Semaphore inFlight;
+        private final long start;
+        private final long progressNanos = properties.progressInterval().toNanos();
+        private long lastProgress = System.nanoTime();
+        private long streamed;
+        private long batches;
+
+        private UUID groupId;
+        private UUID[] users = new UUID[16];
+        private long[] cents = new long[16];
+        private int size;
+        private List<GroupLedger> batch = new ArrayList<>();
+        private long batchRows;
+
+        Reader(Run run, ForkJoinPool pool, Semaphore inFlight, long start) {
+            this.run = run;
+            this.pool = pool;
+            this.inFlight = inFlight;
+            this.start = start;
+        }
+
+        void row(UUID rowGroupId, UUID userId, long amount) {
+            if (!rowGroupId.equals(groupId)) {
+                closeGroup();
+                groupId = rowGroupId;
+            }
+            if (size == users.length) {
+                users = Arrays.copyOf(users, size * 2);
+                cents = Arrays.copyOf(cents, size * 2);
+            }
+            users[size] = userId;
+            cents[size] = amount;
+            size++;
+            streamed++;
+            if (System.nanoTime() - lastProgress >= progressNanos) {
+                lastProgress = System.nanoTime();
+                double seconds = (lastProgress - start) / 1e9;
+                log.info("Ledger rebuild {}: streamed={} ({} rows/s) batches={} drift_rows={} rows_written={} checkpoint={}",
+                        properties.runId(), streamed, String.format("%.0f", streamed / Math.max(seconds, 1e-3)), batches,
+                        run.driftRows.get(), run.rowsWritten.get(), run.lastGroupId);
+            }
+        }
+
+        void flush() {
+            closeGroup();
+            submit();
+        }
+
+        private void closeGroup() {
+            if (size == 0) return;
+            batch.add(new GroupLedger(groupId, Arrays.copyOf(users, size), Arrays.copyOf(cents, size), size));
+            batchRows += size;
+            size = 0;
+            if (batchRows >= properties.batchRows() || batch.size() >= LedgerRebuildRepository.MAX_GROUPS) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            if (batch.isEmpty()) return;
+            Batch b = new Batch(batches++, batch, batchRows);
+            batch = new ArrayList<>();
+            batchRows = 0;
+            inFlight.acquireUninterruptibly();
+            if (run.failure.get() != null) {
+                inFlight.release();
+                throw new StopException();
+            }
+            pool.execute(() -> {
+                try {
+                    process(b, run);
+                    run.completed(b);
+                } catch (RuntimeException e) {
+                    log.error("Ledger rebuild {}: batch ending at group {} failed: {}", properties.runId(), b.lastGroupId(), e.getMessage());
+                    run.failure.compareAndSet(null, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    private void process(Batch batch, Run run) {
+        List<UUID> groupIds = new ArrayList<>(batch.groups().size());
+        for (GroupLedger g : batch.groups()) groupIds.add(g.groupId());
+
+        if (run.dryRun) {
+            readOnly.executeWithoutResult(s -> compare(batch, rebuildRepository.currentBalances(groupIds), run));
+            return;
+        }
+        readWrite.executeWithoutResult(s -> {
+            List<LedgerRebuildRepository.Row> rows = compare(batch, rebuildRepository.currentBalances(groupIds), run);
+            rows.sort(Comparator.comparing(LedgerRebuildRepository.Row::groupId).thenComparing(LedgerRebuildRepository.Row::userId));
+            int written = rebuildRepository.overwrite(rows);
+            rebuildRepository.markRebuilt(groupIds);
+            run.rowsWritten.addAndGet(written);
+        });
+    }
+
+    /**
+     * Fold each group's entries and compare with its current balances.
+     *
+     * @return the balance rows that must be rewritten
+     */
+    private List<LedgerRebuildRepository.Row> compare(Batch batch, Map<UUID, Map<UUID, LedgerRebuildRepository.Current>> current, Run run) {
+        List<LedgerRebuildRepository.Row> rows = new ArrayList<>();
+        for (GroupLedger g : batch.groups()) {
+            Map<UUID, Long> totals = new HashMap<>(Math.max(16, g.size() / 4));
+            for (int i = 0; i < g.size(); i++) totals.merge(g.users()[i], g.cents()[i], Long::sum);
+            Map<UUID, LedgerRebuildRepository.Current> rowsNow = current.getOrDefault(g.groupId(), Collections.emptyMap());
+
+            Set<UUID> userIds = new HashSet<>(totals.keySet());
+            userIds.addAll(rowsNow.keySet());
+            for (UUID userId : userIds) {
+                long target = totals.getOrDefault(userId, 0L);
+                LedgerRebuildRepository.Current now = rowsNow.get(userId);
+                long total = now == null ? 0L : now.total();
+                if (total != target) run.drift(g.groupId(), userId, total, target);
+                // stripes are dropped with the batch, so the row alone must hold the total
+                boolean rowDiffers = now == null ? target != 0L : now.balance() != target;
+                if (rowDiffers) rows.add(new LedgerRebuildRepository.Row(g.groupId(), userId, target));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Shared state of one run.
+     */
+    private final class Run {
+        final boolean dryRun;
+        final AtomicLong driftRows = new AtomicLong();
+        final AtomicLong driftCents = new AtomicLong();
+        final AtomicLong rowsWritten = new AtomicLong();
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        private final TreeMap<Long, Batch> finished = new TreeMap<>();
+        private long nextBatch;
+        boolean resumed;
+        volatile UUID lastGroupId;
+        volatile long groups;
+        volatile long ledgerRows;
+
+        Run(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        void resumeFrom(LedgerRebuildRepository.Checkpoint checkpoint) {
+            resumed = true;
+            lastGroupId = checkpoint.lastGroupId();
+            groups = checkpoint.groups();
+            ledgerRows = checkpoint.ledgerRows();
+        }
+
+        void drift(UUID groupId, UUID userId, long current, long ledger) {
+            long n = driftRows.incrementAndGet();
+            driftCents.addAndGet(Math.abs(ledger - current));
+            if (n <= properties.reportLimit()) {
+                log.warn("Ledger rebuild {}: group={} user={} balance={} ledger={} diff={}", properties.runId(), groupId, userId,
+                        MoneyUtils.fromCents(current), MoneyUtils.fromCents(ledger), MoneyUtils.fromCents(ledger - current));
+            }
+        }
+
+        /**
+         * Record a finished batch and move the checkpoint over every batch finished without a gap.
+         */
+        synchronized void completed(Batch batch) {
+            finished.put(batch.index(), batch);
+            boolean moved = false;
+            while (!finished.isEmpty() && finished.firstKey() == nextBatch) {
+                Batch b = finished.pollFirstEntry().getValue();
+                nextBatch++;
+                lastGroupId = b.lastGroupId();
+                groups += b.groups().size();
+                ledgerRows += b.ledgerRows();
+                moved = true;
+            }
+            if (moved && !dryRun) {
+                UUID last = lastGroupId;
+                long g = groups;
+                long r = ledgerRows;
+                readWrite.executeWithoutResult(s -> rebuildRepository.saveCheckpoint(properties.runId(), last, g, r));
+            }
+        }
+    }
+
+    private static final class StopException extends RuntimeException {
+        StopException() {
+            super("ledger rebuild stopped", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kleadingsolutions.expenseshare.config.SettlePlanProperties;
+import com.kleadingsolutions.expenseshare.exception.ConflictException;
+import com.kleadingsolutions.expenseshare.repository.LedgerHeadRepository;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.SettlePlanner;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Per-group settle-up plans ({@link SettlePlanner}) held in a bounded cache.
+ *
+ * A cached plan is served only while it is current: the group's ledger head sequence is the one it
+ * was computed at (lazy balance mode) and no write of the group committed on this node since
+ * ({@link GroupCommitClock}). Anything else recomputes it from the group's balances. Hit/miss counts
+ * are published as the "settle-plan" cache metrics and planning time as expenseshare.settle_plan.compute.
+ * Balances that do not sum to zero (drift the audit or a reconcile has not repaired yet) cannot be
+ * settled and are rejected with a {@link ConflictException}.
+ */
+@Component
+public class SettlePlans {
+
+    private static final Logger log = LoggerFactory.getLogger(SettlePlans.class);
+
+    private final LedgerHeadRepository ledgerHeadRepository;
+    private final GroupCommitClock commitClock;
+    private final Cache<UUID, Plan> plans;
+    private final Timer computeTimer;
+
+    public SettlePlans(SettlePlanProperties properties,
+                       LedgerHeadRepository ledgerHeadRepository,
+                       GroupCommitClock commitClock,
+                       MeterRegistry meterRegistry) {
+        this.ledgerHeadRepository = ledgerHeadRepository;
+        this.commitClock = commitClock;
+        this.plans = Caffeine.newBuilder()
+                .maximumSize(properties.maxGroups())
+                .expireAfterWrite(properties.maxAge())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, plans, "settle-plan");
+        this.computeTimer = Timer.builder("expenseshare.settle_plan.compute")
+                .description("Time to compute a group's settle-up plan from its balances")
+                .register(meterRegistry);
+    }
+
+    private record Plan(long headSeq, long stamp, List<SettlePlanner.Transfer> transfers) {
+    }
+
+    /**
+     * The group's plan; balances is called (inside the caller's transaction) only when no current plan is cached.
+     *
+     * @throws ConflictException when the group's balances do not sum to zero
+     */
+    public List<SettlePlanner.Transfer> plan(UUID groupId, Supplier<CentDeltas> balances) {
+        long headSeq = ledgerHeadRepository.find(groupId).map(LedgerHeadRepository.Head::lastSeq).orElse(0L);
+        Plan cached = plans.getIfPresent(groupId);
+        if (cached != null && cached.headSeq() == headSeq && commitClock.isCurrent(groupId, cached.stamp())) {
+            return cached.transfers();
+        }
+        long stamp = commitClock.stamp(groupId);
+        CentDeltas current = balances.get();
+        if (current.sum() != 0L) {
+            log.error("Balances of group={} do not sum to zero (cents): {}", groupId, current.sum());
+            throw new ConflictException("Group balances do not sum to zero; reconcile the group before planning a settle-up");
+        }
+        List<SettlePlanner.Transfer> transfers = computeTimer.record(() -> SettlePlanner.plan(current));
+        if (commitClock.isCurrent(groupId, stamp)) {
+            plans.put(groupId, new Plan(headSeq, stamp, List.copyOf(transfers)));
+        } else {
+            log.debug("Settle plan of group {} not cached: a write committed while it was computed", groupId);
+        }
+        return transfers;
+    }
+}
@@ -0,0 +1,104 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kleadingsolutions.expenseshare.config.UserNetProperties;
+import com.kleadingsolutions.expenseshare.dto.CurrencyNetDto;
+import com.kleadingsolutions.expenseshare.dto.GroupNetDto;
+import com.kleadingsolutions.expenseshare.dto.UserNetDto;
+import com.kleadingsolutions.expenseshare.enums.Currency;
+import com.kleadingsolutions.expenseshare.repository.UserNetRepository;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A user's balance in every group they belong to, read with one query and held in a bounded cache.
+ *
+ * Writers call {@link #invalidateAfterCommit} with the users whose balances or memberships they
+ * changed; entries are dropped only once the change is committed. Balance rows carry no currency:
+ * every balance is reported in the ledger's settlement currency (AED), so the per-currency totals
+ * have one entry until balances are kept per currency. Hit/miss/eviction counts are published as
+ * the "user-net" cache metrics.
+ */
+@Component
+public class UserNetPositions {
+
+    static final String BALANCE_CURRENCY = Currency.AED.name();
+
+    private final UserNetRepository userNetRepository;
+    private final Cache<UUID, List<UserNetRepository.GroupNet>> positions;
+
+    public UserNetPositions(UserNetRepository userNetRepository,
+                            UserNetProperties properties,
+                            MeterRegistry meterRegistry) {
+        this.userNetRepository = userNetRepository;
+        this.positions = Caffeine.newBuilder()
+                .maximumSize(properties.maxUsers())
+                .expireAfterWrite(properties.maxAge())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, positions, "user-net");
+    }
+
+    /**
+     * Per-group balances and per-currency totals of the user. Call inside a transaction.
+     */
+    public UserNetDto netPosition(UUID userId) {
+        List<UserNetRepository.GroupNet> groups = positions.get(userId, id -> List.copyOf(userNetRepository.findGroupNets(id)));
+        List<GroupNetDto> groupDtos = new ArrayList<>(groups.size());
+        long owed = 0L;
+        long owing = 0L;
+        for (UserNetRepository.GroupNet g : groups) {
+            if (g.cents() > 0) owed += g.cents();
+            else owing -= g.cents();
+            groupDtos.add(GroupNetDto.builder()
+                    .groupId(g.groupId())
+                    .groupName(g.groupName())
+                    .currency(BALANCE_CURRENCY)
+                    .balance(MoneyUtils.fromCents(g.cents()))
+                    .build());
+        }
+        CurrencyNetDto total = CurrencyNetDto.builder()
+                .currency(BALANCE_CURRENCY)
+                .owed(MoneyUtils.fromCents(owed))
+                .owing(MoneyUtils.fromCents(owing))
+                .net(MoneyUtils.fromCents(owed - owing))
+                .build();
+        return UserNetDto.builder()
+                .userId(userId)
+                .totals(groups.isEmpty() ? List.of() : List.of(total))
+                .groups(groupDtos)
+                .build();
+    }
+
+    public void invalidateAfterCommit(UUID userId) {
+        invalidateAfterCommit(Set.of(userId));
+    }
+
+    /**
+     * Drop the users' cached positions once the current transaction commits (immediately when none is active).
+     */
+    public void invalidateAfterCommit(Collection<UUID> userIds) {
+        if (userIds.isEmpty()) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            positions.invalidateAll(userIds);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                positions.invalidateAll(userIds);
+            }
+        });
+    }
+}
@@ -1,5 +1,6 @@
 package com.kleadingsolutions.expenseshare.service;
 
+import com.kleadingsolutions.expenseshare.dto.UserNetDto;
 import com.kleadingsolutions.expenseshare.model.User;
 import com.kleadingsolutions.expenseshare.repository.UserRepository;
 import org.springframework.stereotype.Service;
@@ -13,9 +14,11 @@ import java.util.UUID;
 public class UserService {
 
     private final UserRepository repo;
+    private final UserNetPositions userNetPositions;
 
-    public UserService(UserRepository repo) {
+    public UserService(UserRepository repo, UserNetPositions userNetPositions) {
         this.repo = repo;
+        this.userNetPositions = userNetPositions;
     }
 
     @Transactional
@@ -41,4 +44,12 @@ public class UserService {
     public Optional<User> findById(UUID id) {
         return repo.findById(id);
     }
-}
\ No newline at end of file
+
+    /**
+     * The user's balance in every group they are an ACTIVE member of, with owed/owing totals.
+     */
+    @Transactional(readOnly = true)
+    public UserNetDto netPosition(UUID userId) {
+        return userNetPositions.netPosition(userId);
+    }
+}
@@ -0,0 +1,41 @@
+package com.kleadingsolutions.expenseshare.service.impl;
+
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.model.Balance;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Serializes the group's writers on one pg_advisory_xact_lock (released at commit/rollback), then
+ * applies the delta upsert. Writers queue on a single lock instead of on N balance rows.
+ */
+@Component
+@RequiredArgsConstructor
+public class AdvisoryLockBalanceLockStrategy implements BalanceLockStrategy {
+
+    private final BalanceRepository balanceRepository;
+
+    @Override
+    public BalanceLockMode mode() {
+        return BalanceLockMode.ADVISORY;
+    }
+
+    @Override
+    public void applyDeltas(UUID groupId, CentDeltas deltas, UUID actorId) {
+        balanceRepository.lockGroup(groupId);
+        balanceRepository.applyDeltas(groupId, deltas, actorId);
+    }
+
+    @Override
+    public Optional<Balance> lockForOverwrite(UUID groupId, UUID userId) {
+        balanceRepository.lockGroup(groupId);
+        // row lock too: writers of other strategies do not take the advisory lock
+        return balanceRepository.findLockedByGroupIdAndUserId(groupId, userId);
+    }
+}
@@ -0,0 +1,37 @@
+package com.kleadingsolutions.expenseshare.service.impl;
+
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.model.Balance;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * One multi-row "balance = balance + delta" upsert; rows are locked by the statement in user-id order.
+ */
+@Component
+@RequiredArgsConstructor
+public class AtomicDeltaBalanceLockStrategy implements BalanceLockStrategy {
+
+    private final BalanceRepository balanceRepository;
+
+    @Override
+    public BalanceLockMode mode() {
+        return BalanceLockMode.ATOMIC_DELTA;
+    }
+
+    @Override
+    public void applyDeltas(UUID groupId, CentDeltas deltas, UUID actorId) {
+        balanceRepository.applyDeltas(groupId, deltas, actorId);
+    }
+
+    @Override
+    public Optional<Balance> lockForOverwrite(UUID groupId, UUID userId) {
+        return balanceRepository.findLockedByGroupIdAndUserId(groupId, userId);
+    }
+}
@@ -4,7 +4,15 @@ import com.kleadingsolutions.expenseshare.aop.LogExecution;
 import com.kleadingsolutions.expenseshare.model.Balance;
 import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
 import com.kleadingsolutions.expenseshare.repository.LedgerEntryRepository;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategies;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategy;
 import com.kleadingsolutions.expenseshare.service.BalanceService;
+import com.kleadingsolutions.expenseshare.service.BalanceSnapshots;
+import com.kleadingsolutions.expenseshare.service.BalanceStripes;
+import com.kleadingsolutions.expenseshare.service.GroupCommitClock;
+import com.kleadingsolutions.expenseshare.service.LedgerFolder;
+import com.kleadingsolutions.expenseshare.service.UserNetPositions;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
 import com.kleadingsolutions.expenseshare.util.MoneyUtils;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -14,12 +22,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -29,24 +35,41 @@ public class BalanceServiceImpl implements BalanceService {
 
     private final LedgerEntryRepository ledgerEntryRepository;
     private final BalanceRepository balanceRepository;
+    private final LedgerFolder ledgerFolder;
+    private final BalanceLockStrategies balanceLockStrategies;
+    private final BalanceStripes balanceStripes;
+    private final UserNetPositions userNetPositions;
+    private final BalanceSnapshots balanceSnapshots;
+    private final GroupCommitClock commitClock;
 
     /**
-     * Recompute the balance for a user from the ledger. When reconcile==true the persisted
-     * balance row will be updated (locked) with the recomputed amount.
+     * Recompute the balance for a user from the ledger: the group's latest balance snapshot plus the
+     * entries after it (the whole ledger when the group has no snapshot). When reconcile==true the persisted
+     * balance row will be updated (locked) with the recomputed amount; the group's ledger head is
+     * locked first so no sequenced (lazy) entry can commit between the sum and the update, and
+     * pending balance stripes are folded so the overwrite does not double count them. The group's
+     * commit clock is ticked so settle plans derived from the old row are not served after the commit.
      */
     @Override
     @Transactional
     @LogExecution(includeArgs = true, includeResult = false, warnThresholdMs = 300)
     public BigDecimal recomputeBalance(UUID groupId, UUID userId, boolean reconcile) {
-        BigDecimal sum = ledgerEntryRepository.sumAmountByGroupIdAndUserId(groupId, userId);
+        long foldedSeq = 0L;
+        if (reconcile) {
+            foldedSeq = ledgerFolder.lockAndFold(groupId);
+            balanceStripes.foldInto(groupId);
+        }
+        BigDecimal sum = balanceSnapshots.ledgerSum(groupId, userId)
+                .orElseGet(() -> ledgerEntryRepository.sumAmountByGroupIdAndUserId(groupId, userId));
         if (sum == null) sum = BigDecimal.ZERO;
         sum = MoneyUtils.scale(sum);
 
         log.debug("Recomputed ledger sum for group={} user={} sum={}", groupId, userId, sum);
 
         if (reconcile) {
-            // Acquire a lock when reconciling to avoid races with concurrent updates
-            Optional<Balance> locked = balanceRepository.findLockedByGroupIdAndUserId(groupId, userId);
+            // Acquire a lock (per the group's lock strategy) when reconciling to avoid races with concurrent updates
+            BalanceLockStrategy lockStrategy = balanceLockStrategies.forGroup(groupId);
+            Optional<Balance> locked = lockStrategy.lockForOverwrite(groupId, userId);
             BigDecimal finalSum = sum;
             Balance b;
             if (locked.isPresent()) {
@@ -62,73 +85,55 @@ public class BalanceServiceImpl implements BalanceService {
                     Balance saved = balanceRepository.save(nb);
                     log.info("Created new Balance row id={} for group={} user={} balance={}", saved.getId(), groupId, userId, finalSum);
                     // Acquire lock on saved row
-                    b = balanceRepository.findLockedByGroupIdAndUserId(groupId, userId).orElse(saved);
+                    b = lockStrategy.lockForOverwrite(groupId, userId).orElse(saved);
                 } catch (DataIntegrityViolationException dive) {
                     // concurrent insert happened; re-query the locked row
                     log.warn("Concurrent insert detected when creating balance for group={} user={}, re-querying locked row", groupId, userId);
-                    b = balanceRepository.findLockedByGroupIdAndUserId(groupId, userId)
+                    b = lockStrategy.lockForOverwrite(groupId, userId)
                             .orElseThrow(() -> new IllegalStateException("Balance insert conflict and no row found", dive));
                 }
             }
 
             b.setBalance(sum);
+            b.setFoldedSeq(Math.max(b.getFoldedSeq(), foldedSeq));
             balanceRepository.save(b);
+            userNetPositions.invalidateAfterCommit(userId);
+            commitClock.tick(groupId);
             log.info("Reconciled balance for group={} user={} updated_balance={}", groupId, userId, b.getBalance());
         }
         return sum;
     }
 
+    /**
+     * Set-based reconcile: one aggregate finds every user whose balance (row plus pending stripes)
+     * differs from the ledger, one upsert adds the difference. Corrections are deltas taken from a
+     * single snapshot, so concurrent balance writers need not be locked out; concurrent reconciles of
+     * the group are serialized on the group lock so a drift is never corrected twice. Ticks the
+     * group's commit clock, as the fold and the corrections both move balance rows.
+     */
     @Override
     @Transactional
     @LogExecution(includeArgs = true, includeResult = false, warnThresholdMs = 300)
-    public void recomputeAndReconcileGroup(UUID groupId) {
+    public GroupReconciliation recomputeAndReconcileGroup(UUID groupId) {
         log.info("Starting group reconcile for group={}", groupId);
-        // Recompute for balances that exist for this group (avoid all records filter)
-        List<Balance> balances = balanceRepository.findByGroupId(groupId);
-
-        // Build a map of existing balances to use as fallback when locked lookup returns empty
-        Map<UUID, Balance> existingMap = balances.stream()
-                .collect(Collectors.toMap(Balance::getUserId, b -> b));
-
-        // Lock and update in deterministic order to avoid deadlocks
-        List<UUID> userIds = balances.stream()
-                .map(Balance::getUserId)
-                .sorted(Comparator.naturalOrder())
-                .collect(Collectors.toList());
-
-        for (UUID userId : userIds) {
-            // Try to lock the balance row before recomputing/updating
-            Optional<Balance> lockedOpt = balanceRepository.findLockedByGroupIdAndUserId(groupId, userId);
-
-            // Fallback to the Balance instance we already loaded (for unit tests / existing callers)
-            Balance b = lockedOpt.orElseGet(() -> existingMap.get(userId));
-
-            if (b == null) {
-                // This should be rare (row disappeared between findByGroupId and now). Create or re-query.
-                // Create path similar to recomputeBalance to be robust.
-                Balance nb = Balance.builder()
-                        .groupId(groupId)
-                        .userId(userId)
-                        .balance(BigDecimal.ZERO)
-                        .build();
-                try {
-                    Balance saved = balanceRepository.save(nb);
-                    log.info("Created missing Balance row id={} during group reconcile for group={} user={}", saved.getId(), groupId, userId);
-                    b = balanceRepository.findLockedByGroupIdAndUserId(groupId, userId).orElse(saved);
-                } catch (DataIntegrityViolationException dive) {
-                    log.warn("Concurrent insert detected during group reconcile for group={} user={}, re-querying locked row", groupId, userId);
-                    b = balanceRepository.findLockedByGroupIdAndUserId(groupId, userId)
-                            .orElseThrow(() -> new IllegalStateException("Balance insert conflict and no row found during reconcile", dive));
-                }
-            }
-
-            BigDecimal recomputed = ledgerEntryRepository.sumAmountByGroupIdAndUserId(groupId, userId);
-            if (recomputed == null) recomputed = BigDecimal.ZERO;
-            b.setBalance(MoneyUtils.scale(recomputed));
-            balanceRepository.save(b);
-            log.debug("Reconciled user={} group={} new_balance={}", userId, groupId, b.getBalance());
+        balanceRepository.lockGroup(groupId);
+        // Lock the ledger head and fold its tail first (lazy mode), so the tail is not reported as drift
+        long foldedSeq = ledgerFolder.lockAndFold(groupId);
+
+        CentDeltas drift = balanceRepository.findDrift(groupId);
+        long driftCents = 0;
+        List<UUID> driftUsers = new ArrayList<>(drift.size());
+        for (int i = 0; i < drift.size(); i++) {
+            driftCents += Math.abs(drift.cents(i));
+            driftUsers.add(drift.userId(i));
+            log.debug("Reconciling user={} group={} drift={}", drift.userId(i), groupId, drift.amount(i));
         }
+        balanceRepository.applyFoldedDeltas(groupId, drift, foldedSeq);
+        userNetPositions.invalidateAfterCommit(driftUsers);
+        commitClock.tick(groupId);
 
-        log.info("Completed group reconcile for group={}", groupId);
+        GroupReconciliation result = new GroupReconciliation(groupId, drift.size(), MoneyUtils.fromCents(driftCents));
+        log.info("Completed group reconcile for group={} rows_corrected={} total_drift={}", groupId, result.rowsCorrected(), result.totalDrift());
+        return result;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,380 @@
+package com.kleadingsolutions.expenseshare.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kleadingsolutions.expenseshare.aop.LogExecution;
+import com.kleadingsolutions.expenseshare.config.BulkImportProperties;
+import com.kleadingsolutions.expenseshare.config.ExpenseSplitProperties;
+import com.kleadingsolutions.expenseshare.config.IdempotencyProperties;
+import com.kleadingsolutions.expenseshare.dto.BulkImportResultDto;
+import com.kleadingsolutions.expenseshare.dto.CreateExpenseRequest;
+import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.enums.BulkFormat;
+import com.kleadingsolutions.expenseshare.enums.ShareType;
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+import com.kleadingsolutions.expenseshare.exception.ConflictException;
+import com.kleadingsolutions.expenseshare.exception.ForbiddenException;
+import com.kleadingsolutions.expenseshare.model.Expense;
+import com.kleadingsolutions.expenseshare.model.ExpenseSplit;
+import com.kleadingsolutions.expenseshare.model.LedgerEntry;
+import com.kleadingsolutions.expenseshare.repository.BulkImportChunkStore;
+import com.kleadingsolutions.expenseshare.repository.ExpenseBulkWriter;
+import com.kleadingsolutions.expenseshare.repository.PairDebtRepository;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategies;
+import com.kleadingsolutions.expenseshare.service.BalanceProjections;
+import com.kleadingsolutions.expenseshare.service.BulkExpenseService;
+import com.kleadingsolutions.expenseshare.service.GroupMembershipSnapshot;
+import com.kleadingsolutions.expenseshare.service.UserNetPositions;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import com.kleadingsolutions.expenseshare.util.PackedSplits;
+import com.kleadingsolutions.expenseshare.util.PairDebtDeltas;
+import com.kleadingsolutions.expenseshare.util.UuidV7;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Bulk expense import:
+ * - parse the streamed body one line at a time (never materializing the whole body)
+ * - per chunk: check membership once, validate every expense with the same rules as createExpense
+ * - write expenses, splits and ledger entries with COPY (splits packed into the expense row from
+ *   app.expenses.splits.pack-threshold splits on, as createExpense does)
+ * - apply one aggregated balance delta per user per chunk (in cents, through the group's balance lock
+ *   strategy like every other balance writer), then one aggregated pair-debt delta per pair
+ * - with an import key, record each chunk (hash of its lines) in bulk_import_chunks in the chunk's own
+ *   transaction, so a retry skips the chunks that already committed instead of applying them twice
+ */
+@Service
+@RequiredArgsConstructor
+public class BulkExpenseServiceImpl implements BulkExpenseService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkExpenseServiceImpl.class);
+
+    private final GroupMembershipSnapshot membershipSnapshot;
+    private final BalanceLockStrategies balanceLockStrategies;
+    private final ExpenseBulkWriter expenseBulkWriter;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    private final BulkImportProperties properties;
+    private final BalanceProjections balanceProjections;
+    private final UserNetPositions userNetPositions;
+    private final PairDebtRepository pairDebtRepository;
+    private final ExpenseSplitProperties splitProperties;
+    private final BulkImportChunkStore chunkStore;
+    private final IdempotencyProperties idempotencyProperties;
+
+    @Override
+    @LogExecution(includeArgs = false, includeResult = false, warnThresholdMs = 5000)
+    public BulkImportResultDto importExpenses(UUID groupId, InputStream body, BulkFormat format, UUID actorId, String importKey) {
+        if (groupId == null) throw new BadRequestException("groupId is required");
+        if (body == null) throw new BadRequestException("request body is required");
+        String key = idempotencyProperties.enabled() ? importKey : null;
+        log.info("Bulk import into group {} by {} format={} chunkSize={} keyed={}",
+                groupId, actorId, format, properties.chunkSize(), key != null);
+
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        BulkImportResultDto result = BulkImportResultDto.builder().groupId(groupId).build();
+        Chunk chunk = new Chunk(properties.chunkSize());
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                if (format == BulkFormat.CSV && lineNo == 1 && line.toLowerCase().startsWith("payerid")) continue;
+
+                chunk.add(line, new ParsedLine(lineNo, parse(line, lineNo, groupId, format)));
+                if (chunk.lines.size() >= properties.chunkSize()) {
+                    flush(tx, groupId, actorId, key, chunk, result);
+                }
+            }
+            if (!chunk.lines.isEmpty()) {
+                flush(tx, groupId, actorId, key, chunk, result);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed reading bulk import body", e);
+        }
+
+        log.info("Bulk import into group {} finished: chunks={} skippedChunks={} expenses={} ledgerEntries={}",
+                groupId, result.getChunks(), result.getSkippedChunks(), result.getExpenses(), result.getLedgerEntries());
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.purge-interval:PT1H}", initialDelayString = "${app.idempotency.purge-interval:PT1H}")
+    public void purgeExpiredChunks() {
+        int purged = chunkStore.purgeExpired(OffsetDateTime.now());
+        if (purged > 0) log.info("Purged {} expired bulk import chunks", purged);
+    }
+
+    private void flush(TransactionTemplate tx, UUID groupId, UUID actorId, String importKey, Chunk chunk, BulkImportResultDto result) {
+        int chunkNo = result.getChunks() + result.getSkippedChunks() + 1;
+        ChunkOutcome outcome;
+        try {
+            outcome = tx.execute(status -> applyChunk(groupId, actorId, importKey, chunkNo, chunk));
+        } catch (BadRequestException | ForbiddenException e) {
+            if (result.getExpenses() > 0) {
+                log.warn("Bulk import into group {} stopped after {} committed expenses: {}", groupId, result.getExpenses(), e.getMessage());
+                throw new BadRequestException(e.getMessage() + " (" + result.getExpenses() + " expenses from earlier chunks, through line "
+                        + result.getCommittedThroughLine() + ", were imported)");
+            }
+            throw e;
+        }
+        if (outcome.skipped()) {
+            result.setSkippedChunks(result.getSkippedChunks() + 1);
+        } else {
+            result.setChunks(result.getChunks() + 1);
+        }
+        result.setCommittedThroughLine(outcome.lastLine());
+        result.setExpenses(result.getExpenses() + outcome.expenses());
+        result.setSplits(result.getSplits() + outcome.splits());
+        result.setLedgerEntries(result.getLedgerEntries() + outcome.ledgerEntries());
+        chunk.clear();
+    }
+
+    /**
+     * Claim the chunk under the import key (if any) and write it. A chunk an earlier attempt with the
+     * same key already committed is only checked to hold the same lines, then skipped.
+     */
+    private ChunkOutcome applyChunk(UUID groupId, UUID actorId, String importKey, int chunkNo, Chunk chunk) {
+        int lastLine = chunk.lines.get(chunk.lines.size() - 1).lineNo();
+        if (importKey != null) {
+            OffsetDateTime now = OffsetDateTime.now();
+            String hash = chunk.hash();
+            if (!chunkStore.claim(groupId, importKey, chunkNo, hash, lastLine, actorId, now, now.plus(idempotencyProperties.ttl()))) {
+                BulkImportChunkStore.StoredChunk stored = chunkStore.find(groupId, importKey, chunkNo)
+                        .orElseThrow(() -> new ConflictException("Idempotency-Key is being processed, retry later"));
+                if (!stored.chunkHash().equals(hash) || !stored.createdBy().equals(actorId)) {
+                    throw new ConflictException("Idempotency-Key was already used for a different import (chunk " + chunkNo + " differs)");
+                }
+                log.debug("Bulk chunk {} of import {} into group {} already committed, skipped", chunkNo, importKey, groupId);
+                return new ChunkOutcome(true, stored.lastLine(), stored.expenses(), stored.splits(), stored.ledgerEntries());
+            }
+        }
+        ChunkOutcome written = writeChunk(groupId, actorId, chunk.lines, lastLine);
+        if (importKey != null) {
+            chunkStore.complete(groupId, importKey, chunkNo, written.expenses(), written.splits(), written.ledgerEntries());
+        }
+        return written;
+    }
+
+    private ChunkOutcome writeChunk(UUID groupId, UUID actorId, List<ParsedLine> chunk, int lastLine) {
+        // Membership is checked once per chunk, against the cached snapshot
+        Set<UUID> members = membershipSnapshot.activeMembers(groupId);
+        if (!members.contains(actorId)) throw new ForbiddenException("Actor is not a member of the group");
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Expense> expenses = new ArrayList<>(chunk.size());
+        List<ExpenseSplit> splits = new ArrayList<>();
+        List<LedgerEntry> ledgerEntries = new ArrayList<>();
+        List<CentDeltas> expenseDeltas = new ArrayList<>(chunk.size());
+        PairDebtDeltas chunkPairDebts = new PairDebtDeltas();
+        int splitCount = 0;
+
+        for (ParsedLine p : chunk) {
+            CreateExpenseRequest request = p.request();
+            try {
+                ExpenseServiceImpl.validate(request);
+                if (!members.contains(request.getPayerId())) throw new BadRequestException("Payer is not a member of the group");
+                for (ExpenseSplitDto s : request.getSplits()) {
+                    if (!members.contains(s.getUserId())) {
+                        throw new BadRequestException("Split user " + s.getUserId() + " is not a member of the group");
+                    }
+                }
+                CentDeltas deltas = CentDeltas.forExpense(request.getPayerId(), request.getAmount(), request.getSplits());
+                expenseDeltas.add(deltas);
+                chunkPairDebts.addExpense(request.getPayerId(), deltas);
+                BigDecimal total = MoneyUtils.fromCents(deltas.totalCents());
+
+                UUID expenseId = UuidV7.randomUUID();
+                boolean packed = splitProperties.packs(request.getSplits().size());
+                expenses.add(Expense.builder()
+                        .id(expenseId)
+                        .groupId(groupId)
+                        .createdBy(actorId)
+                        .description(request.getDescription())
+                        .amount(total)
+                        .currency(request.getCurrency())
+                        .createdAt(now)
+                        .packedSplits(packed ? PackedSplits.encode(request.getSplits()) : null)
+                        .build());
+                splitCount += request.getSplits().size();
+                if (!packed) {
+                    for (ExpenseSplitDto s : request.getSplits()) {
+                        splits.add(ExpenseSplit.builder()
+                                .id(UuidV7.randomUUID())
+                                .expenseId(expenseId)
+                                .userId(s.getUserId())
+                                .amount(MoneyUtils.scale(s.getAmount()))
+                                .shareType(ExpenseServiceImpl.shareType(s))
+                                .createdAt(now)
+                                .build());
+                    }
+                }
+                for (int i = 0; i < deltas.size(); i++) {
+                    BigDecimal amount = deltas.amount(i);
+                    ledgerEntries.add(LedgerEntry.builder()
+                            .id(UuidV7.randomUUID())
+                            .groupId(groupId)
+                            .userId(deltas.userId(i))
+                            .amount(amount)
+                            .type(TransactionType.EXPENSE.name())
+                            .relatedId(expenseId)
+                            .currency(request.getCurrency())
+                            .createdBy(actorId)
+                            .createdAt(now)
+                            .build());
+                }
+            } catch (BadRequestException e) {
+                throw new BadRequestException("line " + p.lineNo() + ": " + e.getMessage());
+            }
+        }
+
+        // Every expense sums to zero, so the chunk aggregate must as well
+        CentDeltas chunkDeltas = CentDeltas.concat(expenseDeltas);
+        long sum = chunkDeltas.sum();
+        if (sum != 0L) {
+            throw new IllegalStateException("Internal error: deltas do not sum to zero (cents): " + sum + " -> " + MoneyUtils.fromCents(sum));
+        }
+
+        expenseBulkWriter.write(expenses, splits, ledgerEntries);
+        balanceLockStrategies.applyDeltas(groupId, chunkDeltas, actorId);
+        pairDebtRepository.apply(groupId, chunkPairDebts);
+        balanceProjections.applyAfterCommit(groupId, ledgerEntries);
+        Set<UUID> users = new HashSet<>(chunkDeltas.size() * 2);
+        for (int i = 0; i < chunkDeltas.size(); i++) users.add(chunkDeltas.userId(i));
+        userNetPositions.invalidateAfterCommit(users);
+
+        log.debug("Bulk chunk written for group {}: expenses={} balanceRows={}", groupId, expenses.size(), chunkDeltas.size());
+        return new ChunkOutcome(false, lastLine, expenses.size(), splitCount, ledgerEntries.size());
+    }
+
+    private CreateExpenseRequest parse(String line, int lineNo, UUID groupId, BulkFormat format) {
+        try {
+            CreateExpenseRequest request = format == BulkFormat.NDJSON
+                    ? objectMapper.readValue(line, CreateExpenseRequest.class)
+                    : parseCsv(line);
+            if (request.getGroupId() != null && !request.getGroupId().equals(groupId)) {
+                throw new BadRequestException("groupId does not match the target group");
+            }
+            request.setGroupId(groupId);
+            return request;
+        } catch (JsonProcessingException e) {
+            throw new BadRequestException("line " + lineNo + ": malformed JSON: " + e.getOriginalMessage());
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new BadRequestException("line " + lineNo + ": malformed CSV row: " + e.getMessage());
+        } catch (BadRequestException e) {
+            throw new BadRequestException("line " + lineNo + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * payerId,description,amount,currency,userId:amount[:shareType];...
+     */
+    static CreateExpenseRequest parseCsv(String line) {
+        List<String> cols = splitCsv(line);
+        if (cols.size() != 5) throw new IllegalArgumentException("expected 5 columns but found " + cols.size());
+
+        List<ExpenseSplitDto> splits = new ArrayList<>();
+        for (String part : cols.get(4).split(";")) {
+            if (part.isBlank()) continue;
+            String[] f = part.trim().split(":");
+            splits.add(ExpenseSplitDto.builder()
+                    .userId(UUID.fromString(f[0].trim()))
+                    .amount(new BigDecimal(f[1].trim()))
+                    .shareType(f.length > 2 ? ShareType.valueOf(f[2].trim().toUpperCase()) : ShareType.CUSTOM)
+                    .build());
+        }
+        return CreateExpenseRequest.builder()
+                .payerId(UUID.fromString(cols.get(0).trim()))
+                .description(cols.get(1))
+                .amount(new BigDecimal(cols.get(2).trim()))
+                .currency(cols.get(3).trim())
+                .splits(splits)
+                .build();
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cur.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cur.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        out.add(cur.toString());
+        return out;
+    }
+
+    private record ParsedLine(int lineNo, CreateExpenseRequest request) {}
+
+    private record ChunkOutcome(boolean skipped, int lastLine, int expenses, int splits, int ledgerEntries) {}
+
+    /**
+     * Parsed lines of the chunk being built, plus a running SHA-256 of their raw text.
+     */
+    private static final class Chunk {
+        private final List<ParsedLine> lines;
+        private final MessageDigest digest;
+
+        Chunk(int size) {
+            lines = new ArrayList<>(size);
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        void add(String raw, ParsedLine parsed) {
+            lines.add(parsed);
+            digest.update(raw.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+
+        /** Hash of the lines added since the last clear; resets the running digest. */
+        String hash() {
+            return HexFormat.of().formatHex(digest.digest());
+        }
+
+        void clear() {
+            lines.clear();
+            digest.reset();
+        }
+    }
+}
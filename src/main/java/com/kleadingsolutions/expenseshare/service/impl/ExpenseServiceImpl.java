@@ -1,21 +1,31 @@
 package com.kleadingsolutions.expenseshare.service.impl;
 
 import com.kleadingsolutions.expenseshare.aop.LogExecution;
+import com.kleadingsolutions.expenseshare.config.ExpenseSplitProperties;
 import com.kleadingsolutions.expenseshare.dto.CreateExpenseRequest;
 import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.enums.Currency;
+import com.kleadingsolutions.expenseshare.enums.ShareType;
 import com.kleadingsolutions.expenseshare.enums.TransactionType;
 import com.kleadingsolutions.expenseshare.exception.BadRequestException;
 import com.kleadingsolutions.expenseshare.exception.ForbiddenException;
-import com.kleadingsolutions.expenseshare.model.Balance;
+import com.kleadingsolutions.expenseshare.exception.NotFoundException;
 import com.kleadingsolutions.expenseshare.model.Expense;
 import com.kleadingsolutions.expenseshare.model.ExpenseSplit;
 import com.kleadingsolutions.expenseshare.model.LedgerEntry;
 import com.kleadingsolutions.expenseshare.repository.*;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategies;
+import com.kleadingsolutions.expenseshare.service.BalanceProjections;
 import com.kleadingsolutions.expenseshare.service.ExpenseService;
+import com.kleadingsolutions.expenseshare.service.GroupMembershipSnapshot;
+import com.kleadingsolutions.expenseshare.service.LedgerFolder;
+import com.kleadingsolutions.expenseshare.service.UserNetPositions;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
 import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import com.kleadingsolutions.expenseshare.util.PackedSplits;
+import com.kleadingsolutions.expenseshare.util.PairDebtDeltas;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -27,9 +37,14 @@ import java.util.stream.Collectors;
 /**
  * Expense creation logic:
  * - validate membership
- * - persist expense and splits
+ * - persist expense and splits: one expense_splits row per split, or from app.expenses.splits.pack-threshold
+ *   splits on all of them packed into the expense row (PackedSplits)
  * - append ledger entries (ledger-first)
- * - update materialized balances while locking rows (pessimistic)
+ * - update materialized balances through the group's BalanceLockStrategy, or in lazy mode
+ *   sequence the ledger entries and leave balances to be folded on read
+ * - hand the ledger entries to the balance projections, applied once the transaction commits
+ * - drop the cached cross-group net positions of every participant once it commits
+ * - add each participant's share to what they owe the payer (pair_debts), after the balance writes
  */
 @Service
 @RequiredArgsConstructor
@@ -37,10 +52,15 @@ import java.util.stream.Collectors;
 public class ExpenseServiceImpl implements ExpenseService {
 
     private final ExpenseRepository expenseRepository;
-    private final GroupMemberRepository groupMemberRepository;
+    private final GroupMembershipSnapshot membershipSnapshot;
     private final LedgerEntryRepository ledgerEntryRepository;
-    private final BalanceRepository balanceRepository;
+    private final BalanceLockStrategies balanceLockStrategies;
     private final ExpenseSplitRepository expenseSplitRepository;
+    private final LedgerFolder ledgerFolder;
+    private final BalanceProjections balanceProjections;
+    private final UserNetPositions userNetPositions;
+    private final PairDebtRepository pairDebtRepository;
+    private final ExpenseSplitProperties splitProperties;
 
     @Override
     @Transactional
@@ -51,70 +71,47 @@ public class ExpenseServiceImpl implements ExpenseService {
         UUID groupId = request.getGroupId();
         UUID payerId = request.getPayerId();
 
-        // Fetch group members once and check membership
-        var members = groupMemberRepository.findByGroupId(groupId);
-        boolean actorIsMember = members.stream()
-                .anyMatch(m -> Objects.equals(m.getUserId(), actorId) && "ACTIVE".equalsIgnoreCase(m.getStatus()));
-        if (!actorIsMember) throw new ForbiddenException("Actor is not a member of the group");
-
-        boolean payerIsMember = members.stream()
-                .anyMatch(m -> Objects.equals(m.getUserId(), payerId) && "ACTIVE".equalsIgnoreCase(m.getStatus()));
-        if (!payerIsMember) throw new BadRequestException("Payer is not a member of the group");
+        // Membership checks against the cached ACTIVE member set (O(1) per check)
+        Set<UUID> members = membershipSnapshot.activeMembers(groupId);
+        if (!members.contains(actorId)) throw new ForbiddenException("Actor is not a member of the group");
+        if (!members.contains(payerId)) throw new BadRequestException("Payer is not a member of the group");
 
         // Ensure each split user is member
         for (ExpenseSplitDto s : request.getSplits()) {
-            boolean member = members.stream()
-                    .anyMatch(m -> Objects.equals(m.getUserId(), s.getUserId()) && "ACTIVE".equalsIgnoreCase(m.getStatus()));
-            if (!member) throw new BadRequestException("Split user " + s.getUserId() + " is not a member of the group");
+            if (!members.contains(s.getUserId())) throw new BadRequestException("Split user " + s.getUserId() + " is not a member of the group");
         }
 
-        // Normalize amounts and validate sum equals total (use cents equality)
-        BigDecimal normalizedTotal = getNormalizedTotal(request);
+        // Parse amounts once into cents, validate sum equals total and build zero-sum per-user deltas
+        CentDeltas deltas = CentDeltas.forExpense(payerId, request.getAmount(), request.getSplits());
+        BigDecimal normalizedTotal = MoneyUtils.fromCents(deltas.totalCents());
 
-        // Persist Expense
-        Expense saved = saveExpense(request, actorId, groupId, normalizedTotal);
+        // Persist Expense; a large split list goes into the same row instead of one row per split
+        boolean packed = splitProperties.packs(request.getSplits().size());
+        Expense saved = saveExpense(request, actorId, groupId, normalizedTotal,
+                packed ? PackedSplits.encode(request.getSplits()) : null);
 
         // Persist ExpenseSplit records
-        List<ExpenseSplit> splits = request.getSplits().stream()
-                .map(dto -> ExpenseSplit.builder()
-                        .expenseId(saved.getId())
-                        .userId(dto.getUserId())
-                        .amount(MoneyUtils.scale(dto.getAmount()))
-                        .shareType(String.valueOf(dto.getShareType()))
-                        .build())
-                .collect(Collectors.toList());
-        expenseSplitRepository.saveAll(splits);
-
-        // Build per-user balance deltas (accumulate duplicates)
-        Map<UUID, BigDecimal> userDeltas = getUserDeltas(request, payerId);
-
-        // Participants = all unique split users and payer (ensure payer is included even if not listed in splits)
-        Set<UUID> participants = request.getSplits().stream()
-                .map(ExpenseSplitDto::getUserId)
-                .collect(Collectors.toCollection(LinkedHashSet::new));
-        participants.add(payerId);
-
-        Map<UUID, BigDecimal> deltas = computeActualDeltas(userDeltas, payerId, participants, normalizedTotal);
-        // Sanity: sum of deltas must be zero (exact cents check)
-        long deltasSumCents = deltas.values().stream()
-                .mapToLong(MoneyUtils::toCents)
-                .sum();
-        if (deltasSumCents != 0L) {
-            throw new IllegalStateException("Internal error: deltas do not sum to zero (cents): " + deltasSumCents + " -> " + MoneyUtils.fromCents(deltasSumCents));
+        if (!packed) {
+            List<ExpenseSplit> splits = request.getSplits().stream()
+                    .map(dto -> ExpenseSplit.builder()
+                            .expenseId(saved.getId())
+                            .userId(dto.getUserId())
+                            .amount(MoneyUtils.scale(dto.getAmount()))
+                            .shareType(shareType(dto))
+                            .build())
+                    .collect(Collectors.toList());
+            expenseSplitRepository.saveAll(splits);
         }
 
         // Create ledger entries (ledger-first)
-        List<LedgerEntry> ledgerEntries = new ArrayList<>();
+        List<LedgerEntry> ledgerEntries = new ArrayList<>(deltas.size());
         LocalDateTime now = LocalDateTime.now();
-        for (Map.Entry<UUID, BigDecimal> ent : deltas.entrySet()) {
-            UUID uid = ent.getKey();
-            BigDecimal delta = MoneyUtils.scale(ent.getValue());
-
+        for (int i = 0; i < deltas.size(); i++) {
             LedgerEntry le = LedgerEntry.builder()
                     .groupId(groupId)
-                    .userId(uid)
+                    .userId(deltas.userId(i))
                     .relatedId(saved.getId())
-                    .amount(delta)
+                    .amount(deltas.amount(i))
                     .createdBy(actorId)
                     .createdAt(now)
                     .currency(request.getCurrency())
@@ -123,67 +120,49 @@ public class ExpenseServiceImpl implements ExpenseService {
             ledgerEntries.add(le);
         }
 
+        if (ledgerFolder.isLazy()) {
+            // Lazy mode: sequence and append only; balances are folded from the ledger on read
+            ledgerFolder.assignSequence(groupId, ledgerEntries);
+            ledgerEntryRepository.saveAll(ledgerEntries);
+            pairDebtRepository.apply(groupId, PairDebtDeltas.forExpense(payerId, deltas));
+            balanceProjections.applyAfterCommit(groupId, ledgerEntries);
+            userNetPositions.invalidateAfterCommit(userIds(ledgerEntries));
+            return saved;
+        }
+
         // persist ledger entries first (append-only)
         ledgerEntryRepository.saveAll(ledgerEntries);
+        balanceProjections.applyAfterCommit(groupId, ledgerEntries);
+        userNetPositions.invalidateAfterCommit(userIds(ledgerEntries));
 
-        // Update/create materialized balances with pessimistic locking in deterministic order
-        Set<UUID> affected = new HashSet<>(deltas.keySet());
-        List<UUID> ordered = new ArrayList<>(affected);
-        ordered.sort(Comparator.naturalOrder());
-
-        Map<UUID, Balance> lockedBalances = new HashMap<>();
-        for (UUID user : ordered) {
-            lockedBalances.put(user, getOrCreateAndLockBalance(groupId, user, actorId));
-        }
-
-        // Apply deltas to balances and persist
-        for (Map.Entry<UUID, BigDecimal> ent : deltas.entrySet()) {
-            UUID uid = ent.getKey();
-            BigDecimal delta = MoneyUtils.scale(ent.getValue());
-            Balance bal = lockedBalances.get(uid);
-            // If balance was not present for some reason, create it (getOrCreateAndLockBalance ensures existence)
-            if (bal == null) {
-                bal = Balance.builder()
-                        .groupId(groupId)
-                        .userId(uid)
-                        .balance(delta)
-                        .createdBy(actorId)
-                        .createdAt(now)
-                        .build();
-            } else {
-                bal.setBalance(MoneyUtils.scale(bal.getBalance().add(delta)));
-            }
-            balanceRepository.save(bal);
-        }
+        // Update/create materialized balances under the group's lock strategy (rows ordered by user id)
+        balanceLockStrategies.applyDeltas(groupId, deltas, actorId);
+        pairDebtRepository.apply(groupId, PairDebtDeltas.forExpense(payerId, deltas));
 
         return saved;
     }
 
-    private Balance getOrCreateAndLockBalance(UUID groupId, UUID userId, UUID actorId) {
-        Optional<Balance> locked = balanceRepository.findLockedByGroupIdAndUserId(groupId, userId);
-        if (locked.isPresent()) return locked.get();
-
-        Balance newB = Balance.builder()
-                .groupId(groupId)
-                .userId(userId)
-                .createdBy(actorId)
-                .balance(MoneyUtils.scale(BigDecimal.ZERO))
-                .build();
-        try {
-            // Attempt to insert the new balance
-            Balance saved = balanceRepository.save(newB);
-            // Now acquire a PESSIMISTIC_WRITE lock on the saved row and return it
-            return balanceRepository.findLockedByGroupIdAndUserId(groupId, userId).orElse(saved);
-        } catch (DataIntegrityViolationException ex) {
-            // Concurrent insert happened (unique constraint). Re-query with lock and return the existing row.
-            Optional<Balance> maybeLocked = balanceRepository.findLockedByGroupIdAndUserId(groupId, userId);
-            // Log full context for troubleshooting and throw an explicit exception.
-            log.error("Balance insert conflict but no row found for group={} user={} actor={}", groupId, userId, actorId, ex);
-            return maybeLocked.orElseThrow(() -> new IllegalStateException("Balance insert conflict and no row found", ex));
+    @Override
+    @Transactional(readOnly = true)
+    public List<ExpenseSplitDto> listSplits(UUID expenseId, UUID actorId) {
+        Expense expense = expenseRepository.findById(expenseId)
+                .orElseThrow(() -> new NotFoundException("Expense not found"));
+        if (!membershipSnapshot.isActiveMember(expense.getGroupId(), actorId)) {
+            throw new ForbiddenException("Actor is not a member of the group");
+        }
+        if (expense.getPackedSplits() != null) {
+            return PackedSplits.decode(expense.getPackedSplits());
         }
+        return expenseSplitRepository.findByExpenseId(expenseId).stream()
+                .map(s -> ExpenseSplitDto.builder()
+                        .userId(s.getUserId())
+                        .amount(s.getAmount())
+                        .shareType(ShareType.valueOf(s.getShareType()))
+                        .build())
+                .collect(Collectors.toList());
     }
 
-    private Expense saveExpense(CreateExpenseRequest request, UUID actorId, UUID groupId, BigDecimal normalizedTotal) {
+    private Expense saveExpense(CreateExpenseRequest request, UUID actorId, UUID groupId, BigDecimal normalizedTotal, byte[] packedSplits) {
         Expense e = Expense.builder()
                 .groupId(groupId)
                 .amount(normalizedTotal)
@@ -191,53 +170,23 @@ public class ExpenseServiceImpl implements ExpenseService {
                 .description(request.getDescription())
                 .createdBy(actorId)
                 .createdAt(LocalDateTime.now())
+                .packedSplits(packedSplits)
                 .build();
         return expenseRepository.save(e);
     }
 
-    private static Map<UUID, BigDecimal> computeActualDeltas(Map<UUID, BigDecimal> userDeltas, UUID payerId, Set<UUID> participantIds, BigDecimal normalizedTotal) {
-        Map<UUID, BigDecimal> deltas = new HashMap<>();
-        BigDecimal payerShare = userDeltas.getOrDefault(payerId, BigDecimal.ZERO);
-        for (UUID uid : participantIds) {
-            if (Objects.equals(uid, payerId)) {
-                BigDecimal delta = normalizedTotal.subtract(payerShare);
-                delta = MoneyUtils.scale(delta);
-                deltas.put(uid, delta);
-            } else {
-                BigDecimal share = userDeltas.getOrDefault(uid, BigDecimal.ZERO);
-                BigDecimal delta = share.negate();
-                delta = MoneyUtils.scale(delta);
-                deltas.put(uid, delta);
-            }
-        }
-        return deltas;
+    /**
+     * Share type name stored for a split; splits sent without one are CUSTOM, the column default.
+     */
+    static String shareType(ExpenseSplitDto split) {
+        return (split.getShareType() == null ? ShareType.CUSTOM : split.getShareType()).name();
     }
 
-    private static Map<UUID, BigDecimal> getUserDeltas(CreateExpenseRequest request, UUID payerId) {
-        Map<UUID, BigDecimal> userDeltas = new HashMap<>();
-        for (ExpenseSplitDto s : request.getSplits()) {
-            UUID uid = s.getUserId();
-            BigDecimal share = MoneyUtils.scale(s.getAmount());
-            userDeltas.merge(uid, share, BigDecimal::add);
-        }
-        return userDeltas;
+    private static List<UUID> userIds(List<LedgerEntry> ledgerEntries) {
+        return ledgerEntries.stream().map(LedgerEntry::getUserId).collect(Collectors.toList());
     }
 
-    private static BigDecimal getNormalizedTotal(CreateExpenseRequest request) {
-        BigDecimal normalizedTotal = MoneyUtils.scale(request.getAmount());
-        long totalCents = MoneyUtils.toCents(normalizedTotal);
-
-        long sumSplitsCents = request.getSplits().stream()
-                .map(s -> MoneyUtils.toCents(MoneyUtils.scale(s.getAmount())))
-                .reduce(0L, Long::sum);
-
-        if (sumSplitsCents != totalCents) {
-            throw new BadRequestException("Split amounts must sum to total amount. sum=" + MoneyUtils.fromCents(sumSplitsCents) + " total=" + MoneyUtils.fromCents(totalCents));
-        }
-        return normalizedTotal;
-    }
-
-    private static void validate(CreateExpenseRequest request) {
+    static void validate(CreateExpenseRequest request) {
         if (request == null) throw new BadRequestException("request is required");
         if (request.getAmount() == null || request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
             throw new BadRequestException("Amount must be positive");
@@ -245,5 +194,9 @@ public class ExpenseServiceImpl implements ExpenseService {
         if (request.getSplits() == null || request.getSplits().isEmpty()) {
             throw new BadRequestException("Splits are required");
         }
+        // stored as a Currency code, so an unknown name could not be written
+        if (Arrays.stream(Currency.values()).noneMatch(c -> c.name().equals(request.getCurrency()))) {
+            throw new BadRequestException("Unsupported currency: " + request.getCurrency());
+        }
     }
 }
\ No newline at end of file
@@ -4,14 +4,26 @@ import com.kleadingsolutions.expenseshare.aop.LogExecution;
 import com.kleadingsolutions.expenseshare.dto.BalanceDto;
 import com.kleadingsolutions.expenseshare.dto.ExpenseDto;
 import com.kleadingsolutions.expenseshare.dto.GroupDto;
+import com.kleadingsolutions.expenseshare.dto.PairDebtDto;
+import com.kleadingsolutions.expenseshare.dto.SettlePlanDto;
+import com.kleadingsolutions.expenseshare.dto.SettleTransferDto;
 import com.kleadingsolutions.expenseshare.exception.NotFoundException;
 import com.kleadingsolutions.expenseshare.model.Balance;
-import com.kleadingsolutions.expenseshare.model.Expense;
 import com.kleadingsolutions.expenseshare.model.Group;
 import com.kleadingsolutions.expenseshare.model.GroupMember;
 import com.kleadingsolutions.expenseshare.repository.*;
 import com.kleadingsolutions.expenseshare.service.AuthService;
+import com.kleadingsolutions.expenseshare.service.BalanceProjections;
+import com.kleadingsolutions.expenseshare.service.BalanceSnapshots;
+import com.kleadingsolutions.expenseshare.service.BalanceStripes;
+import com.kleadingsolutions.expenseshare.service.GroupMembershipSnapshot;
 import com.kleadingsolutions.expenseshare.service.GroupService;
+import com.kleadingsolutions.expenseshare.service.LedgerFolder;
+import com.kleadingsolutions.expenseshare.service.SettlePlans;
+import com.kleadingsolutions.expenseshare.service.UserNetPositions;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import com.kleadingsolutions.expenseshare.util.PairDebtDeltas;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,7 +31,9 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -31,6 +45,15 @@ import java.util.stream.Collectors;
  * - Reduced duplicate repository calls by reusing fetched lists.
  * - Handled concurrent-insert race when adding a GroupMember (catch DataIntegrityViolationException).
  * - Marked read-only transactions for list methods.
+ * - Membership checks use the cached GroupMembershipSnapshot; membership writes bump the group's membership
+ *   version and invalidate it after commit.
+ * - Balance reads fold the group's pending ledger tail first (lazy balance mode).
+ * - With balance striping enabled, balance reads add pending stripes in SQL so they stay exact.
+ * - With balance projections enabled, listBalances is served from the in-memory ledger projection.
+ * - settlePlan derives a minimal settle-up plan from the same balances listBalances returns.
+ * - Membership writes drop the cached cross-group net positions of the users they affect.
+ * - listDebts reads the pairwise debt rows of one user: O(counterparties), not O(history).
+ * - listBalancesAsOf reads the nearest balance snapshot plus the ledger range after it.
  */
 @Service
 @RequiredArgsConstructor
@@ -44,6 +67,14 @@ public class GroupServiceImpl implements GroupService {
     private final ExpenseRepository expenseRepository;
     private final BalanceRepository balanceRepository;
     private final AuthService authService;
+    private final GroupMembershipSnapshot membershipSnapshot;
+    private final LedgerFolder ledgerFolder;
+    private final BalanceStripes balanceStripes;
+    private final BalanceProjections balanceProjections;
+    private final SettlePlans settlePlans;
+    private final UserNetPositions userNetPositions;
+    private final PairDebtRepository pairDebtRepository;
+    private final BalanceSnapshots balanceSnapshots;
 
     @Override
     @LogExecution(includeArgs = true, includeResult = false, warnThresholdMs = 300)
@@ -89,6 +120,8 @@ public class GroupServiceImpl implements GroupService {
             // concurrent insert — another thread added the member; that's fine
             log.warn("Concurrent member insert detected when adding creator {} to group {}: {}", creatorId, g.getId(), dive.getMessage());
         }
+        membershipSnapshot.invalidateAfterCommit(g.getId());
+        userNetPositions.invalidateAfterCommit(creatorId);
 
         return GroupDto.builder()
                 .id(g.getId())
@@ -107,13 +140,8 @@ public class GroupServiceImpl implements GroupService {
         groupRepository.findById(groupId)
                 .orElseThrow(() -> new NotFoundException("Group not found"));
 
-        // fetch members once and reuse
-        List<GroupMember> membersForGroup = groupMemberRepository.findByGroupId(groupId);
-
         // require actor be member
-        boolean actorMember = membersForGroup.stream()
-                .anyMatch(m -> m.getUserId().equals(actorId) && "ACTIVE".equalsIgnoreCase(m.getStatus()));
-        if (!actorMember) {
+        if (!membershipSnapshot.isActiveMember(groupId, actorId)) {
             log.warn("Actor {} is not a member of group {}", actorId, groupId);
             throw new IllegalArgumentException("Actor is not a member of the group");
         }
@@ -121,10 +149,8 @@ public class GroupServiceImpl implements GroupService {
         // ensure user exists
         userRepository.findById(userId).orElseThrow(() -> new NotFoundException("User not found"));
 
-        // prevent duplicate
-        boolean already = membersForGroup.stream()
-                .anyMatch(m -> m.getUserId().equals(userId));
-        if (already) {
+        // prevent duplicate (any status)
+        if (groupMemberRepository.existsByGroupIdAndUserId(groupId, userId)) {
             log.debug("User {} already a member of group {}, skipping add", userId, groupId);
             return;
         }
@@ -142,6 +168,8 @@ public class GroupServiceImpl implements GroupService {
             // concurrent insert by another request - treat as already added
             log.warn("Concurrent addMember detected for group={} user={}: {}", groupId, userId, dive.getMessage());
         }
+        membershipSnapshot.invalidateAfterCommit(groupId);
+        userNetPositions.invalidateAfterCommit(userId);
     }
 
     @Override
@@ -154,22 +182,20 @@ public class GroupServiceImpl implements GroupService {
                 .orElseThrow(() -> new NotFoundException("Group not found"));
 
         // require actor be member
-        List<GroupMember> membersForGroup = groupMemberRepository.findByGroupId(groupId);
-        boolean actorMember = membersForGroup.stream()
-                .anyMatch(m -> m.getUserId().equals(actorId) && "ACTIVE".equalsIgnoreCase(m.getStatus()));
-        if (!actorMember) {
+        if (!membershipSnapshot.isActiveMember(groupId, actorId)) {
             log.warn("Actor {} is not a member of group {}", actorId, groupId);
             throw new IllegalArgumentException("Actor is not a member of the group");
         }
 
-        List<GroupMember> members = membersForGroup.stream()
-                .filter(m -> m.getUserId().equals(userId)).collect(Collectors.toList());
-        if (members.isEmpty()) {
-            log.warn("Attempted to remove non-member user {} from group {}", userId, groupId);
-            throw new NotFoundException("Group member not found");
-        }
+        GroupMember member = groupMemberRepository.findByGroupIdAndUserId(groupId, userId)
+                .orElseThrow(() -> {
+                    log.warn("Attempted to remove non-member user {} from group {}", userId, groupId);
+                    return new NotFoundException("Group member not found");
+                });
 
-        groupMemberRepository.deleteAll(members);
+        groupMemberRepository.delete(member);
+        membershipSnapshot.invalidateAfterCommit(groupId);
+        userNetPositions.invalidateAfterCommit(userId);
         log.info("Removed user {} from group {}", userId, groupId);
     }
 
@@ -179,28 +205,29 @@ public class GroupServiceImpl implements GroupService {
     public void leaveGroup(UUID groupId, UUID userId) {
         log.info("User {} attempting to leave group {}", userId, groupId);
         // user can leave only if their balance for the group is zero
-        List<Balance> balances = balanceRepository.findByGroupId(groupId);
-        Optional<Balance> b = balances.stream().filter(x -> x.getUserId().equals(userId)).findFirst();
-        if (b.isPresent() && b.get().getBalance().compareTo(java.math.BigDecimal.ZERO) != 0) {
-            log.warn("User {} cannot leave group {} with non-zero balance {}", userId, groupId, b.get().getBalance());
+        ledgerFolder.fold(groupId);
+        Optional<java.math.BigDecimal> b = balanceStripes.isEnabled()
+                ? balanceStripes.userBalance(groupId, userId)
+                : balanceRepository.findByGroupIdAndUserId(groupId, userId).map(Balance::getBalance);
+        if (b.isPresent() && b.get().compareTo(java.math.BigDecimal.ZERO) != 0) {
+            log.warn("User {} cannot leave group {} with non-zero balance {}", userId, groupId, b.get());
             throw new IllegalStateException("Cannot leave group with non-zero balance");
         }
 
         // remove membership
-        List<GroupMember> members = groupMemberRepository.findByGroupId(groupId)
-                .stream().filter(m -> m.getUserId().equals(userId)).collect(Collectors.toList());
-        if (members.isEmpty()) {
-            log.warn("User {} is not a member of group {}; cannot leave", userId, groupId);
-            throw new NotFoundException("Group member not found");
-        }
-        groupMemberRepository.deleteAll(members);
+        GroupMember member = groupMemberRepository.findByGroupIdAndUserId(groupId, userId)
+                .orElseThrow(() -> {
+                    log.warn("User {} is not a member of group {}; cannot leave", userId, groupId);
+                    return new NotFoundException("Group member not found");
+                });
+        groupMemberRepository.delete(member);
+        membershipSnapshot.invalidateAfterCommit(groupId);
+        userNetPositions.invalidateAfterCommit(userId);
         log.info("User {} left group {}", userId, groupId);
     }
 
     private void ensureMember(UUID groupId, UUID userId) {
-        boolean isMember = groupMemberRepository.findByGroupId(groupId).stream()
-                .anyMatch(m -> m.getUserId().equals(userId) && "ACTIVE".equalsIgnoreCase(m.getStatus()));
-        if (!isMember) {
+        if (!membershipSnapshot.isActiveMember(groupId, userId)) {
             log.warn("User {} is not an ACTIVE member of group {}", userId, groupId);
             throw new IllegalArgumentException("User is not a member of the group");
         }
@@ -213,16 +240,8 @@ public class GroupServiceImpl implements GroupService {
         UUID me = authService.getCurrentUserId();
         ensureMember(groupId, me);
 
-        List<Expense> expenses = expenseRepository.findByGroupId(groupId);
-        return expenses.stream().map(e -> ExpenseDto.builder()
-                .id(e.getId())
-                .groupId(e.getGroupId())
-                .createdBy(e.getCreatedBy())
-                .description(e.getDescription())
-                .amount(e.getAmount())
-                .currency(e.getCurrency())
-                .createdAt(e.getCreatedAt())
-                .build()).collect(Collectors.toList());
+        // column projection: packed splits of large expenses are not read for the listing
+        return expenseRepository.findDtosByGroupId(groupId);
     }
 
     @Override
@@ -232,20 +251,95 @@ public class GroupServiceImpl implements GroupService {
         UUID me = authService.getCurrentUserId();
         ensureMember(groupId, me);
 
-        List<Balance> balances = balanceRepository.findByGroupId(groupId);
-        return balances.stream().map(b -> BalanceDto.builder()
-                .userId(b.getUserId())
-                .balance(b.getBalance())
+        return currentBalances(groupId).entrySet().stream().map(e -> BalanceDto.builder()
+                .userId(e.getKey())
+                .balance(e.getValue())
+                .build()).collect(Collectors.toList());
+    }
+
+    @Override
+    @LogExecution(includeArgs = true, includeResult = false, warnThresholdMs = 300)
+    @Transactional(readOnly = true)
+    public List<BalanceDto> listBalancesAsOf(UUID groupId, OffsetDateTime asOf) {
+        UUID me = authService.getCurrentUserId();
+        ensureMember(groupId, me);
+
+        return balanceSnapshots.balancesAsOf(groupId, asOf).entrySet().stream().map(e -> BalanceDto.builder()
+                .userId(e.getKey())
+                .balance(e.getValue())
                 .build()).collect(Collectors.toList());
     }
 
+    @Override
+    @LogExecution(includeArgs = true, includeResult = false, warnThresholdMs = 300)
+    @Transactional(readOnly = true)
+    public SettlePlanDto settlePlan(UUID groupId) {
+        UUID me = authService.getCurrentUserId();
+        ensureMember(groupId, me);
+
+        List<SettleTransferDto> transfers = settlePlans.plan(groupId, () -> CentDeltas.of(currentBalances(groupId))).stream()
+                .map(t -> SettleTransferDto.builder()
+                        .fromUserId(t.from())
+                        .toUserId(t.to())
+                        .amount(MoneyUtils.fromCents(t.cents()))
+                        .build()).collect(Collectors.toList());
+        return SettlePlanDto.builder().groupId(groupId).transfers(transfers).build();
+    }
+
+    @Override
+    @LogExecution(includeArgs = true, includeResult = false, warnThresholdMs = 300)
+    @Transactional(readOnly = true)
+    public List<PairDebtDto> listDebts(UUID groupId, UUID userId) {
+        UUID me = authService.getCurrentUserId();
+        ensureMember(groupId, me);
+        UUID user = userId != null ? userId : me;
+
+        List<PairDebtDto> debts = new ArrayList<>();
+        for (PairDebtDeltas.Entry e : pairDebtRepository.findForUser(groupId, user)) {
+            boolean loOwes = e.cents() > 0;
+            debts.add(PairDebtDto.builder()
+                    .debtorId(loOwes ? e.userLo() : e.userHi())
+                    .creditorId(loOwes ? e.userHi() : e.userLo())
+                    .amount(MoneyUtils.fromCents(Math.abs(e.cents())))
+                    .build());
+        }
+        return debts;
+    }
+
+    /**
+     * Every balance of the group, from the projection, the stripes or the balance rows depending on mode.
+     * In lazy mode the fold commits on the primary in its own transaction while this read may run on a
+     * replica that has not replayed it, so rows and the unfolded tail are read in one statement.
+     */
+    private Map<UUID, BigDecimal> currentBalances(UUID groupId) {
+        if (balanceProjections.isEnabled()) {
+            return balanceProjections.groupBalances(groupId);
+        }
+        ledgerFolder.fold(groupId);
+        if (ledgerFolder.isLazy()) {
+            return balanceRepository.findGroupBalancesWithTail(groupId);
+        }
+        if (balanceStripes.isEnabled()) {
+            return balanceStripes.groupBalances(groupId);
+        }
+        Map<UUID, BigDecimal> balances = new LinkedHashMap<>();
+        for (Balance b : balanceRepository.findByGroupId(groupId)) {
+            balances.put(b.getUserId(), b.getBalance());
+        }
+        return balances;
+    }
+
     @Override
     @Transactional
     @LogExecution(includeArgs = true, includeResult = false, warnThresholdMs = 300)
     public void removeGroup(UUID groupId) {
         Group g = groupRepository.findById(groupId).orElseThrow(() -> new NotFoundException("Group not found"));
         log.info("Removing group {} createdBy={}", groupId, g.getCreatedBy());
+        Set<UUID> members = membershipSnapshot.activeMembers(groupId);
         // Deleting the group will cascade delete group-scoped data if DB constraints are set (Flyway uses ON DELETE CASCADE).
         groupRepository.deleteById(groupId);
+        membershipSnapshot.invalidateAfterCommit(groupId);
+        balanceProjections.invalidateAfterCommit(groupId);
+        userNetPositions.invalidateAfterCommit(members);
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.kleadingsolutions.expenseshare.service.impl;
+
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.model.Balance;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepositoryCustom.VersionedBalance;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unlocked read plus version-checked UPDATE per row, retried with capped, fully jittered exponential
+ * backoff. The check and the retries are plain JDBC statements: a lost race returns 0 rows instead of
+ * throwing, so neither the transaction nor the persistence context is poisoned, and under READ
+ * COMMITTED every re-read sees the latest committed row, as a fresh transaction would. Retrying
+ * inside the caller's transaction keeps the balance change atomic with its ledger entries.
+ */
+@Component
+public class OptimisticBalanceLockStrategy implements BalanceLockStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(OptimisticBalanceLockStrategy.class);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final BalanceRepository balanceRepository;
+    private final BalanceProperties properties;
+    private final Counter conflicts;
+    private final Counter exhausted;
+
+    public OptimisticBalanceLockStrategy(BalanceRepository balanceRepository,
+                                         BalanceProperties properties,
+                                         MeterRegistry meterRegistry) {
+        this.balanceRepository = balanceRepository;
+        this.properties = properties;
+        this.conflicts = Counter.builder("expenseshare.balance.lock.conflicts")
+                .description("Version-checked balance updates that lost a race and were retried")
+                .tag("strategy", "optimistic")
+                .register(meterRegistry);
+        this.exhausted = Counter.builder("expenseshare.balance.lock.exhausted")
+                .description("Balance updates that gave up after the configured attempts")
+                .tag("strategy", "optimistic")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public BalanceLockMode mode() {
+        return BalanceLockMode.OPTIMISTIC;
+    }
+
+    @Override
+    public void applyDeltas(UUID groupId, CentDeltas deltas, UUID actorId) {
+        balanceRepository.insertMissing(groupId, deltas, actorId);
+        for (int i = 0; i < deltas.size(); i++) {
+            apply(groupId, deltas.userId(i), deltas.amount(i));
+        }
+    }
+
+    /**
+     * Optimistic overwrite: the row is not locked; the JPA @Version check at flush rejects the
+     * overwrite if a writer changed the row in between.
+     */
+    @Override
+    public Optional<Balance> lockForOverwrite(UUID groupId, UUID userId) {
+        return balanceRepository.findByGroupIdAndUserId(groupId, userId);
+    }
+
+    private void apply(UUID groupId, UUID userId, BigDecimal delta) {
+        int maxAttempts = properties.optimisticMaxAttempts();
+        for (int attempt = 1; ; attempt++) {
+            VersionedBalance current = balanceRepository.findVersioned(groupId, userId)
+                    .orElseThrow(() -> new IllegalStateException("Balance row missing after insert for group " + groupId + " user " + userId));
+            if (balanceRepository.compareAndSet(current.id(), current.version(), MoneyUtils.scale(current.balance().add(delta)))) {
+                return;
+            }
+            if (attempt >= maxAttempts) {
+                exhausted.increment();
+                throw new OptimisticLockingFailureException("Balance of user " + userId + " in group " + groupId
+                        + " changed concurrently " + attempt + " times");
+            }
+            conflicts.increment();
+            log.debug("Balance version conflict group={} user={} attempt {}/{}", groupId, userId, attempt, maxAttempts);
+            backoff(attempt);
+        }
+    }
+
+    private void backoff(int attempt) {
+        long base = properties.optimisticBackoff().toNanos();
+        if (base <= 0) return;
+        long cap = Math.min(MAX_BACKOFF_NANOS, base << Math.min(attempt - 1, 16));
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OptimisticLockingFailureException("Interrupted while backing off", e);
+        }
+    }
+}
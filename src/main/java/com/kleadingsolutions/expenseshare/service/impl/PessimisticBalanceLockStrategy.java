@@ -0,0 +1,46 @@
+package com.kleadingsolutions.expenseshare.service.impl;
+
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.model.Balance;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * PESSIMISTIC_WRITE row locks taken one user at a time in user-id order (CentDeltas are sorted),
+ * then a read-modify-write save. Missing rows are inserted first so every row can be locked.
+ */
+@Component
+@RequiredArgsConstructor
+public class PessimisticBalanceLockStrategy implements BalanceLockStrategy {
+
+    private final BalanceRepository balanceRepository;
+
+    @Override
+    public BalanceLockMode mode() {
+        return BalanceLockMode.PESSIMISTIC;
+    }
+
+    @Override
+    public void applyDeltas(UUID groupId, CentDeltas deltas, UUID actorId) {
+        balanceRepository.insertMissing(groupId, deltas, actorId);
+        for (int i = 0; i < deltas.size(); i++) {
+            UUID userId = deltas.userId(i);
+            Balance b = balanceRepository.findLockedByGroupIdAndUserId(groupId, userId)
+                    .orElseThrow(() -> new IllegalStateException("Balance row missing after insert for group " + groupId + " user " + userId));
+            b.setBalance(MoneyUtils.scale(b.getBalance().add(deltas.amount(i))));
+            balanceRepository.save(b);
+        }
+    }
+
+    @Override
+    public Optional<Balance> lockForOverwrite(UUID groupId, UUID userId) {
+        return balanceRepository.findLockedByGroupIdAndUserId(groupId, userId);
+    }
+}
@@ -1,21 +1,30 @@
 package com.kleadingsolutions.expenseshare.service.impl;
 
 import com.kleadingsolutions.expenseshare.aop.LogExecution;
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
 import com.kleadingsolutions.expenseshare.enums.Currency;
 import com.kleadingsolutions.expenseshare.enums.TransactionType;
 import com.kleadingsolutions.expenseshare.exception.BadRequestException;
 import com.kleadingsolutions.expenseshare.exception.ForbiddenException;
 import com.kleadingsolutions.expenseshare.exception.NotFoundException;
 import com.kleadingsolutions.expenseshare.model.Balance;
-import com.kleadingsolutions.expenseshare.model.GroupMember;
 import com.kleadingsolutions.expenseshare.model.LedgerEntry;
 import com.kleadingsolutions.expenseshare.model.Settlement;
 import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
-import com.kleadingsolutions.expenseshare.repository.GroupMemberRepository;
 import com.kleadingsolutions.expenseshare.repository.LedgerEntryRepository;
+import com.kleadingsolutions.expenseshare.repository.PairDebtRepository;
 import com.kleadingsolutions.expenseshare.repository.SettlementRepository;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategies;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.service.BalanceProjections;
+import com.kleadingsolutions.expenseshare.service.GroupMembershipSnapshot;
+import com.kleadingsolutions.expenseshare.service.LedgerFolder;
 import com.kleadingsolutions.expenseshare.service.SettlementService;
+import com.kleadingsolutions.expenseshare.service.UserNetPositions;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
 import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import com.kleadingsolutions.expenseshare.util.PairDebtDeltas;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
@@ -27,13 +36,16 @@ import org.slf4j.LoggerFactory;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 /**
- * Settlement implementation (optimistic retry). Note: marking PENDING/FAILED/COMPLETED
+ * Settlement implementation. Balances are moved as one pair of deltas (payer -amount, receiver
+ * +amount) through the group's BalanceLockStrategy; the previous optimistic read-modify-write retry loop is kept behind
+ * app.balances.settlement-optimistic-retry for comparison. Note: marking PENDING/FAILED/COMPLETED
  * is subject to transactional semantics; persisting a FAILED state when the outer
  * transaction rolls back requires a separate REQUIRES_NEW approach.
  */
@@ -45,11 +57,21 @@ public class SettlementServiceImpl implements SettlementService {
 
     private static final int MAX_RETRIES = 3;
     private static final long RETRY_BACKOFF_MS = 50L;
+    private static final String UPDATES_METRIC = "expenseshare.settlement.balance.updates";
+    private static final String CONFLICTS_METRIC = "expenseshare.settlement.balance.conflicts";
+    private static final String RETRIES_METRIC = "expenseshare.settlement.balance.retries";
 
     private final BalanceRepository balanceRepository;
     private final SettlementRepository settlementRepository;
     private final LedgerEntryRepository ledgerEntryRepository;
-    private final GroupMemberRepository groupMemberRepository;
+    private final GroupMembershipSnapshot membershipSnapshot;
+    private final LedgerFolder ledgerFolder;
+    private final BalanceLockStrategies balanceLockStrategies;
+    private final BalanceProperties balanceProperties;
+    private final BalanceProjections balanceProjections;
+    private final UserNetPositions userNetPositions;
+    private final PairDebtRepository pairDebtRepository;
+    private final MeterRegistry meterRegistry;
 
     @Override
     @Transactional
@@ -70,18 +92,12 @@ public class SettlementServiceImpl implements SettlementService {
             throw new BadRequestException("payer and receiver cannot be the same user");
         }
 
-        // Ensure initiator is a member of the group
-        boolean initiatorMember = groupMemberRepository.findByGroupId(groupId).stream()
-                .anyMatch(m -> m.getUserId().equals(initiatedBy) && "ACTIVE".equalsIgnoreCase(m.getStatus()));
-        if (!initiatorMember) {
+        // Ensure initiator, payer and receiver are members (one cached snapshot, O(1) lookups)
+        Set<UUID> members = membershipSnapshot.activeMembers(groupId);
+        if (!members.contains(initiatedBy)) {
             log.warn("Initiator {} is not a member of group {}", initiatedBy, groupId);
             throw new ForbiddenException("Initiator is not a group member");
         }
-
-        // Ensure payer and receiver are members
-        Set<UUID> members = groupMemberRepository.findByGroupId(groupId).stream()
-                .filter(m -> "ACTIVE".equalsIgnoreCase(m.getStatus()))
-                .map(GroupMember::getUserId).collect(Collectors.toSet());
         if (!members.contains(payerId) || !members.contains(receiverId)) {
             log.warn("Payer {} or receiver {} not a member of group {}", payerId, receiverId, groupId);
             throw new NotFoundException("Payer or receiver not a member of the group");
@@ -126,13 +142,51 @@ public class SettlementServiceImpl implements SettlementService {
                 .createdBy(initiatedBy)
                 .build();
 
-        ledgerEntryRepository.saveAll(Arrays.asList(debit, credit));
-        log.debug("Saved ledger entries for settlement id={}", sid);
+        List<LedgerEntry> entries = Arrays.asList(debit, credit);
+        if (ledgerFolder.isLazy()) {
+            // Lazy mode: sequenced ledger entries only; balances are folded on read
+            ledgerFolder.assignSequence(groupId, entries);
+            ledgerEntryRepository.saveAll(entries);
+            log.debug("Saved sequenced ledger entries for settlement id={} (lazy balances)", sid);
+        } else {
+            ledgerEntryRepository.saveAll(entries);
+            log.debug("Saved ledger entries for settlement id={}", sid);
+            if (balanceProperties.settlementOptimisticRetry()) {
+                applyBalancesWithRetry(groupId, payerId, receiverId, amt, savedSettlement);
+            } else {
+                applyBalances(groupId, payerId, receiverId, amt, initiatedBy);
+            }
+        }
+        // after the balance writes, like every other writer: one table lock order
+        pairDebtRepository.apply(groupId, PairDebtDeltas.forSettlement(payerId, receiverId, MoneyUtils.toCents(amt)));
+        balanceProjections.applyAfterCommit(groupId, entries);
+        userNetPositions.invalidateAfterCommit(List.of(payerId, receiverId));
+
+        // Mark settlement completed
+        savedSettlement.setStatus("COMPLETED");
+        Settlement finalSaved = settlementRepository.save(savedSettlement);
+        log.info("Settlement {} marked COMPLETED and persisted", finalSaved.getId());
+        return finalSaved;
+    }
 
-        // Update balances with optimistic-lock retry
+    /**
+     * Add -amt / +amt to both balance rows (missing rows are created) under the group's lock strategy.
+     */
+    private void applyBalances(UUID groupId, UUID payerId, UUID receiverId, BigDecimal amt, UUID actorId) {
+        CentDeltas deltas = CentDeltas.of(Map.of(payerId, amt.negate(), receiverId, amt));
+        BalanceLockStrategy strategy = balanceLockStrategies.applyDeltas(groupId, deltas, actorId);
+        meterRegistry.counter(UPDATES_METRIC, "path", strategy.mode().name().toLowerCase()).increment();
+    }
+
+    /**
+     * Previous path: read both rows, mutate in Java and save with optimistic-lock retry.
+     */
+    private void applyBalancesWithRetry(UUID groupId, UUID payerId, UUID receiverId, BigDecimal amt, Settlement savedSettlement) {
+        UUID sid = savedSettlement.getId();
         int attempt = 0;
         while (true) {
             attempt++;
+            if (attempt > 1) meterRegistry.counter(RETRIES_METRIC).increment();
             try {
                 log.debug("Applying balances for settlement {} attempt {}/{}", sid, attempt, MAX_RETRIES);
                 Optional<Balance> payerOpt = balanceRepository.findByGroupIdAndUserId(groupId, payerId);
@@ -168,9 +222,11 @@ public class SettlementServiceImpl implements SettlementService {
                 balanceRepository.save(receiverBal);
 
                 log.info("Balances updated for settlement id={} on attempt {}: payerBalance={} receiverBalance={}", sid, attempt, payerBal.getBalance(), receiverBal.getBalance());
+                meterRegistry.counter(UPDATES_METRIC, "path", "optimistic_retry").increment();
                 // success -> break loop
                 break;
             } catch (OptimisticLockingFailureException ex) {
+                meterRegistry.counter(CONFLICTS_METRIC).increment();
                 log.warn("OptimisticLockingFailure on attempt {}/{} for settlement {}: {}", attempt, MAX_RETRIES, sid, ex.getMessage());
                 if (attempt >= MAX_RETRIES) {
                     // NOTE: saving FAILED here may be rolled back with outer tx.
@@ -187,11 +243,5 @@ public class SettlementServiceImpl implements SettlementService {
                 }
             }
         }
-
-        // Mark settlement completed
-        savedSettlement.setStatus("COMPLETED");
-        Settlement finalSaved = settlementRepository.save(savedSettlement);
-        log.info("Settlement {} marked COMPLETED and persisted", finalSaved.getId());
-        return finalSaved;
     }
 }
\ No newline at end of file
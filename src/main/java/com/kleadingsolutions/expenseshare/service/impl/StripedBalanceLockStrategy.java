@@ -0,0 +1,41 @@
+package com.kleadingsolutions.expenseshare.service.impl;
+
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.model.Balance;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.service.BalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.service.BalanceStripes;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Adds deltas to the writing thread's stripe rows (see {@link BalanceStripes}); writers on
+ * different stripes never wait for each other. Overwrites fold the stripes first.
+ */
+@Component
+@RequiredArgsConstructor
+public class StripedBalanceLockStrategy implements BalanceLockStrategy {
+
+    private final BalanceStripes balanceStripes;
+    private final BalanceRepository balanceRepository;
+
+    @Override
+    public BalanceLockMode mode() {
+        return BalanceLockMode.STRIPED;
+    }
+
+    @Override
+    public void applyDeltas(UUID groupId, CentDeltas deltas, UUID actorId) {
+        balanceStripes.apply(groupId, deltas, actorId);
+    }
+
+    @Override
+    public Optional<Balance> lockForOverwrite(UUID groupId, UUID userId) {
+        balanceStripes.foldInto(groupId);
+        return balanceRepository.findLockedByGroupIdAndUserId(groupId, userId);
+    }
+}
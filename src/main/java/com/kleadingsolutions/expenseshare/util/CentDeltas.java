@@ -0,0 +1,209 @@
+package com.kleadingsolutions.expenseshare.util;
+
+import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-user balance deltas held as primitive long cents in two parallel arrays sorted by user id.
+ *
+ * - forExpense(...) parses every split amount exactly once, then aggregates duplicates, applies the
+ *   payer credit and checks the zero-sum invariant without boxing or intermediate maps.
+ * - amount(i) is the only place a BigDecimal is created, for the persistence boundary.
+ * - Sorted order is the UUID natural order, i.e. the lock order used by balance upserts.
+ */
+public final class CentDeltas {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final UUID[] userIds;
+    private final long[] cents;
+    private final int size;
+    private final long totalCents;
+
+    private CentDeltas(UUID[] userIds, long[] cents, int size, long totalCents) {
+        this.userIds = userIds;
+        this.cents = cents;
+        this.size = size;
+        this.totalCents = totalCents;
+    }
+
+    /**
+     * Deltas of one expense: the payer is credited the total minus their own share, every other
+     * participant is debited their share. The payer is always included, even with a zero delta.
+     *
+     * @throws BadRequestException when the splits do not sum to the total (at cents precision)
+     */
+    public static CentDeltas forExpense(UUID payerId, BigDecimal total, List<ExpenseSplitDto> splits) {
+        long totalCents = MoneyUtils.toCents(total);
+        int n = splits.size();
+        UUID[] ids = new UUID[n + 1];
+        long[] amounts = new long[n + 1];
+
+        long sumSplitsCents = 0L;
+        for (int i = 0; i < n; i++) {
+            ExpenseSplitDto s = splits.get(i);
+            if (s.getUserId() == null) throw new BadRequestException("Split userId is required");
+            ids[i] = s.getUserId();
+            amounts[i] = MoneyUtils.toCents(s.getAmount());
+            sumSplitsCents = Math.addExact(sumSplitsCents, amounts[i]);
+        }
+        if (sumSplitsCents != totalCents) {
+            throw new BadRequestException("Split amounts must sum to total amount. sum=" + MoneyUtils.fromCents(sumSplitsCents) + " total=" + MoneyUtils.fromCents(totalCents));
+        }
+        // payer participates with a zero share unless listed; merged below if listed
+        ids[n] = payerId;
+        amounts[n] = 0L;
+
+        int size = sortAndMerge(ids, amounts, n + 1);
+
+        long sum = 0L;
+        for (int i = 0; i < size; i++) {
+            amounts[i] = ids[i].equals(payerId) ? totalCents - amounts[i] : -amounts[i];
+            sum += amounts[i];
+        }
+        if (sum != 0L) {
+            throw new IllegalStateException("Internal error: deltas do not sum to zero (cents): " + sum + " -> " + MoneyUtils.fromCents(sum));
+        }
+        return new CentDeltas(ids, amounts, size, totalCents);
+    }
+
+    /**
+     * Arbitrary per-user deltas (already aggregated elsewhere), rounded to cents.
+     */
+    public static CentDeltas of(Map<UUID, BigDecimal> deltas) {
+        int n = deltas.size();
+        UUID[] ids = new UUID[n];
+        long[] amounts = new long[n];
+        int i = 0;
+        for (Map.Entry<UUID, BigDecimal> e : deltas.entrySet()) {
+            ids[i] = e.getKey();
+            amounts[i] = MoneyUtils.toCents(e.getValue());
+            i++;
+        }
+        return new CentDeltas(ids, amounts, sortAndMerge(ids, amounts, n), 0L);
+    }
+
+    /**
+     * Sum of several deltas (e.g. every expense of a bulk chunk), merged per user without boxing.
+     */
+    public static CentDeltas concat(List<CentDeltas> parts) {
+        int n = 0;
+        for (CentDeltas d : parts) n += d.size;
+        UUID[] ids = new UUID[n];
+        long[] amounts = new long[n];
+        int i = 0;
+        for (CentDeltas d : parts) {
+            System.arraycopy(d.userIds, 0, ids, i, d.size);
+            System.arraycopy(d.cents, 0, amounts, i, d.size);
+            i += d.size;
+        }
+        return new CentDeltas(ids, amounts, sortAndMerge(ids, amounts, n), 0L);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public UUID userId(int i) {
+        return userIds[i];
+    }
+
+    public long cents(int i) {
+        return cents[i];
+    }
+
+    public BigDecimal amount(int i) {
+        return MoneyUtils.fromCents(cents[i]);
+    }
+
+    /**
+     * Expense total for {@link #forExpense}; 0 for {@link #of} and {@link #concat}.
+     */
+    public long totalCents() {
+        return totalCents;
+    }
+
+    public long sum() {
+        long sum = 0L;
+        for (int i = 0; i < size; i++) sum += cents[i];
+        return sum;
+    }
+
+    /**
+     * Boxed view (ordered by user id) for callers that still work with maps.
+     */
+    public Map<UUID, BigDecimal> toMap() {
+        Map<UUID, BigDecimal> map = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) map.put(userIds[i], amount(i));
+        return map;
+    }
+
+    /**
+     * Sorts the first n entries by user id (carrying the amounts) and folds duplicate ids into one
+     * entry. Returns the number of distinct ids left at the front of the arrays.
+     */
+    private static int sortAndMerge(UUID[] ids, long[] amounts, int n) {
+        sort(ids, amounts, 0, n - 1);
+        int w = 0;
+        for (int r = 0; r < n; r++) {
+            if (w > 0 && ids[w - 1].equals(ids[r])) {
+                amounts[w - 1] = Math.addExact(amounts[w - 1], amounts[r]);
+            } else {
+                ids[w] = ids[r];
+                amounts[w] = amounts[r];
+                w++;
+            }
+        }
+        for (int i = w; i < n; i++) ids[i] = null;
+        return w;
+    }
+
+    private static void sort(UUID[] ids, long[] amounts, int lo, int hi) {
+        while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+            int mid = (lo + hi) >>> 1;
+            UUID pivot = ids[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (ids[i].compareTo(pivot) < 0) i++;
+                while (ids[j].compareTo(pivot) > 0) j--;
+                if (i <= j) swap(ids, amounts, i++, j--);
+            }
+            // recurse into the smaller half, loop on the larger one (bounded stack depth)
+            if (j - lo < hi - i) {
+                sort(ids, amounts, lo, j);
+                lo = i;
+            } else {
+                sort(ids, amounts, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            UUID id = ids[i];
+            long amount = amounts[i];
+            int j = i - 1;
+            while (j >= lo && ids[j].compareTo(id) > 0) {
+                ids[j + 1] = ids[j];
+                amounts[j + 1] = amounts[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            amounts[j + 1] = amount;
+        }
+    }
+
+    private static void swap(UUID[] ids, long[] amounts, int a, int b) {
+        UUID id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        long amount = amounts[a];
+        amounts[a] = amounts[b];
+        amounts[b] = amount;
+    }
+}
@@ -13,7 +13,6 @@ import java.math.RoundingMode;
 public final class MoneyUtils {
     private static final int SCALE = 2;
     private static final RoundingMode RM = RoundingMode.HALF_EVEN;
-    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100L);
 
     private MoneyUtils() {}
 
@@ -25,11 +24,12 @@ public final class MoneyUtils {
     /**
      * Convert amount to integer cents (long) after scaling.
      * Throws ArithmeticException if the value doesn't fit into a long.
+     * Values already at scale <= 2 skip rounding; movePointRight keeps the compact (long) representation.
      */
     public static long toCents(BigDecimal amt) {
         if (amt == null) return 0L;
-        BigDecimal scaled = scale(amt);
-        return scaled.multiply(HUNDRED).longValueExact();
+        BigDecimal scaled = amt.scale() <= SCALE ? amt : amt.setScale(SCALE, RM);
+        return scaled.movePointRight(SCALE).longValueExact();
     }
 
     /**
@@ -0,0 +1,88 @@
+package com.kleadingsolutions.expenseshare.util;
+
+import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.enums.ShareType;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Binary encoding of all splits of one expense, stored in expenses.packed_splits.
+ *
+ * - Layout: a format byte, the split count as a varint, then per split the user id (16 bytes,
+ *   big-endian), the amount in cents as a zig-zag varint and the {@link ShareType} code (1 byte).
+ * - About 20 bytes per split for amounts under 10,000.00, against a full expense_splits row with its
+ *   own id, timestamps, version and index entries.
+ * - Splits decode in the order they were encoded; a split without a share type is stored as CUSTOM,
+ *   the expense_splits column default.
+ */
+public final class PackedSplits {
+
+    static final byte FORMAT = 1;
+
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private PackedSplits() {}
+
+    public static byte[] encode(List<ExpenseSplitDto> splits) {
+        ByteBuffer buf = ByteBuffer.allocate(1 + 5 + splits.size() * (16 + MAX_VARINT_BYTES + 1));
+        buf.put(FORMAT);
+        putVarint(buf, splits.size());
+        for (ExpenseSplitDto s : splits) {
+            buf.putLong(s.getUserId().getMostSignificantBits());
+            buf.putLong(s.getUserId().getLeastSignificantBits());
+            long cents = MoneyUtils.toCents(s.getAmount());
+            putVarint(buf, (cents << 1) ^ (cents >> 63));
+            ShareType shareType = s.getShareType() == null ? ShareType.CUSTOM : s.getShareType();
+            buf.put((byte) shareType.code());
+        }
+        byte[] out = new byte[buf.position()];
+        buf.flip().get(out);
+        return out;
+    }
+
+    public static List<ExpenseSplitDto> decode(byte[] packed) {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(packed);
+            byte format = buf.get();
+            if (format != FORMAT) throw new IllegalStateException("Unknown packed splits format " + format);
+            int count = (int) getVarint(buf);
+            List<ExpenseSplitDto> splits = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                UUID userId = new UUID(buf.getLong(), buf.getLong());
+                long zigzag = getVarint(buf);
+                long cents = (zigzag >>> 1) ^ -(zigzag & 1);
+                splits.add(ExpenseSplitDto.builder()
+                        .userId(userId)
+                        .amount(MoneyUtils.fromCents(cents))
+                        .shareType(ShareType.fromCode(buf.get()))
+                        .build());
+            }
+            if (buf.hasRemaining()) throw new IllegalStateException("Packed splits have " + buf.remaining() + " trailing bytes");
+            return splits;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException("Packed splits are truncated", e);
+        }
+    }
+
+    private static void putVarint(ByteBuffer buf, long v) {
+        while ((v & ~0x7FL) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    private static long getVarint(ByteBuffer buf) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalStateException("Malformed varint in packed splits");
+    }
+}
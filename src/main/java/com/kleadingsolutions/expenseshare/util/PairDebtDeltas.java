@@ -0,0 +1,83 @@
+package com.kleadingsolutions.expenseshare.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Changes to pairwise obligations of one group, aggregated per pair in canonical order.
+ *
+ * - A pair is stored as (lo, hi) with lo before hi in UUID natural order, the same order balance
+ *   upserts lock rows in; a debt of hi to lo is a negative amount on (lo, hi).
+ * - {@link #entries()} is sorted by (lo, hi), so concurrent writers lock pair rows in one order.
+ * - Pairs whose changes cancel out are dropped.
+ */
+public final class PairDebtDeltas {
+
+    /**
+     * Net change of one pair: cents > 0 increases what userLo owes userHi.
+     */
+    public record Entry(UUID userLo, UUID userHi, long cents) {
+    }
+
+    private record Pair(UUID lo, UUID hi) implements Comparable<Pair> {
+        @Override
+        public int compareTo(Pair o) {
+            int c = lo.compareTo(o.lo);
+            return c != 0 ? c : hi.compareTo(o.hi);
+        }
+    }
+
+    private final Map<Pair, Long> cents = new TreeMap<>();
+
+    /**
+     * Obligations created by one expense: every participant except the payer owes the payer their share.
+     */
+    public static PairDebtDeltas forExpense(UUID payerId, CentDeltas deltas) {
+        PairDebtDeltas out = new PairDebtDeltas();
+        out.addExpense(payerId, deltas);
+        return out;
+    }
+
+    /**
+     * One settlement, mirroring its ledger entries (payer -amount, receiver +amount).
+     */
+    public static PairDebtDeltas forSettlement(UUID payerId, UUID receiverId, long cents) {
+        PairDebtDeltas out = new PairDebtDeltas();
+        out.add(payerId, receiverId, cents);
+        return out;
+    }
+
+    public void addExpense(UUID payerId, CentDeltas deltas) {
+        for (int i = 0; i < deltas.size(); i++) {
+            // non-payer deltas are minus the participant's share
+            if (!deltas.userId(i).equals(payerId)) add(deltas.userId(i), payerId, -deltas.cents(i));
+        }
+    }
+
+    /**
+     * Record that debtor owes creditor amount more (less when negative).
+     */
+    public void add(UUID debtorId, UUID creditorId, long amount) {
+        if (amount == 0L || debtorId.equals(creditorId)) return;
+        boolean ordered = debtorId.compareTo(creditorId) < 0;
+        Pair pair = ordered ? new Pair(debtorId, creditorId) : new Pair(creditorId, debtorId);
+        long signed = ordered ? amount : -amount;
+        cents.merge(pair, signed, (a, b) -> {
+            long sum = Math.addExact(a, b);
+            return sum == 0L ? null : sum;
+        });
+    }
+
+    public int size() {
+        return cents.size();
+    }
+
+    public List<Entry> entries() {
+        List<Entry> out = new ArrayList<>(cents.size());
+        cents.forEach((p, c) -> out.add(new Entry(p.lo(), p.hi(), c)));
+        return out;
+    }
+}
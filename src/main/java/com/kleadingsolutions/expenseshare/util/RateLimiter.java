@@ -0,0 +1,43 @@
+package com.kleadingsolutions.expenseshare.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces callers to a fixed rate: each permit reserves the next 1/rate second slot, and a caller
+ * sleeps until the first of its slots. Idle time is not saved up: the first caller after a pause
+ * runs at once, the rest are paced. Safe for concurrent callers; an interrupt ends the wait early
+ * and leaves the thread's interrupt flag set.
+ */
+public final class RateLimiter {
+
+    private final long nanosPerPermit;
+    private long nextFree = System.nanoTime();
+
+    public RateLimiter(int permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+        }
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+    }
+
+    public void acquire() {
+        acquire(1);
+    }
+
+    public void acquire(int permits) {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            nextFree = Math.max(nextFree, now);
+            wait = nextFree - now;
+            nextFree += nanosPerPermit * permits;
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.kleadingsolutions.expenseshare.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Settle-up plans: a list of transfers (debtor pays creditor) after which every balance of a group is zero.
+ *
+ * - Works on primitive long cents only; balances > 0 are owed money, balances < 0 owe money.
+ * - Greedy: repeatedly match the largest debtor with the largest creditor (two index max-heaps),
+ *   O(n log n) and at most n - 1 transfers for n non-zero balances.
+ * - Exact: with at most {@link #EXACT_MAX_PARTICIPANTS} non-zero balances the minimum number of
+ *   transfers is found by splitting the participants into the largest number of zero-sum subsets
+ *   (subset DP, O(2^n * n)) and settling each subset greedily: n - subsets transfers, which is optimal.
+ * - Deterministic: ties are broken by user id order, so the same balances always give the same plan.
+ */
+public final class SettlePlanner {
+
+    public static final int EXACT_MAX_PARTICIPANTS = 14;
+
+    private SettlePlanner() {
+    }
+
+    /**
+     * One payment of the plan.
+     */
+    public record Transfer(UUID from, UUID to, long cents) {
+    }
+
+    /**
+     * Plan for the given balances: exact when small enough, greedy otherwise.
+     *
+     * @throws IllegalStateException when the balances do not sum to zero
+     */
+    public static List<Transfer> plan(CentDeltas balances) {
+        int[] nonZero = nonZero(balances);
+        return nonZero.length <= EXACT_MAX_PARTICIPANTS
+                ? exact(balances, nonZero)
+                : greedy(balances, nonZero);
+    }
+
+    /**
+     * Greedy plan regardless of group size (benchmark and test baseline).
+     */
+    public static List<Transfer> greedy(CentDeltas balances) {
+        return greedy(balances, nonZero(balances));
+    }
+
+    private static int[] nonZero(CentDeltas balances) {
+        if (balances.sum() != 0L) {
+            throw new IllegalStateException("Balances do not sum to zero (cents): " + balances.sum());
+        }
+        int n = 0;
+        int[] idx = new int[balances.size()];
+        for (int i = 0; i < balances.size(); i++) {
+            if (balances.cents(i) != 0L) idx[n++] = i;
+        }
+        return n == idx.length ? idx : Arrays.copyOf(idx, n);
+    }
+
+    private static List<Transfer> greedy(CentDeltas balances, int[] participants) {
+        int n = participants.length;
+        long[] remaining = new long[balances.size()];
+        Heap debtors = new Heap(n, remaining);
+        Heap creditors = new Heap(n, remaining);
+        for (int i : participants) {
+            long c = balances.cents(i);
+            remaining[i] = Math.abs(c);
+            (c < 0 ? debtors : creditors).push(i);
+        }
+        List<Transfer> plan = new ArrayList<>(Math.max(0, n - 1));
+        while (!debtors.isEmpty() && !creditors.isEmpty()) {
+            int d = debtors.pop();
+            int c = creditors.pop();
+            long amount = Math.min(remaining[d], remaining[c]);
+            plan.add(new Transfer(balances.userId(d), balances.userId(c), amount));
+            remaining[d] -= amount;
+            remaining[c] -= amount;
+            if (remaining[d] > 0) debtors.push(d);
+            if (remaining[c] > 0) creditors.push(c);
+        }
+        return plan;
+    }
+
+    private static List<Transfer> exact(CentDeltas balances, int[] participants) {
+        int n = participants.length;
+        if (n == 0) return List.of();
+        int full = (1 << n) - 1;
+        long[] sum = new long[full + 1];
+        byte[] groups = new byte[full + 1];
+        for (int mask = 1; mask <= full; mask++) {
+            int low = Integer.numberOfTrailingZeros(mask);
+            sum[mask] = sum[mask & (mask - 1)] + balances.cents(participants[low]);
+            int best = 0;
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                best = Math.max(best, groups[mask & ~Integer.lowestOneBit(rest)]);
+            }
+            groups[mask] = (byte) (best + (sum[mask] == 0L ? 1 : 0));
+        }
+
+        // walk back from the full set; every zero-sum prefix closes one subset
+        List<Transfer> plan = new ArrayList<>(n - groups[full]);
+        int mask = full;
+        int subset = 0;
+        while (mask != 0) {
+            int target = groups[mask] - (sum[mask] == 0L ? 1 : 0);
+            int next = mask;
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int bit = Integer.lowestOneBit(rest);
+                if (groups[mask & ~bit] == target) {
+                    next = mask & ~bit;
+                    subset |= bit;
+                    break;
+                }
+            }
+            mask = next;
+            if (sum[mask] == 0L) {
+                plan.addAll(greedy(balances, members(participants, subset)));
+                subset = 0;
+            }
+        }
+        return plan;
+    }
+
+    private static int[] members(int[] participants, int subset) {
+        int[] out = new int[Integer.bitCount(subset)];
+        int k = 0;
+        for (int rest = subset; rest != 0; rest &= rest - 1) {
+            out[k++] = participants[Integer.numberOfTrailingZeros(rest)];
+        }
+        return out;
+    }
+
+    /**
+     * Binary max-heap of indices keyed by remaining[index]; ties go to the lower index (user id order).
+     */
+    private static final class Heap {
+        private final int[] heap;
+        private final long[] keys;
+        private int size;
+
+        Heap(int capacity, long[] keys) {
+            this.heap = new int[capacity];
+            this.keys = keys;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(int index) {
+            int i = size++;
+            heap[i] = index;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!above(heap[i], heap[parent])) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        int pop() {
+            int top = heap[0];
+            heap[0] = heap[--size];
+            int i = 0;
+            while (true) {
+                int l = 2 * i + 1;
+                if (l >= size) break;
+                int child = l + 1 < size && above(heap[l + 1], heap[l]) ? l + 1 : l;
+                if (!above(heap[child], heap[i])) break;
+                swap(i, child);
+                i = child;
+            }
+            return top;
+        }
+
+        private boolean above(int a, int b) {
+            return keys[a] > keys[b] || (keys[a] == keys[b] && a < b);
+        }
+
+        private void swap(int a, int b) {
+            int t = heap[a];
+            heap[a] = heap[b];
+            heap[b] = t;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.kleadingsolutions.expenseshare.util;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered UUIDs (RFC 9562 version 7), generated without any database round trip.
+ *
+ * - Layout: 48-bit Unix milliseconds, version 7, a 12-bit counter (rand_a), variant, 62 random bits.
+ * - Ids are monotonic within a JVM: the counter starts at a random value below 2048 each millisecond
+ *   and is incremented for every further id in it; when it runs out the ids borrow the next millisecond.
+ * - Ids of different nodes interleave by millisecond, so inserts land on the right-hand edge of
+ *   primary-key B-trees instead of random pages. Both PostgreSQL and UUID.compareTo order them by time.
+ */
+public final class UuidV7 {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // (unix millis << 12) | counter of the last id handed out
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private UuidV7() {
+    }
+
+    public static UUID randomUUID() {
+        return next(System.currentTimeMillis());
+    }
+
+    static UUID next(long unixMillis) {
+        long floor = unixMillis << 12;
+        long prev;
+        long next;
+        do {
+            prev = LAST.get();
+            next = prev < floor ? floor | RANDOM.nextInt(1 << 11) : prev + 1;
+        } while (!LAST.compareAndSet(prev, next));
+        return of(next >>> 12, next & 0xFFFL, RANDOM.nextLong());
+    }
+
+    /**
+     * Assemble an id from its timestamp, 12-bit counter and random bits (the top two are replaced by the variant).
+     */
+    static UUID of(long unixMillis, long counter, long random) {
+        long msb = (unixMillis & 0xFFFF_FFFF_FFFFL) << 16 | 0x7000L | (counter & 0xFFFL);
+        long lsb = (random & 0x3FFF_FFFF_FFFF_FFFFL) | 0x8000_0000_0000_0000L;
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * Unix milliseconds of a version 7 id.
+     */
+    public static long timestamp(UUID uuid) {
+        if (uuid.version() != 7) {
+            throw new IllegalArgumentException("Not a version 7 UUID: " + uuid);
+        }
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+}
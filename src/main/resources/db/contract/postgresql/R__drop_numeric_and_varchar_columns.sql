@@ -0,0 +1,30 @@
+-- Contract step of V14 (integer cents and enum codes). Drops the NUMERIC/VARCHAR columns that V14 keeps
+-- in step for instances of the previous version, with the triggers and functions doing so. Idempotent,
+-- and a repeatable migration so it runs after every versioned one whenever db/contract/{vendor} is in
+-- spring.flyway.locations: leave that location out for the deploy that applies V14 while previous-version
+-- instances still run, and add it back once none does.
+--
+-- Dropping a column only updates the catalog; rows written before keep their old bytes until they are
+-- rewritten (updates, VACUUM FULL / pg_repack), new rows are stored without them.
+DROP TRIGGER IF EXISTS ledger_entries_sync_codes ON ledger_entries;
+DROP TRIGGER IF EXISTS ledger_entries_archive_sync_codes ON ledger_entries_archive;
+DROP TRIGGER IF EXISTS expenses_sync_codes ON expenses;
+DROP TRIGGER IF EXISTS expense_splits_sync_codes ON expense_splits;
+DROP TRIGGER IF EXISTS settlements_sync_codes ON settlements;
+
+ALTER TABLE ledger_entries DROP COLUMN IF EXISTS amount, DROP COLUMN IF EXISTS type, DROP COLUMN IF EXISTS currency;
+ALTER TABLE ledger_entries_archive DROP COLUMN IF EXISTS amount, DROP COLUMN IF EXISTS type, DROP COLUMN IF EXISTS currency;
+ALTER TABLE expenses DROP COLUMN IF EXISTS amount, DROP COLUMN IF EXISTS currency;
+ALTER TABLE expense_splits DROP COLUMN IF EXISTS amount, DROP COLUMN IF EXISTS share_type;
+ALTER TABLE settlements DROP COLUMN IF EXISTS amount;
+
+DROP FUNCTION IF EXISTS ledger_entries_sync_codes();
+DROP FUNCTION IF EXISTS expenses_sync_codes();
+DROP FUNCTION IF EXISTS expense_splits_sync_codes();
+DROP FUNCTION IF EXISTS settlements_sync_codes();
+DROP FUNCTION IF EXISTS currency_code(TEXT);
+DROP FUNCTION IF EXISTS currency_name(SMALLINT);
+DROP FUNCTION IF EXISTS transaction_type_code(TEXT);
+DROP FUNCTION IF EXISTS transaction_type_name(SMALLINT);
+DROP FUNCTION IF EXISTS share_type_code(TEXT);
+DROP FUNCTION IF EXISTS share_type_name(SMALLINT);
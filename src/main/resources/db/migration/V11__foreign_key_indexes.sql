@@ -0,0 +1,5 @@
+-- Child lookups by parent id (listExpenses loads the splits of each expense, listSettlements the
+-- settlements of a group) and the ON DELETE CASCADE from expenses / groups scanned the whole table.
+-- group_members.user_id is already covered by idx_groupmembers_user_group (V6).
+CREATE INDEX idx_expense_splits_expense ON expense_splits(expense_id);
+CREATE INDEX idx_settlements_group ON settlements(group_id);
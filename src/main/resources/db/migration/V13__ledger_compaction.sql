@@ -0,0 +1,33 @@
+-- Ledger compaction: entries older than the compaction horizon are moved here, and each group keeps
+-- one signed COMPACTED entry per (user, currency) dated at the horizon in ledger_entries instead.
+-- Same columns as ledger_entries plus when the entry was moved; nothing reads this table at runtime.
+CREATE TABLE ledger_entries_archive (
+    id UUID NOT NULL,
+    group_id UUID NOT NULL,
+    user_id UUID NOT NULL,
+    amount NUMERIC(19,2) NOT NULL,
+    type VARCHAR(50) NOT NULL,
+    related_id UUID,
+    currency VARCHAR(8) NOT NULL,
+    created_by UUID,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE,
+    version BIGINT,
+    seq BIGINT,
+    archived_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
+
+CREATE INDEX idx_ledger_archive_group_created ON ledger_entries_archive(group_id, created_at);
+
+-- Progress of a compaction pass: groups are visited in id order, and last_group_id is the highest
+-- group every group up to which has been checked at this horizon, so an interrupted pass resumes after it.
+CREATE TABLE ledger_compaction_runs (
+    run_id VARCHAR(64) PRIMARY KEY,
+    horizon TIMESTAMP WITH TIME ZONE NOT NULL,
+    last_group_id UUID,
+    groups_compacted BIGINT NOT NULL DEFAULT 0,
+    rows_archived BIGINT NOT NULL DEFAULT 0,
+    started_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    completed_at TIMESTAMP WITH TIME ZONE
+);
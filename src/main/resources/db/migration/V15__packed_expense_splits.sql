@@ -0,0 +1,5 @@
+-- Splits of expenses with at least app.expenses.splits.pack-threshold members are stored here as one
+-- value (PackedSplits: user id, cents and share type code per split) instead of one expense_splits row
+-- each. NULL for expenses whose splits are in expense_splits. Nullable and without a default, so adding
+-- it on PostgreSQL does not rewrite the table.
+ALTER TABLE expenses ADD COLUMN packed_splits BYTEA;
@@ -0,0 +1,19 @@
+-- Chunks of keyed bulk imports that committed. A row is inserted in the same transaction as the chunk
+-- it records, so a retried import with the same Idempotency-Key skips exactly the chunks already applied;
+-- a concurrent retry of the same chunk blocks on the primary key until the first one ends.
+CREATE TABLE bulk_import_chunks (
+    group_id UUID NOT NULL,
+    import_key VARCHAR(255) NOT NULL,
+    chunk_no INT NOT NULL,
+    chunk_hash VARCHAR(64) NOT NULL,
+    last_line INT NOT NULL,
+    expenses INT NOT NULL DEFAULT 0,
+    splits INT NOT NULL DEFAULT 0,
+    ledger_entries INT NOT NULL DEFAULT 0,
+    created_by UUID NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (group_id, import_key, chunk_no)
+);
+
+CREATE INDEX idx_bulk_import_chunks_expires ON bulk_import_chunks(expires_at);
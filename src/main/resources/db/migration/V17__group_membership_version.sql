@@ -0,0 +1,4 @@
+-- Bumped in every transaction that changes a group's membership. Nodes cache ACTIVE member sets
+-- tagged with the version they were loaded at and reload when the stored version moved, so a member
+-- removed through one node is no longer authorized on the others once that change commits.
+ALTER TABLE groups ADD COLUMN membership_version BIGINT NOT NULL DEFAULT 0;
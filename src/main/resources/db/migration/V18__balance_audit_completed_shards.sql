@@ -0,0 +1,3 @@
+-- When each shard was last scanned to the end. A node takes a free shard only when no node completed it
+-- within the last audit interval, so nodes on offset schedules do not rescan each other's shards.
+ALTER TABLE balance_audit_leases ADD COLUMN last_completed_at TIMESTAMP WITH TIME ZONE;
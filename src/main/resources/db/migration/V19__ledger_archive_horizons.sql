@@ -0,0 +1,7 @@
+-- Archived ledger months (LedgerPartitions): each group whose entries were in an archived month keeps
+-- the end of the latest such month. Its entries are carried as COMPACTED entries dated at the month's
+-- start and the snapshots inside the month are gone, so as-of balances before this time cannot be rebuilt.
+CREATE TABLE ledger_archive_horizons (
+    group_id UUID PRIMARY KEY,
+    archived_until TIMESTAMP WITH TIME ZONE NOT NULL
+);
@@ -0,0 +1,14 @@
+-- Idempotency keys for retried POSTs (expenses, settlements).
+-- A row is inserted in the same transaction as the write it guards; a concurrent duplicate blocks
+-- on the primary key until that transaction ends, then replays response_body.
+CREATE TABLE idempotency_keys (
+    principal VARCHAR(255) NOT NULL,
+    idempotency_key VARCHAR(255) NOT NULL,
+    request_hash VARCHAR(64) NOT NULL,
+    response_body TEXT,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (principal, idempotency_key)
+);
+
+CREATE INDEX idx_idempotency_expires ON idempotency_keys(expires_at);
@@ -0,0 +1,17 @@
+-- Lazy balance mode: writes append sequenced ledger entries and leave balances to be folded on read.
+-- ledger_entries.seq is allocated per group from group_ledger_heads.last_seq; NULL means the entry
+-- was applied to balances when it was written (eager mode, bulk import).
+ALTER TABLE ledger_entries ADD COLUMN seq BIGINT;
+
+CREATE INDEX idx_ledger_group_seq ON ledger_entries(group_id, seq);
+
+-- One row per group: highest allocated sequence and the sequence balances are folded up to.
+-- The row is locked while a sequence is allocated, so sequences become visible in order.
+CREATE TABLE group_ledger_heads (
+    group_id UUID PRIMARY KEY REFERENCES groups(id) ON DELETE CASCADE,
+    last_seq BIGINT NOT NULL DEFAULT 0,
+    folded_seq BIGINT NOT NULL DEFAULT 0
+);
+
+-- Highest ledger sequence included in each balance row (a single-user reconcile can move it past the group head).
+ALTER TABLE balances ADD COLUMN folded_seq BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,19 @@
+-- Striped balances for contended groups: a (group, user) balance is balances.balance plus the sum
+-- of its stripe rows. Concurrent writers add to different stripes instead of queuing on one row;
+-- stripes are folded back into balances when the group goes quiet.
+CREATE TABLE balance_stripes (
+    group_id UUID NOT NULL REFERENCES groups(id) ON DELETE CASCADE,
+    user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    stripe SMALLINT NOT NULL,
+    delta NUMERIC(19,2) NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    PRIMARY KEY (group_id, user_id, stripe)
+);
+
+CREATE INDEX idx_balance_stripes_updated ON balance_stripes(updated_at);
+
+-- Groups the contention detector switched to striped writes.
+CREATE TABLE striped_groups (
+    group_id UUID PRIMARY KEY REFERENCES groups(id) ON DELETE CASCADE,
+    flagged_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
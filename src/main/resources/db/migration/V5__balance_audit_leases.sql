@@ -0,0 +1,7 @@
+-- Balance audit shards: a node scans a shard (range of group ids) only while it holds its lease,
+-- so several nodes share one audit run without checking the same groups twice.
+CREATE TABLE balance_audit_leases (
+    shard INTEGER PRIMARY KEY,
+    owner VARCHAR(255),
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
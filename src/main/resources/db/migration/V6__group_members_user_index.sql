@@ -0,0 +1,3 @@
+-- Cross-group reads start from a user's memberships (my groups, net position); the unique
+-- (group_id, user_id) constraint cannot serve a lookup by user_id alone.
+CREATE INDEX idx_groupmembers_user_group ON group_members(user_id, group_id);
@@ -0,0 +1,15 @@
+-- Pairwise obligations per group: one row per pair of users that ever owed each other, keyed in
+-- canonical order (user_lo sorts before user_hi in the application's UUID order). cents > 0 means
+-- user_lo owes user_hi, cents < 0 the reverse. Maintained by expense and settlement writes from
+-- this migration on; history written before it is not backfilled (expenses do not record a payer).
+CREATE TABLE pair_debts (
+    group_id UUID NOT NULL REFERENCES groups(id) ON DELETE CASCADE,
+    user_lo UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    user_hi UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    cents BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    PRIMARY KEY (group_id, user_lo, user_hi)
+);
+
+-- the primary key serves lookups by (group, user_lo); this one serves (group, user_hi)
+CREATE INDEX idx_pair_debts_group_hi ON pair_debts(group_id, user_hi);
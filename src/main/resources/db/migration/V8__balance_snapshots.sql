@@ -0,0 +1,26 @@
+-- Point-in-time balances per group. A snapshot at cut_at holds every user's ledger total over the
+-- entries created before cut_at (created_at < cut_at); balances as of a later time are the snapshot
+-- plus the ledger range [cut_at, as_of). Snapshots are taken a settle delay after their cut, so
+-- transactions that created entries before the cut have committed. Only non-zero totals get a row.
+CREATE TABLE balance_snapshots (
+    group_id UUID NOT NULL REFERENCES groups(id) ON DELETE CASCADE,
+    cut_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    users INTEGER NOT NULL,
+    taken_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    PRIMARY KEY (group_id, cut_at)
+);
+
+CREATE TABLE balance_snapshot_rows (
+    group_id UUID NOT NULL,
+    cut_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    cents BIGINT NOT NULL,
+    PRIMARY KEY (group_id, cut_at, user_id),
+    FOREIGN KEY (group_id, cut_at) REFERENCES balance_snapshots(group_id, cut_at) ON DELETE CASCADE
+);
+
+-- Ledger range scans after a snapshot: per group (as-of reads, taking the next snapshot) and per
+-- user (recompute). The (group_id, user_id) lookups of idx_ledger_group_user are served by the new prefix.
+CREATE INDEX idx_ledger_group_created ON ledger_entries(group_id, created_at);
+CREATE INDEX idx_ledger_group_user_created ON ledger_entries(group_id, user_id, created_at);
+DROP INDEX idx_ledger_group_user;
@@ -0,0 +1,12 @@
+-- Progress of the offline balance rebuild (rebuild profile). The ledger is streamed in group id
+-- order; last_group_id is the highest group whose balances were rewritten together with every
+-- group before it, so an interrupted run resumes after it. completed_at is set when a run finishes.
+CREATE TABLE ledger_rebuild_checkpoints (
+    run_id VARCHAR(64) PRIMARY KEY,
+    last_group_id UUID,
+    groups_done BIGINT NOT NULL DEFAULT 0,
+    ledger_rows BIGINT NOT NULL DEFAULT 0,
+    started_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    completed_at TIMESTAMP WITH TIME ZONE
+);
@@ -0,0 +1,112 @@
+package com.kleadingsolutions.expenseshare;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Base of the PostgreSQL Testcontainers tests.
+ *
+ * Every test class gets a fresh postgres:15-alpine container, migrated by Flyway when the slice
+ * context starts; the context is closed with the class, so a cached one never points at a stopped
+ * container. Tests run without a surrounding transaction. Results are reported through the logger.
+ * Skipped automatically when Docker is not available.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public abstract class AbstractPostgresTest {
+
+    public static final String IMAGE = "postgres:15-alpine";
+
+    @Container
+    protected static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>(IMAGE);
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("spring.datasource.driver-class-name", POSTGRES::getDriverClassName);
+    }
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    /**
+     * An empty database next to the application's one, for tests that drive Flyway themselves.
+     */
+    protected DriverManagerDataSource freshDatabase(String name) {
+        jdbcTemplate.execute("DROP DATABASE IF EXISTS " + name);
+        jdbcTemplate.execute("CREATE DATABASE " + name);
+        String url = POSTGRES.getJdbcUrl().replaceFirst("/" + POSTGRES.getDatabaseName() + "(?=\\?|$)", "/" + name);
+        return new DriverManagerDataSource(url, POSTGRES.getUsername(), POSTGRES.getPassword());
+    }
+
+    protected UUID insertUser() {
+        return insertUsers(1).get(0);
+    }
+
+    protected List<UUID> insertUsers(int count) {
+        List<UUID> users = new ArrayList<>(count);
+        List<Object[]> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID u = UUID.randomUUID();
+            users.add(u);
+            rows.add(new Object[]{u, "u" + i, u + "@test"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (id, name, email, version) VALUES (?, ?, ?, 0)", rows);
+        return users;
+    }
+
+    protected UUID insertGroup(UUID createdBy) {
+        UUID g = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO groups (id, name, created_by, version) VALUES (?, 'test', ?, 0)", g, createdBy);
+        return g;
+    }
+
+    protected void insertMembers(UUID groupId, List<UUID> users) {
+        jdbcTemplate.batchUpdate("INSERT INTO group_members (id, group_id, user_id, version) VALUES (?, ?, ?, 0)",
+                users.stream().map(u -> new Object[]{UUID.randomUUID(), groupId, u}).toList());
+    }
+
+    /** Stored balance rows of the group (stripes and unfolded entries not included). */
+    protected Map<UUID, BigDecimal> balancesOf(UUID groupId) {
+        Map<UUID, BigDecimal> out = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, balance FROM balances WHERE group_id = ?",
+                rs -> { out.put(rs.getObject(1, UUID.class), rs.getBigDecimal(2)); }, groupId);
+        return out;
+    }
+
+    protected static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /** One line of benchmark output, String.format style. */
+    protected void report(String format, Object... args) {
+        log.info(String.format(format, args));
+    }
+}
@@ -0,0 +1,103 @@
+package com.kleadingsolutions.expenseshare.benchmark;
+
+import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expense delta computation: the previous BigDecimal/HashMap path versus {@link CentDeltas}.
+ *
+ * Run after {@code mvn test-compile}:
+ * <pre>
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *   com.kleadingsolutions.expenseshare.benchmark.ExpenseDeltaBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpenseDeltaBenchmark {
+
+    @Param({"2", "50", "5000"})
+    public int splitCount;
+
+    private UUID payerId;
+    private BigDecimal total;
+    private List<ExpenseSplitDto> splits;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        payerId = UUID.randomUUID();
+        splits = new ArrayList<>(splitCount);
+        long totalCents = 0;
+        for (int i = 0; i < splitCount; i++) {
+            long cents = 100 + random.nextInt(10_000);
+            totalCents += cents;
+            UUID user = i == 0 ? payerId : UUID.randomUUID();
+            splits.add(ExpenseSplitDto.builder().userId(user).amount(BigDecimal.valueOf(cents, 2)).build());
+        }
+        total = BigDecimal.valueOf(totalCents, 2);
+    }
+
+    @Benchmark
+    public Map<UUID, BigDecimal> legacyBigDecimal() {
+        return legacyDeltas(payerId, total, splits);
+    }
+
+    @Benchmark
+    public CentDeltas centsKernel() {
+        return CentDeltas.forExpense(payerId, total, splits);
+    }
+
+    /**
+     * The delta path ExpenseServiceImpl used before CentDeltas, kept here as the baseline.
+     */
+    static Map<UUID, BigDecimal> legacyDeltas(UUID payerId, BigDecimal amount, List<ExpenseSplitDto> splits) {
+        BigDecimal normalizedTotal = MoneyUtils.scale(amount);
+        long totalCents = MoneyUtils.toCents(normalizedTotal);
+        long sumSplitsCents = splits.stream()
+                .map(s -> MoneyUtils.toCents(MoneyUtils.scale(s.getAmount())))
+                .reduce(0L, Long::sum);
+        if (sumSplitsCents != totalCents) throw new IllegalArgumentException("sum mismatch");
+
+        Map<UUID, BigDecimal> userDeltas = new HashMap<>();
+        for (ExpenseSplitDto s : splits) {
+            userDeltas.merge(s.getUserId(), MoneyUtils.scale(s.getAmount()), BigDecimal::add);
+        }
+        Set<UUID> participants = new LinkedHashSet<>();
+        for (ExpenseSplitDto s : splits) participants.add(s.getUserId());
+        participants.add(payerId);
+
+        Map<UUID, BigDecimal> deltas = new HashMap<>();
+        BigDecimal payerShare = userDeltas.getOrDefault(payerId, BigDecimal.ZERO);
+        for (UUID uid : participants) {
+            BigDecimal delta = Objects.equals(uid, payerId)
+                    ? normalizedTotal.subtract(payerShare)
+                    : userDeltas.getOrDefault(uid, BigDecimal.ZERO).negate();
+            deltas.put(uid, MoneyUtils.scale(delta));
+        }
+        long sum = deltas.values().stream().mapToLong(MoneyUtils::toCents).sum();
+        if (sum != 0L) throw new IllegalStateException("deltas do not sum to zero");
+        return deltas;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ExpenseDeltaBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,69 @@
+package com.kleadingsolutions.expenseshare.benchmark;
+
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import com.kleadingsolutions.expenseshare.util.SettlePlanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settle-up planning with {@link SettlePlanner}: greedy heap matching versus the planner's choice
+ * (exact subset optimizer up to {@link SettlePlanner#EXACT_MAX_PARTICIPANTS} members, greedy above).
+ *
+ * Run after {@code mvn test-compile}:
+ * <pre>
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *   com.kleadingsolutions.expenseshare.benchmark.SettlePlanBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SettlePlanBenchmark {
+
+    @Param({"8", "14", "1000", "10000"})
+    public int members;
+
+    private CentDeltas balances;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Map<UUID, BigDecimal> map = new HashMap<>(members * 2);
+        long sum = 0;
+        for (int i = 0; i < members - 1; i++) {
+            long cents = random.nextInt(200_001) - 100_000;
+            sum += cents;
+            map.put(UUID.randomUUID(), MoneyUtils.fromCents(cents));
+        }
+        map.put(UUID.randomUUID(), MoneyUtils.fromCents(-sum));
+        balances = CentDeltas.of(map);
+    }
+
+    @Benchmark
+    public List<SettlePlanner.Transfer> greedy() {
+        return SettlePlanner.greedy(balances);
+    }
+
+    @Benchmark
+    public List<SettlePlanner.Transfer> plan() {
+        return SettlePlanner.plan(balances);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SettlePlanBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
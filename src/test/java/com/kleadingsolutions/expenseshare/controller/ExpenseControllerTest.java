@@ -1,21 +1,32 @@
 package com.kleadingsolutions.expenseshare.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kleadingsolutions.expenseshare.config.GroupWriterProperties;
+import com.kleadingsolutions.expenseshare.config.IdempotencyProperties;
 import com.kleadingsolutions.expenseshare.dto.CreateExpenseRequest;
 import com.kleadingsolutions.expenseshare.model.Expense;
+import com.kleadingsolutions.expenseshare.repository.IdempotencyStore;
 import com.kleadingsolutions.expenseshare.service.AuthService;
 import com.kleadingsolutions.expenseshare.service.ExpenseService;
+import com.kleadingsolutions.expenseshare.service.GroupWriteExecutor;
+import com.kleadingsolutions.expenseshare.service.IdempotencyService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.time.Duration;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,6 +38,14 @@ class ExpenseControllerTest {
     @Mock
     private AuthService authService;
 
+    @Spy
+    private GroupWriteExecutor groupWriteExecutor = new GroupWriteExecutor(
+            new GroupWriterProperties(false, 1, 1, 1), mock(PlatformTransactionManager.class), new SimpleMeterRegistry());
+
+    @Spy
+    private IdempotencyService idempotencyService = new IdempotencyService(mock(IdempotencyStore.class),
+            new IdempotencyProperties(true, Duration.ofHours(24), Duration.ofHours(1)), new ObjectMapper(), new SimpleMeterRegistry());
+
     @InjectMocks
     private ExpenseController expenseController;
 
@@ -46,7 +65,7 @@ class ExpenseControllerTest {
         when(authService.getCurrentUserId()).thenReturn(actor);
         when(expenseService.createExpense(any(CreateExpenseRequest.class), eq(actor))).thenReturn(created);
 
-        ResponseEntity<Expense> resp = expenseController.createExpense(request);
+        ResponseEntity<Expense> resp = expenseController.createExpense(request, null).join();
 
         // Assert
         assertNotNull(resp);
@@ -12,6 +12,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.ResponseEntity;
 
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -100,7 +101,7 @@ class GroupControllerTest {
         BalanceDto b = BalanceDto.builder().userId(userId).balance(BigDecimal.valueOf(0.0)).build();
         when(groupService.listBalances(groupId)).thenReturn(List.of(b));
 
-        ResponseEntity<List<BalanceDto>> resp = groupController.listBalances(groupId);
+        ResponseEntity<List<BalanceDto>> resp = groupController.listBalances(groupId, null);
 
         // Assert
         assertNotNull(resp);
@@ -109,6 +110,40 @@ class GroupControllerTest {
         assertEquals(b, resp.getBody().get(0));
     }
 
+    @Test
+    void listBalances_withAsOf_shouldReadPointInTimeBalances() {
+        OffsetDateTime asOf = OffsetDateTime.parse("2026-10-01T00:00:00Z");
+        BalanceDto b = BalanceDto.builder().userId(userId).balance(new BigDecimal("3.00")).build();
+        when(groupService.listBalancesAsOf(groupId, asOf)).thenReturn(List.of(b));
+
+        ResponseEntity<List<BalanceDto>> resp = groupController.listBalances(groupId, asOf);
+
+        assertEquals(List.of(b), resp.getBody());
+        verify(groupService, never()).listBalances(any());
+    }
+
+    @Test
+    void listDebts_shouldPassOptionalUserToService() {
+        PairDebtDto d = PairDebtDto.builder().debtorId(userId).creditorId(me).amount(new BigDecimal("5.00")).build();
+        when(groupService.listDebts(groupId, userId)).thenReturn(List.of(d));
+
+        ResponseEntity<List<PairDebtDto>> resp = groupController.listDebts(groupId, userId);
+
+        assertEquals(200, resp.getStatusCodeValue());
+        assertEquals(List.of(d), resp.getBody());
+    }
+
+    @Test
+    void settlePlan_shouldReturnServicePlan() {
+        SettlePlanDto plan = SettlePlanDto.builder().groupId(groupId).transfers(List.of()).build();
+        when(groupService.settlePlan(groupId)).thenReturn(plan);
+
+        ResponseEntity<SettlePlanDto> resp = groupController.settlePlan(groupId);
+
+        assertEquals(200, resp.getStatusCodeValue());
+        assertSame(plan, resp.getBody());
+    }
+
     @Test
     void addMember_shouldInvokeService_andReturnOk() {
         AddMemberRequest req = mock(AddMemberRequest.class);
@@ -1,22 +1,33 @@
 package com.kleadingsolutions.expenseshare.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kleadingsolutions.expenseshare.config.GroupWriterProperties;
+import com.kleadingsolutions.expenseshare.config.IdempotencyProperties;
 import com.kleadingsolutions.expenseshare.dto.SettlementRequest;
 import com.kleadingsolutions.expenseshare.model.Settlement;
+import com.kleadingsolutions.expenseshare.repository.IdempotencyStore;
 import com.kleadingsolutions.expenseshare.service.AuthService;
+import com.kleadingsolutions.expenseshare.service.GroupWriteExecutor;
+import com.kleadingsolutions.expenseshare.service.IdempotencyService;
 import com.kleadingsolutions.expenseshare.service.SettlementService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +39,14 @@ class SettlementControllerTest {
     @Mock
     private AuthService authService;
 
+    @Spy
+    private GroupWriteExecutor groupWriteExecutor = new GroupWriteExecutor(
+            new GroupWriterProperties(false, 1, 1, 1), mock(PlatformTransactionManager.class), new SimpleMeterRegistry());
+
+    @Spy
+    private IdempotencyService idempotencyService = new IdempotencyService(mock(IdempotencyStore.class),
+            new IdempotencyProperties(true, Duration.ofHours(24), Duration.ofHours(1)), new ObjectMapper(), new SimpleMeterRegistry());
+
     @InjectMocks
     private SettlementController settlementController;
 
@@ -57,7 +76,7 @@ class SettlementControllerTest {
         when(authService.getCurrentUserId()).thenReturn(initiator);
         when(settlementService.settle(eq(groupId), eq(payerId), eq(receiverId), any(), eq(initiator))).thenReturn(s);
 
-        ResponseEntity<Settlement> resp = settlementController.settle(req);
+        ResponseEntity<Settlement> resp = settlementController.settle(req, null).join();
 
         // Assert
         assertNotNull(resp);
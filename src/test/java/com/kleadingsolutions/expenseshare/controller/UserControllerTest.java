@@ -0,0 +1,43 @@
+package com.kleadingsolutions.expenseshare.controller;
+
+import com.kleadingsolutions.expenseshare.dto.UserNetDto;
+import com.kleadingsolutions.expenseshare.service.AuthService;
+import com.kleadingsolutions.expenseshare.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserControllerTest {
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private AuthService authService;
+
+    @InjectMocks
+    private UserController userController;
+
+    @Test
+    void myNet_returnsPositionOfCurrentUser() {
+        UUID me = UUID.randomUUID();
+        UserNetDto net = UserNetDto.builder().userId(me).totals(List.of()).groups(List.of()).build();
+        when(authService.getCurrentUserId()).thenReturn(me);
+        when(userService.netPosition(me)).thenReturn(net);
+
+        ResponseEntity<UserNetDto> resp = userController.myNet();
+
+        assertEquals(200, resp.getStatusCodeValue());
+        assertSame(net, resp.getBody());
+    }
+}
@@ -0,0 +1,216 @@
+package com.kleadingsolutions.expenseshare.datasource;
+
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.config.ReplicaProperties;
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.enums.BalanceUpdateMode;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.LedgerHeadRepository;
+import com.kleadingsolutions.expenseshare.service.LedgerFolder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection replica0Connection = mock(Connection.class);
+    private final Connection replica1Connection = mock(Connection.class);
+    private final DataSource replica0 = mock(DataSource.class);
+    private final DataSource replica1 = mock(DataSource.class);
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReadYourWrites readYourWrites;
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DataSource primary = mock(DataSource.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica0.getConnection()).thenReturn(replica0Connection);
+        when(replica1.getConnection()).thenReturn(replica1Connection);
+        meterRegistry = new SimpleMeterRegistry();
+        readYourWrites = new ReadYourWrites(new ReplicaProperties(true, List.of("r0", "r1"), null, null, 10,
+                Duration.ofSeconds(2), Duration.ofSeconds(5), Duration.ofSeconds(1), Duration.ofSeconds(10), 1000));
+        routing = new ReplicaRoutingDataSource(primary,
+                List.of(new ReplicaRoutingDataSource.Replica("replica-0", replica0),
+                        new ReplicaRoutingDataSource.Replica("replica-1", replica1)),
+                readYourWrites, Duration.ofSeconds(5), meterRegistry);
+        routing.replicas().forEach(r -> r.update(true, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readOnlyTransactions_takeTurnsOnTheReplicas() throws SQLException {
+        readOnlyTransaction();
+
+        List<Connection> got = List.of(routing.getConnection(), routing.getConnection(), routing.getConnection());
+
+        assertTrue(got.containsAll(List.of(replica0Connection, replica1Connection)));
+        assertNotEquals(got.get(0), got.get(1));
+        assertEquals(got.get(0), got.get(2));
+        assertEquals(3.0, routes("replica", "read-only"));
+    }
+
+    @Test
+    void writesAndNonTransactionalWork_goToThePrimary() throws SQLException {
+        assertSame(primaryConnection, routing.getConnection());
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        assertSame(primaryConnection, routing.getConnection());
+
+        assertEquals(2.0, routes("primary", "read-write"));
+    }
+
+    @Test
+    void committedWrite_makesThePrincipalsReadsStickToThePrimary() throws SQLException {
+        signIn("alice");
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        routing.getConnection();
+        assertFalse(readYourWrites.recentlyWrote("alice"), "recorded before the commit");
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+
+        readOnlyTransaction();
+        assertSame(primaryConnection, routing.getConnection());
+        assertEquals(1.0, routes("primary", "sticky"));
+
+        signIn("bob");
+        assertNotSame(primaryConnection, routing.getConnection());
+    }
+
+    @Test
+    void readOnlyRequestThatFolds_sticksToThePrimary_onlyWhenTheFoldMovedBalances() throws SQLException {
+        UUID groupId = UUID.randomUUID();
+        when(primaryConnection.createStatement()).thenReturn(mock(Statement.class));
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        LedgerHeadRepository ledgerHeadRepository = mock(LedgerHeadRepository.class);
+        BalanceRepository balanceRepository = mock(BalanceRepository.class);
+        LedgerFolder folder = new LedgerFolder(new BalanceProperties(BalanceUpdateMode.LAZY, false,
+                BalanceLockMode.ATOMIC_DELTA, List.of(), 5, Duration.ofMillis(5)), ledgerHeadRepository,
+                balanceRepository, transactionManager, meterRegistry);
+        when(ledgerHeadRepository.find(groupId)).thenReturn(Optional.of(new LedgerHeadRepository.Head(5, 3)));
+        when(ledgerHeadRepository.lock(groupId)).thenAnswer(inv -> {
+            jdbc.execute("SELECT 1");
+            return Optional.of(new LedgerHeadRepository.Head(5, 3));
+        });
+        // another node folded the tail first, then a tail that moves two balance rows
+        when(balanceRepository.applyFoldedDeltas(eq(groupId), any(), eq(5L))).thenReturn(0, 2);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        signIn("alice");
+
+        readOnly.executeWithoutResult(s -> folder.fold(groupId));
+        assertFalse(readYourWrites.recentlyWrote("alice"), "a fold that moved nothing made the reader sticky");
+
+        readOnly.executeWithoutResult(s -> folder.fold(groupId));
+        assertTrue(readYourWrites.recentlyWrote("alice"));
+    }
+
+    @Test
+    void replicaRead_marksTheTransactionUntilItCompletes() throws SQLException {
+        readOnlyTransaction();
+        TransactionSynchronizationManager.initSynchronization();
+        assertFalse(ReplicaRoutingDataSource.isCurrentTransactionOnReplica());
+
+        routing.getConnection();
+        assertTrue(ReplicaRoutingDataSource.isCurrentTransactionOnReplica());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        assertFalse(ReplicaRoutingDataSource.isCurrentTransactionOnReplica());
+    }
+
+    @Test
+    void laggingOrDownReplicas_areSkipped_thenReadsFallBackToThePrimary() throws SQLException {
+        readOnlyTransaction();
+        routing.replicas().get(0).update(true, 6 * SECOND);
+
+        assertSame(replica1Connection, routing.getConnection());
+        assertSame(replica1Connection, routing.getConnection());
+
+        routing.replicas().get(1).markDown();
+        assertSame(primaryConnection, routing.getConnection());
+        assertEquals(1.0, routes("primary", "lagging"));
+        assertTrue(Double.isNaN(meterRegistry.get("expenseshare.datasource.replica.lag").tag("replica", "replica-1").gauge().value()));
+        assertEquals(6.0, meterRegistry.get("expenseshare.datasource.replica.lag").tag("replica", "replica-0").gauge().value());
+    }
+
+    @Test
+    void replicaRefusingAConnection_isMarkedDown_andTheReadRetriedOnThePrimary() throws SQLException {
+        readOnlyTransaction();
+        routing.replicas().get(1).markDown();
+        when(replica0.getConnection()).thenThrow(new SQLException("connection refused"));
+
+        assertSame(primaryConnection, routing.getConnection());
+
+        assertFalse(routing.replicas().get(0).available());
+        assertEquals(1.0, routes("primary", "replica-error"));
+        assertEquals(0.0, meterRegistry.get("expenseshare.datasource.replica.available").tag("replica", "replica-0").gauge().value());
+    }
+
+    @Test
+    void lag_isTheAgeOfTheNewestPrimarySampleTheReplicaReplayed() {
+        Deque<long[]> samples = new ArrayDeque<>(List.of(
+                new long[]{10 * SECOND, 100},
+                new long[]{11 * SECOND, 200},
+                new long[]{12 * SECOND, 300}));
+
+        assertEquals(0, ReplicaLagMonitor.lag(samples, 300, 12 * SECOND));
+        assertEquals(0, ReplicaLagMonitor.lag(samples, 350, 12 * SECOND));
+        assertEquals(1 * SECOND, ReplicaLagMonitor.lag(samples, 250, 12 * SECOND));
+        assertEquals(2 * SECOND, ReplicaLagMonitor.lag(samples, 100, 12 * SECOND));
+        assertEquals(ReplicaRoutingDataSource.UNKNOWN_LAG, ReplicaLagMonitor.lag(samples, 99, 12 * SECOND));
+    }
+
+    private void readOnlyTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    }
+
+    private static void signIn(String name) {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(name, null, "ROLE_USER"));
+    }
+
+    private double routes(String target, String reason) {
+        return meterRegistry.get("expenseshare.datasource.routes").tag("target", target).tag("reason", reason).counter().count();
+    }
+}
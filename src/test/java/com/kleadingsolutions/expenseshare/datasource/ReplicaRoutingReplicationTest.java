@@ -0,0 +1,239 @@
+package com.kleadingsolutions.expenseshare.datasource;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.kleadingsolutions.expenseshare.config.ReplicaProperties;
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepositoryCustomImpl;
+import com.kleadingsolutions.expenseshare.repository.DatabaseVendor;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.Network;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.MountableFile;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Routing against a real primary and a streaming replica, cloned with the docker-compose scripts under
+ * docker/postgres, on a network of their own (so not on AbstractPostgresTest's single container).
+ * Replay on the replica is paused to push it past max-lag, or to hold it before a lazy-mode fold.
+ * Logs the lag the monitor measured and the routing counts. Skipped automatically when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class ReplicaRoutingReplicationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingReplicationTest.class);
+
+    private static final Duration MAX_LAG = Duration.ofSeconds(1);
+
+    private static final Network NETWORK = Network.newNetwork();
+
+    @Container
+    static final PostgreSQLContainer<?> PRIMARY = new PostgreSQLContainer<>(AbstractPostgresTest.IMAGE)
+            .withNetwork(NETWORK)
+            .withNetworkAliases("primary")
+            .withEnv("REPLICATION_USER", "replicator")
+            .withEnv("REPLICATION_PASSWORD", "replpass")
+            .withCopyFileToContainer(MountableFile.forHostPath("docker/postgres/primary-init.sh"),
+                    "/docker-entrypoint-initdb.d/primary-init.sh");
+
+    @Container
+    static final GenericContainer<?> REPLICA = new GenericContainer<>(AbstractPostgresTest.IMAGE)
+            .dependsOn(PRIMARY)
+            .withNetwork(NETWORK)
+            .withEnv("PRIMARY_HOST", "primary")
+            .withEnv("REPLICATION_USER", "replicator")
+            .withEnv("PGPASSWORD", "replpass")
+            .withCopyFileToContainer(MountableFile.forHostPath("docker/postgres/replica-entrypoint.sh"), "/replica-entrypoint.sh")
+            .withCreateContainerCmdModifier(cmd -> cmd.withUser("postgres").withEntrypoint("/bin/bash", "/replica-entrypoint.sh"))
+            .withExposedPorts(5432)
+            .waitingFor(Wait.forLogMessage(".*ready to accept read-only connections.*", 1))
+            .withStartupTimeout(Duration.ofMinutes(2));
+
+    private static HikariDataSource primaryPool;
+    private static HikariDataSource replicaPool;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReadYourWrites readYourWrites;
+    private ReplicaRoutingDataSource routing;
+    private ReplicaLagMonitor monitor;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeAll
+    static void pools() {
+        primaryPool = pool(PRIMARY.getJdbcUrl());
+        replicaPool = pool("jdbc:postgresql://" + REPLICA.getHost() + ":" + REPLICA.getMappedPort(5432) + "/" + PRIMARY.getDatabaseName());
+        replicaPool.setReadOnly(true);
+    }
+
+    @AfterAll
+    static void closePools() {
+        replicaPool.close();
+        primaryPool.close();
+    }
+
+    @AfterEach
+    void signOut() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readsFollowTheReplicaUntilItLags_andStickAfterOwnWrites() throws Exception {
+        setUpRouting();
+        readWrite.executeWithoutResult(s -> {
+            jdbc.execute("CREATE TABLE IF NOT EXISTS notes (id serial PRIMARY KEY, body text)");
+            jdbc.update("INSERT INTO notes (body) VALUES ('first')");
+        });
+        awaitLag(lag -> lag == 0);
+
+        assertTrue(inRecovery(readOnly), "read-only transaction not on the replica");
+        assertFalse(inRecovery(readWrite), "read-write transaction not on the primary");
+        assertEquals(1, notes(readOnly));
+
+        new JdbcTemplate(replicaPool).queryForObject("SELECT pg_wal_replay_pause()::text", String.class);
+        readWrite.executeWithoutResult(s -> jdbc.update("INSERT INTO notes (body) VALUES ('second')"));
+        long paused = awaitLag(lag -> lag > MAX_LAG.toNanos());
+        assertFalse(inRecovery(readOnly), "read-only transaction stayed on a replica " + paused / 1_000_000 + " ms behind");
+        assertEquals(2, notes(readOnly));
+
+        new JdbcTemplate(replicaPool).queryForObject("SELECT pg_wal_replay_resume()::text", String.class);
+        awaitLag(lag -> lag == 0);
+        assertTrue(inRecovery(readOnly), "read-only transaction not back on the replica");
+        assertEquals(2, notes(readOnly));
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("alice", null, "ROLE_USER"));
+        readWrite.executeWithoutResult(s -> jdbc.update("INSERT INTO notes (body) VALUES ('third')"));
+        assertFalse(inRecovery(readOnly), "alice's read after her write not on the primary");
+        assertEquals(3, notes(readOnly));
+
+        log.info("paused replica measured {} ms behind (max-lag {} ms)", paused / 1_000_000, MAX_LAG.toMillis());
+        for (String reason : List.of("read-write", "read-only", "lagging", "sticky")) {
+            log.info("routes {}: {}", reason, (long) meterRegistry.get("expenseshare.datasource.routes").tag("reason", reason).counter().count());
+        }
+        assertEquals(2.0, meterRegistry.get("expenseshare.datasource.routes").tag("reason", "sticky").counter().count());
+    }
+
+    @Test
+    void lazyBalancesReadOnAReplicaThatMissedTheFold_stillIncludeTheTail() throws Exception {
+        setUpRouting();
+        // baseline below V1: the other test may have left its table in the schema
+        Flyway.configure().dataSource(primaryPool)
+                .locations("classpath:db/migration", "classpath:db/vendor/postgresql")
+                .baselineOnMigrate(true).baselineVersion("0")
+                .load().migrate();
+        BalanceRepositoryCustomImpl balances = new BalanceRepositoryCustomImpl(jdbc, new DatabaseVendor(jdbc));
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        UUID group = UUID.randomUUID();
+        // lazy mode: two expenses appended with sequences 1..4, nothing folded yet
+        readWrite.executeWithoutResult(s -> {
+            jdbc.update("INSERT INTO users (id, name, email) VALUES (?, 'alice', 'alice@lazy'), (?, 'bob', 'bob@lazy')", alice, bob);
+            jdbc.update("INSERT INTO groups (id, name, created_by, version) VALUES (?, 'lazy', ?, 0)", group, alice);
+            jdbc.update("INSERT INTO group_ledger_heads (group_id, last_seq, folded_seq) VALUES (?, 4, 0)", group);
+            long[][] entries = {{1, 1_000}, {2, -1_000}, {3, -250}, {4, 250}};
+            for (long[] e : entries) {
+                jdbc.update("INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code, seq, version)" +
+                                " VALUES (?, ?, ?, ?, " + TransactionType.EXPENSE.code() + ", ?, 0)",
+                        UUID.randomUUID(), group, e[0] % 2 == 1 ? alice : bob, e[1], e[0]);
+            }
+        });
+        awaitLag(lag -> lag == 0);
+        Map<UUID, BigDecimal> expected = Map.of(alice, new BigDecimal("7.50"), bob, new BigDecimal("-7.50"));
+
+        // the reader's fold commits on the primary (as LedgerFolder.fold does) while the replica stands still
+        new JdbcTemplate(replicaPool).queryForObject("SELECT pg_wal_replay_pause()::text", String.class);
+        try {
+            readWrite.executeWithoutResult(s -> {
+                balances.applyFoldedDeltas(group, CentDeltas.of(expected), 4L);
+                jdbc.update("UPDATE group_ledger_heads SET folded_seq = 4 WHERE group_id = ?", group);
+            });
+
+            assertTrue(inRecovery(readOnly), "read-only transaction not on the replica");
+            Integer rowsOnReplica = readOnly.execute(s ->
+                    jdbc.queryForObject("SELECT count(*) FROM balances WHERE group_id = ?", Integer.class, group));
+            assertEquals(0, rowsOnReplica, "the replica already replayed the fold");
+            assertEquals(expected, readOnly.execute(s -> balances.findGroupBalancesWithTail(group)));
+        } finally {
+            new JdbcTemplate(replicaPool).queryForObject("SELECT pg_wal_replay_resume()::text", String.class);
+        }
+
+        assertEquals(expected, readWrite.execute(s -> balances.findGroupBalancesWithTail(group)));
+    }
+
+    private void setUpRouting() {
+        ReplicaProperties properties = new ReplicaProperties(true, List.of(replicaPool.getJdbcUrl()), null, null, 2,
+                Duration.ofSeconds(2), MAX_LAG, Duration.ofMillis(100), Duration.ofSeconds(30), 1000);
+        meterRegistry = new SimpleMeterRegistry();
+        readYourWrites = new ReadYourWrites(properties);
+        routing = new ReplicaRoutingDataSource(primaryPool, List.of(new ReplicaRoutingDataSource.Replica("replica-0", replicaPool)),
+                readYourWrites, MAX_LAG, meterRegistry);
+        monitor = new ReplicaLagMonitor(primaryPool, routing, properties);
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbc = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Run lag checks until the replica's measured lag matches; returns that lag.
+     */
+    private long awaitLag(LongPredicate matches) throws InterruptedException {
+        ReplicaRoutingDataSource.Replica replica = routing.replicas().get(0);
+        BooleanSupplier done = () -> replica.available() && matches.test(replica.lagNanos());
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (System.nanoTime() < deadline) {
+            monitor.check();
+            if (done.getAsBoolean()) return replica.lagNanos();
+            Thread.sleep(100);
+        }
+        throw new AssertionError("replica lag " + replica.lagNanos() + " ns never matched");
+    }
+
+    private boolean inRecovery(TransactionTemplate template) {
+        return Boolean.TRUE.equals(template.execute(s -> jdbc.queryForObject("SELECT pg_is_in_recovery()", Boolean.class)));
+    }
+
+    private int notes(TransactionTemplate template) {
+        Integer n = template.execute(s -> jdbc.queryForObject("SELECT count(*) FROM notes", Integer.class));
+        return n == null ? 0 : n;
+    }
+
+    private static HikariDataSource pool(String url) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl(url);
+        pool.setUsername(PRIMARY.getUsername());
+        pool.setPassword(PRIMARY.getPassword());
+        pool.setMaximumPoolSize(2);
+        return pool;
+    }
+}
@@ -0,0 +1,114 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.kleadingsolutions.expenseshare.model.Balance;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the legacy per-user "SELECT ... FOR UPDATE + save" loop with the single multi-row upsert
+ * for a 40-person expense, sequentially and with concurrent writers on the same group.
+ */
+@Import(DatabaseVendor.class)
+class BalanceUpsertBenchmarkTest extends AbstractPostgresTest {
+
+    private static final int MEMBERS = 40;
+    private static final int EXPENSES = 200;
+    private static final int WRITERS = 8;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate tx;
+    private UUID actor;
+    private List<UUID> users;
+
+    @BeforeEach
+    void seed() {
+        tx = new TransactionTemplate(transactionManager);
+        jdbcTemplate.update("TRUNCATE balances, group_members, groups, users CASCADE");
+        users = insertUsers(MEMBERS);
+        actor = users.get(0);
+    }
+
+    @Test
+    void legacyLoopVersusBatchedUpsert() throws Exception {
+        UUID legacyGroup = insertGroup(actor);
+        UUID upsertGroup = insertGroup(actor);
+        Map<UUID, BigDecimal> deltas = dinnerSplit();
+
+        long legacySeq = time(() -> tx.executeWithoutResult(s -> legacyApply(legacyGroup, deltas)), EXPENSES);
+        long upsertSeq = time(() -> tx.executeWithoutResult(s -> balanceRepository.applyDeltas(upsertGroup, deltas, actor)), EXPENSES);
+
+        long legacyConcurrent = concurrently(() -> tx.executeWithoutResult(s -> legacyApply(legacyGroup, deltas)));
+        long upsertConcurrent = concurrently(() -> tx.executeWithoutResult(s -> balanceRepository.applyDeltas(upsertGroup, deltas, actor)));
+
+        report("balance apply, %d members x %d expenses", MEMBERS, EXPENSES);
+        report("  sequential : legacy loop %d ms, batched upsert %d ms", legacySeq, upsertSeq);
+        report("  %d writers : legacy loop %d ms, batched upsert %d ms", WRITERS, legacyConcurrent, upsertConcurrent);
+
+        // Both paths must end up with identical balances
+        Map<UUID, BigDecimal> legacy = balancesOf(legacyGroup);
+        Map<UUID, BigDecimal> upsert = balancesOf(upsertGroup);
+        assertEquals(MEMBERS, upsert.size());
+        assertEquals(legacy, upsert);
+        assertEquals(0, upsert.values().stream().mapToLong(MoneyUtils::toCents).sum());
+    }
+
+    /** The pre-upsert createExpense path: lock (or create, then lock) each row in user order and save. */
+    private void legacyApply(UUID groupId, Map<UUID, BigDecimal> deltas) {
+        for (UUID user : new TreeSet<>(deltas.keySet())) {
+            Balance b = balanceRepository.findLockedByGroupIdAndUserId(groupId, user).orElseGet(() -> {
+                balanceRepository.saveAndFlush(Balance.builder()
+                        .groupId(groupId).userId(user).createdBy(actor)
+                        .balance(MoneyUtils.scale(BigDecimal.ZERO)).build());
+                return balanceRepository.findLockedByGroupIdAndUserId(groupId, user).orElseThrow();
+            });
+            b.setBalance(MoneyUtils.scale(b.getBalance().add(deltas.get(user))));
+            balanceRepository.save(b);
+        }
+    }
+
+    private Map<UUID, BigDecimal> dinnerSplit() {
+        // payer covers 40 x 12.50 and is owed everyone else's share
+        Map<UUID, BigDecimal> deltas = new HashMap<>();
+        BigDecimal share = new BigDecimal("12.50");
+        for (UUID u : users) deltas.put(u, share.negate());
+        deltas.put(actor, share.multiply(BigDecimal.valueOf(MEMBERS - 1L)));
+        return deltas;
+    }
+
+    private static long time(Runnable r, int times) {
+        long start = System.nanoTime();
+        for (int i = 0; i < times; i++) r.run();
+        return millisSince(start);
+    }
+
+    private static long concurrently(Runnable r) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < EXPENSES; i++) futures.add(pool.submit(r));
+            for (Future<?> f : futures) f.get();
+            return millisSince(start);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
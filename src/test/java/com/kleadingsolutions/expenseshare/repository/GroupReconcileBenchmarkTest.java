@@ -0,0 +1,118 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import com.kleadingsolutions.expenseshare.model.Balance;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the legacy per-user group reconcile (locked SELECT + ledger sum + save per balance row)
+ * with the set-based one (one drift aggregate + one upsert of the drifted rows) for groups of
+ * 10, 1k and 10k members where every 10th balance drifted and every 50th row is missing.
+ */
+@Import(DatabaseVendor.class)
+class GroupReconcileBenchmarkTest extends AbstractPostgresTest {
+
+    private static final int[] GROUP_SIZES = {10, 1_000, 10_000};
+    private static final int ENTRIES_PER_USER = 3;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate tx;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        jdbcTemplate.update("TRUNCATE ledger_entries, balances, group_members, groups, users CASCADE");
+    }
+
+    @Test
+    void legacyLoopVersusSetBasedReconcile() {
+        report("group reconcile, every 10th balance drifted, every 50th missing");
+        for (int members : GROUP_SIZES) {
+            List<UUID> users = insertUsers(members);
+            UUID legacyGroup = seedGroup(users);
+            UUID setBasedGroup = seedGroup(users);
+            Map<UUID, BigDecimal> expected = ledgerSums(setBasedGroup);
+
+            long start = System.nanoTime();
+            tx.executeWithoutResult(s -> legacyReconcile(legacyGroup));
+            long legacyMs = millisSince(start);
+
+            start = System.nanoTime();
+            CentDeltas drift = tx.execute(s -> {
+                balanceRepository.lockGroup(setBasedGroup);
+                CentDeltas d = balanceRepository.findDrift(setBasedGroup);
+                balanceRepository.applyFoldedDeltas(setBasedGroup, d, 0L);
+                return d;
+            });
+            long setBasedMs = millisSince(start);
+
+            report("  %,6d members : legacy loop %d ms, set-based %d ms (%d rows corrected)",
+                    members, legacyMs, setBasedMs, drift.size());
+
+            // every 10th user is off or (every 50th) has no row at all
+            assertEquals((members + 9) / 10, drift.size());
+            assertEquals(expected, balancesOf(setBasedGroup));
+            assertEquals(0, balanceRepository.findDrift(setBasedGroup).size());
+        }
+    }
+
+    /** The pre-set-based recomputeAndReconcileGroup: only existing rows, one round trip triple per user. */
+    private void legacyReconcile(UUID groupId) {
+        List<UUID> userIds = balanceRepository.findByGroupId(groupId).stream()
+                .map(Balance::getUserId).sorted().toList();
+        for (UUID userId : userIds) {
+            Balance b = balanceRepository.findLockedByGroupIdAndUserId(groupId, userId).orElseThrow();
+            BigDecimal sum = ledgerEntryRepository.sumAmountByGroupIdAndUserId(groupId, userId);
+            b.setBalance(MoneyUtils.scale(sum));
+            balanceRepository.save(b);
+        }
+    }
+
+    /** Ledger entries for every user; balances correct except every 10th (off by 1.00) and every 50th (absent). */
+    private UUID seedGroup(List<UUID> users) {
+        UUID g = insertGroup(users.get(0));
+        List<Object[]> entries = new ArrayList<>(users.size() * ENTRIES_PER_USER);
+        List<Object[]> balances = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            UUID u = users.get(i);
+            long cents = 0;
+            for (int e = 0; e < ENTRIES_PER_USER; e++) {
+                long amount = (i % 7 - 3) * 1_250L + e * 10L;
+                cents += amount;
+                entries.add(new Object[]{UUID.randomUUID(), g, u, amount});
+            }
+            if (i % 50 == 0) continue;
+            long stored = i % 10 == 0 ? cents + 100 : cents;
+            balances.add(new Object[]{UUID.randomUUID(), g, u, MoneyUtils.fromCents(stored)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code) VALUES (?, ?, ?, ?, " + TransactionType.EXPENSE.code() + ")", entries);
+        jdbcTemplate.batchUpdate("INSERT INTO balances (id, group_id, user_id, balance, version) VALUES (?, ?, ?, ?, 0)", balances);
+        return g;
+    }
+
+    private Map<UUID, BigDecimal> ledgerSums(UUID groupId) {
+        Map<UUID, BigDecimal> out = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, SUM(amount_cents) FROM ledger_entries WHERE group_id = ? GROUP BY user_id",
+                rs -> { out.put(rs.getObject(1, UUID.class), MoneyUtils.fromCents(rs.getLong(2))); }, groupId);
+        return out;
+    }
+}
@@ -0,0 +1,187 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.kleadingsolutions.expenseshare.enums.Currency;
+import com.kleadingsolutions.expenseshare.enums.ShareType;
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * V14 on a populated database: a 1M-entry ledger (plus expenses, splits and settlements) is written in
+ * the NUMERIC/VARCHAR layout at V13, migrated by the online expand step, checked for rows written by
+ * either application version while both columns exist, then contracted. Table and index sizes and the
+ * ledger aggregate timings are reported before and after. Flyway is driven directly, on a database of
+ * its own next to the context's one, so the migration can be stopped between versions.
+ */
+class IntegerCentsMigrationTest extends AbstractPostgresTest {
+
+    private static final int GROUPS = 2_000;
+    private static final int USERS = 10_000;
+    private static final int ENTRIES_PER_GROUP = 500;
+    private static final List<String> TABLES = List.of("ledger_entries", "expenses", "expense_splits", "settlements");
+
+    @Test
+    void expandBackfillAndContract_keepEveryAmount_andShrinkTheLedger() {
+        DriverManagerDataSource dataSource = freshDatabase("cents_migration");
+        JdbcTemplate migrated = new JdbcTemplate(dataSource);
+
+        flyway(dataSource, "13", false).migrate();
+        seed(migrated);
+        Measurement before = measure(migrated, "amount", "SUM(amount)");
+        BigDecimal ledgerTotal = migrated.queryForObject("SELECT SUM(ABS(amount)) FROM ledger_entries", BigDecimal.class);
+
+        long start = System.nanoTime();
+        flyway(dataSource, "14.1", false).migrate();
+        long expandMs = millisSince(start);
+
+        // covering indexes rebuilt partition by partition (V14_1), valid and under their V12 names
+        assertEquals(3, migrated.queryForObject("SELECT COUNT(*) FROM pg_index WHERE indrelid = 'ledger_entries'::regclass" +
+                " AND indisvalid AND indexrelid::regclass::text IN ('idx_ledger_group_user_created', 'idx_ledger_group_created'," +
+                " 'idx_ledger_group_seq') AND pg_get_indexdef(indexrelid) LIKE '%amount_cents%'", Long.class));
+
+        assertEquals(0, migrated.queryForObject("SELECT COUNT(*) FROM ledger_entries WHERE amount_cents <> ROUND(amount * 100)" +
+                " OR type_code <> 1 OR currency_code <> CASE WHEN currency = 'USD' THEN 2 ELSE 1 END", Long.class));
+        assertEquals(0, migrated.queryForObject("SELECT COUNT(*) FROM expense_splits" +
+                " WHERE amount_cents <> ROUND(amount * 100) OR share_type_code <> 2", Long.class));
+        bothVersionsWrite(migrated);
+
+        start = System.nanoTime();
+        flyway(dataSource, null, true).migrate();
+        long contractMs = millisSince(start);
+        // dropped columns keep their bytes in existing rows until they are rewritten
+        migrated.execute("VACUUM FULL ANALYZE");
+        Measurement after = measure(migrated, "amount_cents", "SUM(amount_cents)");
+
+        assertEquals(0, ledgerTotal.movePointRight(2).compareTo(
+                migrated.queryForObject("SELECT SUM(ABS(amount_cents)) FROM ledger_entries", BigDecimal.class)));
+        report("expand (backfill of %,d ledger rows) %,d ms, contract %,d ms", GROUPS * ENTRIES_PER_GROUP, expandMs, contractMs);
+        report("%-16s %14s %14s %14s %14s", "", "table before", "table after", "indexes before", "indexes after");
+        for (String table : TABLES) {
+            report("%-16s %,11d kB %,11d kB %,11d kB %,11d kB", table, before.tableKb().get(table), after.tableKb().get(table),
+                    before.indexKb().get(table), after.indexKb().get(table));
+        }
+        report("per-group SUM x%d : %,d ms -> %,d ms", GROUPS, before.groupSumsMs(), after.groupSumsMs());
+        report("full-ledger SUM   : %,d ms -> %,d ms", before.fullSumMs(), after.fullSumMs());
+        report("read %,d amounts  : %,d ms -> %,d ms", GROUPS * ENTRIES_PER_GROUP, before.readMs(), after.readMs());
+
+        assertTrue(after.tableKb().get("ledger_entries") < before.tableKb().get("ledger_entries"),
+                "ledger not smaller: " + before.tableKb() + " -> " + after.tableKb());
+        assertTrue(after.tableKb().get("expense_splits") < before.tableKb().get("expense_splits"),
+                "splits not smaller: " + before.tableKb() + " -> " + after.tableKb());
+    }
+
+    /**
+     * A previous-version insert (old columns only) and a current one (codes only) each get the other side.
+     */
+    private static void bothVersionsWrite(JdbcTemplate jdbcTemplate) {
+        UUID group = jdbcTemplate.queryForObject("SELECT md5('g1')::uuid", UUID.class);
+        UUID user = jdbcTemplate.queryForObject("SELECT md5('u1')::uuid", UUID.class);
+        UUID previous = UUID.randomUUID();
+        UUID current = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, group_id, user_id, amount, type, currency) VALUES (?, ?, ?, 12.34, 'SETTLEMENT', 'EUR')",
+                previous, group, user);
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code, currency_code) VALUES (?, ?, ?, ?, ?, ?)",
+                current, group, user, -1234L, TransactionType.COMPACTED.code(), Currency.GBP.code());
+
+        Map<String, Object> p = jdbcTemplate.queryForMap("SELECT amount_cents, type_code, currency_code FROM ledger_entries WHERE id = ?", previous);
+        assertEquals(1234L, ((Number) p.get("amount_cents")).longValue());
+        assertEquals(TransactionType.SETTLEMENT.code(), ((Number) p.get("type_code")).shortValue());
+        assertEquals(Currency.EUR.code(), ((Number) p.get("currency_code")).shortValue());
+        Map<String, Object> c = jdbcTemplate.queryForMap("SELECT amount, type, currency FROM ledger_entries WHERE id = ?", current);
+        assertEquals(0, new BigDecimal("-12.34").compareTo((BigDecimal) c.get("amount")));
+        assertEquals("COMPACTED", c.get("type"));
+        assertEquals("GBP", c.get("currency"));
+
+        UUID expense = jdbcTemplate.queryForObject("SELECT md5('e1-1')::uuid", UUID.class);
+        UUID split = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO expense_splits (id, expense_id, user_id, amount_cents, share_type_code) VALUES (?, ?, ?, 500, ?)",
+                split, expense, user, ShareType.PERCENT.code());
+        assertEquals("PERCENT", jdbcTemplate.queryForObject("SELECT share_type FROM expense_splits WHERE id = ?", String.class, split));
+
+        jdbcTemplate.update("DELETE FROM ledger_entries WHERE id IN (?, ?)", previous, current);
+        jdbcTemplate.update("DELETE FROM expense_splits WHERE id = ?", split);
+    }
+
+    private static Flyway flyway(DriverManagerDataSource dataSource, String target, boolean contract) {
+        var config = Flyway.configure().dataSource(dataSource);
+        if (contract) {
+            config.locations("classpath:db/migration", "classpath:db/vendor/postgresql", "classpath:db/contract/postgresql");
+        } else {
+            config.locations("classpath:db/migration", "classpath:db/vendor/postgresql").target(target);
+        }
+        return config.load();
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("INSERT INTO users (id, name, email, version)" +
+                " SELECT md5('u' || u)::uuid, 'u', 'u' || u || '@cents', 0 FROM generate_series(1, " + USERS + ") u");
+        jdbcTemplate.update("INSERT INTO groups (id, name, created_by, version)" +
+                " SELECT md5('g' || g)::uuid, 'g', md5('u' || (g % " + USERS + " + 1))::uuid, 0 FROM generate_series(1, " + GROUPS + ") g");
+        jdbcTemplate.update("INSERT INTO expenses (id, group_id, created_by, description, amount, currency, version)" +
+                " SELECT md5('e' || g || '-' || e)::uuid, md5('g' || g)::uuid, md5('u' || (g % " + USERS + " + 1))::uuid, 'dinner', 100.00, 'AED', 0" +
+                " FROM generate_series(1, " + GROUPS + ") g, generate_series(1, " + ENTRIES_PER_GROUP / 5 + ") e");
+        jdbcTemplate.update("INSERT INTO expense_splits (id, expense_id, user_id, amount, share_type, version)" +
+                " SELECT gen_random_uuid(), md5('e' || g || '-' || e)::uuid, md5('u' || ((g * 5 + m) % " + USERS + " + 1))::uuid, 20.00, 'CUSTOM', 0" +
+                " FROM generate_series(1, " + GROUPS + ") g, generate_series(1, " + ENTRIES_PER_GROUP / 5 + ") e, generate_series(0, 4) m");
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, group_id, user_id, amount, type, currency, created_at, version)" +
+                " SELECT gen_random_uuid(), md5('g' || g)::uuid, md5('u' || ((g * 5 + e % 5) % " + USERS + " + 1))::uuid," +
+                " CASE WHEN e % 5 = 0 THEN 80.00 ELSE -20.00 END + (e % 7) * 0.01 - CASE WHEN e % 5 = 0 THEN 0.04 ELSE -0.01 END," +
+                " 'EXPENSE', CASE WHEN g % 10 = 0 THEN 'USD' ELSE 'AED' END, TIMESTAMPTZ '2025-01-01' + e * INTERVAL '1 hour', 0" +
+                " FROM generate_series(1, " + GROUPS + ") g, generate_series(1, " + ENTRIES_PER_GROUP + ") e");
+        jdbcTemplate.update("INSERT INTO settlements (id, group_id, payer_id, receiver_id, amount, version)" +
+                " SELECT gen_random_uuid(), md5('g' || g)::uuid, md5('u' || (g % " + USERS + " + 1))::uuid," +
+                " md5('u' || ((g + 1) % " + USERS + " + 1))::uuid, 15.50, 0 FROM generate_series(1, " + GROUPS + ") g, generate_series(1, 20) s");
+        jdbcTemplate.execute("VACUUM ANALYZE");
+    }
+
+    private record Measurement(Map<String, Long> tableKb, Map<String, Long> indexKb, long groupSumsMs, long fullSumMs, long readMs) {
+    }
+
+    private static Measurement measure(JdbcTemplate jdbcTemplate, String column, String sum) {
+        Map<String, Long> tableKb = new LinkedHashMap<>();
+        Map<String, Long> indexKb = new LinkedHashMap<>();
+        for (String table : TABLES) {
+            // partitioned ledger: the sizes of its leaf partitions
+            String relations = "SELECT relid FROM pg_partition_tree('" + table + "') WHERE isleaf";
+            tableKb.put(table, jdbcTemplate.queryForObject("SELECT SUM(pg_table_size(relid)) / 1024 FROM (" + relations + ") r", Long.class));
+            indexKb.put(table, jdbcTemplate.queryForObject("SELECT SUM(pg_indexes_size(relid)) / 1024 FROM (" + relations + ") r", Long.class));
+        }
+        List<UUID> groups = jdbcTemplate.queryForList("SELECT id FROM groups ORDER BY id", UUID.class);
+        String groupSum = "SELECT user_id, " + sum + " FROM ledger_entries WHERE group_id = ? GROUP BY user_id";
+        for (int i = 0; i < 100; i++) jdbcTemplate.queryForList(groupSum, groups.get(i)); // warm-up
+
+        long start = System.nanoTime();
+        for (UUID g : groups) jdbcTemplate.queryForList(groupSum, g);
+        long groupSumsMs = millisSince(start);
+
+        jdbcTemplate.queryForObject("SELECT " + sum + " FROM ledger_entries", Object.class);
+        start = System.nanoTime();
+        for (int i = 0; i < 5; i++) jdbcTemplate.queryForObject("SELECT " + sum + " FROM ledger_entries", Object.class);
+        long fullSumMs = millisSince(start) / 5;
+
+        boolean cents = column.equals("amount_cents");
+        long[] checksum = new long[1];
+        start = System.nanoTime();
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement("SELECT " + column + " FROM ledger_entries");
+            ps.setFetchSize(10_000);
+            return ps;
+        }, rs -> {
+            checksum[0] += cents ? rs.getLong(1) : rs.getBigDecimal(1).movePointRight(2).longValueExact();
+        });
+        long readMs = millisSince(start);
+        return new Measurement(tableKb, indexKb, groupSumsMs, fullSumMs, readMs);
+    }
+}
@@ -0,0 +1,96 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.kleadingsolutions.expenseshare.config.BalanceSnapshotProperties;
+import com.kleadingsolutions.expenseshare.config.LedgerCompactionProperties;
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+import com.kleadingsolutions.expenseshare.service.BalanceSnapshots;
+import com.kleadingsolutions.expenseshare.service.LedgerCompactor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compaction on PostgreSQL: as-of balances after the horizon keep their value, and a time at or before
+ * it is refused instead of summing only the entries left in ledger_entries.
+ */
+@Import({DatabaseVendor.class, LedgerCompactionRepository.class, BalanceSnapshotRepository.class})
+class LedgerCompactionTest extends AbstractPostgresTest {
+
+    private static final OffsetDateTime HORIZON = OffsetDateTime.parse("2025-10-16T00:00:00Z");
+
+    @Autowired
+    private LedgerCompactionRepository compactionRepository;
+    @Autowired
+    private BalanceSnapshotRepository snapshotRepository;
+    @Autowired
+    private BalanceRepository balanceRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private LedgerCompactor compactor;
+    private BalanceSnapshots snapshots;
+    private UUID alice;
+    private UUID bob;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("TRUNCATE ledger_entries, ledger_entries_archive, balance_snapshots, group_ledger_heads, groups, users CASCADE");
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        compactor = new LedgerCompactor(
+                new LedgerCompactionProperties(true, Duration.ofHours(6), Duration.ofDays(365), 2, 1_000, 100),
+                compactionRepository, balanceRepository, snapshotRepository, transactionManager, meterRegistry);
+        snapshots = new BalanceSnapshots(
+                new BalanceSnapshotProperties(true, Duration.ofDays(1), Duration.ofMinutes(10), Duration.ofHours(1), 100),
+                snapshotRepository, transactionManager, meterRegistry);
+        alice = insertUser();
+        bob = insertUser();
+    }
+
+    @Test
+    void asOf_atOrBeforeTheHorizon_isRefused_afterCompaction() {
+        UUID group = insertGroup(alice);
+        UUID untouched = insertGroup(alice);
+        for (UUID g : new UUID[]{group, untouched}) {
+            entry(g, alice, 1_000, HORIZON.minusDays(30));
+            entry(g, bob, -1_000, HORIZON.minusDays(30));
+            entry(g, alice, -400, HORIZON.minusDays(10));
+            entry(g, bob, 400, HORIZON.minusDays(10));
+            entry(g, alice, 50, HORIZON.plusDays(1));
+            entry(g, bob, -50, HORIZON.plusDays(1));
+        }
+
+        Integer moved = new TransactionTemplate(transactionManager).execute(s -> compactor.compactGroup(group, HORIZON));
+        assertEquals(4, moved);
+
+        assertThrows(BadRequestException.class, () -> snapshots.balancesAsOf(group, HORIZON.minusDays(5)));
+        assertThrows(BadRequestException.class, () -> snapshots.balancesAsOf(group, HORIZON));
+        assertEquals(Map.of(alice, new BigDecimal("6.50"), bob, new BigDecimal("-6.50")),
+                snapshots.balancesAsOf(group, HORIZON.plusDays(2)));
+        // nothing archived yet before the first entry
+        assertEquals(Map.of(), snapshots.balancesAsOf(group, HORIZON.minusDays(40)));
+
+        // a group that was not compacted still answers before the horizon
+        assertEquals(Map.of(alice, new BigDecimal("10.00"), bob, new BigDecimal("-10.00")),
+                snapshots.balancesAsOf(untouched, HORIZON.minusDays(20)));
+    }
+
+    private void entry(UUID group, UUID user, long cents, OffsetDateTime createdAt) {
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code, created_at, version)" +
+                        " VALUES (?, ?, ?, ?, " + TransactionType.EXPENSE.code() + ", ?, 0)",
+                UUID.randomUUID(), group, user, cents, createdAt);
+    }
+}
@@ -0,0 +1,160 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.kleadingsolutions.expenseshare.config.BalanceSnapshotProperties;
+import com.kleadingsolutions.expenseshare.config.LedgerPartitionProperties;
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+import com.kleadingsolutions.expenseshare.service.BalanceSnapshots;
+import com.kleadingsolutions.expenseshare.service.LedgerPartitions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Partitioned ledger_entries on PostgreSQL: per-group sums read one hash partition, archiving a
+ * month leaves every user's ledger total unchanged, and as-of balances inside it are refused.
+ */
+@Import({DatabaseVendor.class, LedgerPartitionRepository.class, BalanceSnapshotRepository.class})
+class LedgerPartitionTest extends AbstractPostgresTest {
+
+    private static final Pattern HASH_PARTITION = Pattern.compile("ledger_entries_p\\d{2}");
+    private static final YearMonth JAN = YearMonth.of(2025, 1);
+
+    @Autowired
+    private LedgerPartitionRepository partitionRepository;
+    @Autowired
+    private BalanceSnapshotRepository snapshotRepository;
+    @Autowired
+    private DatabaseVendor databaseVendor;
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private UUID group;
+    private UUID alice;
+    private UUID bob;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("TRUNCATE ledger_entries, balance_snapshots, ledger_archive_horizons, group_ledger_heads, groups, users CASCADE");
+        alice = insertUser();
+        bob = insertUser();
+        group = insertGroup(alice);
+    }
+
+    @Test
+    void perGroupSums_readOneHashPartition() {
+        for (String partition : partitionRepository.hashPartitions()) {
+            partitionRepository.createMonth(partition, JAN);
+        }
+        entry(alice, 1_000, JAN.atDay(5));
+        entry(bob, -1_000, JAN.atDay(5));
+
+        String sum = "SELECT COALESCE(SUM(amount_cents), 0) FROM ledger_entries WHERE group_id = '%s' AND user_id = '%s'";
+        String groupBy = "SELECT user_id, SUM(amount_cents) FROM ledger_entries WHERE group_id = '%s' GROUP BY user_id";
+        assertEquals(1, hashPartitionsIn(sum.formatted(group, alice)).size());
+        assertEquals(1, hashPartitionsIn(groupBy.formatted(group)).size());
+        assertEquals(0, new BigDecimal("10.00").compareTo(ledgerEntryRepository.sumAmountByGroupIdAndUserId(group, alice)));
+    }
+
+    @Test
+    void archivingAMonth_keepsLedgerTotals_andMovesItsRows() {
+        String partition = partitionOf(group);
+        partitionRepository.createMonth(partition, JAN);
+        entry(alice, 1_000, JAN.atDay(5));
+        entry(bob, -1_000, JAN.atDay(5));
+        entry(alice, -250, JAN.atDay(20));
+        entry(bob, 250, JAN.atDay(20));
+        entry(alice, 75, JAN.plusMonths(1).atDay(3)); // DEFAULT partition
+        entry(bob, -75, JAN.plusMonths(1).atDay(3));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(s -> {
+            List<LedgerPartitionRepository.Total> totals = partitionRepository.totals(partition, JAN);
+            partitionRepository.detach(partition, JAN);
+            partitionRepository.insertCarries(JAN, totals);
+            partitionRepository.moveToSchema(partition, JAN, "ledger_archive");
+        });
+
+        assertEquals(0, new BigDecimal("8.25").compareTo(ledgerEntryRepository.sumAmountByGroupIdAndUserId(group, alice)));
+        assertEquals(0, new BigDecimal("-8.25").compareTo(ledgerEntryRepository.sumAmountByGroupIdAndUserId(group, bob)));
+        assertEquals(4, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM ledger_archive." + partition + "_2025_01", Integer.class));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM ledger_entries WHERE type_code = ?", Integer.class, TransactionType.COMPACTED.code()));
+        assertFalse(partitionRepository.months(partition).contains(JAN));
+    }
+
+    @Test
+    void asOf_insideAnArchivedMonth_isRefused_andAnsweredFromItsEnd() {
+        String partition = partitionOf(group);
+        YearMonth feb = JAN.plusMonths(1);
+        partitionRepository.createMonth(partition, JAN);
+        partitionRepository.createMonth(partition, feb);
+        entry(alice, 1_000, JAN.atDay(5));
+        entry(bob, -1_000, JAN.atDay(5));
+        entry(alice, -250, JAN.atDay(20));
+        entry(bob, 250, JAN.atDay(20));
+        entry(alice, 75, feb.atDay(3));
+        entry(bob, -75, feb.atDay(3));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        LedgerPartitions partitions = new LedgerPartitions(
+                new LedgerPartitionProperties(true, 3, 1, "ledger_archive", Duration.ofHours(1)),
+                partitionRepository, databaseVendor, transactionManager, meterRegistry);
+        BalanceSnapshots snapshots = new BalanceSnapshots(
+                new BalanceSnapshotProperties(true, Duration.ofDays(1), Duration.ofMinutes(10), Duration.ofHours(1), 100),
+                snapshotRepository, transactionManager, meterRegistry);
+
+        assertEquals(Boolean.TRUE, new TransactionTemplate(transactionManager).execute(s -> partitions.archive(partition, JAN)));
+
+        OffsetDateTime endOfJan = feb.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        assertEquals(Optional.of(endOfJan.toInstant()), snapshotRepository.archiveHorizon(group).map(OffsetDateTime::toInstant));
+        // the carry is dated January 1st: the 10th would read the whole month's total
+        assertThrows(BadRequestException.class, () -> snapshots.balancesAsOf(group, JAN.atDay(10).atStartOfDay().atOffset(ZoneOffset.UTC)));
+        assertThrows(BadRequestException.class, () -> snapshots.balancesAsOf(group, endOfJan.minusSeconds(1)));
+        assertEquals(Map.of(alice, new BigDecimal("7.50"), bob, new BigDecimal("-7.50")), snapshots.balancesAsOf(group, endOfJan));
+        assertEquals(Map.of(alice, new BigDecimal("8.25"), bob, new BigDecimal("-8.25")),
+                snapshots.balancesAsOf(group, feb.atDay(10).atStartOfDay().atOffset(ZoneOffset.UTC)));
+    }
+
+    private void entry(UUID user, long cents, LocalDate day) {
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code, created_at, version)" +
+                        " VALUES (?, ?, ?, ?, " + TransactionType.EXPENSE.code() + ", ?, 0)",
+                UUID.randomUUID(), group, user, cents, day.atTime(12, 0).atOffset(ZoneOffset.UTC));
+    }
+
+    private String partitionOf(UUID groupId) {
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code, version) VALUES (?, ?, ?, 0, " + TransactionType.EXPENSE.code() + ", 0)",
+                UUID.randomUUID(), groupId, alice);
+        String leaf = jdbcTemplate.queryForObject("SELECT tableoid::regclass::text FROM ledger_entries WHERE group_id = ?",
+                String.class, groupId);
+        jdbcTemplate.update("DELETE FROM ledger_entries WHERE group_id = ?", groupId);
+        return leaf.substring(0, "ledger_entries_pNN".length());
+    }
+
+    private Set<String> hashPartitionsIn(String query) {
+        Set<String> found = new TreeSet<>();
+        for (String line : jdbcTemplate.queryForList("EXPLAIN " + query, String.class)) {
+            Matcher m = HASH_PARTITION.matcher(line);
+            while (m.find()) found.add(m.group());
+        }
+        return found;
+    }
+}
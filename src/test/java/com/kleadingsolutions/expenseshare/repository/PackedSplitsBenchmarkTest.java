@@ -0,0 +1,106 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.enums.ShareType;
+import com.kleadingsolutions.expenseshare.model.Expense;
+import com.kleadingsolutions.expenseshare.model.ExpenseSplit;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import com.kleadingsolutions.expenseshare.util.PackedSplits;
+import com.kleadingsolutions.expenseshare.util.UuidV7;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Write amplification of expenses split across 500 members: the same expenses written through
+ * ExpenseBulkWriter with one expense_splits row per split, then with the splits packed into the
+ * expense row. Reports WAL bytes, write time, on-disk size (tables, TOAST and indexes) and the time to
+ * read every expense's breakdown back.
+ */
+class PackedSplitsBenchmarkTest extends AbstractPostgresTest {
+
+    private static final int MEMBERS = 500;
+    private static final int EXPENSES = 400;
+    private static final int PER_WRITE = 20;
+
+    @Test
+    void splitRowsVersusPackedSplits() {
+        ExpenseBulkWriter writer = new ExpenseBulkWriter(jdbcTemplate, new DatabaseVendor(jdbcTemplate));
+        List<UUID> members = insertUsers(MEMBERS);
+        UUID groupId = insertGroup(members.get(0));
+
+        Run rows = run(writer, groupId, members, false);
+        Run packed = run(writer, groupId, members, true);
+
+        report("%,d expenses x %,d splits", EXPENSES, MEMBERS);
+        report("%-8s %12s %10s %12s %10s", "", "WAL", "write", "on disk", "read");
+        for (Run r : List.of(rows, packed)) {
+            report("%-8s %,9d kB %,7d ms %,9d kB %,7d ms", r.name(), r.walKb(), r.writeMs(), r.sizeKb(), r.readMs());
+        }
+
+        assertTrue(packed.walKb() < rows.walKb(), "packed WAL " + packed.walKb() + " kB not below rows " + rows.walKb() + " kB");
+        assertTrue(packed.sizeKb() < rows.sizeKb(), "packed size " + packed.sizeKb() + " kB not below rows " + rows.sizeKb() + " kB");
+    }
+
+    private record Run(String name, long walKb, long writeMs, long sizeKb, long readMs) {
+    }
+
+    private Run run(ExpenseBulkWriter writer, UUID groupId, List<UUID> members, boolean pack) {
+        jdbcTemplate.execute("TRUNCATE expenses CASCADE");
+        jdbcTemplate.execute("CHECKPOINT");
+        String walStart = jdbcTemplate.queryForObject("SELECT pg_current_wal_insert_lsn()::text", String.class);
+
+        List<UUID> expenseIds = new ArrayList<>(EXPENSES);
+        long start = System.nanoTime();
+        for (int done = 0; done < EXPENSES; done += PER_WRITE) {
+            List<Expense> expenses = new ArrayList<>(PER_WRITE);
+            List<ExpenseSplit> splits = new ArrayList<>();
+            LocalDateTime now = LocalDateTime.now();
+            for (int i = done; i < done + PER_WRITE; i++) {
+                UUID expenseId = UuidV7.randomUUID();
+                expenseIds.add(expenseId);
+                List<ExpenseSplitDto> dtos = new ArrayList<>(MEMBERS);
+                for (UUID m : members) {
+                    dtos.add(ExpenseSplitDto.builder().userId(m).amount(new BigDecimal("2.37")).shareType(ShareType.EQUAL).build());
+                }
+                expenses.add(Expense.builder().id(expenseId).groupId(groupId).createdBy(members.get(0)).description("team dinner")
+                        .amount(MoneyUtils.fromCents(237L * MEMBERS)).currency("AED").createdAt(now)
+                        .packedSplits(pack ? PackedSplits.encode(dtos) : null).build());
+                if (!pack) {
+                    for (ExpenseSplitDto d : dtos) {
+                        splits.add(ExpenseSplit.builder().id(UuidV7.randomUUID()).expenseId(expenseId).userId(d.getUserId())
+                                .amount(d.getAmount()).shareType(d.getShareType().name()).createdAt(now).build());
+                    }
+                }
+            }
+            writer.write(expenses, splits, List.of());
+        }
+        long writeMs = millisSince(start);
+        long walKb = jdbcTemplate.queryForObject("SELECT pg_wal_lsn_diff(pg_current_wal_insert_lsn(), ?::pg_lsn)::bigint / 1024",
+                Long.class, walStart);
+        jdbcTemplate.execute("VACUUM ANALYZE expenses");
+        jdbcTemplate.execute("VACUUM ANALYZE expense_splits");
+        long sizeKb = jdbcTemplate.queryForObject(
+                "SELECT (pg_total_relation_size('expenses') + pg_total_relation_size('expense_splits')) / 1024", Long.class);
+
+        start = System.nanoTime();
+        for (UUID id : expenseIds) {
+            List<ExpenseSplitDto> breakdown = pack
+                    ? PackedSplits.decode(jdbcTemplate.queryForObject("SELECT packed_splits FROM expenses WHERE id = ?", byte[].class, id))
+                    : jdbcTemplate.query("SELECT user_id, amount_cents, share_type_code FROM expense_splits WHERE expense_id = ?",
+                    (rs, n) -> ExpenseSplitDto.builder().userId(rs.getObject(1, UUID.class)).amount(MoneyUtils.fromCents(rs.getLong(2)))
+                            .shareType(ShareType.fromCode(rs.getShort(3))).build(), id);
+            assertEquals(MEMBERS, breakdown.size());
+        }
+        long readMs = millisSince(start);
+        return new Run(pack ? "packed" : "rows", walKb, writeMs, sizeKb, readMs);
+    }
+}
@@ -0,0 +1,216 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plan regression suite: EXPLAIN (FORMAT JSON) of every repository read on a seeded ledger of 500k
+ * entries (2k groups of 25 members, 10k users, 20k expenses with 500k splits). A query fails when its
+ * plan sequentially scans a table of more than LARGE_TABLE rows, or when a per-group ledger aggregate
+ * stops being index-only. Spring Data queries are called once and the SQL Hibernate issued for them
+ * (recorded by {@link IssuedSql}) is explained; hand-written JDBC statements are checked as they are.
+ */
+@Import(DatabaseVendor.class)
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.kleadingsolutions.expenseshare.repository.QueryPlanRegressionTest$IssuedSql")
+class QueryPlanRegressionTest extends AbstractPostgresTest {
+
+    private static final long LARGE_TABLE = 10_000;
+    private static final OffsetDateTime CUT = OffsetDateTime.of(2026, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private BalanceRepository balanceRepository;
+    @Autowired
+    private ExpenseRepository expenseRepository;
+    @Autowired
+    private ExpenseSplitRepository expenseSplitRepository;
+    @Autowired
+    private GroupMemberRepository groupMemberRepository;
+    @Autowired
+    private GroupRepository groupRepository;
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+    @Autowired
+    private SettlementRepository settlementRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private record Check(String name, String sql, boolean indexOnly, Object... args) {
+    }
+
+    /**
+     * Records every statement Hibernate prepares.
+     */
+    public static class IssuedSql implements StatementInspector {
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    @BeforeEach
+    void seed() {
+        jdbcTemplate.update("INSERT INTO users (id, name, email, oauth_id, version)" +
+                " SELECT md5('u' || u)::uuid, 'u', 'u' || u || '@plan', 'oauth-' || u, 0 FROM generate_series(1, 10000) u");
+        jdbcTemplate.update("INSERT INTO groups (id, name, created_by, version)" +
+                " SELECT md5('g' || g)::uuid, 'g', md5('u' || (g % 10000 + 1))::uuid, 0 FROM generate_series(1, 2000) g");
+        jdbcTemplate.update("INSERT INTO group_members (id, group_id, user_id, version)" +
+                " SELECT gen_random_uuid(), md5('g' || g)::uuid, md5('u' || ((g * 25 + m) % 10000 + 1))::uuid, 0" +
+                " FROM generate_series(1, 2000) g, generate_series(0, 24) m");
+        jdbcTemplate.update("INSERT INTO balances (id, group_id, user_id, balance, version)" +
+                " SELECT gen_random_uuid(), group_id, user_id, 0, 0 FROM group_members");
+        jdbcTemplate.update("INSERT INTO expenses (id, group_id, created_by, amount_cents, version)" +
+                " SELECT md5('e' || g || '-' || e)::uuid, md5('g' || g)::uuid, md5('u' || (g % 10000 + 1))::uuid, 2500, 0" +
+                " FROM generate_series(1, 2000) g, generate_series(1, 10) e");
+        jdbcTemplate.update("INSERT INTO expense_splits (id, expense_id, user_id, amount_cents, version)" +
+                " SELECT gen_random_uuid(), md5('e' || g || '-' || e)::uuid, md5('u' || ((g * 25 + m) % 10000 + 1))::uuid, 100, 0" +
+                " FROM generate_series(1, 2000) g, generate_series(1, 10) e, generate_series(0, 24) m");
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code, created_at, version)" +
+                " SELECT gen_random_uuid(), md5('g' || g)::uuid, md5('u' || ((g * 25 + m) % 10000 + 1))::uuid," +
+                " CASE WHEN m = 0 THEN 2400 ELSE -100 END, " + TransactionType.EXPENSE.code() + ", TIMESTAMPTZ '2025-06-01' + e * INTERVAL '20 days', 0" +
+                " FROM generate_series(1, 2000) g, generate_series(1, 10) e, generate_series(0, 24) m");
+        jdbcTemplate.update("INSERT INTO settlements (id, group_id, payer_id, receiver_id, amount_cents, version)" +
+                " SELECT gen_random_uuid(), md5('g' || g)::uuid, md5('u' || ((g * 25 + 1) % 10000 + 1))::uuid," +
+                " md5('u' || ((g * 25) % 10000 + 1))::uuid, 500, 0 FROM generate_series(1, 2000) g, generate_series(1, 5) s");
+        // index-only scans need the visibility map
+        jdbcTemplate.execute("VACUUM ANALYZE");
+    }
+
+    @Test
+    void noRepositoryQueryScansALargeTable() throws Exception {
+        UUID group = jdbcTemplate.queryForObject("SELECT md5('g1')::uuid", UUID.class);
+        UUID user = jdbcTemplate.queryForObject("SELECT md5('u' || (25 % 10000 + 1))::uuid", UUID.class);
+        UUID expense = jdbcTemplate.queryForObject("SELECT md5('e1-1')::uuid", UUID.class);
+
+        List<Check> checks = List.of(
+                // Spring Data repositories; limits are bound as parameters (exists queries fetch 1 row)
+                new Check("BalanceRepository.findByGroupIdAndUserId",
+                        issued(() -> balanceRepository.findByGroupIdAndUserId(group, user)), false, group, user),
+                new Check("BalanceRepository.findLockedByGroupIdAndUserId",
+                        issued(() -> balanceRepository.findLockedByGroupIdAndUserId(group, user)), false, group, user),
+                new Check("BalanceRepository.findByGroupId", issued(() -> balanceRepository.findByGroupId(group)), false, group),
+                new Check("BalanceRepository.findUserIdsByGroupId", issued(() -> balanceRepository.findUserIdsByGroupId(group)), false, group),
+                new Check("ExpenseRepository.findByGroupId", issued(() -> expenseRepository.findByGroupId(group)), false, group),
+                new Check("ExpenseRepository.findDtosByGroupId", issued(() -> expenseRepository.findDtosByGroupId(group)), false, group),
+                new Check("ExpenseSplitRepository.findByExpenseId", issued(() -> expenseSplitRepository.findByExpenseId(expense)), false, expense),
+                new Check("GroupMemberRepository.findByGroupId", issued(() -> groupMemberRepository.findByGroupId(group)), false, group),
+                new Check("GroupMemberRepository.findByUserId", issued(() -> groupMemberRepository.findByUserId(user)), false, user),
+                new Check("GroupMemberRepository.findByGroupIdAndUserId",
+                        issued(() -> groupMemberRepository.findByGroupIdAndUserId(group, user)), false, group, user),
+                new Check("GroupMemberRepository.existsByGroupIdAndUserIdAndStatus",
+                        issued(() -> groupMemberRepository.existsByGroupIdAndUserIdAndStatus(group, user, "ACTIVE")), false, group, user, "ACTIVE", 1),
+                new Check("GroupRepository.existsByIdAndCreatedBy",
+                        issued(() -> groupRepository.existsByIdAndCreatedBy(group, user)), false, group, user, 1),
+                new Check("GroupRepository.findMembershipVersion", issued(() -> groupRepository.findMembershipVersion(group)), false, group),
+                new Check("LedgerEntryRepository.findByGroupId", issued(() -> ledgerEntryRepository.findByGroupId(group)), false, group),
+                new Check("LedgerEntryRepository.sumCentsByGroupIdAndUserId",
+                        issued(() -> ledgerEntryRepository.sumCentsByGroupIdAndUserId(group, user)), true, group, user),
+                new Check("LedgerEntryRepository.sumCentsByUserId", issued(() -> ledgerEntryRepository.sumCentsByUserId(group)), true, group),
+                new Check("SettlementRepository.findByGroupId", issued(() -> settlementRepository.findByGroupId(group)), false, group),
+                new Check("UserRepository.findByEmail", issued(() -> userRepository.findByEmail("u26@plan")), false, "u26@plan"),
+                new Check("UserRepository.findByOauthId", issued(() -> userRepository.findByOauthId("oauth-26")), false, "oauth-26"),
+                // JDBC repositories
+                new Check("BalanceAuditRepository.LEDGER_TOTAL", BalanceAuditRepository.LEDGER_TOTAL, true, group),
+                new Check("BalanceRepositoryCustomImpl.FIND_DRIFT", BalanceRepositoryCustomImpl.FIND_DRIFT, false, group, group, group),
+                new Check("BalanceRepositoryCustomImpl.GROUP_BALANCES_WITH_TAIL", BalanceRepositoryCustomImpl.GROUP_BALANCES_WITH_TAIL, false,
+                        group, group, group),
+                new Check("BalanceSnapshotRepository.LATEST_CUT", BalanceSnapshotRepository.LATEST_CUT, false, group, CUT),
+                new Check("BalanceSnapshotRepository.ROWS", BalanceSnapshotRepository.ROWS, false, group, CUT),
+                new Check("BalanceSnapshotRepository.LEDGER_RANGE", BalanceSnapshotRepository.LEDGER_RANGE, true, group, CUT.minusMonths(3), CUT),
+                new Check("BalanceSnapshotRepository.USER_LEDGER_SINCE", BalanceSnapshotRepository.USER_LEDGER_SINCE, true, group, user, CUT),
+                new Check("BalanceSnapshotRepository.GROUPS_DUE", BalanceSnapshotRepository.GROUPS_DUE, false,
+                        new UUID(0L, 0L), CUT, CUT.minusYears(50), 500),
+                new Check("BalanceSnapshotRepository.COMPACTION_HORIZON", BalanceSnapshotRepository.COMPACTION_HORIZON, false,
+                        group, TransactionType.COMPACTED.code(), group, CUT),
+                new Check("BalanceSnapshotRepository.ARCHIVE_HORIZON", BalanceSnapshotRepository.ARCHIVE_HORIZON, false, group),
+                new Check("BalanceStripeRepository.GROUP_BALANCES", BalanceStripeRepository.GROUP_BALANCES, false, group, group),
+                new Check("BalanceStripeRepository.USER_BALANCE", BalanceStripeRepository.USER_BALANCE, false, group, user),
+                new Check("LedgerCompactionRepository.COUNT", LedgerCompactionRepository.COUNT, false, group, CUT, 0L),
+                new Check("LedgerCompactionRepository.TOTALS", LedgerCompactionRepository.TOTALS, false, group, CUT, 0L),
+                new Check("LedgerCompactionRepository.ARCHIVE", LedgerCompactionRepository.ARCHIVE, false, group, CUT, 0L),
+                new Check("LedgerCompactionRepository.DELETE", LedgerCompactionRepository.DELETE, false, group, CUT, 0L),
+                new Check("LedgerHeadRepository.UNFOLDED_TAIL", LedgerHeadRepository.UNFOLDED_TAIL, false, group, 0L, 100L),
+                new Check("PairDebtRepository.FIND_FOR_USER", PairDebtRepository.FIND_FOR_USER, false, group, user, group, user),
+                new Check("UserNetRepository.GROUP_NETS", UserNetRepository.GROUP_NETS, false, user));
+
+        Map<String, Long> rowCounts = new HashMap<>();
+        jdbcTemplate.query("SELECT relname, reltuples::bigint FROM pg_class WHERE relkind IN ('r', 'p')",
+                (RowCallbackHandler) rs -> rowCounts.put(rs.getString(1), rs.getLong(2)));
+
+        List<String> regressions = new ArrayList<>();
+        for (Check check : checks) {
+            assertEquals(check.sql().chars().filter(c -> c == '?').count(), check.args().length,
+                    check.name() + ": arguments do not match the placeholders of " + check.sql());
+            String json = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + check.sql(), String.class, check.args());
+            JsonNode plan = objectMapper.readTree(json).get(0).get("Plan");
+            List<JsonNode> nodes = new ArrayList<>();
+            collect(plan, nodes);
+            for (JsonNode node : nodes) {
+                String type = node.path("Node Type").asText();
+                String relation = node.path("Relation Name").asText();
+                if ("Seq Scan".equals(type) && rowCounts.getOrDefault(relation, 0L) > LARGE_TABLE) {
+                    regressions.add(check.name() + ": Seq Scan on " + relation);
+                }
+                if (check.indexOnly() && relation.startsWith("ledger_entries") && !"Index Only Scan".equals(type)) {
+                    regressions.add(check.name() + ": " + type + " on " + relation + " instead of an index-only scan");
+                }
+            }
+            report("  %-55s %s", check.name(), summary(nodes));
+        }
+        assertTrue(regressions.isEmpty(), "plan regressions:\n  " + String.join("\n  ", regressions));
+    }
+
+    /**
+     * First statement Hibernate issues for a repository call.
+     */
+    private String issued(Runnable call) {
+        IssuedSql.STATEMENTS.clear();
+        new TransactionTemplate(transactionManager).executeWithoutResult(s -> call.run());
+        assertFalse(IssuedSql.STATEMENTS.isEmpty(), "no statement issued");
+        return IssuedSql.STATEMENTS.get(0);
+    }
+
+    private static void collect(JsonNode node, List<JsonNode> into) {
+        into.add(node);
+        for (JsonNode child : node.path("Plans")) collect(child, into);
+    }
+
+    /** Distinct scan types of a plan, e.g. "Index Only Scan x16". */
+    private static String summary(List<JsonNode> nodes) {
+        Map<String, Integer> scans = new TreeMap<>();
+        for (JsonNode n : nodes) {
+            String type = n.path("Node Type").asText();
+            if (type.endsWith("Scan")) scans.merge(type, 1, Integer::sum);
+        }
+        StringJoiner out = new StringJoiner(", ");
+        scans.forEach((type, count) -> out.add(type + " x" + count));
+        return out.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Cross-group net position of one user in 10, 1k and 5k groups: one balance read per group (what the
+ * dashboard did with listBalances) versus the single membership-driven aggregate. Every 3rd group has
+ * a pending balance stripe and every 5th an unfolded sequenced ledger tail, which the aggregate must
+ * include.
+ */
+@Import({DatabaseVendor.class, UserNetRepository.class})
+class UserNetBenchmarkTest extends AbstractPostgresTest {
+
+    private static final int[] GROUP_COUNTS = {10, 1_000, 5_000};
+
+    @Autowired
+    private UserNetRepository userNetRepository;
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("TRUNCATE ledger_entries, balance_stripes, balances, group_ledger_heads, group_members, groups, users CASCADE");
+    }
+
+    @Test
+    void perGroupReadsVersusOneAggregate() {
+        report("net position of one user across groups");
+        for (int groups : GROUP_COUNTS) {
+            UUID user = insertUser();
+            Map<UUID, Long> expected = seedGroups(user, groups);
+
+            long start = System.nanoTime();
+            for (UUID g : expected.keySet()) balanceRepository.findByGroupIdAndUserId(g, user);
+            long perGroupMs = millisSince(start);
+
+            start = System.nanoTime();
+            List<UserNetRepository.GroupNet> nets = userNetRepository.findGroupNets(user);
+            long aggregateMs = millisSince(start);
+
+            report("  %,6d groups : per-group reads %d ms, one aggregate %d ms", groups, perGroupMs, aggregateMs);
+
+            Map<UUID, Long> actual = new HashMap<>();
+            for (UserNetRepository.GroupNet n : nets) actual.put(n.groupId(), n.cents());
+            assertEquals(expected, actual);
+        }
+    }
+
+    /** One group per index with a balance row; some add a stripe or a sequenced tail past the row's watermark. */
+    private Map<UUID, Long> seedGroups(UUID user, int count) {
+        Map<UUID, Long> expected = new HashMap<>();
+        List<Object[]> groups = new ArrayList<>(count);
+        List<Object[]> members = new ArrayList<>(count);
+        List<Object[]> balances = new ArrayList<>(count);
+        List<Object[]> stripes = new ArrayList<>();
+        List<Object[]> tail = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UUID g = UUID.randomUUID();
+            long cents = (i % 11 - 5) * 1_000L;
+            groups.add(new Object[]{g, user});
+            members.add(new Object[]{UUID.randomUUID(), g, user});
+            balances.add(new Object[]{UUID.randomUUID(), g, user, MoneyUtils.fromCents(cents), 2L});
+            if (i % 3 == 0) {
+                stripes.add(new Object[]{g, user, MoneyUtils.fromCents(250)});
+                cents += 250;
+            }
+            if (i % 5 == 0) {
+                // seq 2 is already in the row (watermark 2), seq 3 is not
+                tail.add(new Object[]{UUID.randomUUID(), g, user, 700L, 2L});
+                tail.add(new Object[]{UUID.randomUUID(), g, user, -125L, 3L});
+                cents -= 125;
+            }
+            expected.put(g, cents);
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO groups (id, name, created_by, version) VALUES (?, 'bench', ?, 0)", groups);
+        jdbcTemplate.batchUpdate("INSERT INTO group_members (id, group_id, user_id, version) VALUES (?, ?, ?, 0)", members);
+        jdbcTemplate.batchUpdate("INSERT INTO balances (id, group_id, user_id, balance, folded_seq, version) VALUES (?, ?, ?, ?, ?, 0)", balances);
+        jdbcTemplate.batchUpdate("INSERT INTO balance_stripes (group_id, user_id, stripe, delta) VALUES (?, ?, 0, ?)", stripes);
+        jdbcTemplate.batchUpdate("INSERT INTO ledger_entries (id, group_id, user_id, amount_cents, type_code, seq) VALUES (?, ?, ?, ?, " + TransactionType.EXPENSE.code() + ", ?)", tail);
+        return expected;
+    }
+}
@@ -0,0 +1,71 @@
+package com.kleadingsolutions.expenseshare.repository;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.kleadingsolutions.expenseshare.enums.TransactionType;
+import com.kleadingsolutions.expenseshare.util.UuidV7;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Insert throughput and primary-key index size of a 1M-row synthetic ledger keyed by random v4 ids
+ * (the previous generator) versus time-ordered v7 ids. Each run fills an unpartitioned scratch copy of
+ * ledger_entries keyed on id with the same rows in the same batches; only the id generator differs.
+ */
+class UuidV7BenchmarkTest extends AbstractPostgresTest {
+
+    private static final int ROWS = 1_000_000;
+    private static final int BATCH = 5_000;
+    private static final int GROUPS = 2_000;
+    private static final int USERS = 20_000;
+
+    @Test
+    void randomV4VersusTimeOrderedV7Ids() {
+        report("ledger of %,d rows, batches of %,d", ROWS, BATCH);
+        long v4Index = run("bench_ledger_v4", UUID::randomUUID);
+        long v7Index = run("bench_ledger_v7", UuidV7::randomUUID);
+
+        // appends on the right edge leave full leaf pages; random inserts split them half-empty
+        assertTrue(v7Index < v4Index, "v7 pk index " + v7Index + " not smaller than v4 " + v4Index);
+    }
+
+    private long run(String table, Supplier<UUID> ids) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+        // unpartitioned, keyed on id alone, so the pk index shows the generator and nothing else
+        jdbcTemplate.execute("CREATE TABLE " + table + " (LIKE ledger_entries INCLUDING DEFAULTS, PRIMARY KEY (id))");
+        jdbcTemplate.execute("CREATE INDEX ON " + table + " (group_id, user_id, created_at)");
+        String sql = "INSERT INTO " + table + " (id, group_id, user_id, amount_cents, type_code) VALUES (?, ?, ?, ?, " + TransactionType.EXPENSE.code() + ")";
+
+        UUID[] groups = fixedIds(GROUPS);
+        UUID[] users = fixedIds(USERS);
+        long start = System.nanoTime();
+        for (int done = 0; done < ROWS; done += BATCH) {
+            List<Object[]> batch = new ArrayList<>(BATCH);
+            for (int i = done; i < done + BATCH; i++) {
+                batch.add(new Object[]{ids.get(), groups[i % GROUPS], users[i % USERS], (long) (i % 10_000 - 5_000)});
+            }
+            jdbcTemplate.batchUpdate(sql, batch);
+        }
+        long ms = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+        Long pk = jdbcTemplate.queryForObject(
+                "SELECT pg_relation_size(indexrelid) FROM pg_index WHERE indrelid = ?::regclass AND indisprimary",
+                Long.class, table);
+        Long indexes = jdbcTemplate.queryForObject("SELECT pg_indexes_size(?::regclass)", Long.class, table);
+        report("  %s : %,d inserts/s, pk index %,d kB, all indexes %,d kB",
+                table, ROWS * 1000L / ms, pk / 1024, indexes / 1024);
+        return pk;
+    }
+
+    /** Same group and user ids for both runs, so only the primary key differs. */
+    private static UUID[] fixedIds(int count) {
+        UUID[] ids = new UUID[count];
+        for (int i = 0; i < count; i++) ids[i] = new UUID(count, i);
+        return ids;
+    }
+}
@@ -0,0 +1,147 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceAuditProperties;
+import com.kleadingsolutions.expenseshare.repository.BalanceAuditRepository;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class BalanceAuditScannerTest {
+
+    private final BalanceAuditRepository auditRepository = mock(BalanceAuditRepository.class);
+    private final BalanceRepository balanceRepository = mock(BalanceRepository.class);
+    private final BalanceService balanceService = mock(BalanceService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UUID drifted = UUID.randomUUID();
+    private final UUID unbalanced = UUID.randomUUID();
+    private BalanceAuditScanner scanner;
+
+    @AfterEach
+    void tearDown() {
+        if (scanner != null) scanner.destroy();
+    }
+
+    @Test
+    void scan_repairsDriftedGroups_andReportsNonZeroSumLedgers() {
+        scanner = scanner(1, true);
+        when(auditRepository.tryLease(eq(0), anyString(), any(), any(), any())).thenReturn(true);
+        streamGroups(drifted, unbalanced);
+        when(balanceRepository.findDrift(drifted)).thenReturn(CentDeltas.of(Map.of(UUID.randomUUID(), new BigDecimal("2.00"))));
+        when(balanceRepository.findDrift(unbalanced)).thenReturn(CentDeltas.of(Map.of()));
+        when(auditRepository.ledgerTotal(drifted)).thenReturn(BigDecimal.ZERO);
+        when(auditRepository.ledgerTotal(unbalanced)).thenReturn(new BigDecimal("0.01"));
+        when(balanceService.recomputeAndReconcileGroup(drifted))
+                .thenReturn(new BalanceService.GroupReconciliation(drifted, 1, new BigDecimal("2.00")));
+
+        BalanceAuditScanner.AuditRun run = scanner.scan();
+
+        assertEquals(1, run.shardsScanned());
+        assertEquals(2, run.groupsChecked());
+        assertEquals(1, run.driftRows());
+        assertEquals(1, run.groupsRepaired());
+        assertEquals(1, run.nonZeroSumGroups());
+        verify(balanceService, never()).recomputeAndReconcileGroup(unbalanced);
+        verify(auditRepository).completeLease(eq(0), anyString(), any());
+        verify(auditRepository, never()).releaseLease(anyInt(), anyString(), any());
+        assertEquals(2.0, meterRegistry.get("expenseshare.balance.audit.groups.checked").counter().count());
+        assertEquals(1.0, meterRegistry.get("expenseshare.balance.audit.last_run.nonzero_sum_groups").gauge().value());
+    }
+
+    @Test
+    void scan_withRepairOff_onlyReportsDrift() {
+        scanner = scanner(1, false);
+        when(auditRepository.tryLease(eq(0), anyString(), any(), any(), any())).thenReturn(true);
+        streamGroups(drifted);
+        when(balanceRepository.findDrift(drifted)).thenReturn(CentDeltas.of(Map.of(
+                UUID.randomUUID(), new BigDecimal("2.00"), UUID.randomUUID(), new BigDecimal("-2.00"))));
+        when(auditRepository.ledgerTotal(drifted)).thenReturn(BigDecimal.ZERO);
+
+        BalanceAuditScanner.AuditRun run = scanner.scan();
+
+        assertEquals(2, run.driftRows());
+        assertEquals(0, run.groupsRepaired());
+        verifyNoInteractions(balanceService);
+    }
+
+    @Test
+    void scan_skipsShardsLeasedByAnotherNode_andSplitsIdsOnTopBits() {
+        scanner = scanner(2, true);
+        when(auditRepository.tryLease(eq(0), anyString(), any(), any(), any())).thenReturn(false);
+        when(auditRepository.tryLease(eq(1), anyString(), any(), any(), any())).thenReturn(true);
+
+        BalanceAuditScanner.AuditRun run = scanner.scan();
+
+        assertEquals(1, run.shardsScanned());
+        assertEquals(1, run.shardsSkipped());
+        verify(auditRepository).streamGroupIds(eq(new UUID(Long.MIN_VALUE, 0L)), isNull(), anyInt(), any());
+        verify(auditRepository, never()).releaseLease(eq(0), anyString(), any());
+        verify(auditRepository, never()).completeLease(eq(0), anyString(), any());
+    }
+
+    @Test
+    void scan_leasesOnlyShardsNotCompletedWithinTheInterval() {
+        scanner = scanner(1, true);
+        ArgumentCaptor<OffsetDateTime> now = ArgumentCaptor.forClass(OffsetDateTime.class);
+        ArgumentCaptor<OffsetDateTime> completedBefore = ArgumentCaptor.forClass(OffsetDateTime.class);
+        when(auditRepository.tryLease(eq(0), anyString(), now.capture(), any(), completedBefore.capture())).thenReturn(false);
+
+        BalanceAuditScanner.AuditRun run = scanner.scan();
+
+        assertEquals(0, run.shardsScanned());
+        assertEquals(1, run.shardsSkipped());
+        assertEquals(now.getValue().minusHours(1), completedBefore.getValue());
+        verify(auditRepository, never()).streamGroupIds(any(), any(), anyInt(), any());
+    }
+
+    @Test
+    void scan_lostLease_releasesTheShardWithoutMarkingItCompleted() {
+        scanner = scanner(1, true);
+        // leased at the start, lost at the renewal after the first fetch-size groups
+        when(auditRepository.tryLease(eq(0), anyString(), any(), any(), any())).thenReturn(true, false);
+        UUID[] groups = new UUID[100];
+        for (int i = 0; i < groups.length; i++) groups[i] = UUID.randomUUID();
+        streamGroups(groups);
+        when(balanceRepository.findDrift(any())).thenReturn(CentDeltas.of(Map.of()));
+        when(auditRepository.ledgerTotal(any())).thenReturn(BigDecimal.ZERO);
+
+        scanner.scan();
+
+        verify(auditRepository).releaseLease(eq(0), anyString(), any());
+        verify(auditRepository, never()).completeLease(anyInt(), anyString(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void streamGroups(UUID... groupIds) {
+        doAnswer(inv -> {
+            Consumer<UUID> consumer = inv.getArgument(3);
+            for (UUID g : groupIds) consumer.accept(g);
+            return null;
+        }).when(auditRepository).streamGroupIds(any(), any(), anyInt(), any(Consumer.class));
+    }
+
+    private BalanceAuditScanner scanner(int shards, boolean repair) {
+        BalanceAuditProperties properties = new BalanceAuditProperties(
+                true, Duration.ofHours(1), 2, 1_000_000, shards, Duration.ofMinutes(10), 100, repair);
+        return new BalanceAuditScanner(properties, auditRepository, balanceRepository, balanceService,
+                mock(PlatformTransactionManager.class), meterRegistry);
+    }
+}
@@ -0,0 +1,107 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.enums.BalanceUpdateMode;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.service.impl.AdvisoryLockBalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.service.impl.AtomicDeltaBalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.service.impl.PessimisticBalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.service.impl.StripedBalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BalanceLockStrategiesTest {
+
+    private final BalanceRepository balanceRepository = mock(BalanceRepository.class);
+    private final GroupMembershipSnapshot membershipSnapshot = mock(GroupMembershipSnapshot.class);
+    private final BalanceStripes balanceStripes = mock(BalanceStripes.class);
+    private final List<BalanceLockStrategy> all = List.of(
+            new PessimisticBalanceLockStrategy(balanceRepository),
+            new AdvisoryLockBalanceLockStrategy(balanceRepository),
+            new AtomicDeltaBalanceLockStrategy(balanceRepository));
+
+    @Test
+    void withoutTiers_usesDeploymentDefault_withoutLookingUpMembers() {
+        BalanceLockStrategies strategies = new BalanceLockStrategies(all, properties(BalanceLockMode.PESSIMISTIC, List.of()), membershipSnapshot, balanceStripes);
+
+        assertEquals(BalanceLockMode.PESSIMISTIC, strategies.forGroup(UUID.randomUUID()).mode());
+        verifyNoInteractions(membershipSnapshot);
+    }
+
+    @Test
+    void tiers_pickStrategyByActiveMemberCount() {
+        BalanceLockStrategies strategies = new BalanceLockStrategies(all, properties(BalanceLockMode.PESSIMISTIC, List.of(
+                new BalanceProperties.LockTier(200, BalanceLockMode.ADVISORY),
+                new BalanceProperties.LockTier(10, BalanceLockMode.ATOMIC_DELTA))), membershipSnapshot, balanceStripes);
+        UUID small = UUID.randomUUID();
+        UUID medium = UUID.randomUUID();
+        UUID large = UUID.randomUUID();
+        when(membershipSnapshot.activeMembers(small)).thenReturn(members(3));
+        when(membershipSnapshot.activeMembers(medium)).thenReturn(members(10));
+        when(membershipSnapshot.activeMembers(large)).thenReturn(members(500));
+
+        assertEquals(BalanceLockMode.PESSIMISTIC, strategies.forGroup(small).mode());
+        assertEquals(BalanceLockMode.ATOMIC_DELTA, strategies.forGroup(medium).mode());
+        assertEquals(BalanceLockMode.ADVISORY, strategies.forGroup(large).mode());
+    }
+
+    @Test
+    void flaggedGroup_usesStripes_andWritesAreTracked() {
+        List<BalanceLockStrategy> withStripes = new ArrayList<>(all);
+        withStripes.add(new StripedBalanceLockStrategy(balanceStripes, balanceRepository));
+        when(balanceStripes.isEnabled()).thenReturn(true);
+        BalanceLockStrategies strategies = new BalanceLockStrategies(withStripes, properties(BalanceLockMode.ATOMIC_DELTA, List.of()),
+                membershipSnapshot, balanceStripes);
+        UUID hot = UUID.randomUUID();
+        UUID calm = UUID.randomUUID();
+        when(balanceStripes.isStriped(hot)).thenReturn(true);
+        CentDeltas deltas = CentDeltas.of(Map.of(UUID.randomUUID(), new BigDecimal("-1.00"), UUID.randomUUID(), new BigDecimal("1.00")));
+
+        assertEquals(BalanceLockMode.STRIPED, strategies.applyDeltas(hot, deltas, null).mode());
+        assertEquals(BalanceLockMode.ATOMIC_DELTA, strategies.applyDeltas(calm, deltas, null).mode());
+
+        InOrder order = inOrder(balanceStripes);
+        order.verify(balanceStripes).beginWrite(hot);
+        order.verify(balanceStripes).apply(hot, deltas, null);
+        order.verify(balanceStripes).endWrite(hot);
+        verify(balanceRepository).applyDeltas(calm, deltas, null);
+    }
+
+    @Test
+    void stripesEnabledWithoutStripedStrategy_failsAtStartup() {
+        when(balanceStripes.isEnabled()).thenReturn(true);
+
+        assertThrows(IllegalStateException.class, () -> new BalanceLockStrategies(all,
+                properties(BalanceLockMode.ATOMIC_DELTA, List.of()), membershipSnapshot, balanceStripes));
+    }
+
+    @Test
+    void configuredStrategyWithoutImplementation_failsAtStartup() {
+        BalanceProperties props = properties(BalanceLockMode.ATOMIC_DELTA, List.of(new BalanceProperties.LockTier(5, BalanceLockMode.OPTIMISTIC)));
+
+        assertThrows(IllegalStateException.class, () -> new BalanceLockStrategies(all, props, membershipSnapshot, balanceStripes));
+    }
+
+    private static BalanceProperties properties(BalanceLockMode mode, List<BalanceProperties.LockTier> tiers) {
+        return new BalanceProperties(BalanceUpdateMode.EAGER, false, mode, tiers, 5, Duration.ofMillis(5));
+    }
+
+    private static Set<UUID> members(int n) {
+        return IntStream.range(0, n).mapToObj(i -> UUID.randomUUID()).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,152 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.AbstractPostgresTest;
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.config.BalanceStripeProperties;
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.enums.BalanceUpdateMode;
+import com.kleadingsolutions.expenseshare.repository.BalanceStripeRepository;
+import com.kleadingsolutions.expenseshare.repository.DatabaseVendor;
+import com.kleadingsolutions.expenseshare.service.impl.AdvisoryLockBalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.service.impl.AtomicDeltaBalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.service.impl.OptimisticBalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.service.impl.PessimisticBalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.service.impl.StripedBalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the same expense stream through every {@link BalanceLockStrategy} with concurrent writers on
+ * one group, for a small and a large group, and reports wall time and optimistic conflicts.
+ */
+@Import({DatabaseVendor.class, PessimisticBalanceLockStrategy.class, OptimisticBalanceLockStrategy.class,
+        AdvisoryLockBalanceLockStrategy.class, AtomicDeltaBalanceLockStrategy.class,
+        StripedBalanceLockStrategy.class, BalanceStripes.class, BalanceStripeRepository.class,
+        BalanceLockStrategyBenchmarkTest.Config.class})
+class BalanceLockStrategyBenchmarkTest extends AbstractPostgresTest {
+
+    private static final int EXPENSES = 400;
+    private static final int WRITERS = 8;
+    private static final int[] GROUP_SIZES = {4, 40};
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        BalanceProperties balanceProperties() {
+            return new BalanceProperties(BalanceUpdateMode.EAGER, false, BalanceLockMode.ATOMIC_DELTA, List.of(),
+                    20, Duration.ofMillis(2));
+        }
+
+        @Bean
+        BalanceStripeProperties balanceStripeProperties() {
+            return new BalanceStripeProperties(true, 8, 4, 20, Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofMinutes(1));
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private List<BalanceLockStrategy> strategies;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private BalanceStripeRepository stripeRepository;
+
+    private TransactionTemplate tx;
+
+    @BeforeEach
+    void reset() {
+        tx = new TransactionTemplate(transactionManager);
+        jdbcTemplate.update("TRUNCATE balances, group_members, groups, users CASCADE");
+    }
+
+    @Test
+    void strategiesUnderConcurrentWritersOnOneGroup() throws Exception {
+        for (int members : GROUP_SIZES) {
+            List<UUID> users = insertUsers(members);
+            List<CentDeltas> expenses = expenseStream(users);
+            Map<UUID, BigDecimal> expected = null;
+
+            report("balance lock strategies, %d members, %d expenses, %d writers", members, EXPENSES, WRITERS);
+            for (BalanceLockStrategy strategy : strategies) {
+                UUID groupId = insertGroup(users.get(0));
+                double conflictsBefore = optimisticConflicts();
+                long ms = concurrently(expenses, d -> tx.executeWithoutResult(s -> strategy.applyDeltas(groupId, d, users.get(0))));
+                report("  %-13s %6d ms  %8.1f expenses/s  conflicts=%.0f", strategy.mode(), ms,
+                        EXPENSES * 1000.0 / Math.max(ms, 1), optimisticConflicts() - conflictsBefore);
+
+                Map<UUID, BigDecimal> balances = balancesWithStripes(groupId);
+                assertEquals(0, balances.values().stream().mapToLong(MoneyUtils::toCents).sum());
+                if (expected == null) expected = balances;
+                assertEquals(expected, balances, strategy.mode() + " lost or duplicated an update");
+            }
+        }
+    }
+
+    private List<CentDeltas> expenseStream(List<UUID> users) {
+        // each expense: a random payer covers a random share for two to five members
+        Random random = new Random(11);
+        List<CentDeltas> out = new ArrayList<>(EXPENSES);
+        for (int i = 0; i < EXPENSES; i++) {
+            Map<UUID, BigDecimal> deltas = new HashMap<>();
+            UUID payer = users.get(random.nextInt(users.size()));
+            long total = 0;
+            int participants = Math.min(users.size(), 2 + random.nextInt(4));
+            for (int p = 0; p < participants; p++) {
+                long share = 100 + random.nextInt(5_000);
+                total += share;
+                deltas.merge(users.get(random.nextInt(users.size())), BigDecimal.valueOf(-share, 2), BigDecimal::add);
+            }
+            deltas.merge(payer, BigDecimal.valueOf(total, 2), BigDecimal::add);
+            out.add(CentDeltas.of(deltas));
+        }
+        return out;
+    }
+
+    private double optimisticConflicts() {
+        return meterRegistry.get("expenseshare.balance.lock.conflicts").counter().count();
+    }
+
+    private Map<UUID, BigDecimal> balancesWithStripes(UUID groupId) {
+        // pending stripes included (STRIPED)
+        return new HashMap<>(stripeRepository.groupBalances(groupId));
+    }
+
+    private static long concurrently(List<CentDeltas> expenses, Consumer<CentDeltas> apply) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (CentDeltas d : expenses) futures.add(pool.submit(() -> apply.accept(d)));
+            for (Future<?> f : futures) f.get();
+            return millisSince(start);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
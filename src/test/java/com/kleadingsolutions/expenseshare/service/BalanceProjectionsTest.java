@@ -0,0 +1,197 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceProjectionProperties;
+import com.kleadingsolutions.expenseshare.datasource.ReplicaRoutingDataSource;
+import com.kleadingsolutions.expenseshare.model.Balance;
+import com.kleadingsolutions.expenseshare.model.LedgerEntry;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.LedgerEntryRepository;
+import com.kleadingsolutions.expenseshare.repository.LedgerHeadRepository;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class BalanceProjectionsTest {
+
+    private final LedgerEntryRepository ledgerEntryRepository = mock(LedgerEntryRepository.class);
+    private final LedgerHeadRepository ledgerHeadRepository = mock(LedgerHeadRepository.class);
+    private final BalanceRepository balanceRepository = mock(BalanceRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BalanceProjections projections = new BalanceProjections(
+            new BalanceProjectionProperties(true, DataSize.ofMegabytes(1), Duration.ofMinutes(1)),
+            ledgerEntryRepository, ledgerHeadRepository, balanceRepository, new GroupCommitClock(), meterRegistry);
+    private final UUID groupId = UUID.randomUUID();
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.unbindResourceIfPossible(ReplicaRoutingDataSource.ON_REPLICA);
+    }
+
+    @Test
+    void miss_buildsFromLedgerOnce_thenServesFromMemory() {
+        ledger(Map.of(alice, "10.00", bob, "-10.00"));
+
+        assertEquals(new BigDecimal("10.00"), projections.groupBalances(groupId).get(alice));
+        assertEquals(new BigDecimal("-10.00"), projections.groupBalances(groupId).get(bob));
+
+        verify(ledgerEntryRepository, times(1)).sumCentsByUserId(groupId);
+        assertEquals(1, meterRegistry.get("expenseshare.balance.projection.read").tag("result", "hit").timer().count());
+    }
+
+    @Test
+    void committedWrite_isAppliedInPlace() {
+        ledger(Map.of(alice, "10.00", bob, "-10.00"));
+        projections.groupBalances(groupId);
+
+        TransactionSynchronizationManager.initSynchronization();
+        projections.applyAfterCommit(groupId, List.of(entry(alice, "-4.00", null), entry(bob, "4.00", null)));
+        commit();
+
+        Map<UUID, BigDecimal> balances = projections.groupBalances(groupId);
+        assertEquals(new BigDecimal("6.00"), balances.get(alice));
+        assertEquals(new BigDecimal("-6.00"), balances.get(bob));
+        verify(ledgerEntryRepository, times(1)).sumCentsByUserId(groupId);
+    }
+
+    @Test
+    void buildDuringCommit_isServedButNotCached() {
+        ledger(Map.of(alice, "10.00", bob, "-10.00"));
+        TransactionSynchronizationManager.initSynchronization();
+        projections.applyAfterCommit(groupId, List.of(entry(alice, "1.00", null), entry(bob, "-1.00", null)));
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        syncs.forEach(s -> s.beforeCommit(false));
+
+        projections.groupBalances(groupId);
+
+        syncs.forEach(TransactionSynchronization::afterCommit);
+        syncs.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        projections.groupBalances(groupId);
+        verify(ledgerEntryRepository, times(2)).sumCentsByUserId(groupId);
+    }
+
+    @Test
+    void buildFromAReplica_isServedButNotCached_andKeepsTheCachedProjection() {
+        ledger(Map.of(alice, "10.00", bob, "-10.00"));
+        TransactionSynchronizationManager.bindResource(ReplicaRoutingDataSource.ON_REPLICA, "replica-0");
+
+        projections.groupBalances(groupId);
+        projections.groupBalances(groupId);
+        verify(ledgerEntryRepository, times(2)).sumCentsByUserId(groupId);
+
+        // a projection built on the primary is still served while the replica's head lags behind it
+        TransactionSynchronizationManager.unbindResource(ReplicaRoutingDataSource.ON_REPLICA);
+        when(ledgerHeadRepository.find(groupId)).thenReturn(Optional.of(new LedgerHeadRepository.Head(7, 7)));
+        projections.groupBalances(groupId);
+        TransactionSynchronizationManager.bindResource(ReplicaRoutingDataSource.ON_REPLICA, "replica-0");
+        when(ledgerHeadRepository.find(groupId)).thenReturn(Optional.of(new LedgerHeadRepository.Head(6, 6)));
+        projections.groupBalances(groupId);
+        verify(ledgerEntryRepository, times(3)).sumCentsByUserId(groupId);
+    }
+
+    @Test
+    void headAheadOfProjection_rebuildsFromLedger() {
+        ledger(Map.of(alice, "10.00", bob, "-10.00"));
+        projections.groupBalances(groupId);
+
+        when(ledgerHeadRepository.find(groupId)).thenReturn(Optional.of(new LedgerHeadRepository.Head(3, 0)));
+        projections.groupBalances(groupId);
+
+        verify(ledgerEntryRepository, times(2)).sumCentsByUserId(groupId);
+    }
+
+    @Test
+    void lazyWriteFollowingProjection_advancesItsSequence() {
+        ledger(Map.of(alice, "10.00", bob, "-10.00"));
+        projections.groupBalances(groupId);
+
+        TransactionSynchronizationManager.initSynchronization();
+        projections.applyAfterCommit(groupId, List.of(entry(alice, "1.00", 1L), entry(bob, "-1.00", 2L)));
+        commit();
+        when(ledgerHeadRepository.find(groupId)).thenReturn(Optional.of(new LedgerHeadRepository.Head(2, 0)));
+
+        assertEquals(new BigDecimal("11.00"), projections.groupBalances(groupId).get(alice));
+        verify(ledgerEntryRepository, times(1)).sumCentsByUserId(groupId);
+    }
+
+    @Test
+    void lazyWriteWithSequenceGap_dropsProjection() {
+        ledger(Map.of(alice, "10.00", bob, "-10.00"));
+        projections.groupBalances(groupId);
+
+        TransactionSynchronizationManager.initSynchronization();
+        projections.applyAfterCommit(groupId, List.of(entry(alice, "1.00", 5L), entry(bob, "-1.00", 6L)));
+        commit();
+
+        projections.groupBalances(groupId);
+        verify(ledgerEntryRepository, times(2)).sumCentsByUserId(groupId);
+    }
+
+    @Test
+    void projection_listsTheSameUsersAndBalancesAsTheBalanceTable() {
+        UUID carol = UUID.randomUUID();
+        // carol has a balance row but no ledger entries
+        ledger(Map.of(alice, "10.00", bob, "-10.00"));
+        List<Balance> rows = List.of(balance(alice, "10.00"), balance(bob, "-10.00"), balance(carol, "0.00"));
+        when(balanceRepository.findByGroupId(groupId)).thenReturn(rows);
+        when(balanceRepository.findUserIdsByGroupId(groupId)).thenReturn(rows.stream().map(Balance::getUserId).toList());
+
+        Map<UUID, BigDecimal> table = balanceRepository.findByGroupId(groupId).stream()
+                .collect(Collectors.toMap(Balance::getUserId, Balance::getBalance));
+
+        assertEquals(table, projections.groupBalances(groupId));
+        assertEquals(table, projections.groupBalances(groupId));
+    }
+
+    private Balance balance(UUID userId, String amount) {
+        return Balance.builder().groupId(groupId).userId(userId).balance(new BigDecimal(amount)).build();
+    }
+
+    private void ledger(Map<UUID, String> totals) {
+        when(ledgerHeadRepository.find(groupId)).thenReturn(Optional.empty());
+        List<LedgerEntryRepository.UserTotal> rows = totals.entrySet().stream()
+                .map(e -> (LedgerEntryRepository.UserTotal) new LedgerEntryRepository.UserTotal() {
+                    @Override
+                    public UUID getUserId() {
+                        return e.getKey();
+                    }
+
+                    @Override
+                    public long getCents() {
+                        return MoneyUtils.toCents(new BigDecimal(e.getValue()));
+                    }
+                }).toList();
+        when(ledgerEntryRepository.sumCentsByUserId(groupId)).thenReturn(rows);
+    }
+
+    private LedgerEntry entry(UUID userId, String amount, Long seq) {
+        return LedgerEntry.builder().groupId(groupId).userId(userId).amount(new BigDecimal(amount)).seq(seq).build();
+    }
+
+    private static void commit() {
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        syncs.forEach(s -> s.beforeCommit(false));
+        syncs.forEach(TransactionSynchronization::afterCommit);
+        syncs.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
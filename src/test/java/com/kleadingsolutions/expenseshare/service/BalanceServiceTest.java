@@ -1,18 +1,25 @@
 package com.kleadingsolutions.expenseshare.service;
 
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.enums.BalanceUpdateMode;
 import com.kleadingsolutions.expenseshare.model.Balance;
 import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
 import com.kleadingsolutions.expenseshare.repository.LedgerEntryRepository;
+import com.kleadingsolutions.expenseshare.service.impl.AtomicDeltaBalanceLockStrategy;
 import com.kleadingsolutions.expenseshare.service.impl.BalanceServiceImpl;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -29,7 +36,18 @@ class BalanceServiceTest {
     @Mock
     BalanceRepository balanceRepository;
 
-    @InjectMocks
+    @Mock
+    LedgerFolder ledgerFolder;
+
+    @Mock
+    BalanceStripes balanceStripes;
+
+    @Mock
+    BalanceSnapshots balanceSnapshots;
+
+    @Mock
+    GroupCommitClock commitClock;
+
     BalanceServiceImpl balanceService;
 
     private UUID groupId;
@@ -39,6 +57,12 @@ class BalanceServiceTest {
     void setUp() {
         groupId = UUID.randomUUID();
         userId = UUID.randomUUID();
+        BalanceLockStrategies strategies = new BalanceLockStrategies(
+                List.of(new AtomicDeltaBalanceLockStrategy(balanceRepository)),
+                new BalanceProperties(BalanceUpdateMode.EAGER, false, BalanceLockMode.ATOMIC_DELTA, List.of(), 5, Duration.ofMillis(5)),
+                mock(GroupMembershipSnapshot.class), balanceStripes);
+        balanceService = new BalanceServiceImpl(ledgerEntryRepository, balanceRepository, ledgerFolder, strategies, balanceStripes,
+                mock(UserNetPositions.class), balanceSnapshots, commitClock);
     }
 
     @Test
@@ -50,7 +74,17 @@ class BalanceServiceTest {
         assertNotNull(result);
         assertEquals(new BigDecimal("0.00"), result);
         verify(ledgerEntryRepository).sumAmountByGroupIdAndUserId(groupId, userId);
-        verifyNoInteractions(balanceRepository);
+        verifyNoInteractions(balanceRepository, commitClock);
+    }
+
+    @Test
+    void recomputeBalance_readsSnapshotPlusTail_whenGroupHasSnapshot() {
+        when(balanceSnapshots.ledgerSum(groupId, userId)).thenReturn(Optional.of(new BigDecimal("7.5")));
+
+        BigDecimal result = balanceService.recomputeBalance(groupId, userId, false);
+
+        assertEquals(new BigDecimal("7.50"), result);
+        verify(ledgerEntryRepository, never()).sumAmountByGroupIdAndUserId(any(), any());
     }
 
     @Test
@@ -70,18 +104,40 @@ class BalanceServiceTest {
         assertEquals(new BigDecimal("12.34"), result);
         verify(balanceRepository, atLeastOnce()).save(Mockito.any(Balance.class));
         verify(ledgerEntryRepository).sumAmountByGroupIdAndUserId(groupId, userId);
+        // settle plans and projections built from the old row must not outlive the commit
+        verify(commitClock).tick(groupId);
     }
 
     @Test
-    void recomputeAndReconcileGroup_updatesExistingBalances() {
-        Balance b1 = Balance.builder().groupId(groupId).userId(userId).balance(new BigDecimal("1.00")).build();
-        when(balanceRepository.findByGroupId(groupId)).thenReturn(java.util.List.of(b1));
-        when(ledgerEntryRepository.sumAmountByGroupIdAndUserId(groupId, userId)).thenReturn(new BigDecimal("5.00"));
-
-        balanceService.recomputeAndReconcileGroup(groupId);
+    void recomputeAndReconcileGroup_correctsDriftedRowsInOneUpsert_andReportsDrift() {
+        UUID other = UUID.randomUUID();
+        CentDeltas drift = CentDeltas.of(Map.of(userId, new BigDecimal("4.00"), other, new BigDecimal("-1.50")));
+        when(balanceRepository.findDrift(groupId)).thenReturn(drift);
+
+        BalanceService.GroupReconciliation result = balanceService.recomputeAndReconcileGroup(groupId);
+
+        assertEquals(2, result.rowsCorrected());
+        assertEquals(new BigDecimal("5.50"), result.totalDrift());
+        verify(balanceRepository).applyFoldedDeltas(groupId, drift, 0L);
+        verify(balanceRepository, never()).save(Mockito.any(Balance.class));
+        verifyNoInteractions(ledgerEntryRepository);
+        verify(commitClock).tick(groupId);
+    }
 
-        assertEquals(new BigDecimal("5.00"), b1.getBalance());
-        verify(balanceRepository).save(b1);
-        verify(ledgerEntryRepository).sumAmountByGroupIdAndUserId(groupId, userId);
+    @Test
+    void recomputeAndReconcileGroup_locksGroupAndFoldsLedgerTailFirst_andRecordsFoldedSequence() {
+        CentDeltas none = CentDeltas.of(Map.of());
+        when(ledgerFolder.lockAndFold(groupId)).thenReturn(7L);
+        when(balanceRepository.findDrift(groupId)).thenReturn(none);
+
+        BalanceService.GroupReconciliation result = balanceService.recomputeAndReconcileGroup(groupId);
+
+        var order = inOrder(ledgerFolder, balanceRepository);
+        order.verify(balanceRepository).lockGroup(groupId);
+        order.verify(ledgerFolder).lockAndFold(groupId);
+        order.verify(balanceRepository).findDrift(groupId);
+        order.verify(balanceRepository).applyFoldedDeltas(groupId, none, 7L);
+        assertEquals(0, result.rowsCorrected());
+        assertEquals(new BigDecimal("0.00"), result.totalDrift());
     }
-}
\ No newline at end of file
+}
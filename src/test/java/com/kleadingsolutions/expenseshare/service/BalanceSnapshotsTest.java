@@ -0,0 +1,122 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceSnapshotProperties;
+import com.kleadingsolutions.expenseshare.repository.BalanceSnapshotRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BalanceSnapshotsTest {
+
+    private static final OffsetDateTime SEPT = OffsetDateTime.parse("2026-09-01T00:00:00Z");
+    private static final OffsetDateTime OCT = OffsetDateTime.parse("2026-10-01T00:00:00Z");
+
+    private final BalanceSnapshotRepository repository = mock(BalanceSnapshotRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BalanceSnapshots snapshots = new BalanceSnapshots(
+            new BalanceSnapshotProperties(true, Duration.ofDays(1), Duration.ofMinutes(10), Duration.ofHours(1), 2),
+            repository, mock(PlatformTransactionManager.class), meterRegistry);
+    private final UUID groupId = UUID.randomUUID();
+    private final UUID alice = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private final UUID bob = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    @Test
+    void cut_isTheLastIntervalBoundaryPastTheSettleDelay() {
+        assertEquals(OCT, snapshots.cutAt(OCT.plusMinutes(10).toInstant().toEpochMilli()));
+        assertEquals(OCT.minusDays(1), snapshots.cutAt(OCT.plusMinutes(9).toInstant().toEpochMilli()));
+    }
+
+    @Test
+    void asOf_isNearestSnapshotPlusLedgerRange() {
+        when(repository.latestCut(groupId, OCT.plusHours(5))).thenReturn(Optional.of(OCT));
+        when(repository.rows(groupId, OCT)).thenReturn(mutable(Map.of(alice, 1000L, bob, -1000L)));
+        when(repository.ledgerRange(groupId, OCT, OCT.plusHours(5))).thenReturn(Map.of(alice, -1000L, bob, 1000L));
+
+        Map<UUID, BigDecimal> balances = snapshots.balancesAsOf(groupId, OCT.plusHours(5));
+
+        // both settled to zero: omitted
+        assertTrue(balances.isEmpty());
+    }
+
+    @Test
+    void asOf_atACut_readsTheSnapshotOnly() {
+        when(repository.latestCut(groupId, OCT)).thenReturn(Optional.of(OCT));
+        when(repository.rows(groupId, OCT)).thenReturn(mutable(Map.of(alice, 250L, bob, -250L)));
+
+        Map<UUID, BigDecimal> balances = snapshots.balancesAsOf(groupId, OCT);
+
+        assertEquals(Map.of(alice, new BigDecimal("2.50"), bob, new BigDecimal("-2.50")), balances);
+        verify(repository, never()).ledgerRange(any(), any(), any());
+    }
+
+    @Test
+    void snapshot_isPreviousSnapshotPlusRangeSinceIt() {
+        when(repository.latestCut(groupId, OCT)).thenReturn(Optional.of(SEPT));
+        when(repository.rows(groupId, SEPT)).thenReturn(mutable(Map.of(alice, 500L, bob, -500L)));
+        when(repository.ledgerRange(groupId, SEPT, OCT)).thenReturn(Map.of(alice, 300L, bob, -300L));
+        when(repository.insert(eq(groupId), eq(OCT), any())).thenReturn(true);
+
+        assertTrue(snapshots.snapshot(groupId, OCT));
+
+        verify(repository).insert(groupId, OCT, Map.of(alice, 800L, bob, -800L));
+        assertEquals(1.0, meterRegistry.get("expenseshare.balance.snapshot.taken").counter().count());
+    }
+
+    @Test
+    void firstSnapshot_sumsTheLedgerFromTheStart() {
+        when(repository.latestCut(groupId, OCT)).thenReturn(Optional.empty());
+        when(repository.ledgerRange(groupId, null, OCT)).thenReturn(Map.of(alice, 100L, bob, -100L));
+        when(repository.insert(eq(groupId), eq(OCT), any())).thenReturn(true);
+
+        snapshots.snapshot(groupId, OCT);
+
+        verify(repository).insert(groupId, OCT, Map.of(alice, 100L, bob, -100L));
+    }
+
+    @Test
+    void ledgerSum_isSnapshotRowPlusUserTail_orEmptyWithoutSnapshot() {
+        UUID other = UUID.randomUUID();
+        when(repository.latestCut(eq(groupId), any())).thenReturn(Optional.of(OCT));
+        when(repository.userCents(groupId, OCT, alice)).thenReturn(1234L);
+        when(repository.userLedgerSince(groupId, alice, OCT)).thenReturn(new BigDecimal("-0.34"));
+        when(repository.latestCut(eq(other), any())).thenReturn(Optional.empty());
+
+        assertEquals(Optional.of(new BigDecimal("12.00")), snapshots.ledgerSum(groupId, alice));
+        assertEquals(Optional.empty(), snapshots.ledgerSum(other, alice));
+    }
+
+    @Test
+    void snapshotDue_pagesThroughDueGroups() {
+        UUID g1 = new UUID(0L, 1L);
+        UUID g2 = new UUID(0L, 2L);
+        UUID g3 = new UUID(0L, 3L);
+        when(repository.findGroupsDue(any(), eq(new UUID(0L, 0L)), eq(2))).thenReturn(List.of(g1, g2));
+        when(repository.findGroupsDue(any(), eq(g2), eq(2))).thenReturn(List.of(g3));
+        when(repository.latestCut(any(), any())).thenReturn(Optional.empty());
+        when(repository.ledgerRange(any(), any(), any())).thenReturn(Map.of());
+        when(repository.insert(any(), any(), any())).thenReturn(true);
+        when(repository.insert(eq(g2), any(), any())).thenReturn(false);
+
+        assertEquals(2, snapshots.snapshotDue());
+        verify(repository, times(3)).insert(any(), any(), any());
+    }
+
+    private static Map<UUID, Long> mutable(Map<UUID, Long> rows) {
+        return new HashMap<>(rows);
+    }
+}
@@ -0,0 +1,97 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceStripeProperties;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.BalanceStripeRepository;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BalanceStripesTest {
+
+    private final BalanceStripeRepository stripeRepository = mock(BalanceStripeRepository.class);
+    private final BalanceRepository balanceRepository = mock(BalanceRepository.class);
+    private final UUID groupId = UUID.randomUUID();
+
+    @Test
+    void overlappingWriters_flagGroupAfterEnoughContendedSamples() {
+        BalanceStripes stripes = stripes(true);
+
+        stripes.beginWrite(groupId);
+        stripes.beginWrite(groupId);     // 2 in flight: first contended sample
+        stripes.endWrite(groupId);
+        assertFalse(stripes.isStriped(groupId));
+        stripes.beginWrite(groupId);     // 2 in flight again: second sample flags the group
+
+        verify(stripeRepository).flag(groupId);
+        assertTrue(stripes.isStriped(groupId));
+    }
+
+    @Test
+    void sequentialWriters_neverFlag() {
+        BalanceStripes stripes = stripes(true);
+
+        for (int i = 0; i < 10; i++) {
+            stripes.beginWrite(groupId);
+            stripes.endWrite(groupId);
+        }
+
+        verify(stripeRepository, never()).flag(any());
+    }
+
+    @Test
+    void disabled_neverStripesOrTouchesTheDatabase() {
+        BalanceStripes stripes = stripes(false);
+
+        for (int i = 0; i < 5; i++) stripes.beginWrite(groupId);
+
+        assertFalse(stripes.isStriped(groupId));
+        verifyNoInteractions(stripeRepository);
+    }
+
+    @Test
+    void foldInto_appliesDrainedSumsToBalances() {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        when(stripeRepository.drain(groupId)).thenReturn(Map.of(a, new BigDecimal("-4.50"), b, new BigDecimal("4.50")));
+        when(balanceRepository.applyDeltas(eq(groupId), any(CentDeltas.class), eq(null))).thenReturn(2);
+
+        assertEquals(2, stripes(true).foldInto(groupId));
+
+        verify(balanceRepository).applyDeltas(eq(groupId),
+                argThat((CentDeltas d) -> d.toMap().equals(Map.of(a, new BigDecimal("-4.50"), b, new BigDecimal("4.50")))), eq(null));
+    }
+
+    @Test
+    void compactQuietGroups_foldsAndUnflags() {
+        when(stripeRepository.findQuietGroups(any(OffsetDateTime.class))).thenReturn(new LinkedHashSet<>(Set.of(groupId)));
+        when(stripeRepository.drain(groupId)).thenReturn(Map.of());
+
+        stripes(true).compactQuietGroups();
+
+        verify(stripeRepository).drain(groupId);
+        verify(stripeRepository).unflag(groupId);
+    }
+
+    private BalanceStripes stripes(boolean enabled) {
+        BalanceStripeProperties properties = new BalanceStripeProperties(enabled, 8, 2, 2,
+                Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofMinutes(1));
+        return new BalanceStripes(properties, stripeRepository, balanceRepository,
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry());
+    }
+}
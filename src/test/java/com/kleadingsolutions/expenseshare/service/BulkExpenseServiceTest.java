@@ -0,0 +1,154 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kleadingsolutions.expenseshare.config.BulkImportProperties;
+import com.kleadingsolutions.expenseshare.config.ExpenseSplitProperties;
+import com.kleadingsolutions.expenseshare.config.IdempotencyProperties;
+import com.kleadingsolutions.expenseshare.dto.BulkImportResultDto;
+import com.kleadingsolutions.expenseshare.enums.BulkFormat;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+import com.kleadingsolutions.expenseshare.exception.ConflictException;
+import com.kleadingsolutions.expenseshare.repository.BulkImportChunkStore;
+import com.kleadingsolutions.expenseshare.repository.ExpenseBulkWriter;
+import com.kleadingsolutions.expenseshare.repository.PairDebtRepository;
+import com.kleadingsolutions.expenseshare.service.impl.BulkExpenseServiceImpl;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkExpenseServiceTest {
+
+    @Mock
+    private GroupMembershipSnapshot membershipSnapshot;
+    @Mock
+    private BalanceLockStrategies balanceLockStrategies;
+    @Mock
+    private ExpenseBulkWriter expenseBulkWriter;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private BulkImportChunkStore chunkStore;
+
+    private BulkExpenseServiceImpl service;
+
+    private UUID groupId;
+    private UUID alice;
+    private UUID bob;
+
+    @BeforeEach
+    void setUp() {
+        service = new BulkExpenseServiceImpl(membershipSnapshot, balanceLockStrategies, expenseBulkWriter,
+                transactionManager, new ObjectMapper(), new BulkImportProperties(2), mock(BalanceProjections.class),
+                mock(UserNetPositions.class), mock(PairDebtRepository.class), new ExpenseSplitProperties(2),
+                chunkStore, new IdempotencyProperties(true, Duration.ofHours(24), Duration.ofHours(1)));
+        groupId = UUID.randomUUID();
+        alice = UUID.randomUUID();
+        bob = UUID.randomUUID();
+        lenient().when(membershipSnapshot.activeMembers(groupId)).thenReturn(Set.of(alice, bob));
+    }
+
+    @Test
+    void importCsv_chunksRows_andAppliesOneAggregatedDeltaPerUserPerChunk() {
+        String csv = "payerId,description,amount,currency,splits\n"
+                + alice + ",\"Dinner, with tip\",30.00,AED," + alice + ":10.00;" + bob + ":20.00\n"
+                + alice + ",Taxi,10.00,AED," + bob + ":10.00\n"
+                + bob + ",Coffee,4.00,AED," + alice + ":2.00:EQUAL;" + bob + ":2.00:EQUAL\n";
+
+        BulkImportResultDto result = service.importExpenses(groupId, stream(csv), BulkFormat.CSV, alice, null);
+
+        assertEquals(2, result.getChunks());
+        assertEquals(4, result.getCommittedThroughLine());
+        assertEquals(3, result.getExpenses());
+        assertEquals(5, result.getSplits());
+        verify(membershipSnapshot, times(2)).activeMembers(groupId);
+        verify(expenseBulkWriter, times(2)).write(anyList(), anyList(), anyList());
+        // pack threshold 2: the two-way splits go into their expense rows, only Taxi's split is a row
+        verify(expenseBulkWriter).write(argThat(e -> e.get(0).getPackedSplits() != null && e.get(1).getPackedSplits() == null),
+                argThat(splits -> splits.size() == 1), anyList());
+        verify(expenseBulkWriter).write(argThat(e -> e.get(0).getPackedSplits() != null), argThat(List::isEmpty), anyList());
+        // chunk 1: alice +20 +10, bob -20 -10 ; chunk 2: bob +2, alice -2
+        verify(balanceLockStrategies).applyDeltas(eq(groupId), cents(Map.of(alice, new BigDecimal("30.00"), bob, new BigDecimal("-30.00"))), eq(alice));
+        verify(balanceLockStrategies).applyDeltas(eq(groupId), cents(Map.of(alice, new BigDecimal("-2.00"), bob, new BigDecimal("2.00"))), eq(alice));
+    }
+
+    @Test
+    void importNdjson_rejectsChunkWithNonMemberSplit() {
+        UUID stranger = UUID.randomUUID();
+        String ndjson = "{\"payerId\":\"" + alice + "\",\"description\":\"x\",\"amount\":5.00,\"currency\":\"AED\","
+                + "\"splits\":[{\"userId\":\"" + stranger + "\",\"amount\":5.00,\"shareType\":\"CUSTOM\"}]}\n";
+
+        BadRequestException ex = assertThrows(BadRequestException.class,
+                () -> service.importExpenses(groupId, stream(ndjson), BulkFormat.NDJSON, alice, null));
+
+        assertTrue(ex.getMessage().startsWith("line 1:"));
+        verifyNoInteractions(expenseBulkWriter, balanceLockStrategies);
+    }
+
+    @Test
+    void retriedKeyedImport_skipsChunksAlreadyCommitted_andResumesWithTheRest() {
+        String csv = alice + ",Taxi,10.00,AED," + bob + ":10.00\n"
+                + alice + ",Lunch,8.00,AED," + bob + ":8.00\n"
+                + bob + ",Coffee,4.00,AED," + alice + ":4.00\n";
+        // the first attempt committed chunk 1 (lines 1-2) before failing
+        when(chunkStore.claim(eq(groupId), eq("import-1"), eq(1), anyString(), eq(2), eq(alice), any(), any())).thenReturn(false);
+        when(chunkStore.find(groupId, "import-1", 1)).thenAnswer(inv -> Optional.of(new BulkImportChunkStore.StoredChunk(
+                firstChunkHash(), alice, 2, 2, 2, 4)));
+        when(chunkStore.claim(eq(groupId), eq("import-1"), eq(2), anyString(), eq(3), eq(alice), any(), any())).thenReturn(true);
+
+        BulkImportResultDto result = service.importExpenses(groupId, stream(csv), BulkFormat.CSV, alice, "import-1");
+
+        assertEquals(1, result.getSkippedChunks());
+        assertEquals(1, result.getChunks());
+        assertEquals(3, result.getExpenses());
+        assertEquals(3, result.getCommittedThroughLine());
+        verify(expenseBulkWriter, times(1)).write(argThat(e -> e.size() == 1), anyList(), anyList());
+        verify(balanceLockStrategies).applyDeltas(eq(groupId), cents(Map.of(alice, new BigDecimal("-4.00"), bob, new BigDecimal("4.00"))), eq(alice));
+        verify(chunkStore).complete(groupId, "import-1", 2, 1, 1, 2);
+    }
+
+    @Test
+    void keyReusedForDifferentLines_isAConflict() {
+        String csv = alice + ",Taxi,10.00,AED," + bob + ":10.00\n";
+        when(chunkStore.claim(eq(groupId), eq("import-1"), eq(1), anyString(), eq(1), eq(alice), any(), any())).thenReturn(false);
+        when(chunkStore.find(groupId, "import-1", 1)).thenReturn(Optional.of(new BulkImportChunkStore.StoredChunk(
+                "another-body", alice, 1, 1, 1, 2)));
+
+        assertThrows(ConflictException.class,
+                () -> service.importExpenses(groupId, stream(csv), BulkFormat.CSV, alice, "import-1"));
+        verifyNoInteractions(expenseBulkWriter, balanceLockStrategies);
+    }
+
+    private String firstChunkHash() throws Exception {
+        String lines = alice + ",Taxi,10.00,AED," + bob + ":10.00\n" + alice + ",Lunch,8.00,AED," + bob + ":8.00\n";
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(lines.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static CentDeltas cents(Map<UUID, BigDecimal> expected) {
+        return argThat(d -> d.toMap().equals(expected));
+    }
+
+    private static ByteArrayInputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,11 +1,26 @@
 package com.kleadingsolutions.expenseshare.service;
 
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.config.ExpenseSplitProperties;
+import com.kleadingsolutions.expenseshare.config.MembershipCacheProperties;
 import com.kleadingsolutions.expenseshare.dto.CreateExpenseRequest;
 import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.enums.BalanceUpdateMode;
+import com.kleadingsolutions.expenseshare.enums.ShareType;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+import com.kleadingsolutions.expenseshare.exception.ForbiddenException;
 import com.kleadingsolutions.expenseshare.model.Expense;
+import com.kleadingsolutions.expenseshare.model.ExpenseSplit;
 import com.kleadingsolutions.expenseshare.model.GroupMember;
+import com.kleadingsolutions.expenseshare.model.LedgerEntry;
 import com.kleadingsolutions.expenseshare.repository.*;
+import com.kleadingsolutions.expenseshare.service.impl.AtomicDeltaBalanceLockStrategy;
 import com.kleadingsolutions.expenseshare.service.impl.ExpenseServiceImpl;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.PackedSplits;
+import com.kleadingsolutions.expenseshare.util.PairDebtDeltas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,10 +28,14 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 /**
@@ -32,6 +51,8 @@ public class ExpenseServiceTest {
     private BalanceRepository balanceRepository;
     private ExpenseServiceImpl expenseService;
     private ExpenseSplitRepository expenseSplitRepository;
+    private LedgerFolder ledgerFolder;
+    private PairDebtRepository pairDebtRepository;
 
     @BeforeEach
     public void setUp() {
@@ -40,8 +61,16 @@ public class ExpenseServiceTest {
         ledgerEntryRepository = mock(LedgerEntryRepository.class);
         balanceRepository = mock(BalanceRepository.class);
         expenseSplitRepository = mock(ExpenseSplitRepository.class);
+        ledgerFolder = mock(LedgerFolder.class);
+        pairDebtRepository = mock(PairDebtRepository.class);
 
-        expenseService = new ExpenseServiceImpl(expenseRepository, groupMemberRepository, ledgerEntryRepository, balanceRepository, expenseSplitRepository);
+        GroupMembershipSnapshot snapshot = new GroupMembershipSnapshot(groupMemberRepository, mock(GroupRepository.class),
+                new MembershipCacheProperties(100, Duration.ofMinutes(1)), new SimpleMeterRegistry());
+        BalanceLockStrategies strategies = new BalanceLockStrategies(List.of(new AtomicDeltaBalanceLockStrategy(balanceRepository)),
+                new BalanceProperties(BalanceUpdateMode.EAGER, false, BalanceLockMode.ATOMIC_DELTA, List.of(), 5, Duration.ofMillis(5)), snapshot, mock(BalanceStripes.class));
+        expenseService = new ExpenseServiceImpl(expenseRepository, snapshot,
+                ledgerEntryRepository, strategies, expenseSplitRepository, ledgerFolder, mock(BalanceProjections.class),
+                mock(UserNetPositions.class), pairDebtRepository, new ExpenseSplitProperties(3));
     }
 
     @Test
@@ -58,6 +87,7 @@ public class ExpenseServiceTest {
 
         GroupMember gmPayer = mock(GroupMember.class);
         when(gmPayer.getUserId()).thenReturn(payer);
+        when(gmPayer.getStatus()).thenReturn("ACTIVE");
 
         GroupMember gmU2 = mock(GroupMember.class);
         when(gmU2.getUserId()).thenReturn(u2);
@@ -94,7 +124,143 @@ public class ExpenseServiceTest {
         assertThat(saved).isNotNull();
         assertThat(cap.getValue().getAmount()).isEqualTo(new BigDecimal("100.00").setScale(2));
         verify(ledgerEntryRepository, times(1)).saveAll(anyList());
-        // BalanceRepository.save() should be invoked for each participant (2)
-        verify(balanceRepository, atLeast(2)).save(any());
+        // Balances for both participants are applied in a single upsert: payer +75.00, u2 -75.00
+        ArgumentCaptor<CentDeltas> deltas = ArgumentCaptor.forClass(CentDeltas.class);
+        verify(balanceRepository, times(1)).applyDeltas(eq(groupId), deltas.capture(), eq(actor));
+        assertThat(deltas.getValue().toMap()).isEqualTo(Map.of(
+                payer, new BigDecimal("75.00"),
+                u2, new BigDecimal("-75.00")));
+        verify(balanceRepository, never()).save(any());
+        // u2 owes the payer their share
+        ArgumentCaptor<PairDebtDeltas> pairs = ArgumentCaptor.forClass(PairDebtDeltas.class);
+        verify(pairDebtRepository).apply(eq(groupId), pairs.capture());
+        assertThat(pairs.getValue().size()).isEqualTo(1);
+        PairDebtDeltas.Entry pair = pairs.getValue().entries().get(0);
+        assertThat(pair.userLo().equals(u2) ? pair.cents() : -pair.cents()).isEqualTo(7500L);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void createExpense_lazyMode_sequencesLedgerEntries_andSkipsBalances() {
+        UUID groupId = UUID.randomUUID();
+        UUID payer = UUID.randomUUID();
+        UUID u2 = UUID.randomUUID();
+
+        GroupMember gmPayer = mock(GroupMember.class);
+        when(gmPayer.getUserId()).thenReturn(payer);
+        when(gmPayer.getStatus()).thenReturn("ACTIVE");
+        GroupMember gmU2 = mock(GroupMember.class);
+        when(gmU2.getUserId()).thenReturn(u2);
+        when(gmU2.getStatus()).thenReturn("ACTIVE");
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(gmPayer, gmU2));
+        when(expenseRepository.save(any(Expense.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(ledgerFolder.isLazy()).thenReturn(true);
+
+        CreateExpenseRequest req = CreateExpenseRequest.builder()
+                .groupId(groupId)
+                .payerId(payer)
+                .amount(new BigDecimal("10.00"))
+                .currency("AED")
+                .splits(List.of(ExpenseSplitDto.builder().userId(u2).amount(new BigDecimal("10.00")).build()))
+                .build();
+
+        expenseService.createExpense(req, payer);
+
+        ArgumentCaptor<List<LedgerEntry>> entries = ArgumentCaptor.forClass(List.class);
+        verify(ledgerFolder).assignSequence(eq(groupId), entries.capture());
+        assertThat(entries.getValue()).hasSize(2);
+        verify(ledgerEntryRepository).saveAll(entries.getValue());
+        verifyNoInteractions(balanceRepository);
+    }
+
+    @Test
+    public void createExpense_unknownCurrency_isRejectedBeforeAnyWrite() {
+        UUID payer = UUID.randomUUID();
+        CreateExpenseRequest req = CreateExpenseRequest.builder()
+                .groupId(UUID.randomUUID())
+                .payerId(payer)
+                .amount(new BigDecimal("10.00"))
+                .currency("XYZ")
+                .splits(List.of(ExpenseSplitDto.builder().userId(payer).amount(new BigDecimal("10.00")).build()))
+                .build();
+
+        assertThatThrownBy(() -> expenseService.createExpense(req, payer))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("XYZ");
+        verifyNoInteractions(expenseRepository, ledgerEntryRepository, balanceRepository);
+    }
+
+    @Test
+    public void createExpense_atThePackThreshold_storesSplitsOnTheExpenseRow() {
+        UUID groupId = UUID.randomUUID();
+        UUID payer = UUID.randomUUID();
+        UUID u2 = UUID.randomUUID();
+        UUID u3 = UUID.randomUUID();
+        List<GroupMember> members = List.of(member(payer), member(u2), member(u3));
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(members);
+        when(expenseRepository.save(any(Expense.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        CreateExpenseRequest req = CreateExpenseRequest.builder()
+                .groupId(groupId)
+                .payerId(payer)
+                .amount(new BigDecimal("30.00"))
+                .currency("AED")
+                .splits(List.of(
+                        ExpenseSplitDto.builder().userId(payer).amount(new BigDecimal("10.00")).shareType(ShareType.EQUAL).build(),
+                        ExpenseSplitDto.builder().userId(u2).amount(new BigDecimal("10.00")).shareType(ShareType.EQUAL).build(),
+                        ExpenseSplitDto.builder().userId(u3).amount(new BigDecimal("10.00")).build()))
+                .build();
+
+        Expense saved = expenseService.createExpense(req, payer);
+
+        verifyNoInteractions(expenseSplitRepository);
+        List<ExpenseSplitDto> packed = PackedSplits.decode(saved.getPackedSplits());
+        assertThat(packed).extracting(ExpenseSplitDto::getUserId).containsExactly(payer, u2, u3);
+        assertThat(packed).extracting(ExpenseSplitDto::getShareType).containsExactly(ShareType.EQUAL, ShareType.EQUAL, ShareType.CUSTOM);
+        // ledger and balances are written as for any other expense
+        verify(ledgerEntryRepository).saveAll(anyList());
+        verify(balanceRepository).applyDeltas(eq(groupId), any(CentDeltas.class), eq(payer));
+    }
+
+    @Test
+    public void listSplits_decodesPackedSplits_orReadsSplitRows() {
+        UUID groupId = UUID.randomUUID();
+        UUID actor = UUID.randomUUID();
+        List<GroupMember> members = List.of(member(actor));
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(members);
+        ExpenseSplitDto split = ExpenseSplitDto.builder().userId(actor).amount(new BigDecimal("4.20")).shareType(ShareType.PERCENT).build();
+        Expense packed = Expense.builder().id(UUID.randomUUID()).groupId(groupId).packedSplits(PackedSplits.encode(List.of(split))).build();
+        Expense rows = Expense.builder().id(UUID.randomUUID()).groupId(groupId).build();
+        when(expenseRepository.findById(packed.getId())).thenReturn(Optional.of(packed));
+        when(expenseRepository.findById(rows.getId())).thenReturn(Optional.of(rows));
+        when(expenseSplitRepository.findByExpenseId(rows.getId())).thenReturn(List.of(ExpenseSplit.builder()
+                .expenseId(rows.getId()).userId(actor).amount(new BigDecimal("4.20")).shareType("PERCENT").build()));
+
+        for (Expense e : List.of(packed, rows)) {
+            List<ExpenseSplitDto> out = expenseService.listSplits(e.getId(), actor);
+            assertThat(out).hasSize(1);
+            assertThat(out.get(0).getUserId()).isEqualTo(actor);
+            assertThat(out.get(0).getAmount()).isEqualTo(new BigDecimal("4.20"));
+            assertThat(out.get(0).getShareType()).isEqualTo(ShareType.PERCENT);
+        }
+        verify(expenseSplitRepository, times(1)).findByExpenseId(any());
+    }
+
+    @Test
+    public void listSplits_requiresGroupMembership() {
+        UUID groupId = UUID.randomUUID();
+        Expense e = Expense.builder().id(UUID.randomUUID()).groupId(groupId).build();
+        when(expenseRepository.findById(e.getId())).thenReturn(Optional.of(e));
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of());
+
+        assertThatThrownBy(() -> expenseService.listSplits(e.getId(), UUID.randomUUID()))
+                .isInstanceOf(ForbiddenException.class);
+        verifyNoInteractions(expenseSplitRepository);
+    }
+
+    private static GroupMember member(UUID userId) {
+        GroupMember gm = mock(GroupMember.class);
+        when(gm.getUserId()).thenReturn(userId);
+        when(gm.getStatus()).thenReturn("ACTIVE");
+        return gm;
+    }
+}
@@ -0,0 +1,101 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.MembershipCacheProperties;
+import com.kleadingsolutions.expenseshare.model.GroupMember;
+import com.kleadingsolutions.expenseshare.repository.GroupMemberRepository;
+import com.kleadingsolutions.expenseshare.repository.GroupRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class GroupMembershipSnapshotTest {
+
+    private final GroupMemberRepository groupMemberRepository = mock(GroupMemberRepository.class);
+    private final GroupRepository groupRepository = mock(GroupRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private GroupMembershipSnapshot snapshot;
+    private UUID groupId;
+    private UUID active;
+    private UUID invited;
+
+    @BeforeEach
+    void setUp() {
+        snapshot = new GroupMembershipSnapshot(groupMemberRepository, groupRepository,
+                new MembershipCacheProperties(100, Duration.ofMinutes(1)), meterRegistry);
+        groupId = UUID.randomUUID();
+        active = UUID.randomUUID();
+        invited = UUID.randomUUID();
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(
+                GroupMember.builder().groupId(groupId).userId(active).status("ACTIVE").build(),
+                GroupMember.builder().groupId(groupId).userId(invited).status("INVITED").build()));
+        when(groupRepository.findMembershipVersion(groupId)).thenReturn(Optional.of(3L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void activeMembers_loadsOnce_andOnlyContainsActiveMembers() {
+        assertEquals(Set.of(active), snapshot.activeMembers(groupId));
+        assertTrue(snapshot.isActiveMember(groupId, active));
+        assertFalse(snapshot.isActiveMember(groupId, invited));
+        assertFalse(snapshot.isActiveMember(groupId, null));
+
+        verify(groupMemberRepository, times(1)).findByGroupId(groupId);
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "group-membership").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "group-membership").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void invalidateAfterCommit_keepsSnapshotUntilTheTransactionCommits() {
+        snapshot.activeMembers(groupId);
+        TransactionSynchronizationManager.initSynchronization();
+
+        snapshot.invalidateAfterCommit(groupId);
+        snapshot.activeMembers(groupId);
+        verify(groupMemberRepository, times(1)).findByGroupId(groupId);
+        verify(groupRepository).bumpMembershipVersion(groupId);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        snapshot.activeMembers(groupId);
+        verify(groupMemberRepository, times(2)).findByGroupId(groupId);
+    }
+
+    @Test
+    void invalidateAfterCommit_withoutTransaction_invalidatesImmediately() {
+        snapshot.activeMembers(groupId);
+        snapshot.invalidateAfterCommit(groupId);
+        snapshot.activeMembers(groupId);
+        verify(groupMemberRepository, times(2)).findByGroupId(groupId);
+    }
+
+    @Test
+    void membershipChangedThroughAnotherNode_isSeenAtTheNextCheck() {
+        assertTrue(snapshot.isActiveMember(groupId, active));
+
+        // another node removed the member and bumped the version; nothing was invalidated here
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(
+                GroupMember.builder().groupId(groupId).userId(invited).status("INVITED").build()));
+        when(groupRepository.findMembershipVersion(groupId)).thenReturn(Optional.of(4L));
+
+        assertFalse(snapshot.isActiveMember(groupId, active));
+        assertFalse(snapshot.isActiveMember(groupId, active));
+        verify(groupMemberRepository, times(2)).findByGroupId(groupId);
+    }
+}
@@ -1,26 +1,34 @@
 package com.kleadingsolutions.expenseshare.service;
 
+import com.kleadingsolutions.expenseshare.config.MembershipCacheProperties;
 import com.kleadingsolutions.expenseshare.dto.BalanceDto;
 import com.kleadingsolutions.expenseshare.dto.ExpenseDto;
 import com.kleadingsolutions.expenseshare.dto.GroupDto;
+import com.kleadingsolutions.expenseshare.dto.PairDebtDto;
+import com.kleadingsolutions.expenseshare.dto.SettlePlanDto;
 import com.kleadingsolutions.expenseshare.exception.NotFoundException;
 import com.kleadingsolutions.expenseshare.model.*;
 import com.kleadingsolutions.expenseshare.repository.*;
 import com.kleadingsolutions.expenseshare.service.impl.GroupServiceImpl;
+import com.kleadingsolutions.expenseshare.util.PairDebtDeltas;
+import com.kleadingsolutions.expenseshare.util.SettlePlanner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentMatchers;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.StreamSupport;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -40,8 +48,21 @@ class GroupServiceTest {
     private BalanceRepository balanceRepository;
     @Mock
     private AuthService authService;
+    @Mock
+    private LedgerFolder ledgerFolder;
+    @Mock
+    private BalanceStripes balanceStripes;
+    @Mock
+    private BalanceProjections balanceProjections;
+    @Mock
+    private SettlePlans settlePlans;
+    @Mock
+    private UserNetPositions userNetPositions;
+    @Mock
+    private PairDebtRepository pairDebtRepository;
+    @Mock
+    private BalanceSnapshots balanceSnapshots;
 
-    @InjectMocks
     private GroupServiceImpl groupService;
 
     private UUID groupId;
@@ -55,6 +76,10 @@ class GroupServiceTest {
         creatorId = UUID.randomUUID();
         userId = UUID.randomUUID();
         otherUser = UUID.randomUUID();
+        groupService = new GroupServiceImpl(groupRepository, groupMemberRepository, userRepository, expenseRepository,
+                balanceRepository, authService, new GroupMembershipSnapshot(groupMemberRepository, groupRepository,
+                        new MembershipCacheProperties(100, Duration.ofMinutes(1)), new SimpleMeterRegistry()),
+                ledgerFolder, balanceStripes, balanceProjections, settlePlans, userNetPositions, pairDebtRepository, balanceSnapshots);
     }
 
     @Test
@@ -101,6 +126,7 @@ class GroupServiceTest {
         groupService.addMember(groupId, userId, creatorId);
 
         verify(groupMemberRepository, times(1)).save(ArgumentMatchers.any(GroupMember.class));
+        verify(userNetPositions).invalidateAfterCommit(userId);
     }
 
     @Test
@@ -130,14 +156,11 @@ class GroupServiceTest {
         GroupMember actorMember = GroupMember.builder().groupId(groupId).userId(creatorId).status("ACTIVE").build();
         GroupMember target = GroupMember.builder().groupId(groupId).userId(userId).status("ACTIVE").build();
         when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(actorMember, target));
+        when(groupMemberRepository.findByGroupIdAndUserId(groupId, userId)).thenReturn(Optional.of(target));
 
         groupService.removeMember(groupId, userId, creatorId);
 
-        // use StreamSupport to handle Iterable in deleteAll arg matcher
-        verify(groupMemberRepository, times(1)).deleteAll(argThat(iterable ->
-                StreamSupport.stream(iterable.spliterator(), false)
-                        .anyMatch(m -> m.getUserId().equals(userId))
-        ));
+        verify(groupMemberRepository, times(1)).delete(target);
     }
 
     @Test
@@ -152,7 +175,7 @@ class GroupServiceTest {
     @Test
     void leaveGroup_failsWhenNonZeroBalance() {
         Balance nonZero = Balance.builder().groupId(groupId).userId(userId).balance(new BigDecimal("5.00")).build();
-        when(balanceRepository.findByGroupId(groupId)).thenReturn(List.of(nonZero));
+        when(balanceRepository.findByGroupIdAndUserId(groupId, userId)).thenReturn(Optional.of(nonZero));
 
         List<GroupMember> members = List.of(GroupMember.builder().groupId(groupId).userId(userId).status("ACTIVE").build());
 
@@ -163,17 +186,15 @@ class GroupServiceTest {
     @Test
     void leaveGroup_removesMemberWhenZeroBalance() {
         Balance zero = Balance.builder().groupId(groupId).userId(userId).balance(BigDecimal.ZERO).build();
-        when(balanceRepository.findByGroupId(groupId)).thenReturn(List.of(zero));
+        when(balanceRepository.findByGroupIdAndUserId(groupId, userId)).thenReturn(Optional.of(zero));
 
         GroupMember gm = GroupMember.builder().groupId(groupId).userId(userId).status("ACTIVE").build();
-        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(gm));
+        when(groupMemberRepository.findByGroupIdAndUserId(groupId, userId)).thenReturn(Optional.of(gm));
 
         groupService.leaveGroup(groupId, userId);
 
-        verify(groupMemberRepository, times(1)).deleteAll(argThat(iterable ->
-                StreamSupport.stream(iterable.spliterator(), false)
-                        .anyMatch(m -> m.getUserId().equals(userId))
-        ));
+        verify(groupMemberRepository, times(1)).delete(gm);
+        verify(userNetPositions).invalidateAfterCommit(userId);
     }
 
     @Test
@@ -184,9 +205,9 @@ class GroupServiceTest {
         GroupMember gm = GroupMember.builder().groupId(groupId).userId(userId).status("ACTIVE").build();
         when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(gm));
 
-        Expense e = Expense.builder().id(UUID.randomUUID()).groupId(groupId).createdBy(creatorId)
+        ExpenseDto e = ExpenseDto.builder().id(UUID.randomUUID()).groupId(groupId).createdBy(creatorId)
                 .description("d").amount(new BigDecimal("10.00")).currency("AED").createdAt(LocalDateTime.now()).build();
-        when(expenseRepository.findByGroupId(groupId)).thenReturn(List.of(e));
+        when(expenseRepository.findDtosByGroupId(groupId)).thenReturn(List.of(e));
 
         List<ExpenseDto> out = groupService.listExpenses(groupId);
         assertEquals(1, out.size());
@@ -216,6 +237,86 @@ class GroupServiceTest {
         assertEquals(b.getBalance(), out.get(0).getBalance());
     }
 
+    @Test
+    void listBalances_inLazyMode_readsRowsAndUnfoldedTailInOneStatement() {
+        when(authService.getCurrentUserId()).thenReturn(userId);
+        GroupMember gm = GroupMember.builder().groupId(groupId).userId(userId).status("ACTIVE").build();
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(gm));
+        when(ledgerFolder.isLazy()).thenReturn(true);
+        when(balanceRepository.findGroupBalancesWithTail(groupId)).thenReturn(Map.of(userId, new BigDecimal("7.25")));
+
+        List<BalanceDto> out = groupService.listBalances(groupId);
+
+        assertEquals(1, out.size());
+        assertEquals(new BigDecimal("7.25"), out.get(0).getBalance());
+        // the fold commits on the primary; a replica read of the rows alone would miss it
+        verify(ledgerFolder).fold(groupId);
+        verify(balanceRepository, never()).findByGroupId(any());
+        verifyNoInteractions(balanceStripes);
+    }
+
+    @Test
+    void listBalancesAsOf_requiresMembership_andReadsSnapshots() {
+        when(authService.getCurrentUserId()).thenReturn(userId);
+        GroupMember gm = GroupMember.builder().groupId(groupId).userId(userId).status("ACTIVE").build();
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(gm));
+        OffsetDateTime asOf = OffsetDateTime.of(2026, 10, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        when(balanceSnapshots.balancesAsOf(groupId, asOf)).thenReturn(Map.of(userId, new BigDecimal("-4.00")));
+
+        List<BalanceDto> out = groupService.listBalancesAsOf(groupId, asOf);
+
+        assertEquals(1, out.size());
+        assertEquals(userId, out.get(0).getUserId());
+        assertEquals(new BigDecimal("-4.00"), out.get(0).getBalance());
+        verifyNoInteractions(balanceRepository, balanceProjections);
+    }
+
+    @Test
+    void settlePlan_requiresMembership_andMapsTransfersToAmounts() {
+        when(authService.getCurrentUserId()).thenReturn(userId);
+        GroupMember gm = GroupMember.builder().groupId(groupId).userId(userId).status("ACTIVE").build();
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(gm));
+        when(settlePlans.plan(eq(groupId), any()))
+                .thenReturn(List.of(new SettlePlanner.Transfer(userId, otherUser, 250L)));
+
+        SettlePlanDto plan = groupService.settlePlan(groupId);
+
+        assertEquals(groupId, plan.getGroupId());
+        assertEquals(1, plan.getTransfers().size());
+        assertEquals(userId, plan.getTransfers().get(0).getFromUserId());
+        assertEquals(otherUser, plan.getTransfers().get(0).getToUserId());
+        assertEquals(new BigDecimal("2.50"), plan.getTransfers().get(0).getAmount());
+    }
+
+    @Test
+    void settlePlan_throwsWhenNotMember() {
+        when(authService.getCurrentUserId()).thenReturn(userId);
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of());
+
+        assertThrows(IllegalArgumentException.class, () -> groupService.settlePlan(groupId));
+        verifyNoInteractions(settlePlans);
+    }
+
+    @Test
+    void listDebts_defaultsToCaller_andOrientsEachPairByItsSign() {
+        when(authService.getCurrentUserId()).thenReturn(userId);
+        GroupMember gm = GroupMember.builder().groupId(groupId).userId(userId).status("ACTIVE").build();
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(gm));
+        when(pairDebtRepository.findForUser(groupId, userId)).thenReturn(List.of(
+                new PairDebtDeltas.Entry(userId, otherUser, 1250L),
+                new PairDebtDeltas.Entry(creatorId, userId, -300L)));
+
+        List<PairDebtDto> debts = groupService.listDebts(groupId, null);
+
+        assertEquals(2, debts.size());
+        assertEquals(userId, debts.get(0).getDebtorId());
+        assertEquals(otherUser, debts.get(0).getCreditorId());
+        assertEquals(new BigDecimal("12.50"), debts.get(0).getAmount());
+        assertEquals(userId, debts.get(1).getDebtorId());
+        assertEquals(creatorId, debts.get(1).getCreditorId());
+        assertEquals(new BigDecimal("3.00"), debts.get(1).getAmount());
+    }
+
     @Test
     void removeGroup_deletesGroupWhenExists() {
         when(groupRepository.findById(groupId)).thenReturn(Optional.of(Group.builder().id(groupId).build()));
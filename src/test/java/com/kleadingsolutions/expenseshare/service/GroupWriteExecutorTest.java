@@ -0,0 +1,97 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.GroupWriterProperties;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class GroupWriteExecutorTest {
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private GroupWriteExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) executor.destroy();
+    }
+
+    @Test
+    void disabled_runsInlineOnCallerThread() {
+        executor = new GroupWriteExecutor(new GroupWriterProperties(false, 2, 8, 100), transactionManager, meterRegistry);
+
+        String thread = executor.submit(UUID.randomUUID(), () -> Thread.currentThread().getName()).join();
+
+        assertEquals(Thread.currentThread().getName(), thread);
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void enabled_appliesGroupWritesInOrder_andIsolatesFailuresInABatch() throws Exception {
+        executor = new GroupWriteExecutor(new GroupWriterProperties(true, 2, 8, 100), transactionManager, meterRegistry);
+        UUID groupId = UUID.randomUUID();
+        List<Integer> applied = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // occupy the group's writer so the next three submissions queue up and drain as one batch
+        CompletableFuture<Integer> blocker = executor.submit(groupId, () -> {
+            started.countDown();
+            await(release);
+            applied.add(0);
+            return 0;
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Integer> first = executor.submit(groupId, () -> { applied.add(1); return 1; });
+        CompletableFuture<Integer> failing = executor.submit(groupId, () -> { throw new BadRequestException("bad split"); });
+        CompletableFuture<Integer> third = executor.submit(groupId, () -> { applied.add(3); return 3; });
+        release.countDown();
+
+        assertEquals(0, blocker.get(5, TimeUnit.SECONDS));
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        assertEquals(3, third.get(5, TimeUnit.SECONDS));
+        CompletionException ex = assertThrows(CompletionException.class, failing::join);
+        assertInstanceOf(BadRequestException.class, ex.getCause());
+
+        // blocker, then batch [1, fail, 3] rolled back and replayed one by one
+        assertEquals(List.of(0, 1, 1, 3), applied);
+        verify(transactionManager, atLeast(2)).rollback(any());
+        assertEquals(1.0, meterRegistry.get("expenseshare.group_writer.batch.fallbacks").counter().count());
+    }
+
+    @Test
+    void operationThrowingAnError_failsItsFuture_andTheWriterKeepsRunning() throws Exception {
+        executor = new GroupWriteExecutor(new GroupWriterProperties(true, 1, 8, 100), transactionManager, meterRegistry);
+        UUID groupId = UUID.randomUUID();
+
+        CompletableFuture<Integer> failing = executor.submit(groupId, () -> { throw new StackOverflowError("deep split"); });
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(StackOverflowError.class, ex.getCause());
+
+        assertEquals(7, executor.submit(groupId, () -> 7).get(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kleadingsolutions.expenseshare.config.IdempotencyProperties;
+import com.kleadingsolutions.expenseshare.dto.GroupDto;
+import com.kleadingsolutions.expenseshare.exception.ConflictException;
+import com.kleadingsolutions.expenseshare.repository.IdempotencyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyStore store;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private IdempotencyService service;
+    private IdempotencyService.Request request;
+    private AtomicInteger executions;
+    private Supplier<GroupDto> operation;
+
+    @BeforeEach
+    void setUp() {
+        service = new IdempotencyService(store, new IdempotencyProperties(true, Duration.ofHours(24), Duration.ofHours(1)),
+                objectMapper, meterRegistry);
+        request = new IdempotencyService.Request("alice", "key-1", "hash-1");
+        executions = new AtomicInteger();
+        UUID id = UUID.randomUUID();
+        operation = () -> {
+            executions.incrementAndGet();
+            return GroupDto.builder().id(id).name("Trip").build();
+        };
+    }
+
+    @Test
+    void execute_claimedKey_runsOperationAndStoresResponse() {
+        when(store.claim(eq("alice"), eq("key-1"), eq("hash-1"), any(), any())).thenReturn(true);
+
+        GroupDto result = service.execute(request, GroupDto.class, operation);
+
+        assertEquals(1, executions.get());
+        verify(store).complete(eq("alice"), eq("key-1"), contains("\"name\":\"Trip\""));
+        assertEquals(1.0, meterRegistry.get("expenseshare.idempotency.requests").tag("outcome", "executed").counter().count());
+        assertEquals("Trip", result.getName());
+    }
+
+    @Test
+    void execute_keyAlreadyCommitted_replaysWithoutRunningOperation() throws Exception {
+        GroupDto first = GroupDto.builder().id(UUID.randomUUID()).name("Trip").build();
+        when(store.claim(any(), any(), any(), any(), any())).thenReturn(false);
+        when(store.find(eq("alice"), eq("key-1"), any()))
+                .thenReturn(Optional.of(new IdempotencyStore.StoredKey("hash-1", objectMapper.writeValueAsString(first))));
+
+        GroupDto replayed = service.execute(request, GroupDto.class, operation);
+
+        assertEquals(0, executions.get());
+        assertEquals(first.getId(), replayed.getId());
+        verify(store, never()).complete(any(), any(), any());
+        assertEquals(1.0, meterRegistry.get("expenseshare.idempotency.requests").tag("outcome", "replayed_after_wait").counter().count());
+    }
+
+    @Test
+    void execute_keyReusedForDifferentRequest_isRejected() {
+        when(store.claim(any(), any(), any(), any(), any())).thenReturn(false);
+        when(store.find(eq("alice"), eq("key-1"), any()))
+                .thenReturn(Optional.of(new IdempotencyStore.StoredKey("other-hash", "{}")));
+
+        assertThrows(ConflictException.class, () -> service.execute(request, GroupDto.class, operation));
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void execute_withoutKey_runsOperationUnguarded() {
+        service.execute(null, GroupDto.class, operation);
+
+        assertEquals(1, executions.get());
+        verifyNoInteractions(store);
+    }
+}
@@ -0,0 +1,121 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.LedgerCompactionProperties;
+import com.kleadingsolutions.expenseshare.enums.Currency;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.BalanceSnapshotRepository;
+import com.kleadingsolutions.expenseshare.repository.LedgerCompactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LedgerCompactorTest {
+
+    private static final OffsetDateTime HORIZON = OffsetDateTime.parse("2025-10-16T00:00:00Z");
+
+    private final LedgerCompactionRepository repository = mock(LedgerCompactionRepository.class);
+    private final BalanceRepository balanceRepository = mock(BalanceRepository.class);
+    private final BalanceSnapshotRepository snapshotRepository = mock(BalanceSnapshotRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LedgerCompactor compactor = new LedgerCompactor(
+            new LedgerCompactionProperties(true, Duration.ofHours(6), Duration.ofDays(365), 100, 1_000, 2),
+            repository, balanceRepository, snapshotRepository, mock(PlatformTransactionManager.class), meterRegistry);
+    private final UUID groupId = new UUID(0L, 1L);
+    private final UUID alice = new UUID(1L, 1L);
+
+    @Test
+    void horizon_isAlignedToAUtcDay() {
+        long now = OffsetDateTime.parse("2026-10-16T15:30:00Z").toInstant().toEpochMilli();
+        assertEquals(OffsetDateTime.parse("2025-10-16T00:00:00Z"), compactor.horizonAt(now));
+    }
+
+    @Test
+    void compactGroup_movesEntriesAndWritesSummaries_underTheGroupLock() {
+        List<LedgerCompactionRepository.Total> totals = List.of(
+                new LedgerCompactionRepository.Total(alice, Currency.AED.code(), -1250L));
+        when(repository.foldedSeq(groupId)).thenReturn(40L);
+        when(repository.countCompactable(groupId, HORIZON, 40L)).thenReturn(150L);
+        when(repository.totals(groupId, HORIZON, 40L)).thenReturn(totals);
+        when(repository.archive(groupId, HORIZON, 40L)).thenReturn(150);
+        when(repository.delete(groupId, HORIZON, 40L)).thenReturn(150);
+
+        assertEquals(150, compactor.compactGroup(groupId, HORIZON));
+
+        InOrder order = inOrder(balanceRepository, repository, snapshotRepository);
+        order.verify(balanceRepository).lockGroup(groupId);
+        order.verify(repository).totals(groupId, HORIZON, 40L);
+        order.verify(repository).archive(groupId, HORIZON, 40L);
+        order.verify(repository).delete(groupId, HORIZON, 40L);
+        order.verify(repository).insertSummaries(groupId, HORIZON, totals);
+        order.verify(snapshotRepository).deleteUpTo(groupId, HORIZON);
+        assertEquals(150.0, meterRegistry.get("expenseshare.ledger.compaction.rows").counter().count());
+    }
+
+    @Test
+    void compactGroup_leavesGroupsBelowMinEntries() {
+        when(repository.countCompactable(eq(groupId), eq(HORIZON), anyLong())).thenReturn(99L);
+
+        assertEquals(0, compactor.compactGroup(groupId, HORIZON));
+        verify(repository, never()).archive(any(), any(), anyLong());
+        verify(snapshotRepository, never()).deleteUpTo(any(), any());
+    }
+
+    @Test
+    void compactGroup_failsWhenArchiveAndDeleteDisagree() {
+        when(repository.countCompactable(eq(groupId), eq(HORIZON), anyLong())).thenReturn(150L);
+        when(repository.archive(eq(groupId), eq(HORIZON), anyLong())).thenReturn(150);
+        when(repository.delete(eq(groupId), eq(HORIZON), anyLong())).thenReturn(151);
+
+        assertThrows(IllegalStateException.class, () -> compactor.compactGroup(groupId, HORIZON));
+        verify(repository, never()).insertSummaries(any(), any(), any());
+    }
+
+    @Test
+    void compact_resumesAfterTheSavedGroup_atTheSameHorizon() {
+        OffsetDateTime horizon = compactor.horizonAt(System.currentTimeMillis());
+        UUID g2 = new UUID(0L, 2L);
+        UUID g3 = new UUID(0L, 3L);
+        when(repository.findRun("default"))
+                .thenReturn(Optional.of(new LedgerCompactionRepository.Run(horizon, groupId, 1L, 300L, false)));
+        when(repository.groupsAfter(groupId, 2)).thenReturn(List.of(g2, g3));
+        when(repository.groupsAfter(g3, 2)).thenReturn(List.of());
+        when(repository.countCompactable(eq(g2), eq(horizon), anyLong())).thenReturn(500L);
+        when(repository.archive(eq(g2), eq(horizon), anyLong())).thenReturn(500);
+        when(repository.delete(eq(g2), eq(horizon), anyLong())).thenReturn(500);
+
+        LedgerCompactor.CompactionResult result = compactor.compact();
+
+        assertTrue(result.resumed());
+        assertEquals(2, result.groupsCompacted());
+        assertEquals(800, result.rowsArchived());
+        verify(repository, never()).startRun(any(), any());
+        verify(repository).saveRun("default", g3, 2L, 800L);
+        verify(repository).completeRun("default");
+    }
+
+    @Test
+    void compact_startsOver_whenTheHorizonMoved() {
+        when(repository.findRun("default")).thenReturn(Optional.of(
+                new LedgerCompactionRepository.Run(HORIZON.minusDays(400), groupId, 1L, 300L, false)));
+        when(repository.groupsAfter(new UUID(0L, 0L), 2)).thenReturn(List.of());
+
+        LedgerCompactor.CompactionResult result = compactor.compact();
+
+        assertFalse(result.resumed());
+        assertEquals(0, result.rowsArchived());
+        verify(repository).startRun(eq("default"), any());
+    }
+}
@@ -0,0 +1,109 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.enums.BalanceUpdateMode;
+import com.kleadingsolutions.expenseshare.model.LedgerEntry;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.LedgerHeadRepository;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LedgerFolderTest {
+
+    private final LedgerHeadRepository ledgerHeadRepository = mock(LedgerHeadRepository.class);
+    private final BalanceRepository balanceRepository = mock(BalanceRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UUID groupId = UUID.randomUUID();
+    private LedgerFolder folder;
+
+    @BeforeEach
+    void setUp() {
+        folder = new LedgerFolder(new BalanceProperties(BalanceUpdateMode.LAZY, false,
+                BalanceLockMode.ATOMIC_DELTA, List.of(), 5, Duration.ofMillis(5)), ledgerHeadRepository,
+                balanceRepository, transactionManager, meterRegistry);
+    }
+
+    @Test
+    void assignSequence_numbersEntriesFromTheAllocatedRange() {
+        List<LedgerEntry> entries = List.of(new LedgerEntry(), new LedgerEntry(), new LedgerEntry());
+        when(ledgerHeadRepository.allocate(groupId, 3)).thenReturn(12L);
+
+        folder.assignSequence(groupId, entries);
+
+        assertEquals(List.of(10L, 11L, 12L), entries.stream().map(LedgerEntry::getSeq).toList());
+    }
+
+    @Test
+    void assignSequence_withSharedWriterLock_allocatesInAShortTransactionOfItsOwn() {
+        List<LedgerEntry> entries = List.of(new LedgerEntry(), new LedgerEntry());
+        when(ledgerHeadRepository.lockShared(groupId)).thenReturn(true);
+        when(ledgerHeadRepository.allocate(groupId, 2)).thenReturn(8L);
+
+        folder.assignSequence(groupId, entries);
+
+        assertEquals(List.of(7L, 8L), entries.stream().map(LedgerEntry::getSeq).toList());
+        InOrder order = inOrder(ledgerHeadRepository, transactionManager);
+        order.verify(ledgerHeadRepository).lockShared(groupId);
+        order.verify(transactionManager).getTransaction(argThat(d -> d.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        order.verify(ledgerHeadRepository).allocate(groupId, 2);
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void fold_nothingPending_doesNotOpenATransaction() {
+        when(ledgerHeadRepository.find(groupId)).thenReturn(Optional.of(new LedgerHeadRepository.Head(5, 5)));
+
+        assertEquals(0, folder.fold(groupId));
+
+        verifyNoInteractions(transactionManager, balanceRepository);
+        verify(ledgerHeadRepository, never()).lock(any());
+    }
+
+    @Test
+    void fold_appliesUnfoldedTailInNewTransaction_andAdvancesHead() {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        CentDeltas tail = CentDeltas.of(Map.of(alice, new BigDecimal("12.50"), bob, new BigDecimal("-12.50")));
+        when(ledgerHeadRepository.find(groupId)).thenReturn(Optional.of(new LedgerHeadRepository.Head(9, 4)));
+        when(ledgerHeadRepository.lock(groupId)).thenReturn(Optional.of(new LedgerHeadRepository.Head(11, 4)));
+        when(ledgerHeadRepository.unfoldedDeltas(groupId, 4, 11)).thenReturn(tail);
+        when(balanceRepository.applyFoldedDeltas(groupId, tail, 11)).thenReturn(2);
+
+        assertEquals(2, folder.fold(groupId));
+
+        verify(transactionManager).getTransaction(any());
+        verify(ledgerHeadRepository).markFolded(groupId, 11);
+        assertEquals(1.0, meterRegistry.get("expenseshare.ledger.folds").counter().count());
+    }
+
+    @Test
+    void lockAndFold_withoutHead_returnsZero() {
+        when(ledgerHeadRepository.lock(groupId)).thenReturn(Optional.empty());
+
+        assertEquals(0L, folder.lockAndFold(groupId));
+
+        verify(balanceRepository, never()).applyFoldedDeltas(any(), any(), anyLong());
+        verify(ledgerHeadRepository, never()).markFolded(eq(groupId), anyLong());
+    }
+}
@@ -0,0 +1,124 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceSnapshotProperties;
+import com.kleadingsolutions.expenseshare.config.LedgerPartitionProperties;
+import com.kleadingsolutions.expenseshare.enums.Currency;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+import com.kleadingsolutions.expenseshare.repository.BalanceSnapshotRepository;
+import com.kleadingsolutions.expenseshare.repository.DatabaseVendor;
+import com.kleadingsolutions.expenseshare.repository.LedgerPartitionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LedgerPartitionsTest {
+
+    private static final YearMonth OCT = YearMonth.of(2026, 10);
+    private static final String P0 = "ledger_entries_p00";
+
+    private final LedgerPartitionRepository repository = mock(LedgerPartitionRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void maintain_createsMissingMonthsAhead() {
+        LedgerPartitions partitions = partitions(0);
+        when(repository.hashPartitions()).thenReturn(List.of(P0));
+        when(repository.months(P0)).thenReturn(new TreeSet<>(List.of(OCT, OCT.plusMonths(1))));
+
+        LedgerPartitions.MaintenanceResult result = partitions.maintain(OCT);
+
+        assertEquals(2, result.created());
+        verify(repository).createMonth(P0, OCT.plusMonths(2));
+        verify(repository).createMonth(P0, OCT.plusMonths(3));
+        verify(repository, never()).detach(any(), any());
+    }
+
+    @Test
+    void maintain_archivesMonthsEndingBeforeTheHorizon() {
+        LedgerPartitions partitions = partitions(6);
+        YearMonth march = YearMonth.of(2026, 3);
+        YearMonth april = YearMonth.of(2026, 4);
+        when(repository.hashPartitions()).thenReturn(List.of(P0));
+        when(repository.months(P0)).thenReturn(new TreeSet<>(List.of(march, april, april.plusMonths(1),
+                OCT.plusMonths(1), OCT.plusMonths(2), OCT.plusMonths(3))));
+
+        LedgerPartitions.MaintenanceResult result = partitions.maintain(OCT);
+
+        // horizon is April: only March has ended by then
+        assertEquals(1, result.archived());
+        verify(repository).detach(P0, march);
+        verify(repository, never()).detach(P0, april);
+        verify(repository, never()).detach(P0, april.plusMonths(1));
+        assertEquals(1.0, meterRegistry.get("expenseshare.ledger.partitions.archived").counter().count());
+    }
+
+    @Test
+    void archive_writesCarriesAfterDetaching_andMovesTheMonth() {
+        LedgerPartitions partitions = partitions(6);
+        YearMonth march = YearMonth.of(2026, 3);
+        List<LedgerPartitionRepository.Total> totals = List.of(
+                new LedgerPartitionRepository.Total(UUID.randomUUID(), UUID.randomUUID(), Currency.AED.code(), 400L));
+        when(repository.totals(P0, march)).thenReturn(totals);
+
+        assertTrue(partitions.archive(P0, march));
+
+        InOrder order = inOrder(repository);
+        order.verify(repository).totals(P0, march);
+        order.verify(repository).detach(P0, march);
+        order.verify(repository).insertCarries(march, totals);
+        order.verify(repository).deleteSnapshotsInside(P0, march);
+        order.verify(repository).recordArchiveHorizon(P0, march);
+        order.verify(repository).moveToSchema(eq(P0), eq(march), eq("ledger_archive"));
+    }
+
+    @Test
+    void asOf_insideAnArchivedMonth_isRefused() {
+        YearMonth march = YearMonth.of(2026, 3);
+        UUID groupId = UUID.randomUUID();
+        OffsetDateTime endOfMarch = march.plusMonths(1).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        BalanceSnapshotRepository snapshotRepository = mock(BalanceSnapshotRepository.class);
+        when(snapshotRepository.archiveHorizon(groupId)).thenReturn(Optional.of(endOfMarch));
+        BalanceSnapshots snapshots = new BalanceSnapshots(
+                new BalanceSnapshotProperties(true, Duration.ofDays(1), Duration.ofMinutes(10), Duration.ofHours(1), 100),
+                snapshotRepository, mock(PlatformTransactionManager.class), meterRegistry);
+
+        assertTrue(partitions(6).archive(P0, march));
+        verify(repository).recordArchiveHorizon(P0, march);
+
+        // the carry is dated March 1st: mid-March would read the whole month
+        assertThrows(BadRequestException.class, () -> snapshots.balancesAsOf(groupId, endOfMarch.minusDays(16)));
+        assertThrows(BadRequestException.class, () -> snapshots.balancesAsOf(groupId, endOfMarch.minusSeconds(1)));
+        assertEquals(Map.of(), snapshots.balancesAsOf(groupId, endOfMarch));
+    }
+
+    @Test
+    void archive_leavesMonthsWithUnfoldedEntries() {
+        LedgerPartitions partitions = partitions(6);
+        when(repository.hasUnfolded(P0, OCT)).thenReturn(true);
+
+        assertFalse(partitions.archive(P0, OCT));
+        verify(repository, never()).detach(any(), any());
+    }
+
+    private LedgerPartitions partitions(int archiveAfterMonths) {
+        return new LedgerPartitions(
+                new LedgerPartitionProperties(true, 3, archiveAfterMonths, "ledger_archive", Duration.ofHours(1)),
+                repository, mock(DatabaseVendor.class), mock(PlatformTransactionManager.class), meterRegistry);
+    }
+}
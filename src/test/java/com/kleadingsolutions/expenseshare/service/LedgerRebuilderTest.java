@@ -0,0 +1,140 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.LedgerRebuildProperties;
+import com.kleadingsolutions.expenseshare.repository.LedgerRebuildRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class LedgerRebuilderTest {
+
+    private final LedgerRebuildRepository repository = mock(LedgerRebuildRepository.class);
+    private final UUID g1 = new UUID(0L, 1L);
+    private final UUID g2 = new UUID(0L, 2L);
+    private final UUID g3 = new UUID(0L, 3L);
+    private final UUID alice = new UUID(1L, 1L);
+    private final UUID bob = new UUID(1L, 2L);
+    private final UUID carol = new UUID(1L, 3L);
+
+    @Test
+    void rebuild_overwritesOnlyRowsThatDifferFromTheLedger_andCheckpointsEveryGroup() {
+        LedgerRebuilder rebuilder = rebuilder(false, 2);
+        when(repository.findCheckpoint("default")).thenReturn(Optional.empty());
+        stream(null,
+                g1, alice, 500L, g1, bob, -500L,
+                g2, alice, 300L, g2, carol, -100L, g2, carol, -200L,
+                g3, bob, 0L);
+        // g1 matches; g2: carol's row is stale, alice's total is right only with a stripe; g3: bob holds money he never had
+        when(repository.currentBalances(anyList())).thenAnswer(inv -> Map.of(
+                g1, Map.of(alice, new LedgerRebuildRepository.Current(500L, 0L), bob, new LedgerRebuildRepository.Current(-500L, 0L)),
+                g2, Map.of(alice, new LedgerRebuildRepository.Current(200L, 100L), carol, new LedgerRebuildRepository.Current(-250L, 0L)),
+                g3, Map.of(bob, new LedgerRebuildRepository.Current(700L, 0L))));
+        when(repository.overwrite(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+        LedgerRebuilder.RebuildResult result = rebuilder.rebuild();
+
+        assertEquals(6, result.ledgerRows());
+        assertEquals(3, result.groups());
+        assertEquals(2, result.driftRows());
+        assertEquals(new BigDecimal("7.50"), result.driftTotal());
+        assertEquals(3, result.rowsWritten());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<LedgerRebuildRepository.Row>> rows = ArgumentCaptor.forClass(List.class);
+        verify(repository, atLeastOnce()).overwrite(rows.capture());
+        List<LedgerRebuildRepository.Row> written = new ArrayList<>();
+        rows.getAllValues().forEach(written::addAll);
+        assertTrue(written.contains(new LedgerRebuildRepository.Row(g2, alice, 300L)));
+        assertTrue(written.contains(new LedgerRebuildRepository.Row(g2, carol, -300L)));
+        assertTrue(written.contains(new LedgerRebuildRepository.Row(g3, bob, 0L)));
+        verify(repository).startCheckpoint("default");
+        verify(repository).saveCheckpoint("default", g3, 3L, 6L);
+        verify(repository).zeroOrphans();
+        verify(repository).completeCheckpoint("default");
+    }
+
+    @Test
+    void dryRun_reportsDriftWithoutWriting() {
+        LedgerRebuilder rebuilder = rebuilder(true, 100);
+        stream(null, g1, alice, 500L, g1, bob, -500L);
+        when(repository.currentBalances(anyList())).thenReturn(Map.of(
+                g1, Map.of(alice, new LedgerRebuildRepository.Current(400L, 0L))));
+        when(repository.countOrphans()).thenReturn(4L);
+
+        LedgerRebuilder.RebuildResult result = rebuilder.rebuild();
+
+        assertTrue(result.dryRun());
+        assertEquals(2, result.driftRows());
+        assertEquals(new BigDecimal("6.00"), result.driftTotal());
+        assertEquals(4, result.orphanRows());
+        verify(repository, never()).overwrite(anyList());
+        verify(repository, never()).markRebuilt(anyList());
+        verify(repository, never()).startCheckpoint(any());
+        verify(repository, never()).zeroOrphans();
+    }
+
+    @Test
+    void unfinishedRun_resumesAfterItsCheckpoint() {
+        LedgerRebuilder rebuilder = rebuilder(false, 100);
+        when(repository.findCheckpoint("default"))
+                .thenReturn(Optional.of(new LedgerRebuildRepository.Checkpoint(g1, 1L, 2L, false)));
+        stream(g1, g2, alice, 100L, g2, bob, -100L);
+        when(repository.currentBalances(anyList())).thenReturn(Map.of());
+        when(repository.overwrite(anyList())).thenReturn(2);
+
+        LedgerRebuilder.RebuildResult result = rebuilder.rebuild();
+
+        assertTrue(result.resumed());
+        assertEquals(2, result.groups());
+        assertEquals(4, result.ledgerRows());
+        verify(repository, never()).startCheckpoint(any());
+        verify(repository).saveCheckpoint("default", g2, 2L, 4L);
+    }
+
+    @Test
+    void failedBatch_stopsTheRun_withoutCompletingIt() {
+        LedgerRebuilder rebuilder = rebuilder(false, 1);
+        when(repository.findCheckpoint("default")).thenReturn(Optional.empty());
+        stream(null, g1, alice, 100L, g1, bob, -100L);
+        when(repository.currentBalances(anyList())).thenThrow(new IllegalStateException("boom"));
+
+        assertThrows(IllegalStateException.class, rebuilder::rebuild);
+        verify(repository, never()).completeCheckpoint(any());
+        verify(repository, never()).saveCheckpoint(any(), any(), anyLong(), anyLong());
+    }
+
+    private LedgerRebuilder rebuilder(boolean dryRun, int batchRows) {
+        return new LedgerRebuilder(
+                new LedgerRebuildProperties(dryRun, "default", true, 100, batchRows, 2, Duration.ofSeconds(10), 10),
+                repository, mock(PlatformTransactionManager.class));
+    }
+
+    /**
+     * Stream (group, user, cents) triples as the cursor would.
+     */
+    private void stream(UUID after, Object... rows) {
+        doAnswer(inv -> {
+            LedgerRebuildRepository.LedgerRowHandler handler = inv.getArgument(2);
+            for (int i = 0; i < rows.length; i += 3) {
+                handler.row((UUID) rows[i], (UUID) rows[i + 1], (Long) rows[i + 2]);
+            }
+            return null;
+        }).when(repository).streamLedger(after == null ? isNull() : eq(after), anyInt(), any());
+    }
+}
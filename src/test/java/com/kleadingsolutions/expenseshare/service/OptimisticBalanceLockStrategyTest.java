@@ -0,0 +1,63 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.enums.BalanceUpdateMode;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
+import com.kleadingsolutions.expenseshare.repository.BalanceRepositoryCustom.VersionedBalance;
+import com.kleadingsolutions.expenseshare.service.impl.OptimisticBalanceLockStrategy;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OptimisticBalanceLockStrategyTest {
+
+    private final BalanceRepository balanceRepository = mock(BalanceRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OptimisticBalanceLockStrategy strategy = new OptimisticBalanceLockStrategy(balanceRepository,
+            new BalanceProperties(BalanceUpdateMode.EAGER, false, BalanceLockMode.OPTIMISTIC, List.of(), 3, Duration.ZERO),
+            meterRegistry);
+    private final UUID groupId = UUID.randomUUID();
+    private final UUID userId = UUID.randomUUID();
+    private final UUID rowId = UUID.randomUUID();
+
+    @Test
+    void lostRace_rereadsAndRetriesWithTheNewVersion() {
+        when(balanceRepository.findVersioned(groupId, userId)).thenReturn(
+                Optional.of(new VersionedBalance(rowId, new BigDecimal("10.00"), 4)),
+                Optional.of(new VersionedBalance(rowId, new BigDecimal("15.00"), 5)));
+        when(balanceRepository.compareAndSet(rowId, 4, new BigDecimal("12.50"))).thenReturn(false);
+        when(balanceRepository.compareAndSet(rowId, 5, new BigDecimal("17.50"))).thenReturn(true);
+
+        strategy.applyDeltas(groupId, CentDeltas.of(Map.of(userId, new BigDecimal("2.50"))), userId);
+
+        verify(balanceRepository).insertMissing(eq(groupId), any(CentDeltas.class), eq(userId));
+        verify(balanceRepository).compareAndSet(rowId, 5, new BigDecimal("17.50"));
+        assertEquals(1.0, meterRegistry.get("expenseshare.balance.lock.conflicts").counter().count());
+    }
+
+    @Test
+    void givesUpAfterConfiguredAttempts() {
+        when(balanceRepository.findVersioned(groupId, userId))
+                .thenReturn(Optional.of(new VersionedBalance(rowId, new BigDecimal("1.00"), 1)));
+        when(balanceRepository.compareAndSet(any(), anyLong(), any())).thenReturn(false);
+
+        CentDeltas deltas = CentDeltas.of(Map.of(userId, new BigDecimal("-1.00")));
+        assertThrows(OptimisticLockingFailureException.class, () -> strategy.applyDeltas(groupId, deltas, userId));
+
+        verify(balanceRepository, times(3)).compareAndSet(any(), anyLong(), any());
+        assertEquals(1.0, meterRegistry.get("expenseshare.balance.lock.exhausted").counter().count());
+    }
+}
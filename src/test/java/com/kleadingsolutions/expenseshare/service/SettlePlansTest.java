@@ -0,0 +1,88 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.SettlePlanProperties;
+import com.kleadingsolutions.expenseshare.exception.ConflictException;
+import com.kleadingsolutions.expenseshare.repository.LedgerHeadRepository;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.SettlePlanner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+class SettlePlansTest {
+
+    private final LedgerHeadRepository ledgerHeadRepository = mock(LedgerHeadRepository.class);
+    private final GroupCommitClock commitClock = new GroupCommitClock();
+    private final SettlePlans settlePlans = new SettlePlans(new SettlePlanProperties(100, Duration.ofMinutes(1)),
+            ledgerHeadRepository, commitClock, new SimpleMeterRegistry());
+    private final UUID groupId = UUID.randomUUID();
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Supplier<CentDeltas> balances = () -> {
+        loads.incrementAndGet();
+        return CentDeltas.of(Map.of(alice, new BigDecimal("10.00"), bob, new BigDecimal("-10.00")));
+    };
+
+    @BeforeEach
+    void setUp() {
+        when(ledgerHeadRepository.find(groupId)).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void plan_isComputedOnce_whileNothingIsWritten() {
+        List<SettlePlanner.Transfer> first = settlePlans.plan(groupId, balances);
+        List<SettlePlanner.Transfer> second = settlePlans.plan(groupId, balances);
+
+        assertEquals(List.of(new SettlePlanner.Transfer(bob, alice, 1000)), first);
+        assertEquals(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void balancesNotSummingToZero_areAConflict_andNothingIsCached() {
+        Supplier<CentDeltas> drifted = () -> {
+            loads.incrementAndGet();
+            return CentDeltas.of(Map.of(alice, new BigDecimal("10.00"), bob, new BigDecimal("-9.99")));
+        };
+
+        assertThrows(ConflictException.class, () -> settlePlans.plan(groupId, drifted));
+
+        assertEquals(List.of(new SettlePlanner.Transfer(bob, alice, 1000)), settlePlans.plan(groupId, balances));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void committedWrite_recomputesPlan() {
+        settlePlans.plan(groupId, balances);
+
+        commitClock.tick(groupId);
+        settlePlans.plan(groupId, balances);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void ledgerHeadMoved_recomputesPlan() {
+        settlePlans.plan(groupId, balances);
+
+        when(ledgerHeadRepository.find(groupId)).thenReturn(Optional.of(new LedgerHeadRepository.Head(4, 4)));
+        settlePlans.plan(groupId, balances);
+        settlePlans.plan(groupId, balances);
+
+        assertEquals(2, loads.get());
+    }
+}
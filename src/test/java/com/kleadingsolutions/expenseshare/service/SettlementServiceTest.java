@@ -1,30 +1,42 @@
 package com.kleadingsolutions.expenseshare.service;
 
+import com.kleadingsolutions.expenseshare.config.BalanceProperties;
+import com.kleadingsolutions.expenseshare.config.MembershipCacheProperties;
+import com.kleadingsolutions.expenseshare.enums.BalanceLockMode;
+import com.kleadingsolutions.expenseshare.enums.BalanceUpdateMode;
 import com.kleadingsolutions.expenseshare.model.Balance;
 import com.kleadingsolutions.expenseshare.model.GroupMember;
 import com.kleadingsolutions.expenseshare.model.Settlement;
 import com.kleadingsolutions.expenseshare.repository.BalanceRepository;
 import com.kleadingsolutions.expenseshare.repository.GroupMemberRepository;
+import com.kleadingsolutions.expenseshare.repository.GroupRepository;
 import com.kleadingsolutions.expenseshare.repository.LedgerEntryRepository;
+import com.kleadingsolutions.expenseshare.repository.PairDebtRepository;
 import com.kleadingsolutions.expenseshare.repository.SettlementRepository;
+import com.kleadingsolutions.expenseshare.service.impl.AtomicDeltaBalanceLockStrategy;
 import com.kleadingsolutions.expenseshare.service.impl.SettlementServiceImpl;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
 import com.kleadingsolutions.expenseshare.util.MoneyUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.dao.OptimisticLockingFailureException;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,9 +50,11 @@ class SettlementServiceTest {
     LedgerEntryRepository ledgerEntryRepository;
     @Mock
     GroupMemberRepository groupMemberRepository;
+    @Mock
+    LedgerFolder ledgerFolder;
 
-    @InjectMocks
     SettlementServiceImpl settlementService;
+    SimpleMeterRegistry meterRegistry;
 
     private UUID groupId;
     private UUID payerId;
@@ -53,6 +67,20 @@ class SettlementServiceTest {
         payerId = UUID.randomUUID();
         receiverId = UUID.randomUUID();
         initiator = UUID.randomUUID();
+        // the read-modify-write retry path (app.balances.settlement-optimistic-retry=true)
+        settlementService = newService(true);
+    }
+
+    private SettlementServiceImpl newService(boolean optimisticRetry) {
+        meterRegistry = new SimpleMeterRegistry();
+        GroupMembershipSnapshot snapshot = new GroupMembershipSnapshot(groupMemberRepository, mock(GroupRepository.class),
+                new MembershipCacheProperties(100, Duration.ofMinutes(1)), meterRegistry);
+        BalanceProperties properties = new BalanceProperties(BalanceUpdateMode.EAGER, optimisticRetry, BalanceLockMode.ATOMIC_DELTA, List.of(), 5, Duration.ofMillis(5));
+        BalanceLockStrategies strategies = new BalanceLockStrategies(
+                List.of(new AtomicDeltaBalanceLockStrategy(balanceRepository)), properties, snapshot, mock(BalanceStripes.class));
+        return new SettlementServiceImpl(balanceRepository, settlementRepository, ledgerEntryRepository,
+                snapshot, ledgerFolder, strategies, properties, mock(BalanceProjections.class),
+                mock(UserNetPositions.class), mock(PairDebtRepository.class), meterRegistry);
     }
 
     @Test
@@ -150,5 +178,26 @@ class SettlementServiceTest {
         verify(balanceRepository, atLeast(2)).save(any(Balance.class));
         verify(settlementRepository, atLeast(1)).save(any(Settlement.class));
         verify(ledgerEntryRepository, times(1)).saveAll(anyList());
+        assertEquals(1.0, meterRegistry.get("expenseshare.settlement.balance.conflicts").counter().count());
+        assertEquals(1.0, meterRegistry.get("expenseshare.settlement.balance.retries").counter().count());
+    }
+
+    @Test
+    void settle_atomicDeltas_updatesBothBalancesInOneUpsert_withoutReadingThem() {
+        settlementService = newService(false);
+        GroupMember gmPayer = GroupMember.builder().groupId(groupId).userId(payerId).status("ACTIVE").build();
+        GroupMember gmReceiver = GroupMember.builder().groupId(groupId).userId(receiverId).status("ACTIVE").build();
+        when(groupMemberRepository.findByGroupId(groupId)).thenReturn(List.of(gmPayer, gmReceiver));
+        when(settlementRepository.save(any(Settlement.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        Settlement result = settlementService.settle(groupId, payerId, receiverId, new BigDecimal("7.5"), payerId);
+
+        assertEquals("COMPLETED", result.getStatus());
+        ArgumentCaptor<CentDeltas> deltas = ArgumentCaptor.forClass(CentDeltas.class);
+        verify(balanceRepository).applyDeltas(eq(groupId), deltas.capture(), eq(payerId));
+        assertEquals(Map.of(payerId, new BigDecimal("-7.50"), receiverId, new BigDecimal("7.50")), deltas.getValue().toMap());
+        verify(balanceRepository, never()).findByGroupIdAndUserId(any(), any());
+        verify(balanceRepository, never()).save(any());
+        assertEquals(1.0, meterRegistry.get("expenseshare.settlement.balance.updates").tag("path", "atomic_delta").counter().count());
     }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.kleadingsolutions.expenseshare.service;
+
+import com.kleadingsolutions.expenseshare.config.UserNetProperties;
+import com.kleadingsolutions.expenseshare.dto.CurrencyNetDto;
+import com.kleadingsolutions.expenseshare.dto.UserNetDto;
+import com.kleadingsolutions.expenseshare.repository.UserNetRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserNetPositionsTest {
+
+    private final UserNetRepository userNetRepository = mock(UserNetRepository.class);
+    private final UserNetPositions positions = new UserNetPositions(userNetRepository,
+            new UserNetProperties(100, Duration.ofMinutes(1)), new SimpleMeterRegistry());
+    private final UUID userId = UUID.randomUUID();
+    private final UUID trip = UUID.randomUUID();
+    private final UUID flat = UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void netPosition_breaksDownByGroup_andTotalsOwedAndOwing() {
+        when(userNetRepository.findGroupNets(userId)).thenReturn(List.of(
+                new UserNetRepository.GroupNet(trip, "trip", 1250L),
+                new UserNetRepository.GroupNet(flat, "flat", -400L)));
+
+        UserNetDto net = positions.netPosition(userId);
+
+        assertEquals(2, net.getGroups().size());
+        assertEquals(new BigDecimal("12.50"), net.getGroups().get(0).getBalance());
+        assertEquals(new BigDecimal("-4.00"), net.getGroups().get(1).getBalance());
+        CurrencyNetDto total = net.getTotals().get(0);
+        assertEquals("AED", total.getCurrency());
+        assertEquals(new BigDecimal("12.50"), total.getOwed());
+        assertEquals(new BigDecimal("4.00"), total.getOwing());
+        assertEquals(new BigDecimal("8.50"), total.getNet());
+    }
+
+    @Test
+    void netPosition_isCached_untilAWriteTouchingTheUserCommits() {
+        when(userNetRepository.findGroupNets(userId)).thenReturn(List.of(new UserNetRepository.GroupNet(trip, "trip", 0L)));
+        positions.netPosition(userId);
+        positions.netPosition(userId);
+        verify(userNetRepository, times(1)).findGroupNets(userId);
+
+        TransactionSynchronizationManager.initSynchronization();
+        positions.invalidateAfterCommit(List.of(userId, UUID.randomUUID()));
+        positions.netPosition(userId);
+        verify(userNetRepository, times(1)).findGroupNets(userId);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        positions.netPosition(userId);
+        verify(userNetRepository, times(2)).findGroupNets(userId);
+    }
+
+    @Test
+    void netPosition_withoutGroups_hasNoTotals() {
+        when(userNetRepository.findGroupNets(userId)).thenReturn(List.of());
+
+        UserNetDto net = positions.netPosition(userId);
+
+        assertTrue(net.getGroups().isEmpty());
+        assertTrue(net.getTotals().isEmpty());
+    }
+}
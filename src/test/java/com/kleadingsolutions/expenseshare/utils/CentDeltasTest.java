@@ -0,0 +1,76 @@
+package com.kleadingsolutions.expenseshare.utils;
+
+import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.exception.BadRequestException;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CentDeltasTest {
+
+    @Test
+    void forExpense_mergesDuplicateUsers_addsUnlistedPayer_andSortsByUserId() {
+        UUID payer = UUID.fromString("00000000-0000-0000-0000-000000000003");
+        UUID a = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        UUID b = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+        CentDeltas deltas = CentDeltas.forExpense(payer, new BigDecimal("10"), List.of(
+                split(b, "2.50"), split(a, "3.005"), split(b, "4.495")));
+
+        // 3.005 -> 3.00 and 4.495 -> 4.50 (HALF_EVEN), b = 2.50 + 4.50
+        assertEquals(3, deltas.size());
+        assertEquals(1000L, deltas.totalCents());
+        assertEquals(List.of(a, b, payer), List.of(deltas.userId(0), deltas.userId(1), deltas.userId(2)));
+        assertEquals(-300L, deltas.cents(0));
+        assertEquals(-700L, deltas.cents(1));
+        assertEquals(1000L, deltas.cents(2));
+        assertEquals(new BigDecimal("10.00"), deltas.amount(2));
+        assertEquals(0L, deltas.sum());
+    }
+
+    @Test
+    void forExpense_rejectsSplitsThatDoNotSumToTotal() {
+        UUID payer = UUID.randomUUID();
+        BadRequestException ex = assertThrows(BadRequestException.class,
+                () -> CentDeltas.forExpense(payer, new BigDecimal("10.00"), List.of(split(payer, "9.99"))));
+        assertTrue(ex.getMessage().contains("sum=9.99 total=10.00"));
+    }
+
+    @Test
+    void forExpense_largeSplit_matchesMapAggregation() {
+        Random random = new Random(7);
+        UUID payer = UUID.randomUUID();
+        List<UUID> users = new ArrayList<>();
+        for (int i = 0; i < 300; i++) users.add(UUID.randomUUID());
+        List<ExpenseSplitDto> splits = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < 5000; i++) {
+            long cents = random.nextInt(5000);
+            total += cents;
+            splits.add(split(users.get(random.nextInt(users.size())), BigDecimal.valueOf(cents, 2).toPlainString()));
+        }
+
+        Map<UUID, BigDecimal> deltas = CentDeltas.forExpense(payer, BigDecimal.valueOf(total, 2), splits).toMap();
+
+        assertEquals(BigDecimal.valueOf(total, 2), deltas.get(payer));
+        for (UUID u : users) {
+            long share = splits.stream().filter(s -> s.getUserId().equals(u))
+                    .mapToLong(s -> s.getAmount().movePointRight(2).longValueExact()).sum();
+            assertEquals(BigDecimal.valueOf(-share, 2), deltas.get(u));
+        }
+        List<UUID> keys = new ArrayList<>(deltas.keySet());
+        for (int i = 1; i < keys.size(); i++) assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0);
+    }
+
+    private static ExpenseSplitDto split(UUID user, String amount) {
+        return ExpenseSplitDto.builder().userId(user).amount(new BigDecimal(amount)).build();
+    }
+}
@@ -0,0 +1,77 @@
+package com.kleadingsolutions.expenseshare.utils;
+
+import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.enums.ShareType;
+import com.kleadingsolutions.expenseshare.util.PackedSplits;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedSplitsTest {
+
+    private static final UUID A = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID B = UUID.fromString("ffffffff-ffff-ffff-ffff-fffffffffffe");
+
+    @Test
+    void roundTrip_keepsOrderAmountsAndShareTypes() {
+        List<ExpenseSplitDto> splits = List.of(
+                split(B, "0.01", ShareType.EQUAL),
+                split(A, "123456789.99", ShareType.PERCENT),
+                split(A, "-5.50", ShareType.CUSTOM));
+
+        List<ExpenseSplitDto> decoded = PackedSplits.decode(PackedSplits.encode(splits));
+
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < splits.size(); i++) {
+            assertEquals(splits.get(i).getUserId(), decoded.get(i).getUserId());
+            assertEquals(splits.get(i).getAmount(), decoded.get(i).getAmount());
+            assertEquals(splits.get(i).getShareType(), decoded.get(i).getShareType());
+        }
+    }
+
+    @Test
+    void missingShareType_isStoredAsCustom_andAmountsAreScaledToCents() {
+        List<ExpenseSplitDto> decoded = PackedSplits.decode(PackedSplits.encode(List.of(split(A, "7.5", null))));
+
+        assertEquals(new BigDecimal("7.50"), decoded.get(0).getAmount());
+        assertEquals(ShareType.CUSTOM, decoded.get(0).getShareType());
+    }
+
+    @Test
+    void fiveHundredSplits_takeNineteenBytesEach() {
+        List<ExpenseSplitDto> splits = new ArrayList<>();
+        for (int i = 0; i < 500; i++) splits.add(split(UUID.randomUUID(), "19.99", ShareType.EQUAL));
+
+        byte[] packed = PackedSplits.encode(splits);
+
+        // 16 (id) + 2 (zig-zag varint of 1999 cents) + 1 (share type) per split, plus format byte and count
+        assertEquals(1 + 2 + 500 * 19, packed.length);
+        assertEquals(500, PackedSplits.decode(packed).size());
+    }
+
+    @Test
+    void emptyList_roundTrips() {
+        assertTrue(PackedSplits.decode(PackedSplits.encode(List.of())).isEmpty());
+    }
+
+    @Test
+    void unknownFormatOrTruncatedValue_isRejected() {
+        byte[] packed = PackedSplits.encode(List.of(split(A, "1.00", ShareType.EQUAL)));
+
+        byte[] otherFormat = packed.clone();
+        otherFormat[0] = 9;
+        assertThrows(IllegalStateException.class, () -> PackedSplits.decode(otherFormat));
+        assertThrows(IllegalStateException.class, () -> PackedSplits.decode(Arrays.copyOf(packed, packed.length - 1)));
+        assertThrows(IllegalStateException.class, () -> PackedSplits.decode(Arrays.copyOf(packed, packed.length + 1)));
+    }
+
+    private static ExpenseSplitDto split(UUID user, String amount, ShareType shareType) {
+        return ExpenseSplitDto.builder().userId(user).amount(new BigDecimal(amount)).shareType(shareType).build();
+    }
+}
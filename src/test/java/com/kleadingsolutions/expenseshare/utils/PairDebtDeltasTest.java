@@ -0,0 +1,55 @@
+package com.kleadingsolutions.expenseshare.utils;
+
+import com.kleadingsolutions.expenseshare.dto.ExpenseSplitDto;
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.PairDebtDeltas;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PairDebtDeltasTest {
+
+    private static final UUID A = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID B = UUID.fromString("00000000-0000-0000-0000-000000000002");
+    private static final UUID C = UUID.fromString("00000000-0000-0000-0000-000000000003");
+
+    @Test
+    void forExpense_everyParticipantOwesThePayerTheirShare_inCanonicalOrder() {
+        CentDeltas deltas = CentDeltas.forExpense(B, new BigDecimal("90"), List.of(
+                split(A, "30"), split(B, "30"), split(C, "30")));
+
+        List<PairDebtDeltas.Entry> entries = PairDebtDeltas.forExpense(B, deltas).entries();
+
+        // A owes B: (A, B) +30.00; C owes B: stored as (B, C) -30.00
+        assertEquals(List.of(
+                new PairDebtDeltas.Entry(A, B, 3000L),
+                new PairDebtDeltas.Entry(B, C, -3000L)), entries);
+    }
+
+    @Test
+    void settlement_mirrorsLedgerDirection_andNetsWithExistingPairs() {
+        PairDebtDeltas deltas = PairDebtDeltas.forSettlement(C, A, 500L);
+        deltas.add(A, C, 200L);
+
+        // C -> A 5.00 then A -> C 2.00: C owes A 3.00, i.e. (A, C) -3.00
+        assertEquals(List.of(new PairDebtDeltas.Entry(A, C, -300L)), deltas.entries());
+    }
+
+    @Test
+    void pairsThatCancelOut_areDropped() {
+        PairDebtDeltas deltas = new PairDebtDeltas();
+        deltas.add(A, B, 100L);
+        deltas.add(B, A, 100L);
+        deltas.add(C, C, 100L);
+
+        assertEquals(0, deltas.size());
+    }
+
+    private static ExpenseSplitDto split(UUID userId, String amount) {
+        return ExpenseSplitDto.builder().userId(userId).amount(new BigDecimal(amount)).build();
+    }
+}
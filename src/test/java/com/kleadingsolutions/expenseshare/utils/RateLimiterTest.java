@@ -0,0 +1,46 @@
+package com.kleadingsolutions.expenseshare.utils;
+
+import com.kleadingsolutions.expenseshare.util.RateLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    @Test
+    void acquire_pacesPermitsToTheRate() {
+        RateLimiter limiter = new RateLimiter(100);
+
+        long start = System.nanoTime();
+        limiter.acquire();
+        limiter.acquire(3);
+        limiter.acquire();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the first permit is free; the 3 after it and the one after those wait 10 ms each
+        assertTrue(elapsedMs >= 39, "elapsed " + elapsedMs + " ms");
+    }
+
+    @Test
+    void acquire_doesNotSaveUpIdleTime() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(10);
+        limiter.acquire();
+        Thread.sleep(300);
+
+        long start = System.nanoTime();
+        limiter.acquire();
+        long firstMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        limiter.acquire();
+        long bothMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(firstMs < 50, "first after a pause waited " + firstMs + " ms");
+        assertTrue(bothMs >= 99, "second after a pause waited only " + bothMs + " ms");
+    }
+
+    @Test
+    void rejectsNonPositiveRates() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0));
+    }
+}
@@ -0,0 +1,123 @@
+package com.kleadingsolutions.expenseshare.utils;
+
+import com.kleadingsolutions.expenseshare.util.CentDeltas;
+import com.kleadingsolutions.expenseshare.util.MoneyUtils;
+import com.kleadingsolutions.expenseshare.util.SettlePlanner;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SettlePlannerTest {
+
+    @Test
+    void plan_zeroesEveryBalance_forRandomGroups() {
+        Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            int members = 1 + random.nextInt(round < 400 ? SettlePlanner.EXACT_MAX_PARTICIPANTS + 2 : 300);
+            CentDeltas balances = randomBalances(random, members);
+
+            List<SettlePlanner.Transfer> plan = SettlePlanner.plan(balances);
+
+            assertSettles(balances, plan);
+            long nonZero = nonZero(balances);
+            assertTrue(plan.size() <= Math.max(0, nonZero - 1), "more than n - 1 transfers: " + plan.size());
+            assertTrue(plan.size() <= SettlePlanner.greedy(balances).size(), "plan worse than greedy");
+        }
+    }
+
+    @Test
+    void plan_isExactForSmallGroups_whereGreedyIsNot() {
+        // greedy pairs -8 with 6 first and needs 5 transfers;
+        // {-8, 6, -2, 4} and {3, -3} are zero-sum, so 6 - 2 = 4 transfers suffice
+        CentDeltas balances = balances(-8, 6, -2, 3, 4, -3);
+
+        assertEquals(5, SettlePlanner.greedy(balances).size());
+        List<SettlePlanner.Transfer> plan = SettlePlanner.plan(balances);
+        assertEquals(4, plan.size());
+        assertSettles(balances, plan);
+    }
+
+    @Test
+    void plan_matchesDebtorsToCreditorsDirectly() {
+        CentDeltas balances = balances(500, -500, 300, -300);
+
+        List<SettlePlanner.Transfer> plan = SettlePlanner.plan(balances);
+
+        assertEquals(2, plan.size());
+        assertEquals(new SettlePlanner.Transfer(user(2), user(1), 500), plan.stream().filter(t -> t.cents() == 500).findFirst().orElseThrow());
+        assertEquals(new SettlePlanner.Transfer(user(4), user(3), 300), plan.stream().filter(t -> t.cents() == 300).findFirst().orElseThrow());
+    }
+
+    @Test
+    void plan_isEmptyWhenSettled() {
+        assertTrue(SettlePlanner.plan(balances(0, 0, 0)).isEmpty());
+        assertTrue(SettlePlanner.plan(balances()).isEmpty());
+    }
+
+    @Test
+    void plan_rejectsBalancesThatDoNotSumToZero() {
+        assertThrows(IllegalStateException.class, () -> SettlePlanner.plan(balances(100, -99)));
+    }
+
+    @Test
+    void plan_tenThousandMembers_isFast() {
+        CentDeltas balances = randomBalances(new Random(11), 10_000);
+        for (int i = 0; i < 20; i++) SettlePlanner.plan(balances); // warm-up
+
+        long start = System.nanoTime();
+        List<SettlePlanner.Transfer> plan = SettlePlanner.plan(balances);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertSettles(balances, plan);
+        // generous bound for shared CI machines; typically a few milliseconds
+        assertTrue(elapsedMs < 50, "10k member plan took " + elapsedMs + "ms");
+    }
+
+    private static void assertSettles(CentDeltas balances, List<SettlePlanner.Transfer> plan) {
+        Map<UUID, Long> remaining = new HashMap<>();
+        for (int i = 0; i < balances.size(); i++) remaining.put(balances.userId(i), balances.cents(i));
+        for (SettlePlanner.Transfer t : plan) {
+            assertTrue(t.cents() > 0, "non-positive transfer " + t);
+            assertNotEquals(t.from(), t.to());
+            remaining.merge(t.from(), t.cents(), Long::sum);
+            remaining.merge(t.to(), -t.cents(), Long::sum);
+        }
+        remaining.forEach((user, cents) -> assertEquals(0L, cents, "balance left for " + user));
+    }
+
+    private static long nonZero(CentDeltas balances) {
+        long n = 0;
+        for (int i = 0; i < balances.size(); i++) if (balances.cents(i) != 0) n++;
+        return n;
+    }
+
+    private static CentDeltas randomBalances(Random random, int members) {
+        Map<UUID, BigDecimal> map = new HashMap<>();
+        long sum = 0;
+        for (int i = 0; i < members - 1; i++) {
+            // a few settled members and small values so that zero-sum subsets actually occur
+            long cents = random.nextInt(4) == 0 ? 0 : random.nextInt(2001) - 1000;
+            sum += cents;
+            map.put(UUID.randomUUID(), MoneyUtils.fromCents(cents));
+        }
+        map.put(UUID.randomUUID(), MoneyUtils.fromCents(-sum));
+        return CentDeltas.of(map);
+    }
+
+    private static CentDeltas balances(long... cents) {
+        Map<UUID, BigDecimal> map = new HashMap<>();
+        for (int i = 0; i < cents.length; i++) map.put(user(i + 1), MoneyUtils.fromCents(cents[i]));
+        return CentDeltas.of(map);
+    }
+
+    private static UUID user(int n) {
+        return UUID.fromString(String.format("00000000-0000-0000-0000-%012d", n));
+    }
+}
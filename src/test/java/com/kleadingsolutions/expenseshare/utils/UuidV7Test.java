@@ -0,0 +1,47 @@
+package com.kleadingsolutions.expenseshare.utils;
+
+import com.kleadingsolutions.expenseshare.util.UuidV7;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UuidV7Test {
+
+    @Test
+    void randomUUID_isVersion7WithRfcVariant() {
+        UUID id = UuidV7.randomUUID();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+    }
+
+    @Test
+    void randomUUID_carriesTheCurrentTimestamp() {
+        long before = System.currentTimeMillis();
+        UUID id = UuidV7.randomUUID();
+        long after = System.currentTimeMillis();
+
+        long ts = UuidV7.timestamp(id);
+        // a burst may borrow a few milliseconds ahead, never fall behind
+        assertTrue(ts >= before && ts <= after + 10, "timestamp " + ts + " outside [" + before + ", " + after + "]");
+    }
+
+    @Test
+    void randomUUID_isStrictlyIncreasing_evenWithinOneMillisecond() {
+        UUID prev = UuidV7.randomUUID();
+        for (int i = 0; i < 100_000; i++) {
+            UUID next = UuidV7.randomUUID();
+            assertTrue(prev.compareTo(next) < 0, prev + " !< " + next);
+            // same order as PostgreSQL's unsigned byte comparison: the top bit stays clear until 10889
+            assertTrue(Long.compareUnsigned(prev.getMostSignificantBits(), next.getMostSignificantBits()) <= 0);
+            prev = next;
+        }
+    }
+
+    @Test
+    void timestamp_rejectsOtherVersions() {
+        assertThrows(IllegalArgumentException.class, () -> UuidV7.timestamp(UUID.randomUUID()));
+    }
+}